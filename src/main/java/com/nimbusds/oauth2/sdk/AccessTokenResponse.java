@@ -18,15 +18,21 @@
 package com.nimbusds.oauth2.sdk;
 
 
+import java.io.IOException;
 import java.util.*;
 
 import net.jcip.annotations.Immutable;
 
 import net.minidev.json.JSONObject;
 
+import com.nimbusds.oauth2.sdk.token.AccessTokenType;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
 import com.nimbusds.oauth2.sdk.token.Tokens;
 import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
 import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.util.JSONObjectWriter;
+import com.nimbusds.oauth2.sdk.util.TokenResponseMembers;
 
 
 /**
@@ -166,6 +172,52 @@ public class AccessTokenResponse extends TokenResponse implements SuccessRespons
 		
 		return o;
 	}
+
+
+	/**
+	 * Writes the JSON object representation of this access token response
+	 * to the specified output, without building an intermediate JSON
+	 * object. The members are the same as those of the
+	 * {@link #toJSONObject JSON object}. If a subclass overrides
+	 * {@link #toJSONObject} but not {@link #writeJSONMembers} the members
+	 * of the JSON object are written.
+	 *
+	 * @param out The output, such as a {@link StringBuilder} or a
+	 *            {@link java.io.Writer}. Must not be {@code null}.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public void writeJSONObject(final Appendable out)
+		throws IOException {
+
+		JSONObjectWriter writer = new JSONObjectWriter(out);
+
+		if (JSONObjectWriter.isStreamable(getClass())) {
+			writeJSONMembers(writer);
+		} else {
+			writer.writeMembers(toJSONObject());
+		}
+
+		writer.end();
+	}
+
+
+	/**
+	 * Writes the members of the JSON object representation of this access
+	 * token response. Members written first take precedence, the custom
+	 * parameters therefore precede the token parameters, matching the
+	 * overrides in {@link #toJSONObject}.
+	 *
+	 * @param writer The JSON object writer. Must not be {@code null}.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	protected void writeJSONMembers(final JSONObjectWriter writer)
+		throws IOException {
+
+		writer.writeMembers(customParams);
+		tokens.writeJSONMembers(writer);
+	}
 	
 	
 	@Override
@@ -176,8 +228,18 @@ public class AccessTokenResponse extends TokenResponse implements SuccessRespons
 		httpResponse.setContentType(CommonContentTypes.APPLICATION_JSON);
 		httpResponse.setCacheControl("no-store");
 		httpResponse.setPragma("no-cache");
+
+		StringBuilder sb = new StringBuilder(512);
+
+		try {
+			writeJSONObject(sb);
+
+		} catch (IOException e) {
+			// Not thrown by StringBuilder
+			throw new SerializeException(e.getMessage(), e);
+		}
 		
-		httpResponse.setContent(toJSONObject().toString());
+		httpResponse.setContent(sb.toString());
 		
 		return httpResponse;
 	}
@@ -232,7 +294,48 @@ public class AccessTokenResponse extends TokenResponse implements SuccessRespons
 		throws ParseException {
 		
 		httpResponse.ensureStatusCode(HTTPResponse.SC_OK);
+		httpResponse.ensureContentType(CommonContentTypes.APPLICATION_JSON);
+
+		if (httpResponse.getContent() != null) {
+
+			AccessTokenResponse response = parseFast(httpResponse.getContent());
+
+			if (response != null)
+				return response;
+		}
+
 		JSONObject jsonObject = httpResponse.getContentAsJSONObject();
 		return parse(jsonObject);
 	}
+
+
+	/**
+	 * Parses a typical access token response with a Bearer token in a
+	 * single pass, without building a JSON object tree. Unknown members
+	 * are collected into lazily parsed custom parameters.
+	 *
+	 * @param json The JSON object string to parse. Must not be
+	 *             {@code null}.
+	 *
+	 * @return The access token response, {@code null} if the JSON is
+	 *         malformed or unusual, in which case the regular
+	 *         {@link #parse(JSONObject)} must be used for the appropriate
+	 *         error reporting.
+	 */
+	private static AccessTokenResponse parseFast(final String json) {
+
+		TokenResponseMembers members = TokenResponseMembers.parse(json);
+
+		if (members == null ||
+		    members.getIDToken() != null ||
+		    ! AccessTokenType.parse(members.getTokenType()).equals(AccessTokenType.BEARER)) {
+			return null;
+		}
+
+		Tokens tokens = new Tokens(
+			new BearerAccessToken(members.getAccessToken(), members.getLifetime(), Scope.parse(members.getScope())),
+			members.getRefreshToken() != null ? new RefreshToken(members.getRefreshToken()) : null);
+
+		return new AccessTokenResponse(tokens, members.getCustomParameters());
+	}
 }
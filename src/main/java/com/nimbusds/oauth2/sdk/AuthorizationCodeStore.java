@@ -0,0 +1,80 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+/**
+ * Authorisation code store. Authorisation codes are single-use: a stored
+ * code can be consumed once, after which it's no longer available, also
+ * to concurrent callers. Codes expire a short time after they were stored.
+ * Implementations must be thread-safe.
+ *
+ * <p>Example redemption of an authorisation code grant:
+ *
+ * <pre>
+ * StoredAuthorizationCode storedCode = store.consume(grant.getAuthorizationCode());
+ *
+ * if (storedCode == null || ! storedCode.verify(grant, clientID)) {
+ *         // invalid_grant
+ * }
+ * </pre>
+ *
+ * <p>Related specifications:
+ *
+ * <ul>
+ *     <li>OAuth 2.0 (RFC 6749), section 4.1.2.
+ * </ul>
+ *
+ * @see InMemoryAuthorizationCodeStore
+ */
+public interface AuthorizationCodeStore {
+
+
+	/**
+	 * Stores the specified authorisation code.
+	 *
+	 * @param storedCode The authorisation code to store. Must not be
+	 *                   {@code null}.
+	 *
+	 * @return {@code true} if the code was stored, {@code false} if a
+	 *         code with the same value is already stored.
+	 */
+	boolean put(final StoredAuthorizationCode storedCode);
+
+
+	/**
+	 * Consumes the specified authorisation code. Only one of several
+	 * concurrent calls for the same code succeeds.
+	 *
+	 * @param code The authorisation code. Must not be {@code null}.
+	 *
+	 * @return The stored authorisation code, {@code null} if not found,
+	 *         expired or already consumed.
+	 */
+	StoredAuthorizationCode consume(final AuthorizationCode code);
+
+
+	/**
+	 * Returns the number of stored authorisation codes. May include
+	 * expired codes which are yet to be purged.
+	 *
+	 * @return The number of stored codes.
+	 */
+	int size();
+}
@@ -26,6 +26,7 @@ import java.util.*;
 
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 import com.nimbusds.oauth2.sdk.id.State;
 import com.nimbusds.oauth2.sdk.pkce.CodeChallenge;
 import com.nimbusds.oauth2.sdk.pkce.CodeChallengeMethod;
@@ -825,9 +826,13 @@ public class AuthorizationRequest extends AbstractRequest {
 		if (getEndpointURI() == null)
 			throw new SerializeException("The authorization endpoint URI is not specified");
 
-		StringBuilder sb = new StringBuilder(getEndpointURI().toString());
+		String endpoint = getEndpointURI().toString();
+		String query = toQueryString();
+
+		StringBuilder sb = new StringBuilder(endpoint.length() + 1 + query.length());
+		sb.append(endpoint);
 		sb.append('?');
-		sb.append(toQueryString());
+		sb.append(query);
 		try {
 			return new URI(sb.toString());
 		} catch (URISyntaxException e) {
@@ -946,7 +951,7 @@ public class AuthorizationRequest extends AbstractRequest {
 			throw new ParseException(msg, OAuth2Error.INVALID_REQUEST.appendDescription(": " + msg));
 		}
 
-		ClientID clientID = new ClientID(v);
+		ClientID clientID = IdentifierPool.canonical(new ClientID(v));
 
 
 		// Parse optional redirection URI second
@@ -1147,13 +1152,11 @@ public class AuthorizationRequest extends AbstractRequest {
 	public static AuthorizationRequest parse(final HTTPRequest httpRequest) 
 		throws ParseException {
 		
-		String query = httpRequest.getQuery();
-		
-		if (query == null)
+		if (! httpRequest.hasQuery())
 			throw new ParseException("Missing URI query string");
 
 		try {
-			return parse(URIUtils.getBaseURI(httpRequest.getURL().toURI()), query);
+			return parse(URIUtils.getBaseURI(httpRequest.getURL().toURI()), httpRequest.getQueryParameters());
 
 		} catch (URISyntaxException e) {
 
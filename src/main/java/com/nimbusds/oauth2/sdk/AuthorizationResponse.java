@@ -181,7 +181,7 @@ public abstract class AuthorizationResponse implements Response {
 			throw new SerializeException("The (implied) response mode must be query or fragment");
 		}
 
-		sb.append(URLUtils.serializeParameters(toParameters()));
+		URLUtils.serializeParameters(toParameters(), sb);
 
 		try {
 			return new URI(sb.toString());
@@ -386,9 +386,9 @@ public abstract class AuthorizationResponse implements Response {
 			throw new ParseException(e.getMessage(), e);
 		}
 
-		if (httpRequest.getQuery() != null) {
+		if (httpRequest.hasQuery()) {
 			// For query string and form_post response mode
-			return parse(baseURI, URLUtils.parseParameters(httpRequest.getQuery()));
+			return parse(baseURI, httpRequest.getQueryParameters());
 		} else if (httpRequest.getFragment() != null) {
 			// For fragment response mode (never available in actual HTTP request from browser)
 			return parse(baseURI, URLUtils.parseParameters(httpRequest.getFragment()));
@@ -0,0 +1,565 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import net.jcip.annotations.Immutable;
+
+
+/**
+ * Compact immutable authorisation scope. Values known to a
+ * {@link ScopeRegistry} are stored as bits, so that the set operations
+ * between scopes of the same registry reduce to word operations. Unknown
+ * values are kept in a small overflow list.
+ *
+ * <p>The string representation lists the registered values in registry
+ * order, followed by the unknown values in the order they were first
+ * given. Scope value requirements are not retained.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * ScopeRegistry registry = new ScopeRegistry("openid", "email", "profile");
+ *
+ * CompactScope granted = CompactScope.parse("openid email profile", registry);
+ * CompactScope requested = CompactScope.parse("openid email", registry);
+ *
+ * if (granted.containsAll(requested)) {
+ *     ...
+ * }
+ * </pre>
+ */
+@Immutable
+public final class CompactScope {
+
+
+	/**
+	 * Empty bits.
+	 */
+	private static final long[] NO_BITS = new long[0];
+
+
+	/**
+	 * Empty overflow.
+	 */
+	private static final String[] NO_OVERFLOW = new String[0];
+
+
+	/**
+	 * The scope registry.
+	 */
+	private final ScopeRegistry registry;
+
+
+	/**
+	 * The bits of the registered values, without trailing zero words.
+	 */
+	private final long[] bits;
+
+
+	/**
+	 * The values unknown to the registry, without duplicates.
+	 */
+	private final String[] overflow;
+
+
+	/**
+	 * Creates a new compact scope.
+	 *
+	 * @param registry The scope registry.
+	 * @param bits     The bits of the registered values, without trailing
+	 *                 zero words.
+	 * @param overflow The values unknown to the registry, without
+	 *                 duplicates.
+	 */
+	private CompactScope(final ScopeRegistry registry,
+			     final long[] bits,
+			     final String[] overflow) {
+
+		this.registry = registry;
+		this.bits = bits;
+		this.overflow = overflow;
+	}
+
+
+	/**
+	 * Creates a new compact scope from the specified scope.
+	 *
+	 * @param scope    The scope. Must not be {@code null}.
+	 * @param registry The scope registry. Must not be {@code null}.
+	 */
+	public CompactScope(final Scope scope, final ScopeRegistry registry) {
+
+		this(registry, scope != null ? scope.toStringList() : null);
+	}
+
+
+	/**
+	 * Creates a new compact scope from the specified string values.
+	 *
+	 * @param registry The scope registry. Must not be {@code null}.
+	 * @param values   The string values. Must not be {@code null}.
+	 */
+	private CompactScope(final ScopeRegistry registry, final List<String> values) {
+
+		if (registry == null)
+			throw new IllegalArgumentException("The scope registry must not be null");
+
+		if (values == null)
+			throw new IllegalArgumentException("The scope must not be null");
+
+		this.registry = registry;
+
+		long[] words = new long[(registry.size() + 63) >>> 6];
+		List<String> unknown = null;
+
+		for (String v: values) {
+
+			int pos = registry.getPosition(v);
+
+			if (pos >= 0) {
+				words[pos >>> 6] |= 1L << pos;
+			} else if (unknown == null) {
+				unknown = new ArrayList<>(2);
+				unknown.add(v);
+			} else if (! unknown.contains(v)) {
+				unknown.add(v);
+			}
+		}
+
+		bits = trim(words, words.length);
+		overflow = unknown != null ? unknown.toArray(new String[unknown.size()]) : NO_OVERFLOW;
+	}
+
+
+	/**
+	 * Returns the scope registry.
+	 *
+	 * @return The scope registry.
+	 */
+	public ScopeRegistry getRegistry() {
+
+		return registry;
+	}
+
+
+	/**
+	 * Returns the number of values in this scope.
+	 *
+	 * @return The number of values.
+	 */
+	public int size() {
+
+		int size = overflow.length;
+
+		for (long word: bits) {
+			size += Long.bitCount(word);
+		}
+
+		return size;
+	}
+
+
+	/**
+	 * Returns {@code true} if this scope has no values.
+	 *
+	 * @return {@code true} if this scope is empty, else {@code false}.
+	 */
+	public boolean isEmpty() {
+
+		return bits.length == 0 && overflow.length == 0;
+	}
+
+
+	/**
+	 * Checks if this scope contains the specified string value.
+	 *
+	 * @param value The string value. May be {@code null}.
+	 *
+	 * @return {@code true} if the value is contained, else {@code false}.
+	 */
+	public boolean contains(final String value) {
+
+		int pos = registry.getPosition(value);
+
+		if (pos >= 0) {
+			int word = pos >>> 6;
+			return word < bits.length && (bits[word] & (1L << pos)) != 0;
+		}
+
+		return indexOf(overflow, value) >= 0;
+	}
+
+
+	/**
+	 * Checks if this scope contains the specified value.
+	 *
+	 * @param value The scope value. May be {@code null}.
+	 *
+	 * @return {@code true} if the value is contained, else {@code false}.
+	 */
+	public boolean contains(final Scope.Value value) {
+
+		return value != null && contains(value.getValue());
+	}
+
+
+	/**
+	 * Checks if this scope contains all values of the specified scope.
+	 *
+	 * @param other The other scope, created with the same registry. Must
+	 *              not be {@code null}.
+	 *
+	 * @return {@code true} if all values are contained, else
+	 *         {@code false}.
+	 */
+	public boolean containsAll(final CompactScope other) {
+
+		ensureSameRegistry(other);
+
+		if (other.bits.length > bits.length) {
+			return false;
+		}
+
+		for (int i=0; i < other.bits.length; i++) {
+
+			if ((other.bits[i] & ~bits[i]) != 0) {
+				return false;
+			}
+		}
+
+		for (String v: other.overflow) {
+
+			if (indexOf(overflow, v) < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Returns the intersection of this scope with the specified one.
+	 *
+	 * @param other The other scope, created with the same registry. Must
+	 *              not be {@code null}.
+	 *
+	 * @return The values contained in both scopes.
+	 */
+	public CompactScope intersection(final CompactScope other) {
+
+		ensureSameRegistry(other);
+
+		int len = Math.min(bits.length, other.bits.length);
+
+		long[] words = new long[len];
+
+		for (int i=0; i < len; i++) {
+			words[i] = bits[i] & other.bits[i];
+		}
+
+		List<String> common = new ArrayList<>(Math.min(overflow.length, other.overflow.length));
+
+		for (String v: overflow) {
+
+			if (indexOf(other.overflow, v) >= 0) {
+				common.add(v);
+			}
+		}
+
+		return new CompactScope(registry, trim(words, len), toArray(common));
+	}
+
+
+	/**
+	 * Returns the union of this scope with the specified one.
+	 *
+	 * @param other The other scope, created with the same registry. Must
+	 *              not be {@code null}.
+	 *
+	 * @return The values contained in either scope.
+	 */
+	public CompactScope union(final CompactScope other) {
+
+		ensureSameRegistry(other);
+
+		long[] words = Arrays.copyOf(bits, Math.max(bits.length, other.bits.length));
+
+		for (int i=0; i < other.bits.length; i++) {
+			words[i] |= other.bits[i];
+		}
+
+		List<String> all = new ArrayList<>(Arrays.asList(overflow));
+
+		for (String v: other.overflow) {
+
+			if (indexOf(overflow, v) < 0) {
+				all.add(v);
+			}
+		}
+
+		return new CompactScope(registry, words, toArray(all));
+	}
+
+
+	/**
+	 * Returns the values of this scope as a mutable {@link Scope}. The
+	 * registered values are returned as the registry's instances.
+	 *
+	 * @return The scope.
+	 */
+	public Scope toScope() {
+
+		Scope scope = new Scope();
+
+		for (int pos = nextSetBit(0); pos >= 0; pos = nextSetBit(pos + 1)) {
+			scope.add(registry.getValue(pos));
+		}
+
+		for (String v: overflow) {
+			scope.add(new Scope.Value(v));
+		}
+
+		return scope;
+	}
+
+
+	/**
+	 * Returns the string list representation of this scope.
+	 *
+	 * @return The string list representation.
+	 */
+	public List<String> toStringList() {
+
+		List<String> list = new ArrayList<>(size());
+
+		for (int pos = nextSetBit(0); pos >= 0; pos = nextSetBit(pos + 1)) {
+			list.add(registry.getValue(pos).getValue());
+		}
+
+		list.addAll(Arrays.asList(overflow));
+
+		return list;
+	}
+
+
+	/**
+	 * Returns the string representation of this scope, which can be
+	 * parsed with {@link #parse(String, ScopeRegistry)} or
+	 * {@link Scope#parse(String)}.
+	 *
+	 * @return The string representation.
+	 */
+	@Override
+	public String toString() {
+
+		StringBuilder sb = new StringBuilder();
+
+		for (String v: toStringList()) {
+
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+
+			sb.append(v);
+		}
+
+		return sb.toString();
+	}
+
+
+	@Override
+	public boolean equals(final Object object) {
+
+		if (this == object) {
+			return true;
+		}
+
+		if (! (object instanceof CompactScope)) {
+			return false;
+		}
+
+		CompactScope other = (CompactScope)object;
+
+		if (registry != other.registry ||
+		    ! Arrays.equals(bits, other.bits) ||
+		    overflow.length != other.overflow.length) {
+			return false;
+		}
+
+		for (String v: overflow) {
+
+			if (indexOf(other.overflow, v) < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	@Override
+	public int hashCode() {
+
+		int hash = Arrays.hashCode(bits);
+
+		for (String v: overflow) {
+			hash += v.hashCode();
+		}
+
+		return hash;
+	}
+
+
+	/**
+	 * Ensures the specified scope was created with the same registry.
+	 *
+	 * @param other The other scope. Must not be {@code null}.
+	 */
+	private void ensureSameRegistry(final CompactScope other) {
+
+		if (other == null)
+			throw new IllegalArgumentException("The other scope must not be null");
+
+		if (registry != other.registry)
+			throw new IllegalArgumentException("The scopes must be created with the same registry");
+	}
+
+
+	/**
+	 * Returns the position of the next set bit.
+	 *
+	 * @param from The position to start from, inclusive.
+	 *
+	 * @return The position of the next set bit, -1 if none.
+	 */
+	private int nextSetBit(final int from) {
+
+		int i = from >>> 6;
+
+		if (i >= bits.length) {
+			return -1;
+		}
+
+		long word = bits[i] & (-1L << from);
+
+		while (true) {
+
+			if (word != 0) {
+				return (i << 6) + Long.numberOfTrailingZeros(word);
+			}
+
+			if (++i == bits.length) {
+				return -1;
+			}
+
+			word = bits[i];
+		}
+	}
+
+
+	/**
+	 * Returns the specified words without the trailing zero words.
+	 *
+	 * @param words The words.
+	 * @param len   The number of words to consider.
+	 *
+	 * @return The trimmed words.
+	 */
+	private static long[] trim(final long[] words, final int len) {
+
+		int n = len;
+
+		while (n > 0 && words[n - 1] == 0) {
+			n--;
+		}
+
+		if (n == 0) {
+			return NO_BITS;
+		}
+
+		return n == words.length ? words : Arrays.copyOf(words, n);
+	}
+
+
+	/**
+	 * Returns the specified overflow values as an array.
+	 *
+	 * @param values The values.
+	 *
+	 * @return The array.
+	 */
+	private static String[] toArray(final List<String> values) {
+
+		return values.isEmpty() ? NO_OVERFLOW : values.toArray(new String[values.size()]);
+	}
+
+
+	/**
+	 * Finds the specified value in the overflow array.
+	 *
+	 * @param values The overflow values.
+	 * @param value  The value to find.
+	 *
+	 * @return The index, -1 if not found.
+	 */
+	private static int indexOf(final String[] values, final String value) {
+
+		for (int i=0; i < values.length; i++) {
+
+			if (values[i].equals(value)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Parses a compact scope from the specified string representation.
+	 * Accepts the same syntax as {@link Scope#parse(String)}.
+	 *
+	 * @param s        The scope string, {@code null} if not specified.
+	 * @param registry The scope registry. Must not be {@code null}.
+	 *
+	 * @return The compact scope, {@code null} if not specified.
+	 */
+	public static CompactScope parse(final String s, final ScopeRegistry registry) {
+
+		if (s == null)
+			return null;
+
+		List<String> values = new ArrayList<>();
+
+		// OAuth specifies space as delimiter, also support comma (old draft)
+		StringTokenizer st = new StringTokenizer(s, " ,");
+
+		while (st.hasMoreTokens())
+			values.add(st.nextToken());
+
+		return new CompactScope(registry, values);
+	}
+}
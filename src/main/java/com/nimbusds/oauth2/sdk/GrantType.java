@@ -20,7 +20,9 @@ package com.nimbusds.oauth2.sdk;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import net.jcip.annotations.Immutable;
@@ -83,6 +85,25 @@ public final class GrantType extends Identifier {
 	public static final GrantType SAML2_BEARER = new GrantType("urn:ietf:params:oauth:grant-type:saml2-bearer", false, false, Collections.singleton("assertion"));
 
 
+	/**
+	 * The standard grant types, keyed by value.
+	 */
+	private static final Map<String,GrantType> STANDARD_TYPES;
+
+
+	static {
+		Map<String,GrantType> types = new HashMap<>();
+
+		for (GrantType grantType: Arrays.asList(AUTHORIZATION_CODE, IMPLICIT, REFRESH_TOKEN, PASSWORD,
+			CLIENT_CREDENTIALS, JWT_BEARER, SAML2_BEARER)) {
+
+			types.put(grantType.getValue(), grantType);
+		}
+
+		STANDARD_TYPES = Collections.unmodifiableMap(types);
+	}
+
+
 	/**
 	 * The client authentication requirement for this grant type.
 	 */
@@ -197,47 +218,18 @@ public final class GrantType extends Identifier {
 	public static GrantType parse(final String value)
 		throws ParseException {
 
-		GrantType grantType;
+		GrantType grantType = STANDARD_TYPES.get(value);
+
+		if (grantType != null) {
+			return grantType;
+		}
 
 		try {
-			grantType = new GrantType(value);
+			return new GrantType(value);
 
 		} catch (IllegalArgumentException e) {
 
 			throw new ParseException(e.getMessage());
 		}
-
-		if (grantType.equals(GrantType.AUTHORIZATION_CODE)) {
-
-			return GrantType.AUTHORIZATION_CODE;
-
-		} else if (grantType.equals(GrantType.IMPLICIT)) {
-
-			return GrantType.IMPLICIT;
-
-		} else if (grantType.equals(GrantType.REFRESH_TOKEN)) {
-
-			return GrantType.REFRESH_TOKEN;
-
-		} else if (grantType.equals(GrantType.PASSWORD)) {
-
-			return GrantType.PASSWORD;
-
-		} else if (grantType.equals(GrantType.CLIENT_CREDENTIALS)) {
-
-			return GrantType.CLIENT_CREDENTIALS;
-
-		} else if (grantType.equals(GrantType.JWT_BEARER)) {
-
-			return GrantType.JWT_BEARER;
-
-		} else if (grantType.equals(GrantType.SAML2_BEARER)) {
-
-			return GrantType.SAML2_BEARER;
-
-		} else {
-
-			return grantType;
-		}
 	}
 }
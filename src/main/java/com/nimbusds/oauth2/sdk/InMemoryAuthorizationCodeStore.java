@@ -0,0 +1,392 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * In-memory authorisation code store. The codes are kept in a concurrent
+ * map and consumed with an atomic remove, so a code can be redeemed once
+ * without locking. All codes in a store have the same time-to-live, which
+ * keeps the codes in expiration order in a queue; a periodic sweep on a
+ * shared scheduler removes the expired codes from the head of the queue,
+ * instead of a timer per code.
+ *
+ * <p>Stores created without an explicit scheduler use a shared daemon
+ * thread. Call {@link #close} to stop the sweeps of a store which is no
+ * longer needed.
+ */
+@ThreadSafe
+public class InMemoryAuthorizationCodeStore implements AuthorizationCodeStore, Closeable {
+
+
+	/**
+	 * The default time-to-live of authorisation codes, in milliseconds.
+	 */
+	public static final long DEFAULT_TTL = 60000L;
+
+
+	/**
+	 * The default interval between sweeps, in milliseconds.
+	 */
+	public static final long DEFAULT_SWEEP_INTERVAL = 1000L;
+
+
+	/**
+	 * Lazy holder of the shared scheduler.
+	 */
+	private static final class SharedScheduler {
+
+
+		/**
+		 * The shared scheduler.
+		 */
+		static final ScheduledExecutorService INSTANCE;
+
+
+		static {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(r, "authz-code-store-sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			INSTANCE = executor;
+		}
+	}
+
+
+	/**
+	 * Stored code entry.
+	 */
+	private static final class Entry {
+
+
+		/**
+		 * The stored code.
+		 */
+		final StoredAuthorizationCode storedCode;
+
+
+		/**
+		 * The expiration time, in milliseconds since the epoch.
+		 */
+		final long expiresAt;
+
+
+		/**
+		 * Creates a new entry.
+		 *
+		 * @param storedCode The stored code.
+		 * @param expiresAt  The expiration time, in milliseconds
+		 *                   since the epoch.
+		 */
+		Entry(final StoredAuthorizationCode storedCode, final long expiresAt) {
+
+			this.storedCode = storedCode;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+
+	/**
+	 * Periodic sweep. References the store weakly, so that an unused
+	 * store which wasn't closed can still be collected; the sweep then
+	 * cancels itself.
+	 */
+	private static final class Sweeper implements Runnable {
+
+
+		/**
+		 * The store.
+		 */
+		final WeakReference<InMemoryAuthorizationCodeStore> storeRef;
+
+
+		/**
+		 * The scheduled sweep, set after scheduling.
+		 */
+		volatile ScheduledFuture<?> future;
+
+
+		/**
+		 * Creates a new sweep.
+		 *
+		 * @param store The store.
+		 */
+		Sweeper(final InMemoryAuthorizationCodeStore store) {
+
+			storeRef = new WeakReference<>(store);
+		}
+
+
+		@Override
+		public void run() {
+
+			InMemoryAuthorizationCodeStore store = storeRef.get();
+
+			if (store == null) {
+				ScheduledFuture<?> f = future;
+				if (f != null) {
+					f.cancel(false);
+				}
+				return;
+			}
+
+			store.purgeExpired();
+		}
+	}
+
+
+	/**
+	 * The entries, keyed by code value.
+	 */
+	private final ConcurrentMap<String,Entry> map = new ConcurrentHashMap<>();
+
+
+	/**
+	 * The entries in expiration order, including consumed entries until
+	 * they expire.
+	 */
+	private final Queue<Entry> expirationQueue = new ConcurrentLinkedQueue<>();
+
+
+	/**
+	 * The time-to-live, in milliseconds.
+	 */
+	private final long ttl;
+
+
+	/**
+	 * The scheduled sweep, {@code null} if none.
+	 */
+	private final ScheduledFuture<?> sweep;
+
+
+	/**
+	 * Creates a new in-memory authorisation code store with the
+	 * {@link #DEFAULT_TTL default time-to-live}, swept on the shared
+	 * scheduler.
+	 */
+	public InMemoryAuthorizationCodeStore() {
+
+		this(DEFAULT_TTL);
+	}
+
+
+	/**
+	 * Creates a new in-memory authorisation code store, swept on the
+	 * shared scheduler.
+	 *
+	 * @param ttl The time-to-live of authorisation codes, in
+	 *            milliseconds. Must be positive.
+	 */
+	public InMemoryAuthorizationCodeStore(final long ttl) {
+
+		this(ttl, SharedScheduler.INSTANCE, DEFAULT_SWEEP_INTERVAL);
+	}
+
+
+	/**
+	 * Creates a new in-memory authorisation code store.
+	 *
+	 * @param ttl           The time-to-live of authorisation codes, in
+	 *                      milliseconds. Must be positive.
+	 * @param scheduler     The scheduler for the sweeps of expired codes,
+	 *                      may be shared by several stores. If
+	 *                      {@code null} expired codes are only purged on
+	 *                      calls to {@link #purgeExpired}.
+	 * @param sweepInterval The interval between sweeps, in milliseconds.
+	 *                      Must be positive if a scheduler is specified.
+	 */
+	public InMemoryAuthorizationCodeStore(final long ttl,
+					      final ScheduledExecutorService scheduler,
+					      final long sweepInterval) {
+
+		if (ttl < 1)
+			throw new IllegalArgumentException("The time-to-live must be positive");
+
+		this.ttl = ttl;
+
+		if (scheduler == null) {
+			sweep = null;
+			return;
+		}
+
+		if (sweepInterval < 1)
+			throw new IllegalArgumentException("The sweep interval must be positive");
+
+		Sweeper sweeper = new Sweeper(this);
+		sweep = scheduler.scheduleWithFixedDelay(sweeper, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+		sweeper.future = sweep;
+	}
+
+
+	/**
+	 * Returns the time-to-live of authorisation codes.
+	 *
+	 * @return The time-to-live, in milliseconds.
+	 */
+	public long getTimeToLive() {
+
+		return ttl;
+	}
+
+
+	@Override
+	public boolean put(final StoredAuthorizationCode storedCode) {
+
+		if (storedCode == null)
+			throw new IllegalArgumentException("The stored authorisation code must not be null");
+
+		return put(storedCode, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Stores the specified authorisation code.
+	 *
+	 * @param storedCode The authorisation code to store.
+	 * @param now        The current time, in milliseconds since the
+	 *                   epoch.
+	 *
+	 * @return {@code true} if the code was stored.
+	 */
+	boolean put(final StoredAuthorizationCode storedCode, final long now) {
+
+		Entry entry = new Entry(storedCode, now + ttl);
+
+		if (map.putIfAbsent(storedCode.getAuthorizationCode().getValue(), entry) != null) {
+			return false;
+		}
+
+		expirationQueue.add(entry);
+		return true;
+	}
+
+
+	@Override
+	public StoredAuthorizationCode consume(final AuthorizationCode code) {
+
+		return consume(code, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Consumes the specified authorisation code.
+	 *
+	 * @param code The authorisation code.
+	 * @param now  The current time, in milliseconds since the epoch.
+	 *
+	 * @return The stored authorisation code, {@code null} if not found,
+	 *         expired or already consumed.
+	 */
+	StoredAuthorizationCode consume(final AuthorizationCode code, final long now) {
+
+		if (code == null)
+			throw new IllegalArgumentException("The authorisation code must not be null");
+
+		// The atomic remove lets only one caller have the code
+		Entry entry = map.remove(code.getValue());
+
+		if (entry == null || entry.expiresAt <= now) {
+			return null;
+		}
+
+		return entry.storedCode;
+	}
+
+
+	/**
+	 * Purges the expired authorisation codes.
+	 *
+	 * @return The number of purged codes.
+	 */
+	public int purgeExpired() {
+
+		return purgeExpired(System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Purges the authorisation codes expired at the specified time.
+	 *
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The number of purged codes.
+	 */
+	int purgeExpired(final long now) {
+
+		int count = 0;
+
+		Entry entry;
+
+		while ((entry = expirationQueue.peek()) != null && entry.expiresAt <= now) {
+
+			if (! expirationQueue.remove(entry)) {
+				// Taken by a concurrent sweep
+				continue;
+			}
+
+			// Compare and remove, the code may have been consumed
+			if (map.remove(entry.storedCode.getAuthorizationCode().getValue(), entry)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+
+	@Override
+	public int size() {
+
+		return map.size();
+	}
+
+
+	/**
+	 * Stops the periodic sweeps of expired codes. The store remains
+	 * usable.
+	 */
+	@Override
+	public void close() {
+
+		if (sweep != null) {
+			sweep.cancel(false);
+		}
+	}
+}
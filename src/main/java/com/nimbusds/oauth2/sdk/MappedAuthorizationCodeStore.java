@@ -0,0 +1,330 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Subject;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallenge;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallengeMethod;
+import com.nimbusds.oauth2.sdk.util.MappedRecordLog;
+
+
+/**
+ * Authorisation code store persisted in a memory-mapped
+ * {@link MappedRecordLog}, so that codes issued before a restart of the
+ * process can still be redeemed after it. Consumption is atomic, a code
+ * can be redeemed once.
+ *
+ * <p>Expired codes are never returned. Call {@link #purgeExpired}
+ * periodically to remove them, the file space is reclaimed when the file
+ * fills up or on {@link #compact}.
+ */
+@ThreadSafe
+public class MappedAuthorizationCodeStore implements AuthorizationCodeStore, Closeable {
+
+
+	/**
+	 * The record log.
+	 */
+	private final MappedRecordLog log;
+
+
+	/**
+	 * The time-to-live, in milliseconds.
+	 */
+	private final long ttl;
+
+
+	/**
+	 * Opens an authorisation code store in the specified file, creating
+	 * the file if it doesn't exist.
+	 *
+	 * @param file The store file. Must not be {@code null}.
+	 * @param ttl  The time-to-live of authorisation codes, in
+	 *             milliseconds. Must be positive.
+	 *
+	 * @throws IOException If the file couldn't be opened or isn't a
+	 *                     valid store.
+	 */
+	public MappedAuthorizationCodeStore(final File file, final long ttl)
+		throws IOException {
+
+		this(open(file, ttl), ttl);
+	}
+
+
+	/**
+	 * Opens the record log in the specified file, after checking the
+	 * time-to-live so that the file isn't left open.
+	 *
+	 * @param file The store file.
+	 * @param ttl  The time-to-live of authorisation codes, in
+	 *             milliseconds.
+	 *
+	 * @return The record log.
+	 *
+	 * @throws IOException If the file couldn't be opened or isn't a
+	 *                     valid store.
+	 */
+	private static MappedRecordLog open(final File file, final long ttl)
+		throws IOException {
+
+		if (ttl < 1)
+			throw new IllegalArgumentException("The time-to-live must be positive");
+
+		return new MappedRecordLog(file);
+	}
+
+
+	/**
+	 * Creates a new authorisation code store with the specified record
+	 * log.
+	 *
+	 * @param log The record log. Must not be {@code null}.
+	 * @param ttl The time-to-live of authorisation codes, in
+	 *            milliseconds. Must be positive.
+	 */
+	public MappedAuthorizationCodeStore(final MappedRecordLog log, final long ttl) {
+
+		if (log == null)
+			throw new IllegalArgumentException("The record log must not be null");
+
+		this.log = log;
+
+		if (ttl < 1)
+			throw new IllegalArgumentException("The time-to-live must be positive");
+
+		this.ttl = ttl;
+	}
+
+
+	/**
+	 * Returns the time-to-live of authorisation codes.
+	 *
+	 * @return The time-to-live, in milliseconds.
+	 */
+	public long getTimeToLive() {
+
+		return ttl;
+	}
+
+
+	/**
+	 * Encodes the specified stored authorisation code.
+	 *
+	 * @param storedCode The stored code.
+	 *
+	 * @return The payload.
+	 *
+	 * @throws IllegalArgumentException If a parameter exceeds 65535 bytes
+	 *                                  when UTF-8 encoded.
+	 */
+	private static byte[] encode(final StoredAuthorizationCode storedCode) {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeUTF(storedCode.getClientID().getValue());
+			writeString(out, storedCode.getRedirectionURI());
+			writeString(out, storedCode.getSubject());
+			writeString(out, storedCode.getScope());
+			writeString(out, storedCode.getCodeChallenge());
+			writeString(out, storedCode.getCodeChallengeMethod());
+			out.flush();
+		} catch (UTFDataFormatException e) {
+			throw new IllegalArgumentException("The stored authorisation code has a parameter exceeding 65535 bytes: " + e.getMessage(), e);
+		} catch (IOException e) {
+			// Not thrown by in-memory streams otherwise
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+
+	/**
+	 * Writes a string which may be {@code null}.
+	 *
+	 * @param out    The output stream.
+	 * @param object The object to write as string, {@code null} if not
+	 *               specified.
+	 *
+	 * @throws IOException If writing failed.
+	 */
+	private static void writeString(final DataOutputStream out, final Object object)
+		throws IOException {
+
+		out.writeBoolean(object != null);
+
+		if (object != null) {
+			out.writeUTF(object.toString());
+		}
+	}
+
+
+	/**
+	 * Reads a string which may be {@code null}.
+	 *
+	 * @param in The input stream.
+	 *
+	 * @return The string, {@code null} if not specified.
+	 *
+	 * @throws IOException If reading failed.
+	 */
+	private static String readString(final DataInputStream in)
+		throws IOException {
+
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+
+	/**
+	 * Decodes a stored authorisation code.
+	 *
+	 * @param value   The code value.
+	 * @param payload The payload.
+	 *
+	 * @return The stored code.
+	 */
+	private static StoredAuthorizationCode decode(final String value, final byte[] payload) {
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+		try {
+			ClientID clientID = new ClientID(in.readUTF());
+			String redirectURI = readString(in);
+			String subject = readString(in);
+			String scope = readString(in);
+			String codeChallenge = readString(in);
+			String codeChallengeMethod = readString(in);
+
+			return new StoredAuthorizationCode(
+				new AuthorizationCode(value),
+				clientID,
+				redirectURI != null ? new URI(redirectURI) : null,
+				subject != null ? new Subject(subject) : null,
+				Scope.parse(scope),
+				codeChallenge != null ? CodeChallenge.parse(codeChallenge) : null,
+				codeChallengeMethod != null ? CodeChallengeMethod.parse(codeChallengeMethod) : null);
+
+		} catch (IOException | URISyntaxException | ParseException e) {
+			throw new IllegalStateException("Invalid stored authorisation code: " + e.getMessage(), e);
+		}
+	}
+
+
+	@Override
+	public boolean put(final StoredAuthorizationCode storedCode) {
+
+		if (storedCode == null)
+			throw new IllegalArgumentException("The stored authorisation code must not be null");
+
+		long now = System.currentTimeMillis();
+
+		try {
+			return log.putIfAbsent(storedCode.getAuthorizationCode().getValue(), now + ttl, encode(storedCode), now);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+
+	@Override
+	public StoredAuthorizationCode consume(final AuthorizationCode code) {
+
+		if (code == null)
+			throw new IllegalArgumentException("The authorisation code must not be null");
+
+		// The log removes atomically
+		byte[] payload = log.remove(code.getValue(), System.currentTimeMillis());
+
+		if (payload == null) {
+			return null;
+		}
+
+		return decode(code.getValue(), payload);
+	}
+
+
+	/**
+	 * Removes the expired authorisation codes.
+	 *
+	 * @return The number of removed codes.
+	 */
+	public int purgeExpired() {
+
+		return log.purgeExpired(System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Compacts the store file, dropping the consumed and expired codes.
+	 *
+	 * @throws IOException If compaction failed.
+	 */
+	public void compact()
+		throws IOException {
+
+		log.compact(System.currentTimeMillis());
+	}
+
+
+	@Override
+	public int size() {
+
+		return log.size();
+	}
+
+
+	/**
+	 * Writes the stored authorisation codes to the storage device.
+	 */
+	public void force() {
+
+		log.force();
+	}
+
+
+	/**
+	 * Closes the store.
+	 *
+	 * @throws IOException If closing failed.
+	 */
+	@Override
+	public void close()
+		throws IOException {
+
+		log.close();
+	}
+}
@@ -39,7 +39,9 @@ public interface Request extends Message {
 	
 	
 	/**
-	 * Returns the matching HTTP request.
+	 * Returns the matching HTTP request. It can be sent synchronously
+	 * with {@link HTTPRequest#send()} or asynchronously with
+	 * {@link HTTPRequest#sendAsync()}.
 	 *
 	 * @return The HTTP request.
 	 */
@@ -104,6 +104,27 @@ public class ResponseType extends HashSet<ResponseType.Value> {
 			return object instanceof Value &&
 			       this.toString().equals(object.toString());
 		}
+
+
+		/**
+		 * Parses a response type value. The standard values are
+		 * returned as the shared constants.
+		 *
+		 * @param value The response type value. Must not be
+		 *              {@code null} or empty string.
+		 *
+		 * @return The response type value.
+		 */
+		public static Value parse(final String value) {
+
+			if (CODE.getValue().equals(value)) {
+				return CODE;
+			} else if (TOKEN.getValue().equals(value)) {
+				return TOKEN;
+			} else {
+				return new Value(value);
+			}
+		}
 	}
 
 	
@@ -186,7 +207,7 @@ public class ResponseType extends HashSet<ResponseType.Value> {
 		StringTokenizer st = new StringTokenizer(s, " ");
 
 		while (st.hasMoreTokens())
-			rt.add(new ResponseType.Value(st.nextToken()));
+			rt.add(ResponseType.Value.parse(st.nextToken()));
 		
 		return rt;
 	}
@@ -24,6 +24,7 @@ import net.jcip.annotations.Immutable;
 import net.jcip.annotations.NotThreadSafe;
 
 import com.nimbusds.oauth2.sdk.id.Identifier;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 
 
 /**
@@ -125,7 +126,8 @@ public class Scope extends LinkedHashSet<Scope.Value> {
 		@Override
 		public boolean equals(final Object object) {
 
-			return object instanceof Value &&
+			return this == object ||
+			       object instanceof Value &&
 			       this.toString().equals(object.toString());
 		}
 	}
@@ -261,7 +263,7 @@ public class Scope extends LinkedHashSet<Scope.Value> {
 		Scope scope = new Scope();
 		
 		for (String v: collection)
-			scope.add(new Scope.Value(v));
+			scope.add(IdentifierPool.canonical(new Scope.Value(v)));
 		
 		return scope;
 	}
@@ -288,7 +290,7 @@ public class Scope extends LinkedHashSet<Scope.Value> {
 		StringTokenizer st = new StringTokenizer(s, " ,");
 
 		while(st.hasMoreTokens())
-			scope.add(new Scope.Value(st.nextToken()));
+			scope.add(IdentifierPool.canonical(new Scope.Value(st.nextToken())));
 
 		return scope;
 	}
@@ -0,0 +1,156 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.Immutable;
+
+
+/**
+ * Registry of known scope values, assigning each a bit position for the
+ * {@link CompactScope} representation. Registries are immutable and may be
+ * shared between threads; compact scopes can only be combined if they were
+ * created with the same registry instance.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * ScopeRegistry registry = new ScopeRegistry("openid", "email", "profile");
+ *
+ * CompactScope scope = CompactScope.parse("openid email", registry);
+ * </pre>
+ */
+@Immutable
+public final class ScopeRegistry {
+
+
+	/**
+	 * The registered scope values, by bit position.
+	 */
+	private final Scope.Value[] values;
+
+
+	/**
+	 * The bit positions, keyed by scope value.
+	 */
+	private final Map<String,Integer> positions;
+
+
+	/**
+	 * Creates a new scope registry. Duplicate values are registered
+	 * once, at their first position.
+	 *
+	 * @param values The scope values to register. Must not be
+	 *               {@code null}.
+	 */
+	public ScopeRegistry(final String ... values) {
+
+		this(values != null ? Arrays.asList(values) : null);
+	}
+
+
+	/**
+	 * Creates a new scope registry. Duplicate values are registered
+	 * once, at their first position.
+	 *
+	 * @param values The scope values to register. Must not be
+	 *               {@code null}.
+	 */
+	public ScopeRegistry(final Collection<String> values) {
+
+		if (values == null)
+			throw new IllegalArgumentException("The scope values must not be null");
+
+		Map<String,Integer> positions = new HashMap<>();
+		Scope.Value[] valueArray = new Scope.Value[values.size()];
+
+		for (String v: values) {
+
+			if (positions.containsKey(v)) {
+				continue;
+			}
+
+			int pos = positions.size();
+			valueArray[pos] = new Scope.Value(v);
+			positions.put(v, pos);
+		}
+
+		this.values = Arrays.copyOf(valueArray, positions.size());
+		this.positions = Collections.unmodifiableMap(positions);
+	}
+
+
+	/**
+	 * Returns the number of registered scope values.
+	 *
+	 * @return The number of registered scope values.
+	 */
+	public int size() {
+
+		return values.length;
+	}
+
+
+	/**
+	 * Returns the bit position of the specified scope value.
+	 *
+	 * @param value The scope value. May be {@code null}.
+	 *
+	 * @return The bit position, -1 if not registered.
+	 */
+	public int getPosition(final String value) {
+
+		Integer pos = positions.get(value);
+		return pos != null ? pos : -1;
+	}
+
+
+	/**
+	 * Returns the scope value at the specified bit position.
+	 *
+	 * @param position The bit position.
+	 *
+	 * @return The scope value.
+	 *
+	 * @throws IndexOutOfBoundsException If no value is registered at
+	 *                                   the position.
+	 */
+	public Scope.Value getValue(final int position) {
+
+		return values[position];
+	}
+
+
+	/**
+	 * Returns the registered scope values, in bit position order.
+	 *
+	 * @return The registered scope values.
+	 */
+	public List<Scope.Value> getValues() {
+
+		return Collections.unmodifiableList(Arrays.asList(values));
+	}
+}
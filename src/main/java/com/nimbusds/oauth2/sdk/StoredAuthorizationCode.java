@@ -0,0 +1,378 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.jcip.annotations.Immutable;
+
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Subject;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallenge;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallengeMethod;
+import com.nimbusds.oauth2.sdk.pkce.CodeVerifier;
+
+
+/**
+ * Authorisation code together with the details of the authorisation
+ * request it was issued for, kept in an {@link AuthorizationCodeStore}.
+ * The PKCE code challenge is decoded when the code is stored, so that
+ * checking a code verifier takes one digest and one constant-time
+ * comparison.
+ *
+ * <p>Related specifications:
+ *
+ * <ul>
+ *     <li>OAuth 2.0 (RFC 6749), sections 4.1.2 and 4.1.3.
+ *     <li>Proof Key for Code Exchange by OAuth Public Clients (RFC 7636).
+ * </ul>
+ */
+@Immutable
+public final class StoredAuthorizationCode {
+
+
+	/**
+	 * The per-thread SHA-256 digests.
+	 */
+	private static final ThreadLocal<MessageDigest> SHA256 = new ThreadLocal<MessageDigest>() {
+
+		@Override
+		protected MessageDigest initialValue() {
+
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+	};
+
+
+	/**
+	 * The authorisation code.
+	 */
+	private final AuthorizationCode code;
+
+
+	/**
+	 * The client ID.
+	 */
+	private final ClientID clientID;
+
+
+	/**
+	 * The redirection URI of the authorisation request, {@code null} if
+	 * not specified.
+	 */
+	private final URI redirectURI;
+
+
+	/**
+	 * The subject, {@code null} if not specified.
+	 */
+	private final Subject subject;
+
+
+	/**
+	 * The authorised scope, {@code null} if not specified.
+	 */
+	private final Scope scope;
+
+
+	/**
+	 * The code challenge, {@code null} if not specified.
+	 */
+	private final CodeChallenge codeChallenge;
+
+
+	/**
+	 * The code challenge method, {@code null} if not specified.
+	 */
+	private final CodeChallengeMethod codeChallengeMethod;
+
+
+	/**
+	 * The expected code verifier transform: the decoded SHA-256 hash for
+	 * {@link CodeChallengeMethod#S256 S256}, the challenge bytes for
+	 * {@link CodeChallengeMethod#PLAIN plain}, {@code null} if no
+	 * challenge or the method is not supported.
+	 */
+	private final byte[] expectedTransform;
+
+
+	/**
+	 * Creates a new stored authorisation code for the specified
+	 * authorisation request.
+	 *
+	 * @param code    The authorisation code. Must not be {@code null}.
+	 * @param request The authorisation request. Must not be
+	 *                {@code null}.
+	 * @param subject The subject, {@code null} if not specified.
+	 * @param scope   The authorised scope, {@code null} to use the
+	 *                requested scope.
+	 */
+	public StoredAuthorizationCode(final AuthorizationCode code,
+				       final AuthorizationRequest request,
+				       final Subject subject,
+				       final Scope scope) {
+
+		this(code,
+			request.getClientID(),
+			request.getRedirectionURI(),
+			subject,
+			scope != null ? scope : request.getScope(),
+			request.getCodeChallenge(),
+			request.getCodeChallengeMethod());
+	}
+
+
+	/**
+	 * Creates a new stored authorisation code.
+	 *
+	 * @param code                The authorisation code. Must not be
+	 *                            {@code null}.
+	 * @param clientID            The client ID. Must not be
+	 *                            {@code null}.
+	 * @param redirectURI         The redirection URI of the
+	 *                            authorisation request, {@code null} if
+	 *                            not specified.
+	 * @param subject             The subject, {@code null} if not
+	 *                            specified.
+	 * @param scope               The authorised scope, {@code null} if
+	 *                            not specified.
+	 * @param codeChallenge       The code challenge, {@code null} if not
+	 *                            specified.
+	 * @param codeChallengeMethod The code challenge method, {@code null}
+	 *                            if not specified, implies
+	 *                            {@link CodeChallengeMethod#PLAIN plain}
+	 *                            when a code challenge is specified.
+	 */
+	public StoredAuthorizationCode(final AuthorizationCode code,
+				       final ClientID clientID,
+				       final URI redirectURI,
+				       final Subject subject,
+				       final Scope scope,
+				       final CodeChallenge codeChallenge,
+				       final CodeChallengeMethod codeChallengeMethod) {
+
+		if (code == null)
+			throw new IllegalArgumentException("The authorisation code must not be null");
+
+		this.code = code;
+
+		if (clientID == null)
+			throw new IllegalArgumentException("The client ID must not be null");
+
+		this.clientID = clientID;
+		this.redirectURI = redirectURI;
+		this.subject = subject;
+		this.scope = scope != null ? new Scope(scope) : null;
+		this.codeChallenge = codeChallenge;
+
+		if (codeChallenge != null && codeChallengeMethod == null) {
+			this.codeChallengeMethod = CodeChallengeMethod.getDefault();
+		} else {
+			this.codeChallengeMethod = codeChallengeMethod;
+		}
+
+		expectedTransform = computeExpectedTransform(codeChallenge, this.codeChallengeMethod);
+	}
+
+
+	/**
+	 * Computes the expected code verifier transform.
+	 *
+	 * @param codeChallenge       The code challenge, {@code null} if not
+	 *                            specified.
+	 * @param codeChallengeMethod The code challenge method.
+	 *
+	 * @return The expected transform, {@code null} if no challenge or
+	 *         the method is not supported.
+	 */
+	private static byte[] computeExpectedTransform(final CodeChallenge codeChallenge,
+						       final CodeChallengeMethod codeChallengeMethod) {
+
+		if (codeChallenge == null) {
+			return null;
+		}
+
+		if (CodeChallengeMethod.S256.equals(codeChallengeMethod)) {
+			return new Base64URL(codeChallenge.getValue()).decode();
+		}
+
+		if (CodeChallengeMethod.PLAIN.equals(codeChallengeMethod)) {
+			return codeChallenge.getValue().getBytes(Charset.forName("US-ASCII"));
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Returns the authorisation code.
+	 *
+	 * @return The authorisation code.
+	 */
+	public AuthorizationCode getAuthorizationCode() {
+
+		return code;
+	}
+
+
+	/**
+	 * Returns the client ID.
+	 *
+	 * @return The client ID.
+	 */
+	public ClientID getClientID() {
+
+		return clientID;
+	}
+
+
+	/**
+	 * Returns the redirection URI of the authorisation request.
+	 *
+	 * @return The redirection URI, {@code null} if not specified.
+	 */
+	public URI getRedirectionURI() {
+
+		return redirectURI;
+	}
+
+
+	/**
+	 * Returns the subject.
+	 *
+	 * @return The subject, {@code null} if not specified.
+	 */
+	public Subject getSubject() {
+
+		return subject;
+	}
+
+
+	/**
+	 * Returns the authorised scope.
+	 *
+	 * @return The scope, {@code null} if not specified.
+	 */
+	public Scope getScope() {
+
+		return scope != null ? new Scope(scope) : null;
+	}
+
+
+	/**
+	 * Returns the code challenge.
+	 *
+	 * @return The code challenge, {@code null} if not specified.
+	 */
+	public CodeChallenge getCodeChallenge() {
+
+		return codeChallenge;
+	}
+
+
+	/**
+	 * Returns the code challenge method.
+	 *
+	 * @return The code challenge method, {@code null} if no code
+	 *         challenge was specified.
+	 */
+	public CodeChallengeMethod getCodeChallengeMethod() {
+
+		return codeChallengeMethod;
+	}
+
+
+	/**
+	 * Checks the specified code verifier against the code challenge.
+	 *
+	 * @param codeVerifier The code verifier, {@code null} if not
+	 *                     specified.
+	 *
+	 * @return {@code true} if the code verifier matches the code
+	 *         challenge, or if neither was specified, else
+	 *         {@code false}.
+	 */
+	public boolean verify(final CodeVerifier codeVerifier) {
+
+		if (codeChallenge == null) {
+			return codeVerifier == null;
+		}
+
+		if (codeVerifier == null || expectedTransform == null) {
+			return false;
+		}
+
+		byte[] verifierBytes = codeVerifier.getValueBytes();
+
+		if (verifierBytes == null) {
+			// Erased
+			return false;
+		}
+
+		byte[] transform;
+
+		if (CodeChallengeMethod.S256.equals(codeChallengeMethod)) {
+			transform = SHA256.get().digest(verifierBytes);
+		} else {
+			transform = verifierBytes;
+		}
+
+		return MessageDigest.isEqual(expectedTransform, transform);
+	}
+
+
+	/**
+	 * Checks the specified authorisation code grant from the specified
+	 * client: the client ID, the redirection URI and the PKCE code
+	 * verifier must match the authorisation request.
+	 *
+	 * @param grant    The authorisation code grant. Must not be
+	 *                 {@code null}.
+	 * @param clientID The client ID of the token request, {@code null}
+	 *                 if not specified.
+	 *
+	 * @return {@code true} if the grant is valid for this code, else
+	 *         {@code false}.
+	 */
+	public boolean verify(final AuthorizationCodeGrant grant, final ClientID clientID) {
+
+		if (! code.equals(grant.getAuthorizationCode())) {
+			return false;
+		}
+
+		if (! this.clientID.equals(clientID)) {
+			return false;
+		}
+
+		if (redirectURI != null && ! redirectURI.equals(grant.getRedirectionURI())) {
+			return false;
+		}
+
+		return verify(grant.getCodeVerifier());
+	}
+}
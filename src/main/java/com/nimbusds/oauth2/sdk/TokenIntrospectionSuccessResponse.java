@@ -18,6 +18,8 @@
 package com.nimbusds.oauth2.sdk;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -29,6 +31,7 @@ import com.nimbusds.oauth2.sdk.token.AccessTokenType;
 import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
 import net.jcip.annotations.Immutable;
 import net.minidev.json.JSONObject;
+import org.apache.commons.lang3.StringUtils;
 
 
 /**
@@ -330,7 +333,149 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 			if (iss != null) o.put("iss", iss.getValue());
 			if (jti != null) o.put("jti", jti.getValue());
 			o.putAll(customParams);
-			return new TokenIntrospectionSuccessResponse(o);
+			return new TokenIntrospectionSuccessResponse(o, false);
+		}
+	}
+
+
+	/**
+	 * The typed standard parameters, parsed once from the JSON object on
+	 * first access.
+	 */
+	@Immutable
+	private static final class TypedParameters {
+
+
+		final Scope scope;
+
+
+		final ClientID clientID;
+
+
+		final String username;
+
+
+		final AccessTokenType tokenType;
+
+
+		final Date exp;
+
+
+		final Date iat;
+
+
+		final Date nbf;
+
+
+		final Subject sub;
+
+
+		final List<Audience> aud;
+
+
+		final Issuer iss;
+
+
+		final JWTID jti;
+
+
+		/**
+		 * Parses the typed standard parameters. Invalid parameters
+		 * are treated as not specified.
+		 *
+		 * @param params The response parameters. Must not be
+		 *               {@code null}.
+		 */
+		TypedParameters(final JSONObject params) {
+
+			String value = getString(params, "scope");
+			scope = value != null ? Scope.parse(value) : null;
+
+			value = getIdentifier(params, "client_id");
+			clientID = value != null ? IdentifierPool.canonical(new ClientID(value)) : null;
+
+			username = getString(params, "username");
+
+			value = getIdentifier(params, "token_type");
+			tokenType = value != null ? AccessTokenType.parse(value) : null;
+
+			exp = getDate(params, "exp");
+			iat = getDate(params, "iat");
+			nbf = getDate(params, "nbf");
+
+			value = getIdentifier(params, "sub");
+			sub = value != null ? new Subject(value) : null;
+
+			// Try string array first, then string
+			List<Audience> audList;
+
+			try {
+				audList = Audience.create(JSONObjectUtils.getStringList(params, "aud"));
+			} catch (ParseException | IllegalArgumentException e) {
+				value = getString(params, "aud");
+				audList = StringUtils.isNotBlank(value) ? IdentifierPool.canonical(new Audience(value)).toSingleAudienceList() : null;
+			}
+
+			aud = audList != null ? Collections.unmodifiableList(audList) : null;
+
+			value = getIdentifier(params, "iss");
+			iss = value != null ? IdentifierPool.canonical(new Issuer(value)) : null;
+
+			value = getIdentifier(params, "jti");
+			jti = value != null ? new JWTID(value) : null;
+		}
+
+
+		/**
+		 * Gets a string parameter.
+		 *
+		 * @param params The response parameters.
+		 * @param name   The parameter name.
+		 *
+		 * @return The string value, {@code null} if not specified or
+		 *         invalid.
+		 */
+		private static String getString(final JSONObject params, final String name) {
+
+			try {
+				return JSONObjectUtils.getString(params, name);
+			} catch (ParseException e) {
+				return null;
+			}
+		}
+
+
+		/**
+		 * Gets a string parameter for an identifier.
+		 *
+		 * @param params The response parameters.
+		 * @param name   The parameter name.
+		 *
+		 * @return The string value, {@code null} if not specified,
+		 *         invalid or blank.
+		 */
+		private static String getIdentifier(final JSONObject params, final String name) {
+
+			String value = getString(params, name);
+			return StringUtils.isNotBlank(value) ? value : null;
+		}
+
+
+		/**
+		 * Gets a date parameter, in seconds since the epoch.
+		 *
+		 * @param params The response parameters.
+		 * @param name   The parameter name.
+		 *
+		 * @return The date, {@code null} if not specified or invalid.
+		 */
+		private static Date getDate(final JSONObject params, final String name) {
+
+			try {
+				return DateUtils.fromSecondsSinceEpoch(JSONObjectUtils.getLong(params, name));
+			} catch (ParseException e) {
+				return null;
+			}
 		}
 	}
 
@@ -341,6 +486,18 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	private final JSONObject params;
 
 
+	/**
+	 * The active status.
+	 */
+	private final boolean active;
+
+
+	/**
+	 * The typed standard parameters, {@code null} if not parsed yet.
+	 */
+	private volatile TypedParameters typedParams;
+
+
 	/**
 	 * Creates a new token introspection success response.
 	 *
@@ -350,11 +507,48 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public TokenIntrospectionSuccessResponse(final JSONObject params) {
 
+		this(params, true);
+	}
+
+
+	/**
+	 * Creates a new token introspection success response.
+	 *
+	 * @param params The response parameters. Must contain at least the
+	 *               required {@code active} parameter and not be
+	 *               {@code null}.
+	 * @param copy   {@code true} to copy the parameters, {@code false}
+	 *               if they are not referenced elsewhere.
+	 */
+	private TokenIntrospectionSuccessResponse(final JSONObject params, final boolean copy) {
+
 		if (! (params.get("active") instanceof Boolean)) {
 			throw new IllegalArgumentException("Missing / invalid boolean active parameter");
 		}
 
-		this.params = params;
+		// The typed parameters are parsed once, keep a private copy
+		this.params = copy ? new JSONObject(params) : params;
+		active = (Boolean)params.get("active");
+	}
+
+
+	/**
+	 * Returns the typed standard parameters, parsing them on the first
+	 * call. Concurrent first calls may parse more than once, with the
+	 * same outcome.
+	 *
+	 * @return The typed standard parameters.
+	 */
+	private TypedParameters getTypedParameters() {
+
+		TypedParameters tp = typedParams;
+
+		if (tp == null) {
+			tp = new TypedParameters(params);
+			typedParams = tp;
+		}
+
+		return tp;
 	}
 
 
@@ -366,11 +560,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public boolean isActive() {
 
-		try {
-			return JSONObjectUtils.getBoolean(params, "active");
-		} catch (ParseException e) {
-			return false; // always false on error
-		}
+		return active;
 	}
 
 
@@ -382,11 +572,8 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public Scope getScope() {
 
-		try {
-			return Scope.parse(JSONObjectUtils.getString(params, "scope"));
-		} catch (ParseException e) {
-			return null;
-		}
+		Scope scope = getTypedParameters().scope;
+		return scope != null ? new Scope(scope) : null;
 	}
 
 
@@ -398,11 +585,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public ClientID getClientID() {
 
-		try {
-			return new ClientID(JSONObjectUtils.getString(params, "client_id"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return getTypedParameters().clientID;
 	}
 
 
@@ -414,11 +597,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public String getUsername() {
 
-		try {
-			return JSONObjectUtils.getString(params, "username");
-		} catch (ParseException e) {
-			return null;
-		}
+		return getTypedParameters().username;
 	}
 
 
@@ -430,11 +609,20 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public AccessTokenType getTokenType() {
 
-		try {
-			return new AccessTokenType(JSONObjectUtils.getString(params, "token_type"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return getTypedParameters().tokenType;
+	}
+
+
+	/**
+	 * Returns a copy of the specified date.
+	 *
+	 * @param date The date, {@code null} if not specified.
+	 *
+	 * @return The date copy, {@code null} if not specified.
+	 */
+	private static Date copy(final Date date) {
+
+		return date != null ? new Date(date.getTime()) : null;
 	}
 
 
@@ -446,11 +634,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public Date getExpirationTime() {
 
-		try {
-			return DateUtils.fromSecondsSinceEpoch(JSONObjectUtils.getLong(params, "exp"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return copy(getTypedParameters().exp);
 	}
 
 
@@ -461,11 +645,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public Date getIssueTime() {
 
-		try {
-			return DateUtils.fromSecondsSinceEpoch(JSONObjectUtils.getLong(params, "iat"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return copy(getTypedParameters().iat);
 	}
 
 
@@ -477,11 +657,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public Date getNotBeforeTime() {
 
-		try {
-			return DateUtils.fromSecondsSinceEpoch(JSONObjectUtils.getLong(params, "nbf"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return copy(getTypedParameters().nbf);
 	}
 
 
@@ -494,11 +670,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public Subject getSubject() {
 
-		try {
-			return new Subject(JSONObjectUtils.getString(params, "sub"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return getTypedParameters().sub;
 	}
 
 
@@ -509,16 +681,9 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 * @return The token audience, {@code null} if not specified.
 	 */
 	public List<Audience> getAudience() {
-		// Try string array first, then string
-		try {
-			return Audience.create(JSONObjectUtils.getStringList(params, "aud"));
-		} catch (ParseException e) {
-			try {
-				return new Audience(JSONObjectUtils.getString(params, "aud")).toSingleAudienceList();
-			} catch (ParseException e2) {
-				return null;
-			}
-		}
+
+		List<Audience> aud = getTypedParameters().aud;
+		return aud != null ? new ArrayList<>(aud) : null;
 	}
 
 
@@ -529,11 +694,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public Issuer getIssuer() {
 
-		try {
-			return new Issuer(JSONObjectUtils.getString(params, "iss"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return getTypedParameters().iss;
 	}
 
 
@@ -545,11 +706,7 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 	 */
 	public JWTID getJWTID() {
 
-		try {
-			return new JWTID(JSONObjectUtils.getString(params, "jti"));
-		} catch (ParseException e) {
-			return null;
-		}
+		return getTypedParameters().jti;
 	}
 
 
@@ -637,6 +794,11 @@ public class TokenIntrospectionSuccessResponse extends TokenIntrospectionRespons
 
 		httpResponse.ensureStatusCode(HTTPResponse.SC_OK);
 		JSONObject jsonObject = httpResponse.getContentAsJSONObject();
-		return parse(jsonObject);
+
+		try {
+			return new TokenIntrospectionSuccessResponse(jsonObject, false);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException(e.getMessage(), e);
+		}
 	}
 }
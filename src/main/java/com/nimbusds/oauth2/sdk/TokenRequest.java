@@ -29,8 +29,10 @@ import java.util.Map;
 import com.nimbusds.oauth2.sdk.auth.ClientAuthentication;
 import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
 import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
+import com.nimbusds.oauth2.sdk.http.EndpointRole;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 import com.nimbusds.oauth2.sdk.util.URLUtils;
 import net.jcip.annotations.Immutable;
 import org.apache.commons.collections4.MapUtils;
@@ -359,6 +361,7 @@ public class TokenRequest extends AbstractOptionallyIdentifiedRequest {
 		}
 
 		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.POST, url);
+		httpRequest.setEndpointRole(EndpointRole.TOKEN);
 		httpRequest.setContentType(CommonContentTypes.APPLICATION_URLENCODED);
 
 		if (getClientAuthentication() != null) {
@@ -451,7 +454,7 @@ public class TokenRequest extends AbstractOptionallyIdentifiedRequest {
 			String clientIDString = params.get("client_id");
 
 			if (clientIDString != null && ! clientIDString.trim().isEmpty())
-				clientID = new ClientID(clientIDString);
+				clientID = IdentifierPool.canonical(new ClientID(clientIDString));
 
 			if (clientID == null && grant.getType().requiresClientID()) {
 				String msg = "Missing required \"client_id\" parameter";
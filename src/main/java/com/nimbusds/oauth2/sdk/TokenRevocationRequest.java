@@ -31,6 +31,7 @@ import com.nimbusds.oauth2.sdk.auth.ClientAuthentication;
 import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 import com.nimbusds.oauth2.sdk.token.AccessToken;
 import com.nimbusds.oauth2.sdk.token.RefreshToken;
 import com.nimbusds.oauth2.sdk.token.Token;
@@ -290,6 +291,6 @@ public final class TokenRevocationRequest extends AbstractOptionallyIdentifiedRe
 			throw new ParseException("Invalid token revocation request: No client authentication or client_id parameter found");
 		}
 
-		return new TokenRevocationRequest(uri, new ClientID(clientIDString), token);
+		return new TokenRevocationRequest(uri, IdentifierPool.canonical(new ClientID(clientIDString)), token);
 	}
 }
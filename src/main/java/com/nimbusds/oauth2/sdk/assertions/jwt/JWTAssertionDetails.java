@@ -274,7 +274,7 @@ public class JWTAssertionDetails extends AssertionDetails {
 		throws ParseException {
 		
 		// Parse required claims
-		Issuer iss = new Issuer(JSONObjectUtils.getString(jsonObject, "iss"));
+		Issuer iss = IdentifierPool.canonical(new Issuer(JSONObjectUtils.getString(jsonObject, "iss")));
 		Subject sub = new Subject(JSONObjectUtils.getString(jsonObject, "sub"));
 
 		List<Audience> aud;
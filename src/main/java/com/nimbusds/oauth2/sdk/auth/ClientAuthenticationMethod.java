@@ -18,6 +18,11 @@
 package com.nimbusds.oauth2.sdk.auth;
 
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import net.jcip.annotations.Immutable;
 
 import com.nimbusds.oauth2.sdk.id.Identifier;
@@ -101,6 +106,25 @@ public final class ClientAuthenticationMethod extends Identifier {
 		new ClientAuthenticationMethod("none");
 
 
+	/**
+	 * The standard client authentication methods, keyed by value.
+	 */
+	private static final Map<String,ClientAuthenticationMethod> STANDARD_METHODS;
+
+
+	static {
+		Map<String,ClientAuthenticationMethod> methods = new HashMap<>();
+
+		for (ClientAuthenticationMethod method: Arrays.asList(CLIENT_SECRET_BASIC, CLIENT_SECRET_POST,
+			CLIENT_SECRET_JWT, PRIVATE_KEY_JWT, NONE)) {
+
+			methods.put(method.getValue(), method);
+		}
+
+		STANDARD_METHODS = Collections.unmodifiableMap(methods);
+	}
+
+
 	/**
 	 * Gets the default client authentication method.
 	 *
@@ -134,19 +158,16 @@ public final class ClientAuthenticationMethod extends Identifier {
 	 */
 	public static ClientAuthenticationMethod parse(final String value) {
 
-		if (value.equals(CLIENT_SECRET_BASIC.getValue())) {
-			return CLIENT_SECRET_BASIC;
-		} else if (value.equals(CLIENT_SECRET_POST.getValue())) {
-			return CLIENT_SECRET_POST;
-		} else if (value.equals(CLIENT_SECRET_JWT.getValue())) {
-			return CLIENT_SECRET_JWT;
-		} else if (value.equals(PRIVATE_KEY_JWT.getValue())) {
-			return PRIVATE_KEY_JWT;
-		} else if (value.equals(NONE.getValue())) {
-			return NONE;
-		} else {
-			return new ClientAuthenticationMethod(value);
+		if (value == null)
+			throw new NullPointerException();
+
+		ClientAuthenticationMethod method = STANDARD_METHODS.get(value);
+
+		if (method != null) {
+			return method;
 		}
+
+		return new ClientAuthenticationMethod(value);
 	}
 
 
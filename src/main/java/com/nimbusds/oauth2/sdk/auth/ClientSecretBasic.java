@@ -29,6 +29,7 @@ import com.nimbusds.jose.util.Base64;
 
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 
 
@@ -157,7 +158,7 @@ public final class ClientSecretBasic extends PlainClientSecret {
 			String decodedClientID = URLDecoder.decode(credentials[0], UTF8_CHARSET.name());
 			String decodedSecret = URLDecoder.decode(credentials[1], UTF8_CHARSET.name());
 			
-			return new ClientSecretBasic(new ClientID(decodedClientID), new Secret(decodedSecret));
+			return new ClientSecretBasic(IdentifierPool.canonical(new ClientID(decodedClientID)), new Secret(decodedSecret));
 			
 		} catch (IllegalArgumentException | UnsupportedEncodingException e) {
 		
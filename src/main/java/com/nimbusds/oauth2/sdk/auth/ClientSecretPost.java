@@ -28,6 +28,7 @@ import net.jcip.annotations.Immutable;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.SerializeException;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.util.URLUtils;
@@ -135,7 +136,7 @@ public final class ClientSecretPost extends PlainClientSecret {
 		if (secretValue == null)
 			throw new ParseException("Malformed client secret post authentication: Missing \"client_secret\" parameter");
 		
-		return new ClientSecretPost(new ClientID(clientIDString), new Secret(secretValue));
+		return new ClientSecretPost(IdentifierPool.canonical(new ClientID(clientIDString)), new Secret(secretValue));
 	}
 	
 	
@@ -30,6 +30,7 @@ import com.nimbusds.jwt.SignedJWT;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.SerializeException;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.util.URLUtils;
@@ -107,7 +108,7 @@ public abstract class JWTAuthentication extends ClientAuthentication {
 		if (!subjectValue.equals(issuerValue))
 			throw new IllegalArgumentException("Issuer and subject in client JWT assertion must designate the same client identifier");
 
-		return new ClientID(subjectValue);
+		return IdentifierPool.canonical(new ClientID(subjectValue));
 	}
 	
 	
@@ -307,7 +308,7 @@ public abstract class JWTAuthentication extends ClientAuthentication {
 			return null;
 
 		else
-			return new ClientID(clientIDString);
+			return IdentifierPool.canonical(new ClientID(clientIDString));
 	}
 	
 	
@@ -329,13 +330,11 @@ public abstract class JWTAuthentication extends ClientAuthentication {
 		httpRequest.ensureMethod(HTTPRequest.Method.POST);
 		httpRequest.ensureContentType(CommonContentTypes.APPLICATION_URLENCODED);
 		
-		String query = httpRequest.getQuery();
+		Map<String,String> params = httpRequest.getQueryParameters();
 		
-		if (query == null)
+		if (params.isEmpty())
 			throw new ParseException("Missing HTTP POST request entity body");
 		
-		Map<String,String> params = URLUtils.parseParameters(query);
-		
 		JWSAlgorithm alg = parseClientAssertion(params).getHeader().getAlgorithm();
 			
 		if (ClientSecretJWT.supportedJWAs().contains(alg))
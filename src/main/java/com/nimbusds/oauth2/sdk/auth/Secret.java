@@ -19,11 +19,10 @@ package com.nimbusds.oauth2.sdk.auth;
 
 
 import java.nio.charset.Charset;
-import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Date;
 
-import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.oauth2.sdk.util.SecureRandomGenerator;
 import net.jcip.annotations.Immutable;
 
 
@@ -41,12 +40,6 @@ public class Secret {
 	public static final int DEFAULT_BYTE_LENGTH = 32;
 	
 	
-	/**
-	 * The secure random generator.
-	 */
-	private static final SecureRandom SECURE_RANDOM = new SecureRandom();
-
-
 	/**
 	 * The secret value.
 	 */
@@ -113,11 +106,7 @@ public class Secret {
 		if (byteLength < 1)
 			throw new IllegalArgumentException("The byte length must be a positive integer");
 		
-		byte[] n = new byte[byteLength];
-		
-		SECURE_RANDOM.nextBytes(n);
-
-		value = Base64URL.encode(n).toString().getBytes(Charset.forName("UTF-8"));
+		value = SecureRandomGenerator.nextBase64URLBytes(byteLength);
 		
 		this.expDate = expDate;
 	}
@@ -1463,7 +1463,7 @@ public class ClientMetadata {
 
 
 			if (jsonObject.get("token_endpoint_auth_method") != null) {
-				metadata.setTokenEndpointAuthMethod(new ClientAuthenticationMethod(
+				metadata.setTokenEndpointAuthMethod(ClientAuthenticationMethod.parse(
 					JSONObjectUtils.getString(jsonObject, "token_endpoint_auth_method")));
 
 				jsonObject.remove("token_endpoint_auth_method");
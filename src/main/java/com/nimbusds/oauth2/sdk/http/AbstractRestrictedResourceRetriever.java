@@ -48,6 +48,18 @@ public abstract class AbstractRestrictedResourceRetriever implements RestrictedR
 	private int sizeLimit;
 
 
+	/**
+	 * The role of the endpoint, for instrumentation.
+	 */
+	private volatile EndpointRole endpointRole = EndpointRole.OTHER;
+
+
+	/**
+	 * Controls the acceptance of compressed resources.
+	 */
+	private volatile boolean acceptCompression = false;
+
+
 	/**
 	 * Creates a new abstract restricted resource retriever.
 	 *
@@ -117,4 +129,58 @@ public abstract class AbstractRestrictedResourceRetriever implements RestrictedR
 
 		this.sizeLimit = sizeLimitBytes;
 	}
+
+
+	/**
+	 * Gets the role of the endpoint from which resources are retrieved,
+	 * for tagging the {@link HTTPInstrumentation instrumentation} events.
+	 *
+	 * @return The endpoint role, {@link EndpointRole#OTHER} if not
+	 *         specified.
+	 */
+	public EndpointRole getEndpointRole() {
+
+		return endpointRole;
+	}
+
+
+	/**
+	 * Sets the role of the endpoint from which resources are retrieved,
+	 * for tagging the {@link HTTPInstrumentation instrumentation} events.
+	 *
+	 * @param endpointRole The endpoint role, {@code null} for
+	 *                     {@link EndpointRole#OTHER}.
+	 */
+	public void setEndpointRole(final EndpointRole endpointRole) {
+
+		this.endpointRole = endpointRole != null ? endpointRole : EndpointRole.OTHER;
+	}
+
+
+	/**
+	 * Gets the acceptance of gzip and deflate compressed resources.
+	 *
+	 * @return {@code true} if compressed resources are accepted, else
+	 *         {@code false}.
+	 */
+	public boolean getAcceptCompression() {
+
+		return acceptCompression;
+	}
+
+
+	/**
+	 * Sets the acceptance of gzip and deflate compressed resources. If
+	 * {@code true} the resources are requested with
+	 * {@code Accept-Encoding: gzip, deflate} and a compressed resource is
+	 * decompressed as it is read, the size limit applying to the
+	 * decompressed content. Disabled by default.
+	 *
+	 * @param acceptCompression {@code true} to accept compressed
+	 *                          resources, else {@code false}.
+	 */
+	public void setAcceptCompression(final boolean acceptCompression) {
+
+		this.acceptCompression = acceptCompression;
+	}
 }
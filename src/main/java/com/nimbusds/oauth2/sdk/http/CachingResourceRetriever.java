@@ -0,0 +1,516 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.ParseException;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Retriever of resources specified by URL which caches the retrieved
+ * resources and revalidates them with conditional HTTP GET requests.
+ *
+ * <p>Supported HTTP caching directives:
+ *
+ * <ul>
+ *     <li>{@code ETag} and {@code Last-Modified} validators, sent back as
+ *         {@code If-None-Match} and {@code If-Modified-Since}. A
+ *         {@code 304 Not Modified} response is served from the cache,
+ *         fresh for the lifetime of the original response unless the
+ *         {@code 304} specifies its own.
+ *     <li>{@code Cache-Control: max-age}, adjusted by {@code Age}, else
+ *         {@code Expires}, to serve fresh resources without a request.
+ *     <li>{@code Cache-Control: no-cache} (always revalidate) and
+ *         {@code no-store} (don't cache).
+ * </ul>
+ *
+ * <p>The cache is bounded by an approximate total size, estimated at two
+ * bytes per content character; the least recently used resources are
+ * evicted first.
+ *
+ * <p>The HTTP requests are sent through an {@link HTTPTransport}, as the
+ * caching requires access to the request and response headers.
+ */
+@ThreadSafe
+@Deprecated
+public class CachingResourceRetriever extends AbstractRestrictedResourceRetriever implements RestrictedResourceRetriever {
+
+
+	/**
+	 * The default maximum cache size, in bytes (1 MiB).
+	 */
+	public static final long DEFAULT_MAX_CACHE_SIZE = 1024L * 1024L;
+
+
+	/**
+	 * The HTTP transport.
+	 */
+	private final HTTPTransport transport;
+
+
+	/**
+	 * The maximum cache size, in bytes.
+	 */
+	private final long maxCacheSize;
+
+
+	/**
+	 * The cached resources, keyed by URL, in access order. Guarded by
+	 * this.
+	 */
+	private final LinkedHashMap<String,CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+
+	/**
+	 * The current cache size, in bytes. Guarded by this.
+	 */
+	private long cacheSize = 0L;
+
+
+	/**
+	 * Creates a new caching resource retriever.
+	 *
+	 * @param transport      The HTTP transport. Must not be {@code null}.
+	 * @param connectTimeout The HTTP connects timeout, in milliseconds,
+	 *                       zero for infinite. Must not be negative.
+	 * @param readTimeout    The HTTP read timeout, in milliseconds, zero
+	 *                       for infinite. Must not be negative.
+	 * @param sizeLimit      The HTTP entity size limit, in bytes, zero for
+	 *                       infinite. Must not be negative.
+	 * @param maxCacheSize   The maximum cache size, in bytes. Must be
+	 *                       positive.
+	 */
+	public CachingResourceRetriever(final HTTPTransport transport,
+					final int connectTimeout,
+					final int readTimeout,
+					final int sizeLimit,
+					final long maxCacheSize) {
+
+		super(connectTimeout, readTimeout, sizeLimit);
+
+		if (transport == null) {
+			throw new IllegalArgumentException("The HTTP transport must not be null");
+		}
+
+		this.transport = transport;
+
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("The maximum cache size must be positive");
+		}
+
+		this.maxCacheSize = maxCacheSize;
+	}
+
+
+	/**
+	 * Returns the HTTP transport.
+	 *
+	 * @return The HTTP transport.
+	 */
+	public HTTPTransport getTransport() {
+
+		return transport;
+	}
+
+
+	/**
+	 * Returns the maximum cache size.
+	 *
+	 * @return The maximum cache size, in bytes.
+	 */
+	public long getMaxCacheSize() {
+
+		return maxCacheSize;
+	}
+
+
+	/**
+	 * Returns the current (estimated) cache size.
+	 *
+	 * @return The cache size, in bytes.
+	 */
+	public synchronized long getCacheSize() {
+
+		return cacheSize;
+	}
+
+
+	/**
+	 * Removes the cached resource for the specified URL, if any.
+	 *
+	 * @param url The URL. Must not be {@code null}.
+	 */
+	public synchronized void invalidate(final URL url) {
+
+		CacheEntry entry = cache.remove(url.toString());
+
+		if (entry != null) {
+			cacheSize -= entry.size;
+		}
+	}
+
+
+	/**
+	 * Removes all cached resources.
+	 */
+	public synchronized void clear() {
+
+		cache.clear();
+		cacheSize = 0L;
+	}
+
+
+	@Override
+	public Resource retrieveResource(final URL url)
+		throws IOException {
+
+		final String key = url.toString();
+
+		CacheEntry cached = get(key);
+
+		if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+			return cached.resource; // fresh
+		}
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, url);
+		httpRequest.setConnectTimeout(getConnectTimeout());
+		httpRequest.setReadTimeout(getReadTimeout());
+		httpRequest.setResponseSizeLimit(getSizeLimit());
+		httpRequest.setTransport(transport);
+		httpRequest.setEndpointRole(getEndpointRole());
+		httpRequest.setAcceptCompression(getAcceptCompression());
+
+		if (cached != null) {
+			if (cached.eTag != null) {
+				httpRequest.setHeader("If-None-Match", cached.eTag);
+			}
+			if (cached.lastModified != null) {
+				httpRequest.setHeader("If-Modified-Since", cached.lastModified);
+			}
+		}
+
+		HTTPResponse httpResponse = httpRequest.send();
+
+		final long now = System.currentTimeMillis();
+
+		if (httpResponse.getStatusCode() == 304 && cached != null) {
+
+			// Not modified, refresh the expiration and any updated
+			// validators
+			long expiresAt = hasFreshnessInfo(httpResponse) ? getExpiration(httpResponse, now) : now + cached.lifetime;
+
+			String eTag = httpResponse.getHeader("ETag");
+			String lastModified = httpResponse.getHeader("Last-Modified");
+
+			put(key, new CacheEntry(
+				cached.resource,
+				eTag != null ? eTag : cached.eTag,
+				lastModified != null ? lastModified : cached.lastModified,
+				expiresAt,
+				now));
+
+			return cached.resource;
+		}
+
+		// Ensure 2xx status code
+		if (! httpResponse.indicatesSuccess()) {
+			throw new IOException("HTTP " + httpResponse.getStatusCode() + ": " + httpResponse.getStatusMessage());
+		}
+
+		// Parse the Content-Type header
+		ContentType contentType = null;
+
+		String contentTypeValue = httpResponse.getHeader("Content-Type");
+
+		if (contentTypeValue != null) {
+			try {
+				contentType = new ContentType(contentTypeValue);
+			} catch (ParseException e) {
+				throw new IOException("Couldn't parse Content-Type header: " + e.getMessage(), e);
+			}
+		}
+
+		String content = httpResponse.getContent();
+
+		Resource resource = new Resource(content != null ? content : "", contentType);
+
+		if (httpResponse.getStatusCode() == HTTPResponse.SC_OK && ! hasDirective(httpResponse.getCacheControl(), "no-store")) {
+
+			CacheEntry entry = new CacheEntry(
+				resource,
+				httpResponse.getHeader("ETag"),
+				httpResponse.getHeader("Last-Modified"),
+				getExpiration(httpResponse, now),
+				now);
+
+			if (entry.eTag != null || entry.lastModified != null || entry.expiresAt > now) {
+				put(key, entry);
+			} else {
+				invalidate(url); // nothing to revalidate with
+			}
+		}
+
+		return resource;
+	}
+
+
+	/**
+	 * Gets the cache entry for the specified key.
+	 */
+	private synchronized CacheEntry get(final String key) {
+
+		return cache.get(key);
+	}
+
+
+	/**
+	 * Puts a cache entry, evicting the least recently used entries if the
+	 * maximum cache size is exceeded.
+	 */
+	private synchronized void put(final String key, final CacheEntry entry) {
+
+		if (entry.size > maxCacheSize) {
+			return; // too large to cache
+		}
+
+		CacheEntry previous = cache.put(key, entry);
+
+		if (previous != null) {
+			cacheSize -= previous.size;
+		}
+
+		cacheSize += entry.size;
+
+		Iterator<Map.Entry<String,CacheEntry>> it = cache.entrySet().iterator();
+
+		while (cacheSize > maxCacheSize && it.hasNext()) {
+			CacheEntry eldest = it.next().getValue();
+			it.remove();
+			cacheSize -= eldest.size;
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified HTTP response has a
+	 * {@code Cache-Control} or {@code Expires} header which determines its
+	 * freshness.
+	 *
+	 * @param httpResponse The HTTP response.
+	 *
+	 * @return {@code true} if the response has freshness information.
+	 */
+	static boolean hasFreshnessInfo(final HTTPResponse httpResponse) {
+
+		String cacheControl = httpResponse.getCacheControl();
+
+		return hasDirective(cacheControl, "no-cache") ||
+			hasDirective(cacheControl, "no-store") ||
+			getDirectiveValue(cacheControl, "max-age") >= 0 ||
+			httpResponse.getHeader("Expires") != null;
+	}
+
+
+	/**
+	 * Returns the expiration time of the specified HTTP response.
+	 *
+	 * @param httpResponse The HTTP response.
+	 * @param now          The current time, in milliseconds since the
+	 *                     epoch.
+	 *
+	 * @return The expiration time, in milliseconds since the epoch. Equal
+	 *         to the current time if the response must be revalidated.
+	 */
+	static long getExpiration(final HTTPResponse httpResponse, final long now) {
+
+		String cacheControl = httpResponse.getCacheControl();
+
+		if (hasDirective(cacheControl, "no-cache") || hasDirective(cacheControl, "no-store")) {
+			return now;
+		}
+
+		long maxAge = getDirectiveValue(cacheControl, "max-age");
+
+		if (maxAge >= 0) {
+
+			long age = 0L;
+
+			try {
+				if (httpResponse.getHeader("Age") != null) {
+					age = Math.max(0L, Long.parseLong(httpResponse.getHeader("Age").trim()));
+				}
+			} catch (NumberFormatException e) {
+				// ignore
+			}
+
+			// Clamp huge max-age values
+			long seconds = Math.min(Math.max(0L, maxAge - age), (Long.MAX_VALUE - now) / 1000L);
+
+			return now + seconds * 1000L;
+		}
+
+		String expires = httpResponse.getHeader("Expires");
+
+		if (expires != null) {
+
+			Date expiresDate = parseHTTPDate(expires);
+
+			if (expiresDate != null) {
+				return Math.max(now, expiresDate.getTime());
+			}
+		}
+
+		return now;
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified {@code Cache-Control} header
+	 * value contains the specified directive.
+	 */
+	private static boolean hasDirective(final String cacheControl, final String directive) {
+
+		if (cacheControl == null) {
+			return false;
+		}
+
+		for (String token: cacheControl.split(",")) {
+
+			String name = token.trim();
+
+			int eqPos = name.indexOf('=');
+
+			if (eqPos > -1) {
+				name = name.substring(0, eqPos).trim();
+			}
+
+			if (name.equalsIgnoreCase(directive)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Returns the numeric value of the specified {@code Cache-Control}
+	 * directive.
+	 *
+	 * @return The value, -1 if not specified or invalid.
+	 */
+	private static long getDirectiveValue(final String cacheControl, final String directive) {
+
+		if (cacheControl == null) {
+			return -1L;
+		}
+
+		for (String token: cacheControl.split(",")) {
+
+			int eqPos = token.indexOf('=');
+
+			if (eqPos < 0 || ! token.substring(0, eqPos).trim().equalsIgnoreCase(directive)) {
+				continue;
+			}
+
+			String value = token.substring(eqPos + 1).trim();
+
+			if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+				value = value.substring(1, value.length() - 1);
+			}
+
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				return -1L;
+			}
+		}
+
+		return -1L;
+	}
+
+
+	/**
+	 * Parses an HTTP date (RFC 1123 format).
+	 *
+	 * @return The date, {@code null} if parsing failed.
+	 */
+	private static Date parseHTTPDate(final String s) {
+
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+		try {
+			return format.parse(s.trim());
+		} catch (java.text.ParseException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Cached resource with its validators and expiration time.
+	 */
+	private static final class CacheEntry {
+
+
+		private final Resource resource;
+
+
+		private final String eTag;
+
+
+		private final String lastModified;
+
+
+		private final long expiresAt;
+
+
+		private final long lifetime;
+
+
+		private final long size;
+
+
+		private CacheEntry(final Resource resource,
+				   final String eTag,
+				   final String lastModified,
+				   final long expiresAt,
+				   final long now) {
+
+			this.resource = resource;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.expiresAt = expiresAt;
+			lifetime = Math.max(0L, expiresAt - now);
+			size = 2L * resource.getContent().length();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * HTTP transport decorator which coalesces concurrent identical HTTP GET
+ * requests. While a GET request is in flight, other GET requests with the
+ * same URL, query string, headers and TLS settings wait for its outcome
+ * instead of being sent. A failure is reported to all waiting callers. Each
+ * caller receives its own copy of the HTTP response. Requests with other
+ * methods are passed to the underlying transport unchanged.
+ */
+@ThreadSafe
+public class CoalescingHTTPTransport implements HTTPTransport {
+
+
+	/**
+	 * The underlying transport.
+	 */
+	private final HTTPTransport transport;
+
+
+	/**
+	 * The in-flight GET requests.
+	 */
+	private final SingleFlight<List<Object>,HTTPResponse> singleFlight;
+
+
+	/**
+	 * Creates a new coalescing HTTP transport.
+	 *
+	 * @param transport   The underlying HTTP transport. Must not be
+	 *                    {@code null}.
+	 * @param waitTimeout The maximum time a caller waits for an in-flight
+	 *                    identical request to complete, in milliseconds,
+	 *                    zero for infinite. Must not be negative.
+	 */
+	public CoalescingHTTPTransport(final HTTPTransport transport,
+				       final long waitTimeout) {
+
+		if (transport == null) {
+			throw new IllegalArgumentException("The HTTP transport must not be null");
+		}
+
+		this.transport = transport;
+
+		singleFlight = new SingleFlight<>(waitTimeout);
+	}
+
+
+	/**
+	 * Returns the underlying HTTP transport.
+	 *
+	 * @return The underlying HTTP transport.
+	 */
+	public HTTPTransport getTransport() {
+
+		return transport;
+	}
+
+
+	/**
+	 * Returns the wait timeout for in-flight requests.
+	 *
+	 * @return The wait timeout, in milliseconds, zero for infinite.
+	 */
+	public long getWaitTimeout() {
+
+		return singleFlight.getWaitTimeout();
+	}
+
+
+	/**
+	 * Returns the number of GET requests currently in flight.
+	 *
+	 * @return The number of in-flight GET requests.
+	 */
+	public int getInFlightCount() {
+
+		return singleFlight.getInFlightCount();
+	}
+
+
+	@Override
+	public HTTPResponse send(final HTTPRequest httpRequest,
+				 final HostnameVerifier hostnameVerifier,
+				 final SSLSocketFactory sslSocketFactory)
+		throws IOException {
+
+		if (! HTTPRequest.Method.GET.equals(httpRequest.getMethod())) {
+			return transport.send(httpRequest, hostnameVerifier, sslSocketFactory);
+		}
+
+		// Requests must agree on all settings which affect the
+		// response, the TLS settings are compared by identity
+		List<Object> key = Arrays.<Object>asList(
+			httpRequest.getURL().toString(),
+			httpRequest.getQuery(),
+			new TreeMap<>(httpRequest.getHeaders()),
+			httpRequest.getFollowRedirects(),
+			httpRequest.getConnectTimeout(),
+			httpRequest.getReadTimeout(),
+			httpRequest.getResponseSizeLimit(),
+			httpRequest.getAcceptCompression(),
+			hostnameVerifier,
+			sslSocketFactory);
+
+		HTTPResponse httpResponse = singleFlight.execute(key, new Callable<HTTPResponse>() {
+			@Override
+			public HTTPResponse call()
+				throws IOException {
+
+				return transport.send(httpRequest, hostnameVerifier, sslSocketFactory);
+			}
+		});
+
+		return copy(httpResponse);
+	}
+
+
+	/**
+	 * Returns a copy of the specified HTTP response.
+	 *
+	 * @param httpResponse The HTTP response.
+	 *
+	 * @return The HTTP response copy.
+	 */
+	private static HTTPResponse copy(final HTTPResponse httpResponse) {
+
+		HTTPResponse copy = new HTTPResponse(httpResponse.getStatusCode());
+		copy.setStatusMessage(httpResponse.getStatusMessage());
+
+		for (Map.Entry<String,String> header: httpResponse.getHeaders().entrySet()) {
+			copy.setHeader(header.getKey(), header.getValue());
+		}
+
+		copy.setContent(httpResponse.getContent());
+
+		return copy;
+	}
+}
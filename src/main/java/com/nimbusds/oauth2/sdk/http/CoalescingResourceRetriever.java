@@ -0,0 +1,166 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Resource retriever decorator which coalesces concurrent retrievals of the
+ * same URL. While a retrieval is in flight, other callers for the same URL
+ * wait for its outcome instead of making their own HTTP request, which
+ * prevents a burst of identical requests when a cached JWK set or request
+ * object expires. A failed retrieval is reported to all waiting callers.
+ *
+ * <p>The timeout and size limit settings are those of the underlying
+ * retriever.
+ */
+@ThreadSafe
+@Deprecated
+public class CoalescingResourceRetriever implements RestrictedResourceRetriever {
+
+
+	/**
+	 * The underlying retriever.
+	 */
+	private final RestrictedResourceRetriever retriever;
+
+
+	/**
+	 * The in-flight retrievals, keyed by URL.
+	 */
+	private final SingleFlight<String,Resource> singleFlight;
+
+
+	/**
+	 * Creates a new coalescing resource retriever.
+	 *
+	 * @param retriever   The underlying resource retriever. Must not be
+	 *                    {@code null}.
+	 * @param waitTimeout The maximum time a caller waits for an in-flight
+	 *                    retrieval of the same URL to complete, in
+	 *                    milliseconds, zero for infinite. Must not be
+	 *                    negative.
+	 */
+	public CoalescingResourceRetriever(final RestrictedResourceRetriever retriever,
+					   final long waitTimeout) {
+
+		if (retriever == null) {
+			throw new IllegalArgumentException("The resource retriever must not be null");
+		}
+
+		this.retriever = retriever;
+
+		singleFlight = new SingleFlight<>(waitTimeout);
+	}
+
+
+	/**
+	 * Returns the underlying resource retriever.
+	 *
+	 * @return The underlying resource retriever.
+	 */
+	public RestrictedResourceRetriever getResourceRetriever() {
+
+		return retriever;
+	}
+
+
+	/**
+	 * Returns the wait timeout for in-flight retrievals.
+	 *
+	 * @return The wait timeout, in milliseconds, zero for infinite.
+	 */
+	public long getWaitTimeout() {
+
+		return singleFlight.getWaitTimeout();
+	}
+
+
+	/**
+	 * Returns the number of retrievals currently in flight.
+	 *
+	 * @return The number of in-flight retrievals.
+	 */
+	public int getInFlightCount() {
+
+		return singleFlight.getInFlightCount();
+	}
+
+
+	@Override
+	public Resource retrieveResource(final URL url)
+		throws IOException {
+
+		return singleFlight.execute(url.toString(), new Callable<Resource>() {
+			@Override
+			public Resource call()
+				throws IOException {
+
+				return retriever.retrieveResource(url);
+			}
+		});
+	}
+
+
+	@Override
+	public int getConnectTimeout() {
+
+		return retriever.getConnectTimeout();
+	}
+
+
+	@Override
+	public void setConnectTimeout(final int connectTimeoutMs) {
+
+		retriever.setConnectTimeout(connectTimeoutMs);
+	}
+
+
+	@Override
+	public int getReadTimeout() {
+
+		return retriever.getReadTimeout();
+	}
+
+
+	@Override
+	public void setReadTimeout(final int readTimeoutMs) {
+
+		retriever.setReadTimeout(readTimeoutMs);
+	}
+
+
+	@Override
+	public int getSizeLimit() {
+
+		return retriever.getSizeLimit();
+	}
+
+
+	@Override
+	public void setSizeLimit(final int sizeLimitBytes) {
+
+		retriever.setSizeLimit(sizeLimitBytes);
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Lock-free histogram of non-negative long values, such as latencies, with
+ * log-linear buckets in the manner of HdrHistogram. Values below 128 are
+ * counted exactly, larger values within a relative error of 1/64 (about
+ * 1.6%). The histogram has a fixed footprint of about 30 KB and covers the
+ * entire long range.
+ *
+ * <p>Recording is wait-free except for the update of the maximum. Reading
+ * while values are recorded concurrently returns an approximate snapshot.
+ */
+@ThreadSafe
+public class ConcurrentHistogram {
+
+
+	/**
+	 * The number of buckets for each power of two above the linear range.
+	 */
+	private static final int SUB_BUCKETS = 64;
+
+
+	/**
+	 * The values below this bound are counted in one bucket each.
+	 */
+	private static final int LINEAR_BOUND = 2 * SUB_BUCKETS;
+
+
+	/**
+	 * The total number of buckets, the highest power of two of a positive
+	 * long being 62.
+	 */
+	private static final int BUCKET_COUNT = LINEAR_BOUND + (62 - 6) * SUB_BUCKETS;
+
+
+	/**
+	 * The bucket counts.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+
+	/**
+	 * The total count.
+	 */
+	private final AtomicLong count = new AtomicLong();
+
+
+	/**
+	 * The sum of the recorded values.
+	 */
+	private final AtomicLong sum = new AtomicLong();
+
+
+	/**
+	 * The maximum recorded value.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+
+	/**
+	 * Returns the bucket index for the specified value.
+	 *
+	 * @param value The value, non-negative.
+	 *
+	 * @return The bucket index.
+	 */
+	static int bucketIndex(final long value) {
+
+		if (value < LINEAR_BOUND) {
+			return (int)value;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+		int top = (int)(value >>> shift);
+		return LINEAR_BOUND + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+	}
+
+
+	/**
+	 * Returns the highest value counted in the specified bucket.
+	 *
+	 * @param index The bucket index.
+	 *
+	 * @return The highest equivalent value.
+	 */
+	static long highestValue(final int index) {
+
+		if (index < LINEAR_BOUND) {
+			return index;
+		}
+
+		int shift = (index - LINEAR_BOUND) / SUB_BUCKETS + 1;
+		long top = (index - LINEAR_BOUND) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((top + 1L) << shift) - 1L;
+	}
+
+
+	/**
+	 * Records the specified value.
+	 *
+	 * @param value The value. Must not be negative.
+	 */
+	public void record(final long value) {
+
+		if (value < 0L) {
+			throw new IllegalArgumentException("The value must not be negative");
+		}
+
+		buckets.incrementAndGet(bucketIndex(value));
+		sum.addAndGet(value);
+		count.incrementAndGet();
+
+		long current = max.get();
+
+		while (value > current && ! max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+
+	/**
+	 * Returns the number of recorded values.
+	 *
+	 * @return The count.
+	 */
+	public long getCount() {
+
+		return count.get();
+	}
+
+
+	/**
+	 * Returns the maximum recorded value.
+	 *
+	 * @return The maximum value, zero if none were recorded.
+	 */
+	public long getMax() {
+
+		return max.get();
+	}
+
+
+	/**
+	 * Returns the mean of the recorded values.
+	 *
+	 * @return The mean, zero if no values were recorded.
+	 */
+	public double getMean() {
+
+		long n = count.get();
+		return n > 0L ? (double)sum.get() / n : 0.0;
+	}
+
+
+	/**
+	 * Returns the value at the specified percentile. The returned value is
+	 * the highest value equivalent to the recorded ones at the
+	 * percentile, capped at the maximum.
+	 *
+	 * @param percentile The percentile, from 0 to 100.
+	 *
+	 * @return The value, zero if no values were recorded.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+
+		if (percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException("The percentile must be between 0 and 100");
+		}
+
+		long n = count.get();
+
+		if (n == 0L) {
+			return 0L;
+		}
+
+		long rank = Math.max(1L, (long)Math.ceil(percentile / 100.0 * n));
+
+		long seen = 0L;
+
+		for (int i=0; i < BUCKET_COUNT; i++) {
+
+			seen += buckets.get(i);
+
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+
+	/**
+	 * Clears the recorded values. Values recorded concurrently may be
+	 * partially lost.
+	 */
+	public void reset() {
+
+		for (int i=0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0L);
+		}
+
+		count.set(0L);
+		sum.set(0L);
+		max.set(0L);
+	}
+}
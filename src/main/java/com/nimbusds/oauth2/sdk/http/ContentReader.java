@@ -0,0 +1,300 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.mail.internet.ContentType;
+
+
+/**
+ * Reads HTTP entity bodies as raw bytes, with an optional size limit, and
+ * decodes them once according to the declared charset. Bodies with a gzip
+ * or deflate content coding can be decompressed while reading, the size
+ * limit then applying to the decompressed content.
+ */
+final class ContentReader {
+
+
+	/**
+	 * The charset to apply when the content type doesn't specify one.
+	 */
+	static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+
+	/**
+	 * The initial buffer size when the content length is not known.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+
+	/**
+	 * The maximum buffer size to allocate up front for a declared content
+	 * length, so that a large {@code Content-Length} can't exhaust memory
+	 * before any content is received.
+	 */
+	static final int MAX_PREALLOCATED_BUFFER_SIZE = 64 * 1024;
+
+
+	/**
+	 * Reads the content from the specified input stream. The stream is
+	 * not closed.
+	 *
+	 * @param in            The input stream. Must not be {@code null}.
+	 * @param contentLength The expected content length, in bytes, as
+	 *                      specified by the {@code Content-Length} header.
+	 *                      If negative the stream is read until EOF.
+	 * @param sizeLimit     The content size limit, in bytes, zero for
+	 *                      infinite.
+	 *
+	 * @return The content bytes, empty array if none.
+	 *
+	 * @throws IOException If reading failed, the stream ended before the
+	 *                     content length was reached, or the size limit
+	 *                     was exceeded.
+	 */
+	static byte[] read(final InputStream in, final long contentLength, final int sizeLimit)
+		throws IOException {
+
+		if (contentLength >= 0) {
+
+			checkSize(contentLength, sizeLimit);
+
+			final int length = (int)contentLength;
+
+			byte[] buf = new byte[Math.min(length, MAX_PREALLOCATED_BUFFER_SIZE)];
+
+			int pos = 0;
+
+			while (pos < length) {
+
+				if (pos == buf.length) {
+					buf = Arrays.copyOf(buf, (int)Math.min(buf.length * 2L, length));
+				}
+
+				int n = in.read(buf, pos, buf.length - pos);
+
+				if (n < 0) {
+					throw new EOFException("Unexpected end of HTTP entity body: Expected " + contentLength + " bytes, got " + pos);
+				}
+
+				pos += n;
+			}
+
+			return buf;
+		}
+
+		// Content length not known, read until EOF
+		byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+
+		int pos = 0;
+
+		while (true) {
+
+			if (pos == buf.length) {
+				buf = Arrays.copyOf(buf, (int)Math.min(buf.length * 2L, Integer.MAX_VALUE - 8));
+			}
+
+			int n = in.read(buf, pos, buf.length - pos);
+
+			if (n < 0) {
+				break;
+			}
+
+			pos += n;
+
+			checkSize(pos, sizeLimit);
+		}
+
+		return pos == buf.length ? buf : Arrays.copyOf(buf, pos);
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified content coding is one that can
+	 * be {@link #decompress decompressed}, gzip or deflate.
+	 *
+	 * @param contentEncoding The {@code Content-Encoding} header value,
+	 *                        {@code null} if none.
+	 *
+	 * @return {@code true} if the content is compressed with a supported
+	 *         coding, else {@code false}.
+	 */
+	static boolean isCompressed(final String contentEncoding) {
+
+		if (contentEncoding == null) {
+			return false;
+		}
+
+		String coding = contentEncoding.trim();
+
+		return coding.equalsIgnoreCase("gzip") ||
+			coding.equalsIgnoreCase("x-gzip") ||
+			coding.equalsIgnoreCase("deflate");
+	}
+
+
+	/**
+	 * Wraps the specified input stream for decompressing the content as
+	 * it is read. Deflate content is accepted with and without the zlib
+	 * wrapper, as some servers send it raw. Empty content is passed
+	 * through.
+	 *
+	 * @param in              The input stream of the compressed content.
+	 *                        Must not be {@code null}.
+	 * @param contentEncoding The {@code Content-Encoding} header value,
+	 *                        must be {@link #isCompressed supported}.
+	 *
+	 * @return The input stream of the decompressed content.
+	 *
+	 * @throws IOException If the compressed content header couldn't be
+	 *                     read.
+	 */
+	static InputStream decompress(final InputStream in, final String contentEncoding)
+		throws IOException {
+
+		PushbackInputStream pin = new PushbackInputStream(in, 2);
+
+		byte[] header = new byte[2];
+
+		int len = 0;
+
+		while (len < header.length) {
+
+			int n = pin.read(header, len, header.length - len);
+
+			if (n < 0) {
+				break;
+			}
+
+			len += n;
+		}
+
+		if (len == 0) {
+			return pin; // empty content
+		}
+
+		pin.unread(header, 0, len);
+
+		if (! contentEncoding.trim().equalsIgnoreCase("deflate")) {
+			return new GZIPInputStream(pin);
+		}
+
+		boolean zlibWrapped = len == 2 &&
+			(header[0] & 0x0f) == 8 &&
+			(((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+
+		final Inflater inflater = new Inflater(! zlibWrapped);
+
+		return new InflaterInputStream(pin, inflater) {
+			@Override
+			public void close()
+				throws IOException {
+
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		};
+	}
+
+
+	/**
+	 * Checks the specified content size against a size limit.
+	 *
+	 * @param size      The content size, in bytes.
+	 * @param sizeLimit The content size limit, in bytes, zero for
+	 *                  infinite.
+	 *
+	 * @throws IOException If the size limit is exceeded.
+	 */
+	static void checkSize(final long size, final int sizeLimit)
+		throws IOException {
+
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("HTTP entity body too large: " + size + " bytes");
+		}
+
+		if (sizeLimit > 0 && size > sizeLimit) {
+			throw new IOException("HTTP entity body exceeds the size limit of " + sizeLimit + " bytes");
+		}
+	}
+
+
+	/**
+	 * Decodes the specified content bytes.
+	 *
+	 * @param content     The content bytes. Must not be {@code null}.
+	 * @param contentType The content type, {@code null} if not specified.
+	 *                    The {@code charset} parameter, if any, determines
+	 *                    the decoding, else UTF-8 is applied.
+	 *
+	 * @return The decoded content.
+	 */
+	static String decode(final byte[] content, final ContentType contentType) {
+
+		return new String(content, getCharset(contentType));
+	}
+
+
+	/**
+	 * Returns the charset for the specified content type.
+	 *
+	 * @param contentType The content type, {@code null} if not specified.
+	 *
+	 * @return The charset of the content type, UTF-8 if not specified or
+	 *         not supported.
+	 */
+	static Charset getCharset(final ContentType contentType) {
+
+		if (contentType == null) {
+			return DEFAULT_CHARSET;
+		}
+
+		String charset = contentType.getParameter("charset");
+
+		if (charset == null) {
+			return DEFAULT_CHARSET;
+		}
+
+		try {
+			return Charset.forName(charset);
+		} catch (IllegalArgumentException e) {
+			return DEFAULT_CHARSET;
+		}
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private ContentReader() {
+
+		// do nothing
+	}
+}
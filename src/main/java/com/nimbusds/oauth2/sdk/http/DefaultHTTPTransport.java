@@ -0,0 +1,151 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * The default HTTP transport, based on {@link HttpURLConnection}. Connection
+ * reuse (HTTP 1.1 keep-alive) is left to the JDK.
+ */
+@ThreadSafe
+public class DefaultHTTPTransport implements HTTPTransport {
+
+
+	@Override
+	public HTTPResponse send(final HTTPRequest httpRequest,
+				 final HostnameVerifier hostnameVerifier,
+				 final SSLSocketFactory sslSocketFactory)
+		throws IOException {
+
+		ExchangeTimings timings = new ExchangeTimings();
+
+		long start = System.nanoTime();
+
+		HttpURLConnection conn = httpRequest.toHttpURLConnection(hostnameVerifier, sslSocketFactory);
+
+		if (! conn.getDoOutput()) {
+			// Connect explicitly to time the connect phase, else
+			// done by writing the request entity
+			conn.connect();
+		}
+
+		long connected = System.nanoTime();
+		timings.connectTime = connected - start;
+
+		int statusCode;
+
+		InputStream in;
+
+		try {
+			// Open a connection, then send method and headers
+			in = conn.getInputStream();
+
+			// The next step is to get the status
+			statusCode = conn.getResponseCode();
+
+		} catch (IOException e) {
+
+			// HttpUrlConnection will throw an IOException if any
+			// 4XX response is sent. If we request the status
+			// again, this time the internal status will be
+			// properly set, and we'll be able to retrieve it.
+			statusCode = conn.getResponseCode();
+
+			if (statusCode == -1) {
+				throw e; // Rethrow IO exception
+			} else {
+				// HTTP status code indicates the response got
+				// through, read the content but using error stream
+				// (null if no content)
+				in = conn.getErrorStream();
+			}
+		}
+
+		long firstByte = System.nanoTime();
+		timings.waitTime = firstByte - connected;
+
+		byte[] body;
+
+		final boolean compressed = ContentReader.isCompressed(conn.getContentEncoding());
+
+		if (in != null && statusCode != 204 && statusCode != 304) {
+			try {
+				if (compressed) {
+					// Decompress while reading, bounded by the size limit
+					in = ContentReader.decompress(in, conn.getContentEncoding());
+					body = ContentReader.read(in, -1, httpRequest.getResponseSizeLimit());
+				} else {
+					body = ContentReader.read(in, conn.getContentLengthLong(), httpRequest.getResponseSizeLimit());
+				}
+			} finally {
+				in.close();
+			}
+		} else {
+			body = new byte[0]; // no content
+		}
+
+		timings.readTime = System.nanoTime() - firstByte;
+		timings.responseBytes = compressed && conn.getContentLengthLong() >= 0 ? conn.getContentLengthLong() : body.length;
+
+
+		HTTPResponse response = new HTTPResponse(statusCode);
+
+		response.setStatusMessage(conn.getResponseMessage());
+
+		// Set headers
+		for (Map.Entry<String,List<String>> responseHeader: conn.getHeaderFields().entrySet()) {
+
+			if (responseHeader.getKey() == null) {
+				continue; // skip header
+			}
+
+			List<String> values = responseHeader.getValue();
+			if (values == null || values.isEmpty() || values.get(0) == null) {
+				continue; // skip header
+			}
+
+			response.setHeader(responseHeader.getKey(), values.get(0));
+		}
+
+		if (compressed && body.length > 0) {
+			// The content is now decompressed
+			response.setHeader("Content-Encoding", null);
+			response.setHeader("Content-Length", null);
+		}
+
+		response.setExchangeTimings(timings);
+
+		HTTPRequest.closeStreams(conn);
+
+		if (body.length > 0)
+			response.setContent(ContentReader.decode(body, response.getContentType()));
+
+		return response;
+	}
+}
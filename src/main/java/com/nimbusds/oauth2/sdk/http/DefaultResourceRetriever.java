@@ -18,16 +18,13 @@
 package com.nimbusds.oauth2.sdk.http;
 
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import javax.mail.internet.ContentType;
 import javax.mail.internet.ParseException;
 
-import com.nimbusds.jose.util.BoundedInputStream;
 import net.jcip.annotations.ThreadSafe;
 
 
@@ -41,12 +38,6 @@ import net.jcip.annotations.ThreadSafe;
 public class DefaultResourceRetriever extends AbstractRestrictedResourceRetriever implements RestrictedResourceRetriever {
 
 
-	/**
-	 * The system line separator.
-	 */
-	private final String lineSeparator;
-	
-	
 	/**
 	 * Creates a new resource retriever. The HTTP timeouts and entity size
 	 * limit are set to zero (infinite).
@@ -85,13 +76,60 @@ public class DefaultResourceRetriever extends AbstractRestrictedResourceRetrieve
 	public DefaultResourceRetriever(final int connectTimeout, final int readTimeout, final int sizeLimit) {
 	
 		super(connectTimeout, readTimeout, sizeLimit);
-		lineSeparator = System.getProperty("line.separator");
 	}
 
 
 	@Override
 	public Resource retrieveResource(final URL url)
 		throws IOException {
+
+		if (! HTTPInstrumentation.isEnabled()) {
+			return retrieveResource(url, null);
+		}
+
+		ExchangeTimings timings = new ExchangeTimings();
+
+		long start = System.nanoTime();
+
+		Resource resource;
+
+		try {
+			resource = retrieveResource(url, timings);
+
+		} catch (IOException | RuntimeException e) {
+
+			HTTPInstrumentation.fire(new HTTPEvent(
+				getEndpointRole(), "GET", url, timings.statusCode,
+				timings.connectTime, timings.waitTime, -1L, System.nanoTime() - start,
+				0L, -1L, e));
+
+			throw e;
+		}
+
+		HTTPInstrumentation.fire(new HTTPEvent(
+			getEndpointRole(), "GET", url, timings.statusCode,
+			timings.connectTime, timings.waitTime, timings.readTime, System.nanoTime() - start,
+			0L, timings.responseBytes, null));
+
+		return resource;
+	}
+
+
+	/**
+	 * Retrieves the resource from the specified URL.
+	 *
+	 * @param url     The URL of the resource. Its scheme must be HTTP or
+	 *                HTTPS. Must not be {@code null}.
+	 * @param timings The exchange timings to record, {@code null} if
+	 *                none.
+	 *
+	 * @return The retrieved resource.
+	 *
+	 * @throws IOException If the HTTP connection to the specified URL
+	 *                     failed or the resource couldn't be retrieved.
+	 */
+	private Resource retrieveResource(final URL url, final ExchangeTimings timings)
+		throws IOException {
 		
 		HttpURLConnection con;
 		try {
@@ -103,30 +141,54 @@ public class DefaultResourceRetriever extends AbstractRestrictedResourceRetrieve
 		con.setConnectTimeout(getConnectTimeout());
 		con.setReadTimeout(getReadTimeout());
 
-		StringBuilder sb = new StringBuilder();
+		if (getAcceptCompression()) {
+			con.setRequestProperty("Accept-Encoding", HTTPRequest.ACCEPT_ENCODING);
+		}
 
-		InputStream inputStream = con.getInputStream();
+		long start = System.nanoTime();
 
-		if (getSizeLimit() > 0) {
-			inputStream = new BoundedInputStream(inputStream, getSizeLimit());
+		if (timings != null) {
+			con.connect();
+			timings.connectTime = System.nanoTime() - start;
 		}
 
-		BufferedReader input = new BufferedReader(new InputStreamReader(inputStream));
+		byte[] content;
 
-		String line;
+		InputStream inputStream = con.getInputStream();
+
+		final boolean compressed = ContentReader.isCompressed(con.getContentEncoding());
 
-		while ((line = input.readLine()) != null) {
+		long firstByte = System.nanoTime();
 
-			sb.append(line);
-			sb.append(lineSeparator);
+		if (timings != null) {
+			timings.waitTime = firstByte - start - timings.connectTime;
 		}
 
-		input.close();
+		try {
+			if (compressed) {
+				// Decompress while reading, bounded by the size limit
+				inputStream = ContentReader.decompress(inputStream, con.getContentEncoding());
+				content = ContentReader.read(inputStream, -1, getSizeLimit());
+			} else {
+				content = ContentReader.read(inputStream, con.getContentLengthLong(), getSizeLimit());
+			}
+		} finally {
+			inputStream.close();
+		}
+
+		if (timings != null) {
+			timings.readTime = System.nanoTime() - firstByte;
+			timings.responseBytes = compressed && con.getContentLengthLong() >= 0 ? con.getContentLengthLong() : content.length;
+		}
 
 		// Check HTTP code + message
 		final int statusCode = con.getResponseCode();
 		final String statusMessage = con.getResponseMessage();
 
+		if (timings != null) {
+			timings.statusCode = statusCode;
+		}
+
 		// Ensure 2xx status code
 		if (statusCode > 299 || statusCode < 200) {
 			throw new IOException("HTTP " + statusCode + ": " + statusMessage);
@@ -143,6 +205,6 @@ public class DefaultResourceRetriever extends AbstractRestrictedResourceRetrieve
 			}
 		}
 		
-		return new Resource(sb.toString(), contentType);
+		return new Resource(ContentReader.decode(content, contentType), contentType);
 	}
 }
@@ -0,0 +1,62 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+/**
+ * Enumeration of the roles of the endpoints called by the SDK, for tagging
+ * {@link HTTPEvent HTTP instrumentation events}.
+ */
+public enum EndpointRole {
+
+
+	/**
+	 * OAuth 2.0 token endpoint.
+	 */
+	TOKEN,
+
+
+	/**
+	 * OpenID Connect UserInfo endpoint.
+	 */
+	USERINFO,
+
+
+	/**
+	 * JSON Web Key (JWK) set URI.
+	 */
+	JWKS,
+
+
+	/**
+	 * OpenID Connect request object URI.
+	 */
+	REQUEST_URI,
+
+
+	/**
+	 * OpenID Connect sector identifier URI.
+	 */
+	SECTOR_ID,
+
+
+	/**
+	 * Other or unspecified endpoint.
+	 */
+	OTHER
+}
@@ -0,0 +1,66 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import net.jcip.annotations.NotThreadSafe;
+
+
+/**
+ * Phase timings of an HTTP exchange, recorded by the {@link HTTPTransport}
+ * implementations of this package and attached to the received
+ * {@link HTTPResponse}. Times are in nanoseconds, -1 if not measured.
+ */
+@NotThreadSafe
+final class ExchangeTimings {
+
+
+	/**
+	 * The time to establish the connection, including any TLS handshake
+	 * and, for {@link java.net.HttpURLConnection} based transports, the writing of
+	 * the request entity.
+	 */
+	long connectTime = -1L;
+
+
+	/**
+	 * The time from the connection being established to receiving the
+	 * first response byte.
+	 */
+	long waitTime = -1L;
+
+
+	/**
+	 * The time to read the response entity.
+	 */
+	long readTime = -1L;
+
+
+	/**
+	 * The size of the received response entity, in bytes, -1 if not
+	 * known.
+	 */
+	long responseBytes = -1L;
+
+
+	/**
+	 * The received HTTP status code, -1 if not recorded. Used where the
+	 * response isn't returned as {@link HTTPResponse}.
+	 */
+	int statusCode = -1;
+}
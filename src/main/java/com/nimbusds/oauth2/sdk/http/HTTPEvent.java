@@ -0,0 +1,309 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.net.URL;
+
+import net.jcip.annotations.Immutable;
+
+
+/**
+ * Outbound HTTP call event, passed to the registered
+ * {@link HTTPInstrumentation HTTP listeners}. Times are in nanoseconds, -1
+ * if not measured.
+ *
+ * <p>The connect, wait and read phases are reported when the response was
+ * received by the {@link DefaultHTTPTransport} or the
+ * {@link PooledHTTPTransport}, for the last exchange with the server (after
+ * any redirection). With {@link java.net.HttpURLConnection} the connect
+ * phase includes the TLS handshake and the writing of the request entity.
+ */
+@Immutable
+public final class HTTPEvent {
+
+
+	/**
+	 * The endpoint role.
+	 */
+	private final EndpointRole role;
+
+
+	/**
+	 * The HTTP method.
+	 */
+	private final String method;
+
+
+	/**
+	 * The request URL.
+	 */
+	private final URL url;
+
+
+	/**
+	 * The HTTP status code, -1 if no response was received.
+	 */
+	private final int statusCode;
+
+
+	/**
+	 * The connect time.
+	 */
+	private final long connectTime;
+
+
+	/**
+	 * The time to first response byte.
+	 */
+	private final long waitTime;
+
+
+	/**
+	 * The response entity read time.
+	 */
+	private final long readTime;
+
+
+	/**
+	 * The total time.
+	 */
+	private final long totalTime;
+
+
+	/**
+	 * The request entity size, in bytes.
+	 */
+	private final long requestBytes;
+
+
+	/**
+	 * The response entity size, in bytes.
+	 */
+	private final long responseBytes;
+
+
+	/**
+	 * The error, {@code null} if none.
+	 */
+	private final Exception error;
+
+
+	/**
+	 * Creates a new outbound HTTP call event.
+	 *
+	 * @param role          The endpoint role, {@link EndpointRole#OTHER}
+	 *                      if not specified. Must not be {@code null}.
+	 * @param method        The HTTP method. Must not be {@code null}.
+	 * @param url           The request URL. Must not be {@code null}.
+	 * @param statusCode    The HTTP status code, -1 if no response was
+	 *                      received or the code isn't known.
+	 * @param connectTime   The connect time, in nanoseconds, -1 if not
+	 *                      measured.
+	 * @param waitTime      The time from the connection being
+	 *                      established to the first response byte, in
+	 *                      nanoseconds, -1 if not measured.
+	 * @param readTime      The response entity read time, in
+	 *                      nanoseconds, -1 if not measured.
+	 * @param totalTime     The total time, in nanoseconds.
+	 * @param requestBytes  The request entity size, in bytes, -1 if not
+	 *                      known.
+	 * @param responseBytes The response entity size, in bytes, -1 if not
+	 *                      known.
+	 * @param error         The error, {@code null} if none.
+	 */
+	public HTTPEvent(final EndpointRole role,
+			 final String method,
+			 final URL url,
+			 final int statusCode,
+			 final long connectTime,
+			 final long waitTime,
+			 final long readTime,
+			 final long totalTime,
+			 final long requestBytes,
+			 final long responseBytes,
+			 final Exception error) {
+
+		if (role == null) {
+			throw new IllegalArgumentException("The endpoint role must not be null");
+		}
+
+		this.role = role;
+
+		if (method == null) {
+			throw new IllegalArgumentException("The HTTP method must not be null");
+		}
+
+		this.method = method;
+
+		if (url == null) {
+			throw new IllegalArgumentException("The URL must not be null");
+		}
+
+		this.url = url;
+		this.statusCode = statusCode;
+		this.connectTime = connectTime;
+		this.waitTime = waitTime;
+		this.readTime = readTime;
+		this.totalTime = totalTime;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+		this.error = error;
+	}
+
+
+	/**
+	 * Gets the endpoint role.
+	 *
+	 * @return The endpoint role.
+	 */
+	public EndpointRole getEndpointRole() {
+
+		return role;
+	}
+
+
+	/**
+	 * Gets the HTTP method.
+	 *
+	 * @return The HTTP method.
+	 */
+	public String getMethod() {
+
+		return method;
+	}
+
+
+	/**
+	 * Gets the request URL.
+	 *
+	 * @return The request URL.
+	 */
+	public URL getURL() {
+
+		return url;
+	}
+
+
+	/**
+	 * Gets the HTTP status code.
+	 *
+	 * @return The HTTP status code, -1 if no response was received.
+	 */
+	public int getStatusCode() {
+
+		return statusCode;
+	}
+
+
+	/**
+	 * Gets the connect time.
+	 *
+	 * @return The connect time, in nanoseconds, -1 if not measured.
+	 */
+	public long getConnectTime() {
+
+		return connectTime;
+	}
+
+
+	/**
+	 * Gets the time from the connection being established to the first
+	 * response byte.
+	 *
+	 * @return The wait time, in nanoseconds, -1 if not measured.
+	 */
+	public long getWaitTime() {
+
+		return waitTime;
+	}
+
+
+	/**
+	 * Gets the response entity read time.
+	 *
+	 * @return The read time, in nanoseconds, -1 if not measured.
+	 */
+	public long getReadTime() {
+
+		return readTime;
+	}
+
+
+	/**
+	 * Gets the total time of the call.
+	 *
+	 * @return The total time, in nanoseconds.
+	 */
+	public long getTotalTime() {
+
+		return totalTime;
+	}
+
+
+	/**
+	 * Gets the request entity size.
+	 *
+	 * @return The request entity size, in bytes, -1 if not known.
+	 */
+	public long getRequestBytes() {
+
+		return requestBytes;
+	}
+
+
+	/**
+	 * Gets the response entity size.
+	 *
+	 * @return The response entity size, in bytes, -1 if not known.
+	 */
+	public long getResponseBytes() {
+
+		return responseBytes;
+	}
+
+
+	/**
+	 * Gets the error.
+	 *
+	 * @return The error, {@code null} if none.
+	 */
+	public Exception getError() {
+
+		return error;
+	}
+
+
+	/**
+	 * Returns {@code true} if the call failed with an error, typically an
+	 * {@link java.io.IOException}.
+	 *
+	 * @return {@code true} if the call failed, else {@code false}.
+	 */
+	public boolean isError() {
+
+		return error != null;
+	}
+
+
+	@Override
+	public String toString() {
+
+		return role + " " + method + " " + url + " " + statusCode + " " + (totalTime / 1000L) + "us";
+	}
+}
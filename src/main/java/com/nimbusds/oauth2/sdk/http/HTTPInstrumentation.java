@@ -0,0 +1,115 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Registry of {@link HTTPListener listeners} for the outbound HTTP calls of
+ * the SDK. Events are fired by {@link HTTPRequest#send}, the
+ * {@link DefaultResourceRetriever} and the remote JWK set retrieval. When no
+ * listener is registered the calls are not timed.
+ *
+ * <p>Example registration of a listener collecting latency histograms:
+ *
+ * <pre>
+ * HistogramHTTPListener histograms = new HistogramHTTPListener();
+ * HTTPInstrumentation.addListener(histograms);
+ * ...
+ * long p99 = histograms.getHistogram(EndpointRole.TOKEN).getValueAtPercentile(99.0);
+ * </pre>
+ */
+@ThreadSafe
+public final class HTTPInstrumentation {
+
+
+	/**
+	 * The registered listeners.
+	 */
+	private static final List<HTTPListener> listeners = new CopyOnWriteArrayList<>();
+
+
+	/**
+	 * Registers the specified listener.
+	 *
+	 * @param listener The HTTP listener. Must not be {@code null}.
+	 */
+	public static void addListener(final HTTPListener listener) {
+
+		if (listener == null) {
+			throw new IllegalArgumentException("The HTTP listener must not be null");
+		}
+
+		listeners.add(listener);
+	}
+
+
+	/**
+	 * Unregisters the specified listener.
+	 *
+	 * @param listener The HTTP listener.
+	 *
+	 * @return {@code true} if the listener was registered, else
+	 *         {@code false}.
+	 */
+	public static boolean removeListener(final HTTPListener listener) {
+
+		return listeners.remove(listener);
+	}
+
+
+	/**
+	 * Returns {@code true} if at least one listener is registered.
+	 *
+	 * @return {@code true} if instrumentation is enabled, else
+	 *         {@code false}.
+	 */
+	public static boolean isEnabled() {
+
+		return ! listeners.isEmpty();
+	}
+
+
+	/**
+	 * Passes the specified event to the registered listeners. Runtime
+	 * exceptions thrown by a listener are ignored.
+	 *
+	 * @param event The HTTP event. Must not be {@code null}.
+	 */
+	public static void fire(final HTTPEvent event) {
+
+		for (HTTPListener listener: listeners) {
+			try {
+				listener.onEvent(event);
+			} catch (RuntimeException e) {
+				// ignore
+			}
+		}
+	}
+
+
+	/**
+	 * Prevents public instantiation.
+	 */
+	private HTTPInstrumentation() { }
+}
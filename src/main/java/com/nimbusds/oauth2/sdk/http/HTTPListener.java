@@ -0,0 +1,36 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+/**
+ * Listener of outbound HTTP call events, registered with
+ * {@link HTTPInstrumentation}. The method is invoked on the thread which made
+ * the call and should return quickly; runtime exceptions thrown by it are
+ * ignored.
+ */
+public interface HTTPListener {
+
+
+	/**
+	 * Invoked when an outbound HTTP call completed or failed.
+	 *
+	 * @param event The HTTP event. Not {@code null}.
+	 */
+	void onEvent(final HTTPEvent event);
+}
@@ -19,7 +19,6 @@ package com.nimbusds.oauth2.sdk.http;
 
 
 import java.util.Map;
-import java.util.TreeMap;
 import javax.mail.internet.ContentType;
 
 import com.nimbusds.oauth2.sdk.ParseException;
@@ -35,11 +34,54 @@ abstract class HTTPMessage {
 	/**
 	 * The HTTP request / response headers.
 	 */
-	private final Map<String,String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	private final Map<String,String> headers = new HeaderMap();
 
 
 	/**
-	 * Gets the {@code Content-Type} header value.
+	 * Parsed {@code Content-Type} header value, kept together with the
+	 * header value it was parsed from.
+	 */
+	private static final class ParsedContentType {
+
+
+		/**
+		 * The {@code Content-Type} header value.
+		 */
+		final String value;
+
+
+		/**
+		 * The parsed content type, {@code null} if invalid.
+		 */
+		final ContentType contentType;
+
+
+		/**
+		 * Creates a new parsed content type.
+		 *
+		 * @param value       The {@code Content-Type} header value.
+		 * @param contentType The parsed content type, {@code null} if
+		 *                    invalid.
+		 */
+		ParsedContentType(final String value, final ContentType contentType) {
+
+			this.value = value;
+			this.contentType = contentType;
+		}
+	}
+
+
+	/**
+	 * The cached parsed {@code Content-Type} header value, {@code null} if
+	 * not parsed yet.
+	 */
+	private volatile ParsedContentType parsedContentType;
+
+
+	/**
+	 * Gets the {@code Content-Type} header value. The parsed value is
+	 * cached until the header changes, the returned object must therefore
+	 * not be modified.
 	 *
 	 * @return The {@code Content-Type} header value, {@code null} if not 
 	 *         specified.
@@ -52,12 +94,23 @@ abstract class HTTPMessage {
 			return null;
 		}
 
+		ParsedContentType parsed = parsedContentType;
+
+		if (parsed != null && value.equals(parsed.value)) {
+			return parsed.contentType;
+		}
+
+		ContentType contentType;
+
 		try {
-			return new ContentType(value);
+			contentType = new ContentType(value);
 
 		} catch (javax.mail.internet.ParseException e) {
-			return null;
+			contentType = null;
 		}
+
+		parsedContentType = new ParsedContentType(value, contentType);
+		return contentType;
 	}
 	
 	
@@ -85,8 +138,16 @@ abstract class HTTPMessage {
 	public void setContentType(final String ct)
 		throws ParseException {
 		
+		if (ct == null) {
+			setHeader("Content-Type", null);
+			return;
+		}
+
 		try {
-			setHeader("Content-Type", ct != null ? new ContentType(ct).toString() : null);
+			ContentType contentType = new ContentType(ct);
+			String value = contentType.toString();
+			setHeader("Content-Type", value);
+			parsedContentType = new ParsedContentType(value, contentType);
 			
 		} catch (javax.mail.internet.ParseException e) {
 		
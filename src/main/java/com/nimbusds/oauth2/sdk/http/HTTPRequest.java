@@ -20,8 +20,11 @@ package com.nimbusds.oauth2.sdk.http;
 
 import java.io.*;
 import java.net.*;
-import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.*;
+import javax.mail.internet.ContentType;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -66,6 +69,9 @@ import com.nimbusds.oauth2.sdk.util.URLUtils;
  * </ul>
  *
  * <p>HTTP 3xx redirection: follow (default) / don't follow
+ *
+ * <p>The request is sent by a pluggable {@link HTTPTransport}, set globally
+ * or for the individual request.
  */
 @ThreadSafe
 public class HTTPRequest extends HTTPMessage {
@@ -116,7 +122,20 @@ public class HTTPRequest extends HTTPMessage {
 	/**
 	 * The query string / post body.
 	 */
-	private String query = null;
+	private volatile String query = null;
+
+
+	/**
+	 * The parsed query parameters, {@code null} if not parsed yet.
+	 */
+	private volatile Map<String,String> queryParams = null;
+
+
+	/**
+	 * The decoded form parameters from which the query string / post body
+	 * is serialised on demand, {@code null} if none.
+	 */
+	private volatile Map<String,String[]> formParams = null;
 
 
 	/**
@@ -144,6 +163,24 @@ public class HTTPRequest extends HTTPMessage {
 	private boolean followRedirects = true;
 
 
+	/**
+	 * The HTTP response entity size limit, in bytes. Zero implies none.
+	 */
+	private int responseSizeLimit = 0;
+
+
+	/**
+	 * The {@code Accept-Encoding} header value for compressed responses.
+	 */
+	static final String ACCEPT_ENCODING = "gzip, deflate";
+
+
+	/**
+	 * Controls the acceptance of compressed responses.
+	 */
+	private boolean acceptCompression = false;
+
+
 	/**
 	 * The default hostname verifier for all HTTPS requests.
 	 */
@@ -154,6 +191,38 @@ public class HTTPRequest extends HTTPMessage {
 	 * The default socket factory for all HTTPS requests.
 	 */
 	private static SSLSocketFactory defaultSSLSocketFactory = (SSLSocketFactory)SSLSocketFactory.getDefault();
+
+
+	/**
+	 * The default transport for all HTTP requests.
+	 */
+	private static HTTPTransport defaultTransport = new DefaultHTTPTransport();
+
+
+	/**
+	 * The default executor for asynchronous HTTP requests.
+	 */
+	private static Executor defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable r) {
+			Thread thread = new Thread(r, "oauth2-oidc-sdk-http-async");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+
+	/**
+	 * The transport for this HTTP request, {@code null} if the default
+	 * applies.
+	 */
+	private HTTPTransport transport = null;
+
+
+	/**
+	 * The role of the called endpoint, for instrumentation.
+	 */
+	private EndpointRole endpointRole = EndpointRole.OTHER;
 	
 	
 	/**
@@ -282,11 +351,38 @@ public class HTTPRequest extends HTTPMessage {
 	 *         requests the body. {@code null} if not specified.
 	 */
 	public String getQuery() {
+
+		Map<String,String[]> params = formParams;
+
+		if (params != null) {
+			// Set the query before clearing the form parameters, so
+			// that concurrent readers always see one of the two
+			String serialised = URLUtils.serializeParametersAlt(params);
+			query = serialised;
+			formParams = null;
+			return serialised;
+		}
 	
 		return query;
 	}
 	
 	
+	/**
+	 * Returns {@code true} if a query string / post body is specified.
+	 * Unlike checking {@link #getQuery} for {@code null} this doesn't
+	 * serialise a query set from decoded form parameters.
+	 *
+	 * @return {@code true} if a query string / post body is specified,
+	 *         else {@code false}.
+	 */
+	public boolean hasQuery() {
+
+		// Read the form parameters first, getQuery sets the query
+		// before clearing them
+		return formParams != null || query != null;
+	}
+
+
 	/**
 	 * Sets the raw (undecoded) query string if the request is HTTP GET or
 	 * the entity body if the request is HTTP POST.
@@ -309,6 +405,37 @@ public class HTTPRequest extends HTTPMessage {
 	public void setQuery(final String query) {
 	
 		this.query = query;
+		queryParams = null;
+		formParams = null;
+	}
+
+
+	/**
+	 * Sets the query string / post body from already decoded form
+	 * parameters, such as the parameter map of a servlet request. The
+	 * {@link #getQueryParameters parameter map} is made from the first
+	 * values without any decoding, the query string is only serialised
+	 * if {@link #getQuery requested}.
+	 *
+	 * @param params The decoded parameters. Must not be {@code null}.
+	 */
+	void setQueryParameters(final Map<String,String[]> params) {
+
+		Map<String,String> firstValues = new HashMap<>();
+
+		for (Map.Entry<String,String[]> entry: params.entrySet()) {
+
+			if (entry.getKey() == null || entry.getValue() == null || entry.getValue().length == 0) {
+				continue;
+			}
+
+			String value = entry.getValue()[0];
+			firstValues.put(entry.getKey(), value != null ? value : "");
+		}
+
+		query = null;
+		queryParams = firstValues;
+		formParams = new LinkedHashMap<>(params);
 	}
 
 
@@ -321,6 +448,8 @@ public class HTTPRequest extends HTTPMessage {
 	 */
 	private void ensureQuery()
 		throws ParseException {
+
+		String query = getQuery();
 		
 		if (query == null || query.trim().isEmpty())
 			throw new ParseException("Missing or empty HTTP query string / entity body");
@@ -330,13 +459,53 @@ public class HTTPRequest extends HTTPMessage {
 	/**
 	 * Gets the request query as a parameter map. The parameters are 
 	 * decoded according to {@code application/x-www-form-urlencoded}.
+	 * The query is parsed once and cached until it is
+	 * {@link #setQuery changed}, each call returns a new copy of the
+	 * parameters which the caller may modify.
 	 *
 	 * @return The request query parameters, decoded. If none the map will
 	 *         be empty.
 	 */
 	public Map<String,String> getQueryParameters() {
-	
-		return URLUtils.parseParameters(query);
+
+		Map<String,String> params = queryParams;
+
+		if (params == null) {
+			params = URLUtils.parseParameters(getQuery());
+			queryParams = params;
+		}
+
+		return new HashMap<>(params);
+	}
+
+
+	/**
+	 * Gets the request query as a multi-valued parameter map. Supports
+	 * multiple key / value pairs that have the same key. The parameters
+	 * are decoded according to {@code application/x-www-form-urlencoded}.
+	 *
+	 * @return The request query parameters, decoded. If none the map will
+	 *         be empty.
+	 */
+	public Map<String,String[]> getQueryParametersAlt() {
+
+		if (formParams != null) {
+
+			Map<String,String[]> params = new LinkedHashMap<>();
+
+			for (Map.Entry<String,String[]> entry: formParams.entrySet()) {
+
+				if (entry.getKey() == null || entry.getValue() == null) {
+					continue;
+				}
+
+				params.put(entry.getKey(), entry.getValue().clone());
+			}
+
+			return params;
+		}
+
+		return URLUtils.parseParametersAlt(getQuery());
 	}
 
 
@@ -357,7 +526,7 @@ public class HTTPRequest extends HTTPMessage {
 
 		ensureQuery();
 
-		return JSONObjectUtils.parse(query);
+		return JSONObjectUtils.parse(getQuery());
 	}
 
 
@@ -464,6 +633,86 @@ public class HTTPRequest extends HTTPMessage {
 	}
 
 
+	/**
+	 * Gets the HTTP response entity size limit.
+	 *
+	 * @return The HTTP response entity size limit, in bytes. Zero implies
+	 *         no limit.
+	 */
+	public int getResponseSizeLimit() {
+
+		return responseSizeLimit;
+	}
+
+
+	/**
+	 * Sets the HTTP response entity size limit. Responses with a larger
+	 * entity body cause an {@link IOException} on {@link #send}.
+	 *
+	 * @param responseSizeLimit The HTTP response entity size limit, in
+	 *                          bytes. Zero implies no limit. Must not be
+	 *                          negative.
+	 */
+	public void setResponseSizeLimit(final int responseSizeLimit) {
+
+		if (responseSizeLimit < 0) {
+			throw new IllegalArgumentException("The HTTP response size limit must be zero or positive");
+		}
+
+		this.responseSizeLimit = responseSizeLimit;
+	}
+
+
+	/**
+	 * Gets the acceptance of compressed HTTP responses.
+	 *
+	 * @return {@code true} if gzip and deflate compressed responses are
+	 *         accepted, else {@code false}.
+	 */
+	public boolean getAcceptCompression() {
+
+		return acceptCompression;
+	}
+
+
+	/**
+	 * Sets the acceptance of compressed HTTP responses. If {@code true}
+	 * and no {@code Accept-Encoding} header is set the request is sent
+	 * with {@code Accept-Encoding: gzip, deflate}. A gzip or deflate
+	 * compressed response entity is decompressed as it is read, the
+	 * {@link #setResponseSizeLimit response size limit} applying to the
+	 * decompressed content, and the {@code Content-Encoding} and
+	 * {@code Content-Length} headers are removed from the response.
+	 * Disabled by default.
+	 *
+	 * @param acceptCompression {@code true} to accept compressed
+	 *                          responses, else {@code false}.
+	 */
+	public void setAcceptCompression(final boolean acceptCompression) {
+
+		this.acceptCompression = acceptCompression;
+	}
+
+
+	/**
+	 * Returns the HTTP headers to send, including the
+	 * {@code Accept-Encoding} header if compressed responses are accepted
+	 * and the header isn't set.
+	 *
+	 * @return The HTTP headers to send.
+	 */
+	Map<String,String> getHeadersToSend() {
+
+		if (! acceptCompression || getHeader("Accept-Encoding") != null) {
+			return getHeaders();
+		}
+
+		Map<String,String> headers = new HashMap<>(getHeaders());
+		headers.put("Accept-Encoding", ACCEPT_ENCODING);
+		return headers;
+	}
+
+
 	/**
 	 * Returns the default hostname verifier for all HTTPS requests.
 	 *
@@ -520,6 +769,110 @@ public class HTTPRequest extends HTTPMessage {
 	}
 
 
+	/**
+	 * Returns the default transport for all HTTP requests.
+	 *
+	 * @return The HTTP transport.
+	 */
+	public static HTTPTransport getDefaultTransport() {
+
+		return defaultTransport;
+	}
+
+
+	/**
+	 * Sets the default transport for all HTTP requests. May be overridden
+	 * on a individual request basis.
+	 *
+	 * @param transport The HTTP transport. Must not be {@code null}.
+	 */
+	public static void setDefaultTransport(final HTTPTransport transport) {
+
+		if (transport == null) {
+			throw new IllegalArgumentException("The HTTP transport must not be null");
+		}
+
+		HTTPRequest.defaultTransport = transport;
+	}
+
+
+	/**
+	 * Gets the transport for this HTTP request.
+	 *
+	 * @return The HTTP transport, {@code null} if the
+	 *         {@link #getDefaultTransport() default transport} applies.
+	 */
+	public HTTPTransport getTransport() {
+
+		return transport;
+	}
+
+
+	/**
+	 * Sets the transport for this HTTP request.
+	 *
+	 * @param transport The HTTP transport, {@code null} to apply the
+	 *                  {@link #getDefaultTransport() default transport}.
+	 */
+	public void setTransport(final HTTPTransport transport) {
+
+		this.transport = transport;
+	}
+
+
+	/**
+	 * Gets the role of the called endpoint, for tagging the
+	 * {@link HTTPInstrumentation instrumentation} events.
+	 *
+	 * @return The endpoint role, {@link EndpointRole#OTHER} if not
+	 *         specified.
+	 */
+	public EndpointRole getEndpointRole() {
+
+		return endpointRole;
+	}
+
+
+	/**
+	 * Sets the role of the called endpoint, for tagging the
+	 * {@link HTTPInstrumentation instrumentation} events.
+	 *
+	 * @param endpointRole The endpoint role, {@code null} for
+	 *                     {@link EndpointRole#OTHER}.
+	 */
+	public void setEndpointRole(final EndpointRole endpointRole) {
+
+		this.endpointRole = endpointRole != null ? endpointRole : EndpointRole.OTHER;
+	}
+
+
+	/**
+	 * Returns the default executor for asynchronous HTTP requests.
+	 *
+	 * @return The executor.
+	 */
+	public static Executor getDefaultExecutor() {
+
+		return defaultExecutor;
+	}
+
+
+	/**
+	 * Sets the default executor for asynchronous HTTP requests. The
+	 * initial executor is a cached pool of daemon threads.
+	 *
+	 * @param executor The executor. Must not be {@code null}.
+	 */
+	public static void setDefaultExecutor(final Executor executor) {
+
+		if (executor == null) {
+			throw new IllegalArgumentException("The executor must not be null");
+		}
+
+		HTTPRequest.defaultExecutor = executor;
+	}
+
+
 	/**
 	 * Returns an established HTTP URL connection for this HTTP request.
 	 *
@@ -562,6 +915,8 @@ public class HTTPRequest extends HTTPMessage {
 
 		URL finalURL = url;
 
+		String query = getQuery();
+
 		if (query != null && (method.equals(HTTPRequest.Method.GET) || method.equals(Method.DELETE))) {
 
 			// Append query string
@@ -602,7 +957,7 @@ public class HTTPRequest extends HTTPMessage {
 			sslConn.setSSLSocketFactory(sslSocketFactory != null ? sslSocketFactory : getDefaultSSLSocketFactory());
 		}
 
-		for (Map.Entry<String,String> header: getHeaders().entrySet()) {
+		for (Map.Entry<String,String> header: getHeadersToSend().entrySet()) {
 			conn.setRequestProperty(header.getKey(), header.getValue());
 		}
 
@@ -615,8 +970,10 @@ public class HTTPRequest extends HTTPMessage {
 
 			conn.setDoOutput(true);
 
-			if (getContentType() != null)
-				conn.setRequestProperty("Content-Type", getContentType().toString());
+			ContentType contentType = getContentType();
+
+			if (contentType != null)
+				conn.setRequestProperty("Content-Type", contentType.toString());
 
 			if (query != null) {
 				try {
@@ -674,79 +1031,163 @@ public class HTTPRequest extends HTTPMessage {
 				 final SSLSocketFactory sslSocketFactory)
 		throws IOException {
 
-		HttpURLConnection conn = toHttpURLConnection(hostnameVerifier, sslSocketFactory);
+		HTTPTransport t = transport != null ? transport : getDefaultTransport();
+
+		if (! HTTPInstrumentation.isEnabled()) {
+			return t.send(this, hostnameVerifier, sslSocketFactory);
+		}
 
-		int statusCode;
+		long start = System.nanoTime();
 
-		BufferedReader reader;
+		HTTPResponse httpResponse;
 
 		try {
-			// Open a connection, then send method and headers
-			reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-
-			// The next step is to get the status
-			statusCode = conn.getResponseCode();
-
-		} catch (IOException e) {
-
-			// HttpUrlConnection will throw an IOException if any
-			// 4XX response is sent. If we request the status
-			// again, this time the internal status will be
-			// properly set, and we'll be able to retrieve it.
-			statusCode = conn.getResponseCode();
-
-			if (statusCode == -1) {
-				throw e; // Rethrow IO exception
-			} else {
-				// HTTP status code indicates the response got
-				// through, read the content but using error stream
-				InputStream errStream = conn.getErrorStream();
-
-				if (errStream != null) {
-					// We have useful HTTP error body
-					reader = new BufferedReader(new InputStreamReader(errStream));
-				} else {
-					// No content, set to empty string
-					reader = new BufferedReader(new StringReader(""));
-				}
-			}
+			httpResponse = t.send(this, hostnameVerifier, sslSocketFactory);
+
+		} catch (IOException | RuntimeException e) {
+
+			HTTPInstrumentation.fire(new HTTPEvent(
+				endpointRole, method.name(), url, -1,
+				-1L, -1L, -1L, System.nanoTime() - start,
+				getRequestBytes(), -1L, e));
+
+			throw e;
 		}
 
-		StringBuilder body = new StringBuilder();
-		String line;
-		while ((line = reader.readLine()) != null) {
-			body.append(line);
-			body.append(System.getProperty("line.separator"));
+		long totalTime = System.nanoTime() - start;
+
+		ExchangeTimings timings = httpResponse.getExchangeTimings();
+
+		if (timings == null) {
+			timings = new ExchangeTimings();
 		}
-		reader.close();
 
+		HTTPInstrumentation.fire(new HTTPEvent(
+			endpointRole, method.name(), url, httpResponse.getStatusCode(),
+			timings.connectTime, timings.waitTime, timings.readTime, totalTime,
+			getRequestBytes(), timings.responseBytes, null));
 
-		HTTPResponse response = new HTTPResponse(statusCode);
-		
-		response.setStatusMessage(conn.getResponseMessage());
+		return httpResponse;
+	}
 
-		// Set headers
-		for (Map.Entry<String,List<String>> responseHeader: conn.getHeaderFields().entrySet()) {
 
-			if (responseHeader.getKey() == null) {
-				continue; // skip header
-			}
+	/**
+	 * Returns the size of the request entity, for instrumentation.
+	 *
+	 * @return The request entity size, in bytes.
+	 */
+	private long getRequestBytes() {
 
-			List<String> values = responseHeader.getValue();
-			if (values == null || values.isEmpty() || values.get(0) == null) {
-				continue; // skip header
-			}
+		String query = getQuery();
 
-			response.setHeader(responseHeader.getKey(), values.get(0));
+		if (query == null || method.equals(Method.GET) || method.equals(Method.DELETE)) {
+			return 0L;
 		}
 
-		closeStreams(conn);
+		return query.getBytes(ContentReader.getCharset(getContentType())).length;
+	}
+
+
+	/**
+	 * Sends this HTTP request asynchronously on the
+	 * {@link #getDefaultExecutor() default executor}.
+	 *
+	 * @return The future HTTP response. A network or other error is
+	 *         reported as {@link ExecutionException} with the
+	 *         {@link IOException} as cause.
+	 */
+	public Future<HTTPResponse> sendAsync() {
+
+		return sendAsync(null, null, null, null);
+	}
+
+
+	/**
+	 * Sends this HTTP request asynchronously on the
+	 * {@link #getDefaultExecutor() default executor}.
+	 *
+	 * @param callback Callback for the HTTP response or failure,
+	 *                 {@code null} if not required.
+	 *
+	 * @return The future HTTP response. A network or other error is
+	 *         reported as {@link ExecutionException} with the
+	 *         {@link IOException} as cause.
+	 */
+	public Future<HTTPResponse> sendAsync(final HTTPResponseCallback callback) {
+
+		return sendAsync(null, null, null, callback);
+	}
+
+
+	/**
+	 * Sends this HTTP request asynchronously. The connect and read
+	 * timeouts, the HTTP 3xx redirect setting and the transport of the
+	 * request apply as with {@link #send(HostnameVerifier,
+	 * SSLSocketFactory)}.
+	 *
+	 * @param hostnameVerifier The hostname verifier for HTTPS requests.
+	 *                         Disregarded for plain HTTP requests. If
+	 *                         {@code null} the
+	 *                         {@link #getDefaultHostnameVerifier() default
+	 *                         hostname verifier} will apply.
+	 * @param sslSocketFactory The SSL socket factory for HTTPS requests.
+	 *                         Disregarded for plain HTTP requests. If
+	 *                         {@code null} the
+	 *                         {@link #getDefaultSSLSocketFactory() default
+	 *                         SSL socket factory} will apply.
+	 * @param executor         The executor to send the request on,
+	 *                         {@code null} for the
+	 *                         {@link #getDefaultExecutor() default
+	 *                         executor}.
+	 * @param callback         Callback for the HTTP response or failure,
+	 *                         {@code null} if not required.
+	 *
+	 * @return The future HTTP response. A network or other error is
+	 *         reported as {@link ExecutionException} with the
+	 *         {@link IOException} as cause.
+	 */
+	public Future<HTTPResponse> sendAsync(final HostnameVerifier hostnameVerifier,
+					      final SSLSocketFactory sslSocketFactory,
+					      final Executor executor,
+					      final HTTPResponseCallback callback) {
+
+		FutureTask<HTTPResponse> task = new FutureTask<HTTPResponse>(new Callable<HTTPResponse>() {
+			@Override
+			public HTTPResponse call()
+				throws IOException {
+
+				return send(hostnameVerifier, sslSocketFactory);
+			}
+		}) {
+			@Override
+			protected void done() {
+
+				if (callback == null || isCancelled()) {
+					return;
+				}
+
+				HTTPResponse httpResponse;
+
+				try {
+					httpResponse = get();
+
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					callback.failed(cause instanceof Exception ? (Exception)cause : e);
+					return;
+
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+
+				callback.completed(httpResponse);
+			}
+		};
 
-		final String bodyContent = body.toString();
-		if (! bodyContent.isEmpty())
-			response.setContent(bodyContent);
+		(executor != null ? executor : getDefaultExecutor()).execute(task);
 
-		return response;
+		return task;
 	}
 
 
@@ -758,7 +1199,7 @@ public class HTTPRequest extends HTTPMessage {
 	 *
 	 * @param conn The HTTP URL connection. May be {@code null}.
 	 */
-	private static void closeStreams(final HttpURLConnection conn) {
+	static void closeStreams(final HttpURLConnection conn) {
 
 		if (conn == null) {
 			return;
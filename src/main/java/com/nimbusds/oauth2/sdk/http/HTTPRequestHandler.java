@@ -0,0 +1,40 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+/**
+ * Handler of HTTP requests received by an {@link NIOHTTPServer}. The handler
+ * is invoked on a thread of the server executor and may block.
+ */
+public interface HTTPRequestHandler {
+
+
+	/**
+	 * Handles the specified HTTP request.
+	 *
+	 * @param httpRequest The HTTP request. Not {@code null}.
+	 *
+	 * @return The HTTP response. If {@code null} or if an exception is
+	 *         thrown the server responds with HTTP 500.
+	 *
+	 * @throws Exception If handling failed.
+	 */
+	HTTPResponse handle(final HTTPRequest httpRequest)
+		throws Exception;
+}
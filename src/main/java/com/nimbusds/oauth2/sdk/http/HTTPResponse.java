@@ -130,6 +130,13 @@ public class HTTPResponse extends HTTPMessage {
 	 * The raw response content.
 	 */
 	private String content = null;
+
+
+	/**
+	 * The phase timings of the exchange which produced this response,
+	 * {@code null} if not recorded.
+	 */
+	private ExchangeTimings exchangeTimings = null;
 	
 	
 	/**
@@ -431,4 +438,27 @@ public class HTTPResponse extends HTTPMessage {
 	
 		this.content = content;
 	}
+
+
+	/**
+	 * Gets the phase timings of the exchange which produced this response.
+	 *
+	 * @return The exchange timings, {@code null} if not recorded.
+	 */
+	ExchangeTimings getExchangeTimings() {
+
+		return exchangeTimings;
+	}
+
+
+	/**
+	 * Sets the phase timings of the exchange which produced this response.
+	 *
+	 * @param exchangeTimings The exchange timings, {@code null} if not
+	 *                        recorded.
+	 */
+	void setExchangeTimings(final ExchangeTimings exchangeTimings) {
+
+		this.exchangeTimings = exchangeTimings;
+	}
 }
@@ -0,0 +1,45 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+/**
+ * Callback for the completion of an {@link HTTPRequest#sendAsync
+ * asynchronous HTTP request}. The methods are invoked on the thread which
+ * sent the request and should return quickly.
+ */
+public interface HTTPResponseCallback {
+
+
+	/**
+	 * Invoked when the HTTP response was received.
+	 *
+	 * @param httpResponse The HTTP response. Not {@code null}.
+	 */
+	void completed(final HTTPResponse httpResponse);
+
+
+	/**
+	 * Invoked when the HTTP request failed, due to a network or other
+	 * error.
+	 *
+	 * @param e The exception, typically an {@link java.io.IOException}.
+	 *          Not {@code null}.
+	 */
+	void failed(final Exception e);
+}
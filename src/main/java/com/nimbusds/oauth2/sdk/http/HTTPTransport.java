@@ -0,0 +1,73 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+
+/**
+ * Transport for sending {@link HTTPRequest HTTP requests} and retrieving the
+ * resulting {@link HTTPResponse HTTP responses}. Implementations must be
+ * thread-safe.
+ *
+ * <p>Available implementations:
+ *
+ * <ul>
+ *     <li>{@link DefaultHTTPTransport} -- based on
+ *         {@link java.net.HttpURLConnection}, the default.
+ *     <li>{@link PooledHTTPTransport} -- keeps a bounded per-host pool of
+ *         persistent (keep-alive) connections.
+ * </ul>
+ *
+ * <p>The transport can be set globally with
+ * {@link HTTPRequest#setDefaultTransport} or for an individual request with
+ * {@link HTTPRequest#setTransport}.
+ */
+public interface HTTPTransport {
+
+
+	/**
+	 * Sends the specified HTTP request and retrieves the resulting HTTP
+	 * response. The connect and read timeouts and the HTTP 3xx redirect
+	 * setting of the request must be honoured.
+	 *
+	 * @param httpRequest      The HTTP request. Must not be {@code null}.
+	 * @param hostnameVerifier The hostname verifier for HTTPS requests.
+	 *                         Disregarded for plain HTTP requests. If
+	 *                         {@code null} the
+	 *                         {@link HTTPRequest#getDefaultHostnameVerifier()
+	 *                         default hostname verifier} will apply.
+	 * @param sslSocketFactory The SSL socket factory for HTTPS requests.
+	 *                         Disregarded for plain HTTP requests. If
+	 *                         {@code null} the
+	 *                         {@link HTTPRequest#getDefaultSSLSocketFactory()
+	 *                         default SSL socket factory} will apply.
+	 *
+	 * @return The resulting HTTP response.
+	 *
+	 * @throws IOException If the HTTP request couldn't be made, due to a
+	 *                     network or other error.
+	 */
+	HTTPResponse send(final HTTPRequest httpRequest,
+			  final HostnameVerifier hostnameVerifier,
+			  final SSLSocketFactory sslSocketFactory)
+		throws IOException;
+}
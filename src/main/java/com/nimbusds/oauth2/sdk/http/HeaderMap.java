@@ -0,0 +1,309 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+
+
+/**
+ * Compact map of HTTP headers with case-insensitive names. The names and
+ * values are held in two parallel arrays sorted by name, which for the
+ * handful of headers in a typical OAuth 2.0 message is faster and smaller
+ * than a {@link java.util.TreeMap}. Iteration is in case-insensitive name
+ * order. Null names and values are not supported.
+ */
+@NotThreadSafe
+final class HeaderMap extends AbstractMap<String,String> {
+
+
+	/**
+	 * The initial capacity.
+	 */
+	private static final int INITIAL_CAPACITY = 4;
+
+
+	/**
+	 * The header names, sorted case-insensitively.
+	 */
+	private String[] names = new String[INITIAL_CAPACITY];
+
+
+	/**
+	 * The header values.
+	 */
+	private String[] values = new String[INITIAL_CAPACITY];
+
+
+	/**
+	 * The number of headers.
+	 */
+	private int size = 0;
+
+
+	/**
+	 * Finds the specified header name.
+	 *
+	 * @param name The header name.
+	 *
+	 * @return The header index if found, else {@code -(insertion point) -
+	 *         1}.
+	 */
+	private int indexOf(final String name) {
+
+		int low = 0;
+		int high = size - 1;
+
+		while (low <= high) {
+
+			int mid = (low + high) >>> 1;
+
+			int cmp = String.CASE_INSENSITIVE_ORDER.compare(names[mid], name);
+
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+
+	/**
+	 * Removes the header at the specified index.
+	 *
+	 * @param index The header index.
+	 */
+	private void removeAt(final int index) {
+
+		int tail = size - index - 1;
+
+		if (tail > 0) {
+			System.arraycopy(names, index + 1, names, index, tail);
+			System.arraycopy(values, index + 1, values, index, tail);
+		}
+
+		size--;
+		names[size] = null;
+		values[size] = null;
+	}
+
+
+	@Override
+	public int size() {
+
+		return size;
+	}
+
+
+	@Override
+	public boolean containsKey(final Object key) {
+
+		return key instanceof String && indexOf((String)key) >= 0;
+	}
+
+
+	@Override
+	public String get(final Object key) {
+
+		if (! (key instanceof String)) {
+			return null;
+		}
+
+		int index = indexOf((String)key);
+
+		return index >= 0 ? values[index] : null;
+	}
+
+
+	@Override
+	public String put(final String name, final String value) {
+
+		if (name == null || value == null) {
+			throw new NullPointerException();
+		}
+
+		int index = indexOf(name);
+
+		if (index >= 0) {
+			String previous = values[index];
+			values[index] = value;
+			return previous;
+		}
+
+		index = -(index + 1);
+
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+
+		System.arraycopy(names, index, names, index + 1, size - index);
+		System.arraycopy(values, index, values, index + 1, size - index);
+
+		names[index] = name;
+		values[index] = value;
+		size++;
+
+		return null;
+	}
+
+
+	@Override
+	public String remove(final Object key) {
+
+		if (! (key instanceof String)) {
+			return null;
+		}
+
+		int index = indexOf((String)key);
+
+		if (index < 0) {
+			return null;
+		}
+
+		String previous = values[index];
+		removeAt(index);
+		return previous;
+	}
+
+
+	@Override
+	public void clear() {
+
+		Arrays.fill(names, 0, size, null);
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+
+
+	@Override
+	public Set<Map.Entry<String,String>> entrySet() {
+
+		return new AbstractSet<Map.Entry<String,String>>() {
+
+			@Override
+			public int size() {
+
+				return size;
+			}
+
+
+			@Override
+			public Iterator<Map.Entry<String,String>> iterator() {
+
+				return new EntryIterator();
+			}
+		};
+	}
+
+
+	/**
+	 * Iterator over the header entries.
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<String,String>> {
+
+
+		/**
+		 * The index of the next entry.
+		 */
+		private int next = 0;
+
+
+		/**
+		 * The index of the last returned entry, -1 if none.
+		 */
+		private int last = -1;
+
+
+		/**
+		 * The expected number of headers, to detect concurrent
+		 * modification.
+		 */
+		private int expectedSize = size;
+
+
+		@Override
+		public boolean hasNext() {
+
+			return next < size;
+		}
+
+
+		@Override
+		public Map.Entry<String,String> next() {
+
+			if (expectedSize != size) {
+				throw new ConcurrentModificationException();
+			}
+
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+
+			last = next++;
+
+			final int index = last;
+
+			return new AbstractMap.SimpleEntry<String,String>(names[index], values[index]) {
+
+				@Override
+				public String setValue(final String value) {
+
+					if (value == null) {
+						throw new NullPointerException();
+					}
+
+					values[index] = value;
+					return super.setValue(value);
+				}
+			};
+		}
+
+
+		@Override
+		public void remove() {
+
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+
+			if (expectedSize != size) {
+				throw new ConcurrentModificationException();
+			}
+
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedSize = size;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * HTTP listener collecting per endpoint role latency histograms, in
+ * microseconds, together with status class and error counts. Percentiles
+ * can be exported from the histograms without a metrics library.
+ */
+@ThreadSafe
+public class HistogramHTTPListener implements HTTPListener {
+
+
+	/**
+	 * The total latency histograms, by endpoint role.
+	 */
+	private final Map<EndpointRole,ConcurrentHistogram> latencies = new EnumMap<>(EndpointRole.class);
+
+
+	/**
+	 * The time to first byte histograms, by endpoint role.
+	 */
+	private final Map<EndpointRole,ConcurrentHistogram> waitTimes = new EnumMap<>(EndpointRole.class);
+
+
+	/**
+	 * The counts of status classes 1xx to 5xx (indices 0 to 4) and of
+	 * errors (index 5), by endpoint role.
+	 */
+	private final Map<EndpointRole,AtomicLongArray> counts = new EnumMap<>(EndpointRole.class);
+
+
+	/**
+	 * Creates a new HTTP listener collecting latency histograms.
+	 */
+	public HistogramHTTPListener() {
+
+		for (EndpointRole role: EndpointRole.values()) {
+			latencies.put(role, new ConcurrentHistogram());
+			waitTimes.put(role, new ConcurrentHistogram());
+			counts.put(role, new AtomicLongArray(6));
+		}
+	}
+
+
+	@Override
+	public void onEvent(final HTTPEvent event) {
+
+		AtomicLongArray roleCounts = counts.get(event.getEndpointRole());
+
+		if (event.isError()) {
+			// Not counted by status class
+			roleCounts.incrementAndGet(5);
+			return;
+		}
+
+		int statusClass = event.getStatusCode() / 100;
+
+		if (statusClass >= 1 && statusClass <= 5) {
+			roleCounts.incrementAndGet(statusClass - 1);
+		}
+
+		latencies.get(event.getEndpointRole()).record(event.getTotalTime() / 1000L);
+
+		if (event.getWaitTime() >= 0L) {
+			waitTimes.get(event.getEndpointRole()).record(event.getWaitTime() / 1000L);
+		}
+	}
+
+
+	/**
+	 * Returns the total latency histogram, in microseconds, of the calls
+	 * which received a response.
+	 *
+	 * @param role The endpoint role. Must not be {@code null}.
+	 *
+	 * @return The histogram.
+	 */
+	public ConcurrentHistogram getLatencyHistogram(final EndpointRole role) {
+
+		return latencies.get(role);
+	}
+
+
+	/**
+	 * Returns the time to first byte histogram, in microseconds, of the
+	 * calls which received a response through one of the transports of
+	 * this package.
+	 *
+	 * @param role The endpoint role. Must not be {@code null}.
+	 *
+	 * @return The histogram.
+	 */
+	public ConcurrentHistogram getTimeToFirstByteHistogram(final EndpointRole role) {
+
+		return waitTimes.get(role);
+	}
+
+
+	/**
+	 * Returns the number of responses with the specified status class.
+	 *
+	 * @param role        The endpoint role. Must not be {@code null}.
+	 * @param statusClass The status class, 1 for 1xx to 5 for 5xx.
+	 *
+	 * @return The response count.
+	 */
+	public long getStatusCount(final EndpointRole role, final int statusClass) {
+
+		if (statusClass < 1 || statusClass > 5) {
+			throw new IllegalArgumentException("The status class must be between 1 and 5");
+		}
+
+		return counts.get(role).get(statusClass - 1);
+	}
+
+
+	/**
+	 * Returns the number of calls which failed with an error.
+	 *
+	 * @param role The endpoint role. Must not be {@code null}.
+	 *
+	 * @return The error count.
+	 */
+	public long getErrorCount(final EndpointRole role) {
+
+		return counts.get(role).get(5);
+	}
+
+
+	/**
+	 * Clears the histograms and counts.
+	 */
+	public void reset() {
+
+		for (EndpointRole role: EndpointRole.values()) {
+			latencies.get(role).reset();
+			waitTimes.get(role).reset();
+			AtomicLongArray roleCounts = counts.get(role);
+			for (int i=0; i < roleCounts.length(); i++) {
+				roleCounts.set(i, 0L);
+			}
+		}
+	}
+}
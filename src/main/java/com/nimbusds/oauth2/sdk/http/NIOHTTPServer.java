@@ -0,0 +1,1479 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Minimal embedded HTTP/1.1 server, for running OAuth 2.0 endpoints, such as
+ * token and token introspection, without a servlet container. Connections
+ * are accepted and read on a single selector thread, the request line,
+ * headers and body are parsed from pooled buffers directly into an
+ * {@link HTTPRequest}, which is then passed to the
+ * {@link HTTPRequestHandler handler} on a bounded thread pool. The
+ * {@link HTTPResponse} is written back with a gathering write.
+ *
+ * <p>Features and limitations:
+ *
+ * <ul>
+ *     <li>Plain HTTP only, TLS is expected to be terminated in front of the
+ *         server. The request URL always has the {@code http} scheme and
+ *         the host of the {@code Host} header.
+ *     <li>GET, POST, PUT and DELETE requests, with bodies delimited by
+ *         {@code Content-Length}. Chunked request bodies are refused with
+ *         HTTP 501.
+ *     <li>Persistent connections (keep-alive), closed after the
+ *         {@link Builder#keepAliveTimeout keep-alive timeout}. Pipelined
+ *         requests are processed one at a time.
+ *     <li>Request header and entity body size limits, exceeding them
+ *         results in HTTP 431 and HTTP 413 respectively.
+ * </ul>
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * NIOHTTPServer server = new NIOHTTPServer.Builder(new HTTPRequestHandler() {
+ *     public HTTPResponse handle(HTTPRequest httpRequest) throws Exception {
+ *         TokenRequest tokenRequest = TokenRequest.parse(httpRequest);
+ *         ...
+ *         return tokenResponse.toHTTPResponse();
+ *     }
+ *   })
+ *   .port(8080)
+ *   .build();
+ *
+ * server.start();
+ * </pre>
+ */
+@ThreadSafe
+public class NIOHTTPServer {
+
+
+	/**
+	 * The default maximum request entity body length, in bytes.
+	 */
+	public static final int DEFAULT_MAX_ENTITY_LENGTH = 64 * 1024;
+
+
+	/**
+	 * The default maximum length of the request line and headers, in
+	 * bytes.
+	 */
+	public static final int DEFAULT_MAX_HEADER_LENGTH = 8 * 1024;
+
+
+	/**
+	 * The default keep-alive timeout, in milliseconds.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE_TIMEOUT = 30000L;
+
+
+	/**
+	 * The maximum number of pooled read buffers.
+	 */
+	private static final int MAX_POOLED_BUFFERS = 64;
+
+
+	/**
+	 * The capacity of the default executor queue.
+	 */
+	private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+
+	/**
+	 * The charset of the request and status lines and headers.
+	 */
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+
+	/**
+	 * The interim response to an {@code Expect: 100-continue} request.
+	 */
+	private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(ISO_8859_1);
+
+
+	/**
+	 * Builder of embedded HTTP servers.
+	 */
+	public static class Builder {
+
+
+		/**
+		 * The request handler.
+		 */
+		private final HTTPRequestHandler handler;
+
+
+		/**
+		 * The bind address, {@code null} for the wildcard address.
+		 */
+		private InetAddress bindAddress;
+
+
+		/**
+		 * The port, zero for an ephemeral port.
+		 */
+		private int port = 0;
+
+
+		/**
+		 * The executor for the request handler.
+		 */
+		private Executor executor;
+
+
+		/**
+		 * The maximum request entity body length.
+		 */
+		private int maxEntityLength = DEFAULT_MAX_ENTITY_LENGTH;
+
+
+		/**
+		 * The maximum length of the request line and headers.
+		 */
+		private int maxHeaderLength = DEFAULT_MAX_HEADER_LENGTH;
+
+
+		/**
+		 * The keep-alive timeout.
+		 */
+		private long keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+
+
+		/**
+		 * Creates a new embedded HTTP server builder.
+		 *
+		 * @param handler The HTTP request handler. Must not be
+		 *                {@code null}.
+		 */
+		public Builder(final HTTPRequestHandler handler) {
+
+			if (handler == null) {
+				throw new IllegalArgumentException("The HTTP request handler must not be null");
+			}
+
+			this.handler = handler;
+		}
+
+
+		/**
+		 * Sets the local address to bind to. The wildcard address is
+		 * used if not set.
+		 *
+		 * @param bindAddress The bind address, {@code null} for the
+		 *                    wildcard address.
+		 *
+		 * @return This builder.
+		 */
+		public Builder bindAddress(final InetAddress bindAddress) {
+
+			this.bindAddress = bindAddress;
+			return this;
+		}
+
+
+		/**
+		 * Sets the port to listen on. An ephemeral port is chosen if
+		 * not set.
+		 *
+		 * @param port The port, zero for an ephemeral port. Must be
+		 *             between zero and 65535.
+		 *
+		 * @return This builder.
+		 */
+		public Builder port(final int port) {
+
+			if (port < 0 || port > 65535) {
+				throw new IllegalArgumentException("The port must be between 0 and 65535");
+			}
+
+			this.port = port;
+			return this;
+		}
+
+
+		/**
+		 * Sets the executor to invoke the request handler on. If not
+		 * set a pool of two threads per processor with a bounded
+		 * queue is used. Requests rejected by the executor are
+		 * answered with HTTP 503.
+		 *
+		 * @param executor The executor, {@code null} for the default.
+		 *
+		 * @return This builder.
+		 */
+		public Builder executor(final Executor executor) {
+
+			this.executor = executor;
+			return this;
+		}
+
+
+		/**
+		 * Sets the maximum request entity body length. Corresponds to
+		 * {@link #DEFAULT_MAX_ENTITY_LENGTH} if not set.
+		 *
+		 * @param maxEntityLength The maximum entity body length, in
+		 *                        bytes. Must not be negative.
+		 *
+		 * @return This builder.
+		 */
+		public Builder maxEntityLength(final int maxEntityLength) {
+
+			if (maxEntityLength < 0) {
+				throw new IllegalArgumentException("The maximum entity length must not be negative");
+			}
+
+			this.maxEntityLength = maxEntityLength;
+			return this;
+		}
+
+
+		/**
+		 * Sets the maximum length of the request line and headers,
+		 * which is also the size of the pooled read buffers.
+		 * Corresponds to {@link #DEFAULT_MAX_HEADER_LENGTH} if not set.
+		 *
+		 * @param maxHeaderLength The maximum header length, in bytes.
+		 *                        Must be at least 256.
+		 *
+		 * @return This builder.
+		 */
+		public Builder maxHeaderLength(final int maxHeaderLength) {
+
+			if (maxHeaderLength < 256) {
+				throw new IllegalArgumentException("The maximum header length must be at least 256 bytes");
+			}
+
+			this.maxHeaderLength = maxHeaderLength;
+			return this;
+		}
+
+
+		/**
+		 * Sets the time after which idle connections, and connections
+		 * with an incomplete request or an unread response, are
+		 * closed. Corresponds to {@link #DEFAULT_KEEP_ALIVE_TIMEOUT}
+		 * if not set.
+		 *
+		 * @param keepAliveTimeout The keep-alive timeout, in
+		 *                         milliseconds. Must be positive.
+		 *
+		 * @return This builder.
+		 */
+		public Builder keepAliveTimeout(final long keepAliveTimeout) {
+
+			if (keepAliveTimeout < 1) {
+				throw new IllegalArgumentException("The keep-alive timeout must be positive");
+			}
+
+			this.keepAliveTimeout = keepAliveTimeout;
+			return this;
+		}
+
+
+		/**
+		 * Builds a new embedded HTTP server. The server must be
+		 * {@link NIOHTTPServer#start started}.
+		 *
+		 * @return The embedded HTTP server.
+		 */
+		public NIOHTTPServer build() {
+
+			return new NIOHTTPServer(this);
+		}
+	}
+
+
+	/**
+	 * The state of a connection.
+	 */
+	private enum State {
+
+		/**
+		 * Reading the request line and headers.
+		 */
+		READING_HEAD,
+
+
+		/**
+		 * Reading the request entity body.
+		 */
+		READING_BODY,
+
+
+		/**
+		 * The request is being handled.
+		 */
+		HANDLING,
+
+
+		/**
+		 * Writing the response.
+		 */
+		WRITING
+	}
+
+
+	/**
+	 * Client connection. Accessed by the selector thread, except for the
+	 * response buffers which are handed over from the handler thread.
+	 */
+	private final class Connection {
+
+
+		private final SocketChannel channel;
+
+
+		private final SelectionKey key;
+
+
+		/**
+		 * The pooled read buffer, in fill mode, {@code null} once
+		 * released.
+		 */
+		private ByteBuffer in;
+
+
+		private State state = State.READING_HEAD;
+
+
+		/**
+		 * The position from which to search for the end of the head.
+		 */
+		private int scanFrom = 0;
+
+
+		/**
+		 * The request being read, {@code null} if none.
+		 */
+		private HTTPRequest request;
+
+
+		/**
+		 * The request entity body.
+		 */
+		private byte[] body;
+
+
+		/**
+		 * The number of body bytes read.
+		 */
+		private int bodyPos;
+
+
+		/**
+		 * {@code true} if the request is HTTP/1.0.
+		 */
+		private boolean http10;
+
+
+		/**
+		 * {@code true} if the connection may be kept alive after the
+		 * response.
+		 */
+		private boolean keepAlive;
+
+
+		/**
+		 * The response buffers, {@code null} if none.
+		 */
+		private ByteBuffer[] out;
+
+
+		/**
+		 * {@code true} to close the connection after writing the
+		 * response.
+		 */
+		private boolean closeAfterWrite;
+
+
+		/**
+		 * The time of the last activity, in milliseconds since the
+		 * epoch.
+		 */
+		private long lastActivity = System.currentTimeMillis();
+
+
+		private Connection(final SocketChannel channel, final SelectionKey key, final ByteBuffer in) {
+
+			this.channel = channel;
+			this.key = key;
+			this.in = in;
+		}
+
+
+		/**
+		 * Resets the connection for the next request.
+		 */
+		private void reset() {
+
+			state = State.READING_HEAD;
+			scanFrom = 0;
+			request = null;
+			body = null;
+			bodyPos = 0;
+			out = null;
+			closeAfterWrite = false;
+		}
+	}
+
+
+	/**
+	 * The request handler.
+	 */
+	private final HTTPRequestHandler handler;
+
+
+	/**
+	 * The bind address, {@code null} for the wildcard address.
+	 */
+	private final InetAddress bindAddress;
+
+
+	/**
+	 * The configured port.
+	 */
+	private final int port;
+
+
+	/**
+	 * The configured executor, {@code null} for the default.
+	 */
+	private final Executor configuredExecutor;
+
+
+	/**
+	 * The maximum request entity body length.
+	 */
+	private final int maxEntityLength;
+
+
+	/**
+	 * The maximum length of the request line and headers.
+	 */
+	private final int maxHeaderLength;
+
+
+	/**
+	 * The keep-alive timeout.
+	 */
+	private final long keepAliveTimeout;
+
+
+	/**
+	 * The pooled read buffers, accessed by the selector thread only.
+	 */
+	private final Deque<ByteBuffer> bufferPool = new ArrayDeque<>();
+
+
+	/**
+	 * The connections with a handled request, to be written by the
+	 * selector thread.
+	 */
+	private final Queue<Connection> handled = new ConcurrentLinkedQueue<>();
+
+
+	/**
+	 * The number of open connections.
+	 */
+	private final AtomicInteger connectionCount = new AtomicInteger();
+
+
+	/**
+	 * The executor for the request handler while the server is running.
+	 */
+	private Executor executor;
+
+
+	/**
+	 * The selector while the server is running.
+	 */
+	private Selector selector;
+
+
+	/**
+	 * The server socket channel while the server is running.
+	 */
+	private ServerSocketChannel serverChannel;
+
+
+	/**
+	 * The selector thread while the server is running.
+	 */
+	private Thread selectorThread;
+
+
+	/**
+	 * The local port while the server is running, -1 if not running.
+	 */
+	private volatile int localPort = -1;
+
+
+	/**
+	 * {@code true} while the server is running.
+	 */
+	private volatile boolean running = false;
+
+
+	/**
+	 * Creates a new embedded HTTP server.
+	 *
+	 * @param builder The builder.
+	 */
+	private NIOHTTPServer(final Builder builder) {
+
+		handler = builder.handler;
+		bindAddress = builder.bindAddress;
+		port = builder.port;
+		configuredExecutor = builder.executor;
+		maxEntityLength = builder.maxEntityLength;
+		maxHeaderLength = builder.maxHeaderLength;
+		keepAliveTimeout = builder.keepAliveTimeout;
+	}
+
+
+	/**
+	 * Returns the request entity body length limit.
+	 *
+	 * @return The maximum entity body length, in bytes.
+	 */
+	public int getMaxEntityLength() {
+
+		return maxEntityLength;
+	}
+
+
+	/**
+	 * Returns the request line and headers length limit.
+	 *
+	 * @return The maximum header length, in bytes.
+	 */
+	public int getMaxHeaderLength() {
+
+		return maxHeaderLength;
+	}
+
+
+	/**
+	 * Returns the keep-alive timeout.
+	 *
+	 * @return The keep-alive timeout, in milliseconds.
+	 */
+	public long getKeepAliveTimeout() {
+
+		return keepAliveTimeout;
+	}
+
+
+	/**
+	 * Returns the local port of the server.
+	 *
+	 * @return The local port, -1 if the server isn't running.
+	 */
+	public int getPort() {
+
+		return localPort;
+	}
+
+
+	/**
+	 * Returns {@code true} if the server is running.
+	 *
+	 * @return {@code true} if running, else {@code false}.
+	 */
+	public boolean isRunning() {
+
+		return running;
+	}
+
+
+	/**
+	 * Returns the number of open client connections.
+	 *
+	 * @return The number of open connections.
+	 */
+	public int getConnectionCount() {
+
+		return connectionCount.get();
+	}
+
+
+	/**
+	 * Starts the server.
+	 *
+	 * @throws IOException If the server socket couldn't be bound.
+	 */
+	public synchronized void start()
+		throws IOException {
+
+		if (running) {
+			throw new IllegalStateException("The HTTP server is already running");
+		}
+
+		selector = Selector.open();
+
+		try {
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.configureBlocking(false);
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(bindAddress, port));
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			closeQuietly(serverChannel);
+			closeQuietly(selector);
+			throw e;
+		}
+
+		localPort = serverChannel.socket().getLocalPort();
+
+		executor = configuredExecutor != null ? configuredExecutor : createDefaultExecutor();
+
+		running = true;
+
+		selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runSelector();
+			}
+		}, "oauth2-oidc-sdk-http-server-" + localPort);
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+
+	/**
+	 * Stops the server, closing all connections. Requests being handled
+	 * are not answered. The default executor is shut down.
+	 */
+	public synchronized void stop() {
+
+		if (! running) {
+			return;
+		}
+
+		running = false;
+		selector.wakeup();
+
+		try {
+			selectorThread.join(5000L);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (executor != configuredExecutor) {
+			((ExecutorService)executor).shutdown();
+		}
+
+		executor = null;
+		selectorThread = null;
+		localPort = -1;
+	}
+
+
+	/**
+	 * Creates the default executor, with two threads per processor and a
+	 * bounded queue.
+	 *
+	 * @return The executor.
+	 */
+	private Executor createDefaultExecutor() {
+
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+		final AtomicInteger threadCount = new AtomicInteger();
+
+		return new ThreadPoolExecutor(
+			threads, threads,
+			60L, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_CAPACITY),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(r, "oauth2-oidc-sdk-http-server-" + localPort + "-worker-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+
+	/**
+	 * The selector loop.
+	 */
+	private void runSelector() {
+
+		// Also the interval for checking expired connections
+		long selectTimeout = Math.min(1000L, keepAliveTimeout);
+
+		long lastExpiryCheck = System.currentTimeMillis();
+
+		while (running) {
+
+			try {
+				selector.select(selectTimeout);
+			} catch (IOException e) {
+				break;
+			}
+
+			Connection conn;
+
+			while ((conn = handled.poll()) != null) {
+				startWriting(conn);
+			}
+
+			for (SelectionKey key: selector.selectedKeys()) {
+
+				if (! key.isValid()) {
+					continue;
+				}
+
+				if (key.isAcceptable()) {
+					accept();
+					continue;
+				}
+
+				conn = (Connection)key.attachment();
+
+				try {
+					if (key.isReadable()) {
+						onReadable(conn);
+					} else if (key.isWritable()) {
+						onWritable(conn);
+					}
+				} catch (IOException | RuntimeException e) {
+					close(conn);
+				}
+			}
+
+			selector.selectedKeys().clear();
+
+			// Not on every wake-up, iterates all connections
+			long now = System.currentTimeMillis();
+
+			if (now - lastExpiryCheck >= selectTimeout) {
+				lastExpiryCheck = now;
+				closeExpired(now);
+			}
+		}
+
+		// Shut down
+		for (SelectionKey key: selector.keys()) {
+			if (key.attachment() instanceof Connection) {
+				close((Connection)key.attachment());
+			}
+		}
+
+		closeQuietly(serverChannel);
+		closeQuietly(selector);
+	}
+
+
+	/**
+	 * Accepts a new connection.
+	 */
+	private void accept() {
+
+		SocketChannel channel;
+
+		try {
+			channel = serverChannel.accept();
+		} catch (IOException e) {
+			return;
+		}
+
+		if (channel == null) {
+			return;
+		}
+
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(channel, key, acquireBuffer()));
+			connectionCount.incrementAndGet();
+		} catch (IOException e) {
+			closeQuietly(channel);
+		}
+	}
+
+
+	/**
+	 * Reads from a connection.
+	 */
+	private void onReadable(final Connection conn)
+		throws IOException {
+
+		if (conn.channel.read(conn.in) < 0) {
+			close(conn);
+			return;
+		}
+
+		conn.lastActivity = System.currentTimeMillis();
+
+		process(conn);
+	}
+
+
+	/**
+	 * Processes the buffered input of a connection.
+	 */
+	private void process(final Connection conn)
+		throws IOException {
+
+		if (conn.state == State.READING_HEAD && ! readHead(conn)) {
+			return;
+		}
+
+		if (conn.state == State.READING_BODY) {
+			readBody(conn);
+		}
+	}
+
+
+	/**
+	 * Reads the request line and headers of a connection, if buffered
+	 * completely.
+	 *
+	 * @return {@code true} if the head was read, {@code false} if more
+	 *         input is needed or the request was refused.
+	 */
+	private boolean readHead(final Connection conn)
+		throws IOException {
+
+		ByteBuffer in = conn.in;
+
+		int end = findHeadEnd(in.array(), conn.scanFrom, in.position());
+
+		if (end < 0) {
+
+			if (! in.hasRemaining()) {
+				respond(conn, createErrorResponse(431), true);
+			} else {
+				conn.scanFrom = Math.max(0, in.position() - 3);
+			}
+
+			return false;
+		}
+
+		String head = new String(in.array(), 0, end, ISO_8859_1);
+
+		in.flip();
+		in.position(end);
+		in.compact();
+		conn.scanFrom = 0;
+
+		int status = parseHead(conn, head);
+
+		if (status != 0) {
+			respond(conn, createErrorResponse(status), true);
+			return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Finds the end of the request head, after the empty line.
+	 *
+	 * @param buf  The buffer.
+	 * @param from The position to search from.
+	 * @param to   The buffered length.
+	 *
+	 * @return The position after the empty line, -1 if not found.
+	 */
+	static int findHeadEnd(final byte[] buf, final int from, final int to) {
+
+		for (int i=from; i + 3 < to; i++) {
+
+			if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') {
+				return i + 4;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Parses the request line and headers into a new HTTP request.
+	 *
+	 * @param conn The connection.
+	 * @param head The request head, ending with an empty line.
+	 *
+	 * @return Zero if the head is accepted, else the HTTP status code to
+	 *         refuse the request with.
+	 */
+	private int parseHead(final Connection conn, final String head)
+		throws IOException {
+
+		String[] lines = head.split("\r\n");
+
+		int lineIndex = 0;
+
+		// Ignore empty lines before the request line, RFC 7230 3.5
+		while (lineIndex < lines.length && lines[lineIndex].isEmpty()) {
+			lineIndex++;
+		}
+
+		if (lineIndex == lines.length) {
+			return 400;
+		}
+
+		String[] requestLine = lines[lineIndex++].split(" ");
+
+		if (requestLine.length != 3) {
+			return 400;
+		}
+
+		String version = requestLine[2];
+
+		if (! version.startsWith("HTTP/1.")) {
+			return 505;
+		}
+
+		conn.http10 = version.equals("HTTP/1.0");
+
+		HTTPRequest.Method method;
+
+		try {
+			method = HTTPRequest.Method.valueOf(requestLine[0]);
+		} catch (IllegalArgumentException e) {
+			return 501;
+		}
+
+		Map<String,String> headers = new HeaderMap();
+
+		for (int i=lineIndex; i < lines.length; i++) {
+
+			String line = lines[i];
+
+			int colon = line.indexOf(':');
+
+			if (colon < 1) {
+				return 400;
+			}
+
+			String name = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+
+			String previous = headers.get(name);
+			headers.put(name, previous != null ? previous + ", " + value : value);
+		}
+
+		// Request target
+		String target = requestLine[1];
+		String path;
+		String host = headers.get("Host");
+
+		if (target.startsWith("/")) {
+			path = target;
+		} else if (target.startsWith("http://") || target.startsWith("https://")) {
+			int pathStart = target.indexOf('/', target.indexOf("//") + 2);
+			host = pathStart > 0 ? target.substring(target.indexOf("//") + 2, pathStart) : target.substring(target.indexOf("//") + 2);
+			path = pathStart > 0 ? target.substring(pathStart) : "/";
+		} else {
+			return 400;
+		}
+
+		if (host == null || host.isEmpty()) {
+			host = getLocalHost(conn);
+		}
+
+		String query = null;
+
+		int queryStart = path.indexOf('?');
+
+		if (queryStart >= 0) {
+			query = path.substring(queryStart + 1);
+			path = path.substring(0, queryStart);
+		}
+
+		URL url;
+
+		try {
+			url = new URL("http://" + host + path);
+		} catch (MalformedURLException e) {
+			return 400;
+		}
+
+		// Entity body
+		if (headers.get("Transfer-Encoding") != null) {
+			return 501;
+		}
+
+		long contentLength = 0L;
+
+		String contentLengthValue = headers.get("Content-Length");
+
+		if (contentLengthValue != null) {
+			try {
+				contentLength = Long.parseLong(contentLengthValue);
+			} catch (NumberFormatException e) {
+				return 400;
+			}
+
+			if (contentLength < 0L) {
+				return 400;
+			}
+
+			if (contentLength > maxEntityLength) {
+				return 413;
+			}
+		}
+
+		String connection = headers.get("Connection");
+
+		if (conn.http10) {
+			conn.keepAlive = connection != null && connection.toLowerCase().contains("keep-alive");
+		} else {
+			conn.keepAlive = connection == null || ! connection.toLowerCase().contains("close");
+		}
+
+		HTTPRequest request = new HTTPRequest(method, url);
+
+		for (Map.Entry<String,String> header: headers.entrySet()) {
+			request.setHeader(header.getKey(), header.getValue());
+		}
+
+		if (query != null && (method.equals(HTTPRequest.Method.GET) || method.equals(HTTPRequest.Method.DELETE))) {
+			request.setQuery(query);
+		}
+
+		conn.request = request;
+		conn.body = new byte[(int)contentLength];
+		conn.bodyPos = 0;
+		conn.state = State.READING_BODY;
+
+		String expect = headers.get("Expect");
+
+		if (expect != null && expect.equalsIgnoreCase("100-continue") && conn.in.position() < contentLength) {
+			// Best effort, the client proceeds after a timeout anyway
+			conn.channel.write(ByteBuffer.wrap(CONTINUE));
+		}
+
+		return 0;
+	}
+
+
+	/**
+	 * Returns the local address of a connection, for requests without a
+	 * {@code Host} header.
+	 */
+	private static String getLocalHost(final Connection conn) {
+
+		InetAddress address = conn.channel.socket().getLocalAddress();
+
+		String host = address.getHostAddress();
+
+		if (address instanceof Inet6Address) {
+			int scope = host.indexOf('%');
+			host = "[" + (scope > 0 ? host.substring(0, scope) : host) + "]";
+		}
+
+		return host + ":" + conn.channel.socket().getLocalPort();
+	}
+
+
+	/**
+	 * Copies the buffered body bytes of a connection and dispatches the
+	 * request once the body is complete.
+	 */
+	private void readBody(final Connection conn) {
+
+		ByteBuffer in = conn.in;
+
+		in.flip();
+		int n = Math.min(in.remaining(), conn.body.length - conn.bodyPos);
+		in.get(conn.body, conn.bodyPos, n);
+		in.compact();
+
+		conn.bodyPos += n;
+
+		if (conn.bodyPos < conn.body.length) {
+			return;
+		}
+
+		HTTPRequest request = conn.request;
+
+		if (conn.body.length > 0 && (request.getMethod().equals(HTTPRequest.Method.POST) || request.getMethod().equals(HTTPRequest.Method.PUT))) {
+			request.setQuery(ContentReader.decode(conn.body, request.getContentType()));
+		}
+
+		conn.body = null;
+
+		dispatch(conn);
+	}
+
+
+	/**
+	 * Dispatches the request of a connection to the handler.
+	 */
+	private void dispatch(final Connection conn) {
+
+		conn.state = State.HANDLING;
+		conn.key.interestOps(0);
+
+		final HTTPRequest httpRequest = conn.request;
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+
+					HTTPResponse httpResponse = null;
+
+					try {
+						httpResponse = handler.handle(httpRequest);
+					} catch (Exception e) {
+						// Responded with 500
+					} finally {
+						// Also on Error, so the connection is
+						// never left in the handling state
+						completeHandling(conn, httpResponse);
+					}
+				}
+			});
+
+		} catch (RejectedExecutionException e) {
+
+			respond(conn, createErrorResponse(503), true);
+		}
+	}
+
+
+	/**
+	 * Hands the response of a handled request over to the selector
+	 * thread for writing. Responds with HTTP 500 if the handler returned
+	 * no response or one which couldn't be serialised.
+	 */
+	private void completeHandling(final Connection conn, final HTTPResponse httpResponse) {
+
+		ByteBuffer[] out = null;
+
+		if (httpResponse != null) {
+			try {
+				out = toByteBuffers(httpResponse, conn.http10, ! conn.keepAlive);
+			} catch (RuntimeException e) {
+				// Responded with 500
+			}
+		}
+
+		if (out == null) {
+			out = toByteBuffers(createErrorResponse(500), conn.http10, ! conn.keepAlive);
+		}
+
+		conn.out = out;
+		conn.closeAfterWrite = ! conn.keepAlive;
+		handled.add(conn);
+		selector.wakeup();
+	}
+
+
+	/**
+	 * Writes a response on the selector thread.
+	 */
+	private void respond(final Connection conn, final HTTPResponse httpResponse, final boolean close) {
+
+		conn.out = toByteBuffers(httpResponse, conn.http10, close);
+		conn.closeAfterWrite = close;
+		startWriting(conn);
+	}
+
+
+	/**
+	 * Starts writing the response of a connection.
+	 */
+	private void startWriting(final Connection conn) {
+
+		if (! conn.key.isValid()) {
+			close(conn);
+			return;
+		}
+
+		conn.state = State.WRITING;
+
+		try {
+			onWritable(conn);
+		} catch (IOException | RuntimeException e) {
+			close(conn);
+		}
+	}
+
+
+	/**
+	 * Writes the pending response of a connection.
+	 */
+	private void onWritable(final Connection conn)
+		throws IOException {
+
+		conn.channel.write(conn.out);
+
+		if (conn.out[conn.out.length - 1].hasRemaining()) {
+			conn.key.interestOps(SelectionKey.OP_WRITE);
+			return;
+		}
+
+		conn.lastActivity = System.currentTimeMillis();
+
+		if (conn.closeAfterWrite) {
+			close(conn);
+			return;
+		}
+
+		conn.reset();
+		conn.key.interestOps(SelectionKey.OP_READ);
+
+		if (conn.in.position() > 0) {
+			// Pipelined request
+			process(conn);
+		}
+	}
+
+
+	/**
+	 * Closes the connections which exceeded the keep-alive timeout while
+	 * reading a request or writing a response.
+	 *
+	 * @param now The current time, in milliseconds since the epoch.
+	 */
+	private void closeExpired(final long now) {
+
+		List<Connection> expired = new ArrayList<>();
+
+		for (SelectionKey key: selector.keys()) {
+
+			if (! (key.attachment() instanceof Connection)) {
+				continue;
+			}
+
+			Connection conn = (Connection)key.attachment();
+
+			if (conn.state != State.HANDLING && now - conn.lastActivity > keepAliveTimeout) {
+				expired.add(conn);
+			}
+		}
+
+		for (Connection conn: expired) {
+			close(conn);
+		}
+	}
+
+
+	/**
+	 * Closes a connection and releases its buffer.
+	 */
+	private void close(final Connection conn) {
+
+		if (conn.in == null) {
+			return; // already closed
+		}
+
+		// Count down before the peer can observe the close
+		connectionCount.decrementAndGet();
+		conn.key.cancel();
+		closeQuietly(conn.channel);
+		releaseBuffer(conn.in);
+		conn.in = null;
+	}
+
+
+	/**
+	 * Acquires a read buffer from the pool.
+	 */
+	private ByteBuffer acquireBuffer() {
+
+		ByteBuffer buffer = bufferPool.pollFirst();
+
+		if (buffer == null) {
+			return ByteBuffer.allocate(maxHeaderLength);
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+
+	/**
+	 * Returns a read buffer to the pool.
+	 */
+	private void releaseBuffer(final ByteBuffer buffer) {
+
+		if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+			bufferPool.addFirst(buffer);
+		}
+	}
+
+
+	/**
+	 * Serialises the specified HTTP response.
+	 *
+	 * @param httpResponse The HTTP response.
+	 * @param http10       {@code true} if the request was HTTP/1.0.
+	 * @param close        {@code true} if the connection is closed after
+	 *                     the response.
+	 *
+	 * @return The buffers of the status line and headers and of the
+	 *         entity body, if any.
+	 */
+	static ByteBuffer[] toByteBuffers(final HTTPResponse httpResponse,
+					  final boolean http10,
+					  final boolean close) {
+
+		int statusCode = httpResponse.getStatusCode();
+
+		boolean bodyAllowed = statusCode >= 200 && statusCode != 204 && statusCode != 304;
+
+		byte[] body = null;
+
+		if (bodyAllowed && httpResponse.getContent() != null) {
+			body = httpResponse.getContent().getBytes(ContentReader.getCharset(httpResponse.getContentType()));
+		}
+
+		String reason = httpResponse.getStatusMessage() != null ? httpResponse.getStatusMessage() : getReasonPhrase(statusCode);
+
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("HTTP/1.1 ").append(statusCode).append(' ').append(reason).append("\r\n");
+
+		for (Map.Entry<String,String> header: httpResponse.getHeaders().entrySet()) {
+
+			String name = header.getKey();
+
+			if (name.equalsIgnoreCase("Content-Length") ||
+			    name.equalsIgnoreCase("Transfer-Encoding") ||
+			    name.equalsIgnoreCase("Connection")) {
+				continue; // set by the server
+			}
+
+			sb.append(name).append(": ").append(header.getValue()).append("\r\n");
+		}
+
+		if (bodyAllowed) {
+			sb.append("Content-Length: ").append(body != null ? body.length : 0).append("\r\n");
+		}
+
+		if (close) {
+			sb.append("Connection: close\r\n");
+		} else if (http10) {
+			sb.append("Connection: keep-alive\r\n");
+		}
+
+		sb.append("\r\n");
+
+		ByteBuffer headBuffer = ByteBuffer.wrap(sb.toString().getBytes(ISO_8859_1));
+
+		if (body == null || body.length == 0) {
+			return new ByteBuffer[]{headBuffer};
+		}
+
+		return new ByteBuffer[]{headBuffer, ByteBuffer.wrap(body)};
+	}
+
+
+	/**
+	 * Creates an error response without a body.
+	 *
+	 * @param statusCode The HTTP status code.
+	 *
+	 * @return The HTTP response.
+	 */
+	private static HTTPResponse createErrorResponse(final int statusCode) {
+
+		return new HTTPResponse(statusCode);
+	}
+
+
+	/**
+	 * Returns the reason phrase for the specified status code.
+	 *
+	 * @param statusCode The HTTP status code.
+	 *
+	 * @return The reason phrase, empty if not known.
+	 */
+	static String getReasonPhrase(final int statusCode) {
+
+		switch (statusCode) {
+			case 200: return "OK";
+			case 201: return "Created";
+			case 204: return "No Content";
+			case 302: return "Found";
+			case 303: return "See Other";
+			case 304: return "Not Modified";
+			case 400: return "Bad Request";
+			case 401: return "Unauthorized";
+			case 403: return "Forbidden";
+			case 404: return "Not Found";
+			case 405: return "Method Not Allowed";
+			case 413: return "Payload Too Large";
+			case 431: return "Request Header Fields Too Large";
+			case 500: return "Internal Server Error";
+			case 501: return "Not Implemented";
+			case 503: return "Service Unavailable";
+			case 505: return "HTTP Version Not Supported";
+			default: return "";
+		}
+	}
+
+
+	/**
+	 * Closes the specified resource, ignoring exceptions.
+	 */
+	private static void closeQuietly(final java.io.Closeable closeable) {
+
+		if (closeable == null) {
+			return;
+		}
+
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
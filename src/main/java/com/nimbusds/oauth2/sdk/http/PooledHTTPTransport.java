@@ -0,0 +1,1140 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * HTTP/1.1 transport which keeps a bounded pool of persistent (keep-alive)
+ * connections for each route (scheme, host, port and TLS settings). Reused
+ * connections save the TCP and TLS handshakes for repeated calls to the same
+ * token, introspection or UserInfo endpoint.
+ *
+ * <p>Pool settings:
+ *
+ * <ul>
+ *     <li>The maximum number of connections per route, idle and in use.
+ *         Requests that find the limit reached wait for a connection to be
+ *         returned, up to the connect timeout of the request.
+ *     <li>The idle timeout, after which unused connections are closed. Idle
+ *         connections are evicted on each pool access, or explicitly with
+ *         {@link #evictIdleConnections}.
+ * </ul>
+ *
+ * <p>Idle connections are checked on lease and discarded if the server has
+ * closed them in the meantime, as many servers drop idle keep-alive
+ * connections well before the idle timeout. A request with an idempotent
+ * method which still fails on a reused connection, before any response was
+ * received, is retried once, on another idle connection or a new one.
+ * Non-idempotent requests, such as token POSTs, are never re-sent.
+ *
+ * <p>HTTP 3xx redirects are followed (unless disabled for the request) for
+ * the same protocol only, as with {@link HttpURLConnection}.
+ */
+@ThreadSafe
+public class PooledHTTPTransport implements HTTPTransport {
+
+
+	/**
+	 * The default maximum number of connections per route.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+
+
+	/**
+	 * The default idle timeout for pooled connections, in milliseconds.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+
+	/**
+	 * The read timeout for the staleness check of idle connections, in
+	 * milliseconds.
+	 */
+	private static final int STALE_CHECK_TIMEOUT = 1;
+
+
+	/**
+	 * The maximum number of HTTP 3xx redirects to follow.
+	 */
+	private static final int MAX_REDIRECTS = 5;
+
+
+	/**
+	 * The maximum length of a response status, header or chunk size
+	 * line, in characters.
+	 */
+	static final int MAX_LINE_LENGTH = 8192;
+
+
+	/**
+	 * The charset for the HTTP request and status lines and the headers.
+	 */
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+
+	/**
+	 * The maximum number of connections per route.
+	 */
+	private final int maxConnectionsPerRoute;
+
+
+	/**
+	 * The idle timeout, in milliseconds.
+	 */
+	private final long idleTimeout;
+
+
+	/**
+	 * The connection pools, keyed by route.
+	 */
+	private final ConcurrentMap<Route,RoutePool> pools = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Creates a new pooled HTTP transport with the default maximum
+	 * connections per route and idle timeout.
+	 */
+	public PooledHTTPTransport() {
+
+		this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_TIMEOUT);
+	}
+
+
+	/**
+	 * Creates a new pooled HTTP transport.
+	 *
+	 * @param maxConnectionsPerRoute The maximum number of connections per
+	 *                               route. Must be positive.
+	 * @param idleTimeout            The idle timeout for pooled
+	 *                               connections, in milliseconds. Must be
+	 *                               positive.
+	 */
+	public PooledHTTPTransport(final int maxConnectionsPerRoute, final long idleTimeout) {
+
+		if (maxConnectionsPerRoute < 1) {
+			throw new IllegalArgumentException("The maximum connections per route must be positive");
+		}
+
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+
+		if (idleTimeout < 1) {
+			throw new IllegalArgumentException("The idle timeout must be positive");
+		}
+
+		this.idleTimeout = idleTimeout;
+	}
+
+
+	/**
+	 * Returns the maximum number of connections per route.
+	 *
+	 * @return The maximum number of connections per route.
+	 */
+	public int getMaxConnectionsPerRoute() {
+
+		return maxConnectionsPerRoute;
+	}
+
+
+	/**
+	 * Returns the idle timeout for pooled connections.
+	 *
+	 * @return The idle timeout, in milliseconds.
+	 */
+	public long getIdleTimeout() {
+
+		return idleTimeout;
+	}
+
+
+	/**
+	 * Returns the number of idle connections, across all routes.
+	 *
+	 * @return The number of idle connections.
+	 */
+	public int getIdleConnectionCount() {
+
+		int count = 0;
+
+		for (RoutePool pool: pools.values()) {
+			count += pool.getIdleCount();
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Closes all connections which have been idle for longer than the
+	 * idle timeout.
+	 */
+	public void evictIdleConnections() {
+
+		final long now = System.currentTimeMillis();
+
+		for (RoutePool pool: pools.values()) {
+			pool.evict(now, false);
+		}
+	}
+
+
+	/**
+	 * Closes all idle connections. Connections currently in use are closed
+	 * when returned to the pool.
+	 */
+	public void close() {
+
+		for (RoutePool pool: pools.values()) {
+			pool.evict(System.currentTimeMillis(), true);
+		}
+	}
+
+
+	@Override
+	public HTTPResponse send(final HTTPRequest httpRequest,
+				 final HostnameVerifier hostnameVerifier,
+				 final SSLSocketFactory sslSocketFactory)
+		throws IOException {
+
+		URL url = httpRequest.getURL();
+
+		HTTPRequest.Method method = httpRequest.getMethod();
+
+		String target = url.getFile().isEmpty() ? "/" : url.getFile();
+
+		byte[] body = null;
+
+		if (httpRequest.getQuery() != null) {
+
+			if (method.equals(HTTPRequest.Method.GET) || method.equals(HTTPRequest.Method.DELETE)) {
+				// Append query string
+				target = target + '?' + httpRequest.getQuery();
+			} else {
+				body = httpRequest.getQuery().getBytes(ContentReader.getCharset(httpRequest.getContentType()));
+			}
+		}
+
+		for (int redirects=0; ; redirects++) {
+
+			Route route = new Route(url, hostnameVerifier, sslSocketFactory);
+
+			HTTPResponse response = execute(route, method.name(), target, httpRequest.getHeadersToSend(), body, httpRequest.getConnectTimeout(), httpRequest.getReadTimeout(), httpRequest.getResponseSizeLimit());
+
+			if (! httpRequest.getFollowRedirects() || redirects == MAX_REDIRECTS) {
+				return response;
+			}
+
+			final int statusCode = response.getStatusCode();
+
+			if (statusCode != 301 && statusCode != 302 && statusCode != 303 && statusCode != 307 && statusCode != 308) {
+				return response;
+			}
+
+			String location = response.getHeader("Location");
+
+			if (location == null) {
+				return response;
+			}
+
+			URL redirectURL;
+
+			try {
+				redirectURL = new URL(url, location);
+			} catch (MalformedURLException e) {
+				return response;
+			}
+
+			if (! redirectURL.getProtocol().equalsIgnoreCase(url.getProtocol())) {
+				return response; // no switching between http and https
+			}
+
+			if (statusCode == 307 || statusCode == 308) {
+				if (! method.equals(HTTPRequest.Method.GET)) {
+					return response;
+				}
+			} else {
+				// 301, 302 and 303 continue with GET
+				method = HTTPRequest.Method.GET;
+				body = null;
+			}
+
+			url = redirectURL;
+			target = url.getFile().isEmpty() ? "/" : url.getFile();
+		}
+	}
+
+
+	/**
+	 * Executes a single HTTP request / response exchange over a pooled
+	 * connection.
+	 *
+	 * @param route          The route. Must not be {@code null}.
+	 * @param method         The HTTP method. Must not be {@code null}.
+	 * @param target         The request target (path and query). Must not
+	 *                       be {@code null}.
+	 * @param headers        The request headers. Must not be
+	 *                       {@code null}.
+	 * @param body           The request body, {@code null} if none.
+	 * @param connectTimeout The connect timeout, in milliseconds, zero for
+	 *                       infinite.
+	 * @param readTimeout    The read timeout, in milliseconds, zero for
+	 *                       infinite.
+	 * @param sizeLimit      The response entity size limit, in bytes, zero
+	 *                       for infinite.
+	 *
+	 * @return The HTTP response.
+	 *
+	 * @throws IOException On a network or protocol error.
+	 */
+	private HTTPResponse execute(final Route route,
+				     final String method,
+				     final String target,
+				     final Map<String,String> headers,
+				     final byte[] body,
+				     final int connectTimeout,
+				     final int readTimeout,
+				     final int sizeLimit)
+		throws IOException {
+
+		RoutePool pool = getRoutePool(route);
+
+		for (int attempt=0; ; attempt++) {
+
+			ExchangeTimings timings = new ExchangeTimings();
+
+			long start = System.nanoTime();
+
+			PooledConnection conn = pool.lease(connectTimeout);
+
+			long connected = System.nanoTime();
+			timings.connectTime = connected - start;
+
+			boolean keepAlive = false;
+
+			try {
+				conn.socket.setSoTimeout(readTimeout);
+				writeRequest(conn, route, method, target, headers, body);
+				ResponseHead head = readResponseHead(conn);
+				long firstByte = System.nanoTime();
+				timings.waitTime = firstByte - connected;
+				HTTPResponse response = readResponse(conn, method, head, sizeLimit, timings);
+				timings.readTime = System.nanoTime() - firstByte;
+				response.setExchangeTimings(timings);
+				keepAlive = head.keepAlive;
+				return response;
+
+			} catch (IOException e) {
+
+				if (conn.reused && ! conn.responseStarted && attempt == 0 && isIdempotent(method)) {
+					// Stale keep-alive connection, retry once, but
+					// never re-send a non-idempotent request
+					continue;
+				}
+
+				throw e;
+
+			} finally {
+				pool.release(conn, keepAlive);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified HTTP method is idempotent and
+	 * the request may therefore be re-sent.
+	 *
+	 * @param method The HTTP method.
+	 *
+	 * @return {@code true} if idempotent, else {@code false}.
+	 */
+	static boolean isIdempotent(final String method) {
+
+		return "GET".equals(method) ||
+			"HEAD".equals(method) ||
+			"OPTIONS".equals(method) ||
+			"PUT".equals(method) ||
+			"DELETE".equals(method);
+	}
+
+
+	/**
+	 * Gets the pool for the specified route, creating it if necessary.
+	 *
+	 * @param route The route. Must not be {@code null}.
+	 *
+	 * @return The route pool.
+	 */
+	private RoutePool getRoutePool(final Route route) {
+
+		RoutePool pool = pools.get(route);
+
+		if (pool != null) {
+			return pool;
+		}
+
+		pool = new RoutePool(route);
+		RoutePool existing = pools.putIfAbsent(route, pool);
+		return existing != null ? existing : pool;
+	}
+
+
+	/**
+	 * Writes an HTTP request to the specified connection.
+	 */
+	private static void writeRequest(final PooledConnection conn,
+					 final Route route,
+					 final String method,
+					 final String target,
+					 final Map<String,String> headers,
+					 final byte[] body)
+		throws IOException {
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+
+		sb.append("Host: ").append(route.host);
+		if (route.port != route.defaultPort) {
+			sb.append(':').append(route.port);
+		}
+		sb.append("\r\n");
+
+		for (Map.Entry<String,String> header: headers.entrySet()) {
+
+			if ("Host".equalsIgnoreCase(header.getKey()) ||
+			    "Content-Length".equalsIgnoreCase(header.getKey()) ||
+			    "Connection".equalsIgnoreCase(header.getKey())) {
+				continue; // set by the transport
+			}
+
+			sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+
+		if (body != null) {
+			sb.append("Content-Length: ").append(body.length).append("\r\n");
+		} else if (method.equals("POST") || method.equals("PUT")) {
+			sb.append("Content-Length: 0\r\n");
+		}
+
+		sb.append("\r\n");
+
+		conn.out.write(sb.toString().getBytes(ISO_8859_1));
+
+		if (body != null) {
+			conn.out.write(body);
+		}
+
+		conn.out.flush();
+	}
+
+
+	/**
+	 * Reads the status line and headers of an HTTP response. Interim 1xx
+	 * responses are skipped.
+	 */
+	private static ResponseHead readResponseHead(final PooledConnection conn)
+		throws IOException {
+
+		while (true) {
+
+			String statusLine = readLine(conn.in);
+
+			if (statusLine == null) {
+				throw new EOFException("Connection closed before HTTP response status line");
+			}
+
+			conn.responseStarted = true;
+
+			// HTTP/1.1 200 OK
+			String[] parts = statusLine.split(" ", 3);
+
+			if (parts.length < 2 || ! parts[0].startsWith("HTTP/")) {
+				throw new IOException("Invalid HTTP response status line: " + statusLine);
+			}
+
+			ResponseHead head = new ResponseHead();
+
+			try {
+				head.response = new HTTPResponse(Integer.parseInt(parts[1]));
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid HTTP response status code: " + parts[1]);
+			}
+
+			head.response.setStatusMessage(parts.length > 2 ? parts[2] : null);
+
+			String line;
+			while ((line = readLine(conn.in)) != null && ! line.isEmpty()) {
+
+				int colonPos = line.indexOf(':');
+
+				if (colonPos < 1) {
+					continue; // skip malformed header
+				}
+
+				String name = line.substring(0, colonPos).trim();
+				String value = line.substring(colonPos + 1).trim();
+
+				if (head.response.getHeader(name) == null) {
+					// First value wins, as with HttpURLConnection
+					head.response.setHeader(name, value);
+				}
+			}
+
+			if (line == null) {
+				throw new EOFException("Connection closed before end of HTTP response headers");
+			}
+
+			if (head.response.getStatusCode() >= 100 && head.response.getStatusCode() < 200) {
+				continue; // interim response
+			}
+
+			String connection = head.response.getHeader("Connection");
+
+			if (parts[0].equals("HTTP/1.0")) {
+				head.keepAlive = connection != null && connection.equalsIgnoreCase("keep-alive");
+			} else {
+				head.keepAlive = connection == null || ! connection.equalsIgnoreCase("close");
+			}
+
+			return head;
+		}
+	}
+
+
+	/**
+	 * Reads the body of an HTTP response and completes the response.
+	 */
+	private static HTTPResponse readResponse(final PooledConnection conn,
+						 final String method,
+						 final ResponseHead head,
+						 final int sizeLimit,
+						 final ExchangeTimings timings)
+		throws IOException {
+
+		HTTPResponse response = head.response;
+
+		final int statusCode = response.getStatusCode();
+
+		if (method.equals("HEAD") || statusCode == 204 || statusCode == 304) {
+			timings.responseBytes = 0L;
+			return response; // no body
+		}
+
+		String transferEncoding = response.getHeader("Transfer-Encoding");
+		String contentLength = response.getHeader("Content-Length");
+
+		byte[] body;
+
+		if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+
+			body = readChunked(conn.in, sizeLimit);
+
+		} else if (contentLength != null) {
+
+			long length;
+
+			try {
+				length = Long.parseLong(contentLength);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid HTTP Content-Length header: " + contentLength);
+			}
+
+			body = ContentReader.read(conn.in, length, sizeLimit);
+
+		} else {
+			// Body delimited by connection close
+			body = ContentReader.read(conn.in, -1, sizeLimit);
+			head.keepAlive = false;
+		}
+
+		timings.responseBytes = body.length;
+
+		String contentEncoding = response.getHeader("Content-Encoding");
+
+		if (body.length > 0 && ContentReader.isCompressed(contentEncoding)) {
+			// Decompress the framed body, bounded by the size limit
+			InputStream in = ContentReader.decompress(new ByteArrayInputStream(body), contentEncoding);
+			try {
+				body = ContentReader.read(in, -1, sizeLimit);
+			} finally {
+				in.close();
+			}
+			response.setHeader("Content-Encoding", null);
+			response.setHeader("Content-Length", null);
+		}
+
+		if (body.length > 0) {
+			response.setContent(ContentReader.decode(body, response.getContentType()));
+		}
+
+		return response;
+	}
+
+
+	/**
+	 * Reads a chunked HTTP body, including any trailers.
+	 */
+	private static byte[] readChunked(final InputStream in, final int sizeLimit)
+		throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		while (true) {
+
+			String sizeLine = readLine(in);
+
+			if (sizeLine == null) {
+				throw new EOFException("Connection closed before end of chunked HTTP body");
+			}
+
+			int extPos = sizeLine.indexOf(';');
+			if (extPos > -1) {
+				sizeLine = sizeLine.substring(0, extPos);
+			}
+
+			long chunkSize;
+
+			try {
+				chunkSize = Long.parseLong(sizeLine.trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid HTTP chunk size: " + sizeLine);
+			}
+
+			if (chunkSize == 0) {
+				// Skip trailers
+				String line;
+				while ((line = readLine(in)) != null && ! line.isEmpty()) {
+					// ignore
+				}
+				return out.toByteArray();
+			}
+
+			ContentReader.checkSize(out.size() + chunkSize, sizeLimit);
+
+			out.write(ContentReader.read(in, chunkSize, 0));
+
+			readLine(in); // CRLF after chunk data
+		}
+	}
+
+
+	/**
+	 * Reads a CRLF (or LF) terminated line.
+	 *
+	 * @return The line, without the terminator, {@code null} on EOF.
+	 *
+	 * @throws IOException If the line is longer than
+	 *                     {@link #MAX_LINE_LENGTH} or reading failed.
+	 */
+	private static String readLine(final InputStream in)
+		throws IOException {
+
+		StringBuilder sb = new StringBuilder();
+
+		int c;
+
+		while ((c = in.read()) != -1) {
+
+			if (c == '\n') {
+				int len = sb.length();
+				if (len > 0 && sb.charAt(len - 1) == '\r') {
+					sb.setLength(len - 1);
+				}
+				return sb.toString();
+			}
+
+			if (sb.length() == MAX_LINE_LENGTH) {
+				throw new IOException("HTTP response line longer than " + MAX_LINE_LENGTH + " characters");
+			}
+
+			sb.append((char)c);
+		}
+
+		return sb.length() > 0 ? sb.toString() : null;
+	}
+
+
+	/**
+	 * The parsed status line and headers of an HTTP response.
+	 */
+	private static class ResponseHead {
+
+
+		/**
+		 * The HTTP response, without body.
+		 */
+		private HTTPResponse response;
+
+
+		/**
+		 * {@code true} if the connection may be kept alive.
+		 */
+		private boolean keepAlive;
+	}
+
+
+	/**
+	 * Resolves the hostname verifier to call after the TLS handshake. The
+	 * JDK default verifier, which {@link HTTPRequest} also defaults to,
+	 * rejects all hosts; {@link HttpsURLConnection} consults it only
+	 * after its built-in host check fails. Here it's replaced by JSSE
+	 * endpoint identification.
+	 *
+	 * @param hostnameVerifier The hostname verifier passed by the caller,
+	 *                         {@code null} if none.
+	 *
+	 * @return The hostname verifier, {@code null} to use JSSE endpoint
+	 *         identification.
+	 */
+	private static HostnameVerifier resolveHostnameVerifier(final HostnameVerifier hostnameVerifier) {
+
+		if (hostnameVerifier != null) {
+			return hostnameVerifier;
+		}
+
+		HostnameVerifier defaultVerifier = HTTPRequest.getDefaultHostnameVerifier();
+
+		if (defaultVerifier == HttpsURLConnection.getDefaultHostnameVerifier()) {
+			return null;
+		}
+
+		return defaultVerifier;
+	}
+
+
+	/**
+	 * Connection route, keyed by scheme, host, port and, for HTTPS, the
+	 * hostname verifier and SSL socket factory (compared by identity).
+	 */
+	private static final class Route {
+
+
+		private final boolean secure;
+
+
+		private final String host;
+
+
+		private final int port;
+
+
+		private final int defaultPort;
+
+
+		private final HostnameVerifier hostnameVerifier;
+
+
+		private final SSLSocketFactory sslSocketFactory;
+
+
+		private Route(final URL url,
+			      final HostnameVerifier hostnameVerifier,
+			      final SSLSocketFactory sslSocketFactory)
+			throws IOException {
+
+			if ("https".equalsIgnoreCase(url.getProtocol())) {
+				secure = true;
+			} else if ("http".equalsIgnoreCase(url.getProtocol())) {
+				secure = false;
+			} else {
+				throw new IOException("Unsupported URL protocol: " + url.getProtocol());
+			}
+
+			host = url.getHost().toLowerCase();
+			defaultPort = url.getDefaultPort();
+			port = url.getPort() > -1 ? url.getPort() : defaultPort;
+
+			if (secure) {
+				this.hostnameVerifier = resolveHostnameVerifier(hostnameVerifier);
+				this.sslSocketFactory = sslSocketFactory != null ? sslSocketFactory : HTTPRequest.getDefaultSSLSocketFactory();
+			} else {
+				this.hostnameVerifier = null;
+				this.sslSocketFactory = null;
+			}
+		}
+
+
+		@Override
+		public boolean equals(final Object o) {
+
+			if (this == o) return true;
+			if (! (o instanceof Route)) return false;
+
+			Route route = (Route)o;
+
+			return secure == route.secure &&
+				port == route.port &&
+				host.equals(route.host) &&
+				hostnameVerifier == route.hostnameVerifier &&
+				sslSocketFactory == route.sslSocketFactory;
+		}
+
+
+		@Override
+		public int hashCode() {
+
+			int result = host.hashCode();
+			result = 31 * result + port;
+			result = 31 * result + (secure ? 1 : 0);
+			result = 31 * result + System.identityHashCode(hostnameVerifier);
+			result = 31 * result + System.identityHashCode(sslSocketFactory);
+			return result;
+		}
+
+
+		@Override
+		public String toString() {
+
+			return (secure ? "https://" : "http://") + host + ':' + port;
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified idle connection was closed by
+	 * the server or has unexpected bytes pending, in which case it must
+	 * not be reused. Probes the connection with a short read.
+	 *
+	 * @param conn The idle connection.
+	 *
+	 * @return {@code true} if the connection is stale, else
+	 *         {@code false}.
+	 */
+	private static boolean isStale(final PooledConnection conn) {
+
+		if (conn.socket.isClosed() || conn.socket.isInputShutdown()) {
+			return true;
+		}
+
+		try {
+			if (conn.in.available() > 0) {
+				return true; // unexpected bytes
+			}
+
+			conn.socket.setSoTimeout(STALE_CHECK_TIMEOUT);
+
+			// EOF or an unexpected byte
+			conn.in.read();
+			return true;
+
+		} catch (SocketTimeoutException e) {
+			return false; // nothing received, still open
+
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+
+	/**
+	 * Pooled connection.
+	 */
+	private static final class PooledConnection {
+
+
+		private final Socket socket;
+
+
+		private final InputStream in;
+
+
+		private final OutputStream out;
+
+
+		/**
+		 * The time the connection was last returned to the pool.
+		 */
+		private long lastUsed;
+
+
+		/**
+		 * {@code true} if the connection was taken from the pool.
+		 */
+		private boolean reused;
+
+
+		/**
+		 * {@code true} if response bytes were received during the
+		 * current exchange.
+		 */
+		private boolean responseStarted;
+
+
+		private PooledConnection(final Socket socket)
+			throws IOException {
+
+			this.socket = socket;
+			in = new BufferedInputStream(socket.getInputStream());
+			out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+
+		private void close() {
+
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+
+	/**
+	 * The connection pool for a single route.
+	 */
+	private final class RoutePool {
+
+
+		private final Route route;
+
+
+		/**
+		 * The idle connections, most recently used first.
+		 */
+		private final Deque<PooledConnection> idle = new ArrayDeque<>();
+
+
+		/**
+		 * The total number of connections, idle and leased.
+		 */
+		private int total = 0;
+
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+
+		private final Condition available = lock.newCondition();
+
+
+		private RoutePool(final Route route) {
+
+			this.route = route;
+		}
+
+
+		private int getIdleCount() {
+
+			lock.lock();
+			try {
+				return idle.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+
+		/**
+		 * Leases a connection, reusing an idle one if available, else
+		 * opening a new one if the route limit permits.
+		 */
+		private PooledConnection lease(final int connectTimeout)
+			throws IOException {
+
+			long nanosLeft = TimeUnit.MILLISECONDS.toNanos(connectTimeout);
+
+			while (true) {
+
+				PooledConnection conn = null;
+
+				lock.lock();
+
+				try {
+					while (true) {
+
+						evict(System.currentTimeMillis(), false);
+
+						conn = idle.pollFirst();
+
+						if (conn != null) {
+							break;
+						}
+
+						if (total < maxConnectionsPerRoute) {
+							total++;
+							break;
+						}
+
+						if (connectTimeout == 0) {
+							available.await();
+						} else {
+							if (nanosLeft <= 0L) {
+								throw new SocketTimeoutException("Timed out waiting for a pooled connection to " + route);
+							}
+							nanosLeft = available.awaitNanos(nanosLeft);
+						}
+					}
+
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a pooled connection to " + route);
+				} finally {
+					lock.unlock();
+				}
+
+				if (conn == null) {
+					break;
+				}
+
+				// Checked outside the lock, the probe blocks briefly
+				if (isStale(conn)) {
+					release(conn, false);
+					continue;
+				}
+
+				conn.reused = true;
+				conn.responseStarted = false;
+				return conn;
+			}
+
+			try {
+				return new PooledConnection(connect(connectTimeout));
+			} catch (IOException | RuntimeException e) {
+				lock.lock();
+				try {
+					total--;
+					available.signal();
+				} finally {
+					lock.unlock();
+				}
+				throw e;
+			}
+		}
+
+
+		/**
+		 * Returns a leased connection to the pool, or closes it.
+		 */
+		private void release(final PooledConnection conn, final boolean keepAlive) {
+
+			lock.lock();
+
+			try {
+				if (keepAlive && ! conn.socket.isClosed()) {
+					conn.lastUsed = System.currentTimeMillis();
+					idle.addFirst(conn);
+				} else {
+					conn.close();
+					total--;
+				}
+
+				available.signal();
+
+			} finally {
+				lock.unlock();
+			}
+		}
+
+
+		/**
+		 * Closes idle connections which have expired or, if forced,
+		 * all idle connections.
+		 */
+		private void evict(final long now, final boolean all) {
+
+			lock.lock();
+
+			try {
+				Iterator<PooledConnection> it = idle.iterator();
+
+				while (it.hasNext()) {
+					PooledConnection conn = it.next();
+					if (all || now - conn.lastUsed > idleTimeout || conn.socket.isClosed()) {
+						it.remove();
+						conn.close();
+						total--;
+						available.signal();
+					}
+				}
+
+			} finally {
+				lock.unlock();
+			}
+		}
+
+
+		/**
+		 * Opens a new socket for the route, with a TLS handshake and
+		 * hostname verification for HTTPS. Unless a hostname verifier
+		 * was supplied the host is checked by JSSE endpoint
+		 * identification during the handshake.
+		 */
+		private Socket connect(final int connectTimeout)
+			throws IOException {
+
+			Socket socket = new Socket();
+
+			try {
+				socket.connect(new InetSocketAddress(route.host, route.port), connectTimeout);
+			} catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+
+			if (! route.secure) {
+				return socket;
+			}
+
+			SSLSocket sslSocket = (SSLSocket)route.sslSocketFactory.createSocket(socket, route.host, route.port, true);
+
+			try {
+				sslSocket.setSoTimeout(connectTimeout);
+
+				if (route.hostnameVerifier == null) {
+					SSLParameters sslParams = sslSocket.getSSLParameters();
+					sslParams.setEndpointIdentificationAlgorithm("HTTPS");
+					sslSocket.setSSLParameters(sslParams);
+				}
+
+				sslSocket.startHandshake();
+
+				if (route.hostnameVerifier != null && ! route.hostnameVerifier.verify(route.host, sslSocket.getSession())) {
+					throw new SSLPeerUnverifiedException("Hostname " + route.host + " not verified");
+				}
+
+			} catch (IOException e) {
+				sslSocket.close();
+				throw e;
+			}
+
+			return sslSocket;
+		}
+	}
+}
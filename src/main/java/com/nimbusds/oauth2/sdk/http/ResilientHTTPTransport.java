@@ -0,0 +1,1015 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * HTTP transport decorator which applies a resilience policy to outbound
+ * requests:
+ *
+ * <ul>
+ *     <li>Retries of idempotent GET requests which failed with an
+ *         {@link IOException} or a 502, 503 or 504 status code, after a
+ *         randomly jittered exponential backoff.
+ *     <li>A circuit breaker per host (scheme, host and port), which opens
+ *         after a number of consecutive failures and then fails requests
+ *         fast until a trial request after the open duration succeeds.
+ *     <li>Optional hedging of GET requests: if no response arrived after
+ *         the configured percentile of the recent latencies to the host, a
+ *         second identical request is sent and the first response is used.
+ * </ul>
+ *
+ * <p>Use one transport per endpoint to apply different policies, for
+ * example to hedge JWK set and UserInfo requests but not token requests.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * HTTPTransport transport = new ResilientHTTPTransport.Builder(new PooledHTTPTransport())
+ * 	.maxRetries(2)
+ * 	.failureThreshold(5)
+ * 	.hedgePercentile(0.95)
+ * 	.build();
+ *
+ * httpRequest.setTransport(transport);
+ * </pre>
+ */
+@ThreadSafe
+public class ResilientHTTPTransport implements HTTPTransport {
+
+
+	/**
+	 * The default maximum number of retries.
+	 */
+	public static final int DEFAULT_MAX_RETRIES = 2;
+
+
+	/**
+	 * The default initial backoff, in milliseconds.
+	 */
+	public static final long DEFAULT_INITIAL_BACKOFF = 100L;
+
+
+	/**
+	 * The default maximum backoff, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_BACKOFF = 2000L;
+
+
+	/**
+	 * The default number of consecutive failures to open a circuit.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+
+	/**
+	 * The default circuit open duration, in milliseconds.
+	 */
+	public static final long DEFAULT_OPEN_DURATION = 30000L;
+
+
+	/**
+	 * The default hedge delay when there are too few latency samples, in
+	 * milliseconds.
+	 */
+	public static final long DEFAULT_HEDGE_DELAY = 100L;
+
+
+	/**
+	 * The number of recent latency samples kept per host.
+	 */
+	static final int LATENCY_WINDOW_SIZE = 100;
+
+
+	/**
+	 * The minimum number of latency samples to compute the hedge delay
+	 * from.
+	 */
+	static final int MIN_LATENCY_SAMPLES = 10;
+
+
+	/**
+	 * Circuit breaker states.
+	 */
+	public enum CircuitState {
+
+
+		/**
+		 * Requests are let through.
+		 */
+		CLOSED,
+
+
+		/**
+		 * Requests fail fast.
+		 */
+		OPEN,
+
+
+		/**
+		 * A single trial request is let through.
+		 */
+		HALF_OPEN
+	}
+
+
+	/**
+	 * Circuit breaker admission of a request.
+	 */
+	enum Admission {
+
+
+		/**
+		 * The request must fail fast.
+		 */
+		REJECTED,
+
+
+		/**
+		 * The request is let through, the circuit is closed.
+		 */
+		ALLOWED,
+
+
+		/**
+		 * The request is let through as the single half-open trial.
+		 */
+		TRIAL
+	}
+
+
+	/**
+	 * Builder of resilient HTTP transports.
+	 */
+	public static class Builder {
+
+
+		/**
+		 * The underlying transport.
+		 */
+		private final HTTPTransport transport;
+
+
+		/**
+		 * The maximum number of retries.
+		 */
+		private int maxRetries = DEFAULT_MAX_RETRIES;
+
+
+		/**
+		 * The initial backoff.
+		 */
+		private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+
+
+		/**
+		 * The maximum backoff.
+		 */
+		private long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+
+		/**
+		 * The failure threshold.
+		 */
+		private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+
+		/**
+		 * The circuit open duration.
+		 */
+		private long openDuration = DEFAULT_OPEN_DURATION;
+
+
+		/**
+		 * The hedge latency percentile, zero if disabled.
+		 */
+		private double hedgePercentile = 0.0;
+
+
+		/**
+		 * The hedge delay when there are too few latency samples.
+		 */
+		private long hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+
+		/**
+		 * The executor for hedged requests.
+		 */
+		private Executor executor;
+
+
+		/**
+		 * Creates a new resilient HTTP transport builder.
+		 *
+		 * @param transport The underlying HTTP transport. Must not be
+		 *                  {@code null}.
+		 */
+		public Builder(final HTTPTransport transport) {
+
+			if (transport == null) {
+				throw new IllegalArgumentException("The HTTP transport must not be null");
+			}
+
+			this.transport = transport;
+		}
+
+
+		/**
+		 * Sets the maximum number of retries of failed GET requests.
+		 * Corresponds to {@link #DEFAULT_MAX_RETRIES} if not set.
+		 *
+		 * @param maxRetries The maximum number of retries, zero to
+		 *                   disable retries. Must not be negative.
+		 *
+		 * @return This builder.
+		 */
+		public Builder maxRetries(final int maxRetries) {
+
+			if (maxRetries < 0) {
+				throw new IllegalArgumentException("The maximum number of retries must not be negative");
+			}
+
+			this.maxRetries = maxRetries;
+			return this;
+		}
+
+
+		/**
+		 * Sets the backoff before retries. The backoff before the
+		 * n-th retry is a random time between zero and
+		 * {@code min(maxBackoff, initialBackoff * 2^(n-1))}.
+		 * Corresponds to {@link #DEFAULT_INITIAL_BACKOFF} and
+		 * {@link #DEFAULT_MAX_BACKOFF} if not set.
+		 *
+		 * @param initialBackoff The initial backoff, in milliseconds.
+		 *                       Must not be negative.
+		 * @param maxBackoff     The maximum backoff, in milliseconds.
+		 *                       Must not be less than the initial
+		 *                       backoff.
+		 *
+		 * @return This builder.
+		 */
+		public Builder backoff(final long initialBackoff, final long maxBackoff) {
+
+			if (initialBackoff < 0) {
+				throw new IllegalArgumentException("The initial backoff must not be negative");
+			}
+
+			if (maxBackoff < initialBackoff) {
+				throw new IllegalArgumentException("The maximum backoff must not be less than the initial backoff");
+			}
+
+			this.initialBackoff = initialBackoff;
+			this.maxBackoff = maxBackoff;
+			return this;
+		}
+
+
+		/**
+		 * Sets the number of consecutive failures to a host which open
+		 * its circuit. Corresponds to
+		 * {@link #DEFAULT_FAILURE_THRESHOLD} if not set.
+		 *
+		 * @param failureThreshold The failure threshold, zero to
+		 *                         disable the circuit breaker. Must
+		 *                         not be negative.
+		 *
+		 * @return This builder.
+		 */
+		public Builder failureThreshold(final int failureThreshold) {
+
+			if (failureThreshold < 0) {
+				throw new IllegalArgumentException("The failure threshold must not be negative");
+			}
+
+			this.failureThreshold = failureThreshold;
+			return this;
+		}
+
+
+		/**
+		 * Sets the time an opened circuit fails requests fast before
+		 * letting a trial request through. Corresponds to
+		 * {@link #DEFAULT_OPEN_DURATION} if not set.
+		 *
+		 * @param openDuration The open duration, in milliseconds. Must
+		 *                     be positive.
+		 *
+		 * @return This builder.
+		 */
+		public Builder openDuration(final long openDuration) {
+
+			if (openDuration < 1) {
+				throw new IllegalArgumentException("The open duration must be positive");
+			}
+
+			this.openDuration = openDuration;
+			return this;
+		}
+
+
+		/**
+		 * Enables hedging of GET requests after the specified
+		 * percentile of the recent latencies to the host. Disabled if
+		 * not set.
+		 *
+		 * @param hedgePercentile The latency percentile, between zero
+		 *                        and one, e.g. 0.95. Zero disables
+		 *                        hedging.
+		 *
+		 * @return This builder.
+		 */
+		public Builder hedgePercentile(final double hedgePercentile) {
+
+			if (hedgePercentile < 0.0 || hedgePercentile >= 1.0) {
+				throw new IllegalArgumentException("The hedge percentile must be zero or between zero and one");
+			}
+
+			this.hedgePercentile = hedgePercentile;
+			return this;
+		}
+
+
+		/**
+		 * Sets the hedge delay used until enough latencies to a host
+		 * were sampled. Corresponds to {@link #DEFAULT_HEDGE_DELAY} if
+		 * not set.
+		 *
+		 * @param hedgeDelay The hedge delay, in milliseconds. Must be
+		 *                   positive.
+		 *
+		 * @return This builder.
+		 */
+		public Builder hedgeDelay(final long hedgeDelay) {
+
+			if (hedgeDelay < 1) {
+				throw new IllegalArgumentException("The hedge delay must be positive");
+			}
+
+			this.hedgeDelay = hedgeDelay;
+			return this;
+		}
+
+
+		/**
+		 * Sets the executor for hedged requests. The
+		 * {@link HTTPRequest#getDefaultExecutor default executor} is
+		 * used if not set.
+		 *
+		 * @param executor The executor, {@code null} for the default.
+		 *
+		 * @return This builder.
+		 */
+		public Builder executor(final Executor executor) {
+
+			this.executor = executor;
+			return this;
+		}
+
+
+		/**
+		 * Builds a new resilient HTTP transport.
+		 *
+		 * @return The resilient HTTP transport.
+		 */
+		public ResilientHTTPTransport build() {
+
+			return new ResilientHTTPTransport(this);
+		}
+	}
+
+
+	/**
+	 * The underlying transport.
+	 */
+	private final HTTPTransport transport;
+
+
+	/**
+	 * The maximum number of retries.
+	 */
+	private final int maxRetries;
+
+
+	/**
+	 * The initial backoff, in milliseconds.
+	 */
+	private final long initialBackoff;
+
+
+	/**
+	 * The maximum backoff, in milliseconds.
+	 */
+	private final long maxBackoff;
+
+
+	/**
+	 * The failure threshold, zero if the circuit breaker is disabled.
+	 */
+	private final int failureThreshold;
+
+
+	/**
+	 * The circuit open duration, in milliseconds.
+	 */
+	private final long openDuration;
+
+
+	/**
+	 * The hedge latency percentile, zero if hedging is disabled.
+	 */
+	private final double hedgePercentile;
+
+
+	/**
+	 * The hedge delay with too few latency samples, in milliseconds.
+	 */
+	private final long hedgeDelay;
+
+
+	/**
+	 * The executor for hedged requests, {@code null} for the default.
+	 */
+	private final Executor executor;
+
+
+	/**
+	 * The per-host states.
+	 */
+	private final ConcurrentMap<String,HostState> hosts = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Creates a new resilient HTTP transport.
+	 *
+	 * @param builder The builder.
+	 */
+	private ResilientHTTPTransport(final Builder builder) {
+
+		transport = builder.transport;
+		maxRetries = builder.maxRetries;
+		initialBackoff = builder.initialBackoff;
+		maxBackoff = builder.maxBackoff;
+		failureThreshold = builder.failureThreshold;
+		openDuration = builder.openDuration;
+		hedgePercentile = builder.hedgePercentile;
+		hedgeDelay = builder.hedgeDelay;
+		executor = builder.executor;
+	}
+
+
+	/**
+	 * Returns the underlying HTTP transport.
+	 *
+	 * @return The underlying HTTP transport.
+	 */
+	public HTTPTransport getTransport() {
+
+		return transport;
+	}
+
+
+	/**
+	 * Returns the maximum number of retries of failed GET requests.
+	 *
+	 * @return The maximum number of retries, zero if disabled.
+	 */
+	public int getMaxRetries() {
+
+		return maxRetries;
+	}
+
+
+	/**
+	 * Returns the number of consecutive failures which open a circuit.
+	 *
+	 * @return The failure threshold, zero if the circuit breaker is
+	 *         disabled.
+	 */
+	public int getFailureThreshold() {
+
+		return failureThreshold;
+	}
+
+
+	/**
+	 * Returns the hedge latency percentile.
+	 *
+	 * @return The hedge percentile, zero if hedging is disabled.
+	 */
+	public double getHedgePercentile() {
+
+		return hedgePercentile;
+	}
+
+
+	/**
+	 * Returns the circuit state for the host of the specified URL.
+	 *
+	 * @param url The URL. Must not be {@code null}.
+	 *
+	 * @return The circuit state.
+	 */
+	public CircuitState getCircuitState(final URL url) {
+
+		HostState hostState = hosts.get(toHostKey(url));
+
+		return hostState != null ? hostState.getCircuitState(System.currentTimeMillis()) : CircuitState.CLOSED;
+	}
+
+
+	/**
+	 * Returns the current hedge delay for the host of the specified URL.
+	 *
+	 * @param url The URL. Must not be {@code null}.
+	 *
+	 * @return The hedge delay, in milliseconds.
+	 */
+	public long getHedgeDelay(final URL url) {
+
+		HostState hostState = hosts.get(toHostKey(url));
+
+		return hostState != null ? hostState.getHedgeDelay() : hedgeDelay;
+	}
+
+
+	@Override
+	public HTTPResponse send(final HTTPRequest httpRequest,
+				 final HostnameVerifier hostnameVerifier,
+				 final SSLSocketFactory sslSocketFactory)
+		throws IOException {
+
+		final boolean idempotent = HTTPRequest.Method.GET.equals(httpRequest.getMethod());
+
+		HostState hostState = getHostState(httpRequest.getURL());
+
+		for (int attempt = 0; ; attempt++) {
+
+			Admission admission = hostState.allowRequest(System.currentTimeMillis());
+
+			if (admission == Admission.REJECTED) {
+				throw new IOException("Circuit breaker open for " + hostState.key);
+			}
+
+			HTTPResponse httpResponse = null;
+			IOException exception = null;
+			boolean recorded = false;
+
+			try {
+				try {
+					if (idempotent && hedgePercentile > 0.0) {
+						httpResponse = sendHedged(httpRequest, hostnameVerifier, sslSocketFactory, hostState);
+					} else {
+						httpResponse = sendTimed(httpRequest, hostnameVerifier, sslSocketFactory, hostState);
+					}
+				} catch (IOException e) {
+					if (isInterrupt(e)) {
+						throw e; // don't retry
+					}
+					exception = e;
+				}
+
+				if (exception == null && ! isRetriableStatus(httpResponse.getStatusCode())) {
+					hostState.recordSuccess();
+					recorded = true;
+					return httpResponse;
+				}
+
+				hostState.recordFailure(System.currentTimeMillis());
+				recorded = true;
+
+			} finally {
+				if (! recorded && admission == Admission.TRIAL) {
+					// Interrupted or runtime exception, don't hold on
+					// to the half-open trial taken by this request
+					hostState.releaseTrial();
+				}
+			}
+
+			if (! idempotent || attempt >= maxRetries) {
+				if (exception != null) {
+					throw exception;
+				}
+				return httpResponse;
+			}
+
+			backoff(attempt);
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified HTTP status code indicates a
+	 * transient server or gateway failure.
+	 *
+	 * @param statusCode The HTTP status code.
+	 *
+	 * @return {@code true} for 502, 503 and 504.
+	 */
+	static boolean isRetriableStatus(final int statusCode) {
+
+		return statusCode == 502 || statusCode == 503 || statusCode == 504;
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified I/O exception signals an
+	 * interrupted thread, as opposed to a socket timeout.
+	 *
+	 * @param e The I/O exception.
+	 *
+	 * @return {@code true} if the thread was interrupted.
+	 */
+	static boolean isInterrupt(final IOException e) {
+
+		if (e instanceof SocketTimeoutException) {
+			return Thread.currentThread().isInterrupted();
+		}
+
+		return e instanceof InterruptedIOException || Thread.currentThread().isInterrupted();
+	}
+
+
+	/**
+	 * Sleeps for a randomly jittered exponential backoff.
+	 *
+	 * @param attempt The failed attempt, zero based.
+	 *
+	 * @throws InterruptedIOException If interrupted.
+	 */
+	private void backoff(final int attempt)
+		throws InterruptedIOException {
+
+		long cap = Math.min(maxBackoff, initialBackoff << Math.min(attempt, 30));
+
+		if (cap <= 0) {
+			return;
+		}
+
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted during retry backoff");
+		}
+	}
+
+
+	/**
+	 * Sends the specified HTTP request and records its latency.
+	 */
+	private HTTPResponse sendTimed(final HTTPRequest httpRequest,
+				       final HostnameVerifier hostnameVerifier,
+				       final SSLSocketFactory sslSocketFactory,
+				       final HostState hostState)
+		throws IOException {
+
+		final long start = System.nanoTime();
+
+		HTTPResponse httpResponse = transport.send(httpRequest, hostnameVerifier, sslSocketFactory);
+
+		hostState.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		return httpResponse;
+	}
+
+
+	/**
+	 * Sends the specified HTTP request, and a second identical one if the
+	 * first didn't complete within the hedge delay.
+	 */
+	private HTTPResponse sendHedged(final HTTPRequest httpRequest,
+					final HostnameVerifier hostnameVerifier,
+					final SSLSocketFactory sslSocketFactory,
+					final HostState hostState)
+		throws IOException {
+
+		CompletionService<HTTPResponse> completionService = new ExecutorCompletionService<>(
+			executor != null ? executor : HTTPRequest.getDefaultExecutor());
+
+		Future<HTTPResponse> primary = completionService.submit(
+			newCall(copy(httpRequest), hostnameVerifier, sslSocketFactory, hostState));
+		Future<HTTPResponse> hedge = null;
+
+		try {
+			Future<HTTPResponse> done = completionService.poll(hostState.getHedgeDelay(), TimeUnit.MILLISECONDS);
+
+			if (done == null) {
+				hedge = completionService.submit(
+					newCall(copy(httpRequest), hostnameVerifier, sslSocketFactory, hostState));
+				done = completionService.take();
+			}
+
+			try {
+				return done.get();
+
+			} catch (ExecutionException e) {
+
+				if (hedge == null) {
+					throw toIOException(e);
+				}
+
+				// Wait for the other request
+				try {
+					return completionService.take().get();
+				} catch (ExecutionException e2) {
+					throw toIOException(e);
+				}
+			}
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the HTTP response");
+
+		} finally {
+
+			primary.cancel(true);
+
+			if (hedge != null) {
+				hedge.cancel(true);
+			}
+		}
+	}
+
+
+	/**
+	 * Creates a call sending the specified HTTP request, for execution on
+	 * another thread.
+	 */
+	private Callable<HTTPResponse> newCall(final HTTPRequest httpRequest,
+					       final HostnameVerifier hostnameVerifier,
+					       final SSLSocketFactory sslSocketFactory,
+					       final HostState hostState) {
+
+		return new Callable<HTTPResponse>() {
+			@Override
+			public HTTPResponse call()
+				throws IOException {
+
+				return sendTimed(httpRequest, hostnameVerifier, sslSocketFactory, hostState);
+			}
+		};
+	}
+
+
+	/**
+	 * Returns a copy of the specified HTTP request, so that concurrent
+	 * hedged attempts don't share mutable state.
+	 *
+	 * @param httpRequest The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The HTTP request copy.
+	 */
+	static HTTPRequest copy(final HTTPRequest httpRequest) {
+
+		HTTPRequest copy = new HTTPRequest(httpRequest.getMethod(), httpRequest.getURL());
+
+		for (Map.Entry<String,String> header: httpRequest.getHeaders().entrySet()) {
+			copy.setHeader(header.getKey(), header.getValue());
+		}
+
+		copy.setQuery(httpRequest.getQuery());
+		copy.setFragment(httpRequest.getFragment());
+		copy.setConnectTimeout(httpRequest.getConnectTimeout());
+		copy.setReadTimeout(httpRequest.getReadTimeout());
+		copy.setFollowRedirects(httpRequest.getFollowRedirects());
+		copy.setResponseSizeLimit(httpRequest.getResponseSizeLimit());
+		copy.setAcceptCompression(httpRequest.getAcceptCompression());
+		copy.setTransport(httpRequest.getTransport());
+		copy.setEndpointRole(httpRequest.getEndpointRole());
+		return copy;
+	}
+
+
+	/**
+	 * Unwraps the I/O exception of a failed HTTP request.
+	 */
+	private static IOException toIOException(final ExecutionException e) {
+
+		Throwable cause = e.getCause();
+
+		if (cause instanceof IOException) {
+			return (IOException)cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException)cause;
+		} else if (cause instanceof Error) {
+			throw (Error)cause;
+		} else {
+			return new IOException(cause.getMessage(), cause);
+		}
+	}
+
+
+	/**
+	 * Returns the host key for the specified URL.
+	 */
+	private static String toHostKey(final URL url) {
+
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+	}
+
+
+	/**
+	 * Gets the state for the host of the specified URL, creating it if
+	 * necessary.
+	 */
+	private HostState getHostState(final URL url) {
+
+		String key = toHostKey(url);
+
+		HostState hostState = hosts.get(key);
+
+		if (hostState == null) {
+			hostState = new HostState(key);
+			HostState existing = hosts.putIfAbsent(key, hostState);
+			if (existing != null) {
+				hostState = existing;
+			}
+		}
+
+		return hostState;
+	}
+
+
+	/**
+	 * Circuit breaker and latency samples for a host.
+	 */
+	private final class HostState {
+
+
+		/**
+		 * The host key.
+		 */
+		private final String key;
+
+
+		/**
+		 * The circuit state.
+		 */
+		private CircuitState state = CircuitState.CLOSED;
+
+
+		/**
+		 * The consecutive failures.
+		 */
+		private int failures = 0;
+
+
+		/**
+		 * The time the circuit was opened.
+		 */
+		private long openedAt = 0L;
+
+
+		/**
+		 * {@code true} if the half-open trial request is in flight.
+		 */
+		private boolean trialInFlight = false;
+
+
+		/**
+		 * The recent latencies, as ring buffer.
+		 */
+		private final long[] latencies = new long[LATENCY_WINDOW_SIZE];
+
+
+		/**
+		 * The number of recorded latencies.
+		 */
+		private long latencyCount = 0L;
+
+
+		private HostState(final String key) {
+
+			this.key = key;
+		}
+
+
+		synchronized CircuitState getCircuitState(final long now) {
+
+			if (state == CircuitState.OPEN && now - openedAt >= openDuration) {
+				return CircuitState.HALF_OPEN;
+			}
+
+			return state;
+		}
+
+
+		synchronized Admission allowRequest(final long now) {
+
+			if (failureThreshold == 0 || state == CircuitState.CLOSED) {
+				return Admission.ALLOWED;
+			}
+
+			if (state == CircuitState.OPEN && now - openedAt >= openDuration) {
+				state = CircuitState.HALF_OPEN;
+				trialInFlight = false;
+			}
+
+			if (state == CircuitState.HALF_OPEN && ! trialInFlight) {
+				trialInFlight = true;
+				return Admission.TRIAL;
+			}
+
+			return Admission.REJECTED;
+		}
+
+
+		synchronized void recordSuccess() {
+
+			failures = 0;
+			state = CircuitState.CLOSED;
+			trialInFlight = false;
+		}
+
+
+		synchronized void releaseTrial() {
+
+			trialInFlight = false;
+		}
+
+
+		synchronized void recordFailure(final long now) {
+
+			if (failureThreshold == 0) {
+				return;
+			}
+
+			failures++;
+
+			if (state == CircuitState.HALF_OPEN || failures >= failureThreshold) {
+				state = CircuitState.OPEN;
+				openedAt = now;
+				trialInFlight = false;
+			}
+		}
+
+
+		synchronized void recordLatency(final long latency) {
+
+			latencies[(int)(latencyCount % LATENCY_WINDOW_SIZE)] = latency;
+			latencyCount++;
+		}
+
+
+		long getHedgeDelay() {
+
+			long[] samples;
+
+			synchronized (this) {
+
+				if (latencyCount < MIN_LATENCY_SAMPLES) {
+					return hedgeDelay;
+				}
+
+				samples = Arrays.copyOf(latencies, (int)Math.min(latencyCount, LATENCY_WINDOW_SIZE));
+			}
+
+			Arrays.sort(samples);
+
+			int index = (int)Math.ceil(hedgePercentile * samples.length) - 1;
+
+			return Math.max(1L, samples[Math.max(0, index)]);
+		}
+	}
+}
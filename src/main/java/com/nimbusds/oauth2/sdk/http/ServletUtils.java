@@ -19,17 +19,27 @@ package com.nimbusds.oauth2.sdk.http;
 
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
+import javax.mail.internet.ContentType;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.nimbusds.oauth2.sdk.ParseException;
-import com.nimbusds.oauth2.sdk.util.URLUtils;
 import net.jcip.annotations.ThreadSafe;
 
 
@@ -41,55 +51,51 @@ public class ServletUtils {
 
 
 	/**
-	 * Reconstructs the request URL string for the specified servlet
-	 * request. The host part is always the local IP address. The query
-	 * string and fragment is always omitted.
+	 * The minimum size of the response content, in bytes, to compress it
+	 * when the client accepts gzip.
+	 */
+	public static final int COMPRESSION_THRESHOLD = 1024;
+
+
+	/**
+	 * Reconstructs the request URL for the specified servlet request. The
+	 * host part is always the local IP address. The query string and
+	 * fragment is always omitted.
 	 *
 	 * @param request The servlet request. Must not be {@code null}.
 	 *
-	 * @return The reconstructed request URL string.
+	 * @return The reconstructed request URL.
+	 *
+	 * @throws IllegalArgumentException If the URL couldn't be
+	 *                                  reconstructed.
 	 */
-	private static String reconstructRequestURLString(final HttpServletRequest request) {
-
-		StringBuilder sb = new StringBuilder("http");
+	private static URL reconstructRequestURL(final HttpServletRequest request) {
 
-		if (request.isSecure())
-			sb.append('s');
+		final boolean secure = request.isSecure();
 
-		sb.append("://");
+		String host = request.getLocalAddr();
 
-		String localAddress = request.getLocalAddr();
-
-		if (localAddress.contains(".")) {
-			// IPv3 address
-			sb.append(localAddress);
-		} else if (localAddress.contains(":")) {
-			// IPv6 address, see RFC 2732
-			sb.append('[');
-			sb.append(localAddress);
-			sb.append(']');
-		} else {
+		if (! host.contains(".") && ! host.contains(":")) {
 			// Don't know what to do
+			host = "";
 		}
 
-		if (! request.isSecure() && request.getLocalPort() != 80) {
-			// HTTP plain at port other than 80
-			sb.append(':');
-			sb.append(request.getLocalPort());
-		}
+		// IPv6 addresses are bracketed by the URL, see RFC 2732
+		int port = request.getLocalPort();
 
-		if (request.isSecure() && request.getLocalPort() != 443) {
-			// HTTPS at port other than 443 (default TLS)
-			sb.append(':');
-			sb.append(request.getLocalPort());
+		if ((! secure && port == 80) || (secure && port == 443)) {
+			port = -1; // default port
 		}
 
 		String path = request.getRequestURI();
 
-		if (path != null)
-			sb.append(path);
+		try {
+			return new URL(secure ? "https" : "http", host, port, path != null ? path : "");
+
+		} catch (MalformedURLException e) {
 
-		return sb.toString();
+			throw new IllegalArgumentException("Invalid request URL: " + e.getMessage() + ": " + request.getRequestURL(), e);
+		}
 	}
 
 
@@ -150,17 +156,7 @@ public class ServletUtils {
 
 		HTTPRequest.Method method = HTTPRequest.Method.valueOf(sr.getMethod().toUpperCase());
 
-		String urlString = reconstructRequestURLString(sr);
-
-		URL url;
-
-		try {
-			url = new URL(urlString);
-
-		} catch (MalformedURLException e) {
-
-			throw new IllegalArgumentException("Invalid request URL: " + e.getMessage() + ": " + urlString, e);
-		}
+		URL url = reconstructRequestURL(sr);
 
 		HTTPRequest request = new HTTPRequest(method, url);
 
@@ -190,18 +186,22 @@ public class ServletUtils {
 			// See issues
 			// https://bitbucket.org/connect2id/oauth-2.0-sdk-with-openid-connect-extensions/issues/184
 			// https://bitbucket.org/connect2id/oauth-2.0-sdk-with-openid-connect-extensions/issues/186
-			if (request.getContentType() != null && request.getContentType()
-				.getBaseType().equals(CommonContentTypes.APPLICATION_URLENCODED.getBaseType())) {
+			ContentType contentType = request.getContentType();
 
-				// Recreate the content based on parameters
-				request.setQuery(URLUtils.serializeParametersAlt(sr.getParameterMap()));
+			if (contentType != null && contentType.getBaseType().equals(CommonContentTypes.APPLICATION_URLENCODED.getBaseType())) {
+
+				// Use the decoded parameters directly, the content is
+				// only recreated from them if requested
+				request.setQueryParameters(sr.getParameterMap());
 			} else {
 				// read body
-				StringBuilder body = new StringBuilder(256);
+				int contentLength = sr.getContentLength();
+
+				StringBuilder body = new StringBuilder(contentLength > 0 ? Math.min(contentLength, 65536) : 256);
 
 				BufferedReader reader = sr.getReader();
 
-				char[] cbuf = new char[256];
+				char[] cbuf = new char[contentLength > 0 && contentLength < 8192 ? contentLength : 256];
 
 				int readChars;
 
@@ -238,6 +238,52 @@ public class ServletUtils {
 					     final HttpServletResponse servletResponse)
 		throws IOException {
 
+		applyHTTPResponse(httpResponse, servletResponse, false);
+	}
+
+
+	/**
+	 * Applies the status code, headers and content of the specified HTTP
+	 * response to a HTTP servlet response. The content is compressed with
+	 * gzip if the servlet request accepts it, the content is at least
+	 * {@link #COMPRESSION_THRESHOLD} bytes long and the HTTP response
+	 * doesn't specify a {@code Content-Encoding} of its own. Intended for
+	 * large responses, such as OpenID provider metadata and JWK sets.
+	 *
+	 * @param httpResponse    The HTTP response. Must not be {@code null}.
+	 * @param servletRequest  The HTTP servlet request, to determine the
+	 *                        accepted content codings. Must not be
+	 *                        {@code null}.
+	 * @param servletResponse The HTTP servlet response. Must not be
+	 *                        {@code null}.
+	 *
+	 * @throws IOException If the response content couldn't be written.
+	 */
+	public static void applyHTTPResponse(final HTTPResponse httpResponse,
+					     final HttpServletRequest servletRequest,
+					     final HttpServletResponse servletResponse)
+		throws IOException {
+
+		applyHTTPResponse(httpResponse, servletResponse, acceptsGzip(servletRequest.getHeader("Accept-Encoding")));
+	}
+
+
+	/**
+	 * Applies the status code, headers and content of the specified HTTP
+	 * response to a HTTP servlet response.
+	 *
+	 * @param httpResponse    The HTTP response. Must not be {@code null}.
+	 * @param servletResponse The HTTP servlet response. Must not be
+	 *                        {@code null}.
+	 * @param gzipAccepted    {@code true} if the client accepts gzip.
+	 *
+	 * @throws IOException If the response content couldn't be written.
+	 */
+	private static void applyHTTPResponse(final HTTPResponse httpResponse,
+					      final HttpServletResponse servletResponse,
+					      final boolean gzipAccepted)
+		throws IOException {
+
 		// Set the status code
 		servletResponse.setStatus(httpResponse.getStatusCode());
 
@@ -247,18 +293,311 @@ public class ServletUtils {
 			servletResponse.setHeader(header.getKey(), header.getValue());
 		}
 
-		if (httpResponse.getContentType() != null)
-			servletResponse.setContentType(httpResponse.getContentType().toString());
+		ContentType contentType = httpResponse.getContentType();
+
+		if (contentType != null)
+			servletResponse.setContentType(contentType.toString());
 
 
-		// Write out the content
+		// Write out the content, encoded with the charset the
+		// servlet writer would use
 
 		if (httpResponse.getContent() != null) {
 
-			PrintWriter writer = servletResponse.getWriter();
-			writer.print(httpResponse.getContent());
-			writer.close();
+			String charset = servletResponse.getCharacterEncoding();
+
+			byte[] bytes = httpResponse.getContent().getBytes(charset != null ? charset : "ISO-8859-1");
+
+			if (gzipAccepted &&
+			    bytes.length >= COMPRESSION_THRESHOLD &&
+			    httpResponse.getHeader("Content-Encoding") == null) {
+
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+				GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+				gzip.write(bytes);
+				gzip.close();
+				bytes = compressed.toByteArray();
+
+				servletResponse.setHeader("Content-Encoding", "gzip");
+
+				String vary = httpResponse.getHeader("Vary");
+				servletResponse.setHeader("Vary", vary != null ? vary + ", Accept-Encoding" : "Accept-Encoding");
+			}
+
+			servletResponse.setContentLength(bytes.length);
+
+			OutputStream out = servletResponse.getOutputStream();
+			out.write(bytes);
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the specified {@code Accept-Encoding} header
+	 * value accepts the gzip content coding, explicitly or by wildcard,
+	 * with a non-zero quality value.
+	 *
+	 * @param acceptEncoding The {@code Accept-Encoding} header value,
+	 *                       {@code null} if none.
+	 *
+	 * @return {@code true} if gzip is accepted, else {@code false}.
+	 */
+	static boolean acceptsGzip(final String acceptEncoding) {
+
+		if (acceptEncoding == null) {
+			return false;
 		}
+
+		Boolean gzip = null;
+		Boolean wildcard = null;
+
+		for (String element: acceptEncoding.split(",")) {
+
+			String[] parts = element.split(";");
+
+			String coding = parts[0].trim();
+
+			boolean accepted = true;
+
+			for (int i=1; i < parts.length; i++) {
+
+				String param = parts[i].trim();
+
+				if (param.startsWith("q=") || param.startsWith("Q=")) {
+					try {
+						accepted = Double.parseDouble(param.substring(2).trim()) > 0.0;
+					} catch (NumberFormatException e) {
+						accepted = false;
+					}
+				}
+			}
+
+			if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+				gzip = accepted;
+			} else if (coding.equals("*")) {
+				wildcard = accepted;
+			}
+		}
+
+		if (gzip != null) {
+			return gzip;
+		}
+
+		return wildcard != null && wildcard;
+	}
+
+
+	/**
+	 * Creates a new HTTP request from the specified HTTP servlet request
+	 * asynchronously. The entity body is read on the
+	 * {@link HTTPRequest#getDefaultExecutor default executor}, so the
+	 * container thread can return while a slow client is still sending
+	 * it. Asynchronous processing must have been
+	 * {@link HttpServletRequest#startAsync started} on the servlet request,
+	 * the response can then be written with
+	 * {@link #applyHTTPResponseAsync}.
+	 *
+	 * <p>The default executor is an unbounded thread pool intended for
+	 * outbound client calls, servers should use
+	 * {@link #createHTTPRequestAsync(HttpServletRequest, long, Executor,
+	 * HTTPRequestCallback)} with a bounded executor instead.
+	 *
+	 * @param sr              The servlet request. Must not be
+	 *                        {@code null}.
+	 * @param maxEntityLength The maximum entity length to accept, -1 for
+	 *                        no limit.
+	 * @param callback        Callback for the created HTTP request,
+	 *                        {@code null} if not required.
+	 *
+	 * @return The future HTTP request. A failure is reported as
+	 *         {@link ExecutionException} with the
+	 *         {@link IllegalArgumentException} or {@link IOException} of
+	 *         {@link #createHTTPRequest(HttpServletRequest, long)} as
+	 *         cause.
+	 *
+	 * @throws IllegalStateException If asynchronous processing wasn't
+	 *                               started on the servlet request.
+	 */
+	public static Future<HTTPRequest> createHTTPRequestAsync(final HttpServletRequest sr,
+								 final long maxEntityLength,
+								 final HTTPRequestCallback callback) {
+
+		return createHTTPRequestAsync(sr, maxEntityLength, null, callback);
+	}
+
+
+	/**
+	 * Creates a new HTTP request from the specified HTTP servlet request
+	 * asynchronously. The entity body is read on the specified executor,
+	 * so the container thread can return while a slow client is still
+	 * sending it. Asynchronous processing must have been
+	 * {@link HttpServletRequest#startAsync started} on the servlet request,
+	 * the response can then be written with
+	 * {@link #applyHTTPResponseAsync}.
+	 *
+	 * @param sr              The servlet request. Must not be
+	 *                        {@code null}.
+	 * @param maxEntityLength The maximum entity length to accept, -1 for
+	 *                        no limit.
+	 * @param executor        The executor for reading the entity body,
+	 *                        {@code null} to use the
+	 *                        {@link HTTPRequest#getDefaultExecutor default
+	 *                        executor}.
+	 * @param callback        Callback for the created HTTP request,
+	 *                        {@code null} if not required.
+	 *
+	 * @return The future HTTP request. A failure is reported as
+	 *         {@link ExecutionException} with the
+	 *         {@link IllegalArgumentException} or {@link IOException} of
+	 *         {@link #createHTTPRequest(HttpServletRequest, long)} as
+	 *         cause.
+	 *
+	 * @throws IllegalStateException      If asynchronous processing wasn't
+	 *                                    started on the servlet request.
+	 * @throws RejectedExecutionException If the executor rejected the
+	 *                                    task.
+	 */
+	public static Future<HTTPRequest> createHTTPRequestAsync(final HttpServletRequest sr,
+								 final long maxEntityLength,
+								 final Executor executor,
+								 final HTTPRequestCallback callback) {
+
+		if (! sr.isAsyncStarted()) {
+			throw new IllegalStateException("Asynchronous processing not started on the servlet request");
+		}
+
+		FutureTask<HTTPRequest> task = new FutureTask<HTTPRequest>(new Callable<HTTPRequest>() {
+			@Override
+			public HTTPRequest call()
+				throws IOException {
+
+				return createHTTPRequest(sr, maxEntityLength);
+			}
+		}) {
+			@Override
+			protected void done() {
+
+				if (callback == null || isCancelled()) {
+					return;
+				}
+
+				HTTPRequest httpRequest;
+
+				try {
+					httpRequest = get();
+
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					callback.failed(cause instanceof Exception ? (Exception)cause : e);
+					return;
+
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+
+				callback.completed(httpRequest);
+			}
+		};
+
+		(executor != null ? executor : HTTPRequest.getDefaultExecutor()).execute(task);
+
+		return task;
+	}
+
+
+	/**
+	 * Applies the status code, headers and content of the specified HTTP
+	 * response to the servlet response of the specified asynchronous
+	 * context. The content is compressed as with
+	 * {@link #applyHTTPResponse(HTTPResponse, HttpServletRequest,
+	 * HttpServletResponse)} if the servlet request accepts it, and written
+	 * on the {@link HTTPRequest#getDefaultExecutor default executor}, after
+	 * which the asynchronous context is {@link AsyncContext#complete
+	 * completed}, also if writing failed.
+	 *
+	 * <p>The default executor is an unbounded thread pool intended for
+	 * outbound client calls, servers should use
+	 * {@link #applyHTTPResponseAsync(HTTPResponse, AsyncContext, Executor)}
+	 * with a bounded executor instead.
+	 *
+	 * @param httpResponse The HTTP response. Must not be {@code null}.
+	 * @param asyncContext The asynchronous context of the servlet request.
+	 *                     Must not be {@code null}.
+	 *
+	 * @return The future completion. A failure is reported as
+	 *         {@link ExecutionException} with the {@link IOException} as
+	 *         cause.
+	 */
+	public static Future<Void> applyHTTPResponseAsync(final HTTPResponse httpResponse,
+							  final AsyncContext asyncContext) {
+
+		return applyHTTPResponseAsync(httpResponse, asyncContext, null);
+	}
+
+
+	/**
+	 * Applies the status code, headers and content of the specified HTTP
+	 * response to the servlet response of the specified asynchronous
+	 * context. The content is compressed as with
+	 * {@link #applyHTTPResponse(HTTPResponse, HttpServletRequest,
+	 * HttpServletResponse)} if the servlet request accepts it, and written
+	 * on the specified executor, after which the asynchronous context is
+	 * {@link AsyncContext#complete completed}, also if writing failed or
+	 * the executor rejected the task.
+	 *
+	 * @param httpResponse The HTTP response. Must not be {@code null}.
+	 * @param asyncContext The asynchronous context of the servlet request.
+	 *                     Must not be {@code null}.
+	 * @param executor     The executor for writing the response,
+	 *                     {@code null} to use the
+	 *                     {@link HTTPRequest#getDefaultExecutor default
+	 *                     executor}.
+	 *
+	 * @return The future completion. A failure is reported as
+	 *         {@link ExecutionException} with the {@link IOException} as
+	 *         cause.
+	 *
+	 * @throws RejectedExecutionException If the executor rejected the
+	 *                                    task, the asynchronous context
+	 *                                    is completed before.
+	 */
+	public static Future<Void> applyHTTPResponseAsync(final HTTPResponse httpResponse,
+							  final AsyncContext asyncContext,
+							  final Executor executor) {
+
+		FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+			@Override
+			public Void call()
+				throws IOException {
+
+				try {
+					ServletRequest servletRequest = asyncContext.getRequest();
+
+					boolean gzipAccepted = servletRequest instanceof HttpServletRequest &&
+						acceptsGzip(((HttpServletRequest)servletRequest).getHeader("Accept-Encoding"));
+
+					applyHTTPResponse(httpResponse, (HttpServletResponse)asyncContext.getResponse(), gzipAccepted);
+				} finally {
+					asyncContext.complete();
+				}
+
+				return null;
+			}
+		});
+
+		try {
+			(executor != null ? executor : HTTPRequest.getDefaultExecutor()).execute(task);
+
+		} catch (RejectedExecutionException e) {
+			// Don't leave the request hanging until the container
+			// times it out
+			asyncContext.complete();
+			throw e;
+		}
+
+		return task;
 	}
 
 
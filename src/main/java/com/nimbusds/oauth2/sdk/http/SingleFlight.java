@@ -0,0 +1,177 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Coalesces concurrent calls with the same key into a single in-flight call.
+ * The first caller for a key executes the call in its own thread, the callers
+ * that arrive while it is in flight wait for its outcome. Failures are
+ * propagated to all waiting callers.
+ *
+ * @param <K> The key type.
+ * @param <V> The result type.
+ */
+@ThreadSafe
+final class SingleFlight<K,V> {
+
+
+	/**
+	 * The in-flight calls.
+	 */
+	private final ConcurrentMap<K,FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+
+	/**
+	 * The wait timeout, in milliseconds, zero for infinite.
+	 */
+	private final long waitTimeout;
+
+
+	/**
+	 * Creates a new single flight group.
+	 *
+	 * @param waitTimeout The maximum time a caller waits for an in-flight
+	 *                    call to complete, in milliseconds, zero for
+	 *                    infinite. Must not be negative.
+	 */
+	SingleFlight(final long waitTimeout) {
+
+		if (waitTimeout < 0) {
+			throw new IllegalArgumentException("The wait timeout must not be negative");
+		}
+
+		this.waitTimeout = waitTimeout;
+	}
+
+
+	/**
+	 * Returns the wait timeout.
+	 *
+	 * @return The wait timeout, in milliseconds, zero for infinite.
+	 */
+	long getWaitTimeout() {
+
+		return waitTimeout;
+	}
+
+
+	/**
+	 * Returns the number of calls currently in flight.
+	 *
+	 * @return The number of in-flight calls.
+	 */
+	int getInFlightCount() {
+
+		return inFlight.size();
+	}
+
+
+	/**
+	 * Executes the specified call, or joins the in-flight call with the
+	 * same key.
+	 *
+	 * @param key  The key. Must not be {@code null}.
+	 * @param call The call. Must not be {@code null}.
+	 *
+	 * @return The call result.
+	 *
+	 * @throws IOException If the call failed, or the wait for the
+	 *                     in-flight call timed out or was interrupted.
+	 */
+	V execute(final K key, final Callable<V> call)
+		throws IOException {
+
+		FutureTask<V> task = new FutureTask<>(call);
+
+		FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+
+		if (existing == null) {
+			// Leader, run in the calling thread
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+
+			return getResult(task, 0L);
+		}
+
+		return getResult(existing, waitTimeout);
+	}
+
+
+	/**
+	 * Gets the result of the specified call.
+	 *
+	 * @param task    The call task.
+	 * @param timeout The wait timeout, in milliseconds, zero for infinite.
+	 *
+	 * @return The call result.
+	 *
+	 * @throws IOException If the call failed, or the wait timed out or was
+	 *                     interrupted.
+	 */
+	private static <V> V getResult(final FutureTask<V> task, final long timeout)
+		throws IOException {
+
+		try {
+			if (timeout > 0) {
+				return task.get(timeout, TimeUnit.MILLISECONDS);
+			} else {
+				return task.get();
+			}
+
+		} catch (TimeoutException e) {
+
+			throw new IOException("Timed out after " + timeout + " ms waiting for the in-flight request to complete");
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the in-flight request to complete");
+
+		} catch (ExecutionException e) {
+
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
+			} else {
+				throw new IOException(cause.getMessage(), cause);
+			}
+		}
+	}
+}
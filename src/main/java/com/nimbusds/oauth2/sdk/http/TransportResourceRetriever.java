@@ -0,0 +1,156 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.ParseException;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Retriever of resources specified by URL which sends the HTTP GET requests
+ * through an {@link HTTPTransport}. With a {@link PooledHTTPTransport} shared
+ * with the token, UserInfo and introspection calls, retrievals of JWK sets and
+ * request objects reuse the same persistent connections to the provider. HTTPS
+ * connections apply the {@link HTTPRequest#getDefaultSSLSocketFactory default
+ * SSL socket factory} and {@link HTTPRequest#getDefaultHostnameVerifier
+ * default hostname verifier}.
+ *
+ * <p>Provides setting of HTTP connect and read timeouts as well as a size
+ * limit of the retrieved entity. Caching header directives are not honoured.
+ */
+@ThreadSafe
+@Deprecated
+public class TransportResourceRetriever extends AbstractRestrictedResourceRetriever implements RestrictedResourceRetriever {
+
+
+	/**
+	 * The HTTP transport.
+	 */
+	private final HTTPTransport transport;
+
+
+	/**
+	 * Creates a new transport based resource retriever.
+	 *
+	 * @param transport      The HTTP transport. Must not be {@code null}.
+	 * @param connectTimeout The HTTP connects timeout, in milliseconds,
+	 *                       zero for infinite. Must not be negative.
+	 * @param readTimeout    The HTTP read timeout, in milliseconds, zero
+	 *                       for infinite. Must not be negative.
+	 * @param sizeLimit      The HTTP entity size limit, in bytes, zero for
+	 *                       infinite. Must not be negative.
+	 */
+	public TransportResourceRetriever(final HTTPTransport transport,
+					  final int connectTimeout,
+					  final int readTimeout,
+					  final int sizeLimit) {
+
+		super(connectTimeout, readTimeout, sizeLimit);
+
+		if (transport == null) {
+			throw new IllegalArgumentException("The HTTP transport must not be null");
+		}
+
+		this.transport = transport;
+	}
+
+
+	/**
+	 * Returns the HTTP transport.
+	 *
+	 * @return The HTTP transport.
+	 */
+	public HTTPTransport getTransport() {
+
+		return transport;
+	}
+
+
+	@Override
+	public Resource retrieveResource(final URL url)
+		throws IOException {
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, url);
+		httpRequest.setConnectTimeout(getConnectTimeout());
+		httpRequest.setReadTimeout(getReadTimeout());
+		httpRequest.setResponseSizeLimit(getSizeLimit());
+		httpRequest.setTransport(transport);
+		httpRequest.setEndpointRole(getEndpointRole());
+		httpRequest.setAcceptCompression(getAcceptCompression());
+
+		HTTPResponse httpResponse = httpRequest.send();
+
+		// Ensure 2xx status code
+		if (! httpResponse.indicatesSuccess()) {
+			throw new IOException("HTTP " + httpResponse.getStatusCode() + ": " + httpResponse.getStatusMessage());
+		}
+
+		// Parse the Content-Type header
+		ContentType contentType = null;
+
+		String contentTypeValue = httpResponse.getHeader("Content-Type");
+
+		if (contentTypeValue != null) {
+			try {
+				contentType = new ContentType(contentTypeValue);
+			} catch (ParseException e) {
+				throw new IOException("Couldn't parse Content-Type header: " + e.getMessage(), e);
+			}
+		}
+
+		String content = httpResponse.getContent();
+
+		return new Resource(content != null ? content : "", contentType);
+	}
+
+
+	/**
+	 * Retrieves the resource from the specified HTTP(S) URL asynchronously
+	 * on the {@link HTTPRequest#getDefaultExecutor default executor}.
+	 *
+	 * @param url The URL of the resource. Its scheme must be HTTP or
+	 *            HTTPS. Must not be {@code null}.
+	 *
+	 * @return The future resource. A failed retrieval is reported as
+	 *         {@link java.util.concurrent.ExecutionException} with the
+	 *         {@link IOException} as cause.
+	 */
+	public Future<Resource> retrieveResourceAsync(final URL url) {
+
+		FutureTask<Resource> task = new FutureTask<>(new Callable<Resource>() {
+			@Override
+			public Resource call()
+				throws IOException {
+
+				return retrieveResource(url);
+			}
+		});
+
+		HTTPRequest.getDefaultExecutor().execute(task);
+
+		return task;
+	}
+}
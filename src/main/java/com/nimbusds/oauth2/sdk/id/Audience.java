@@ -88,7 +88,8 @@ public final class Audience extends Identifier {
 	@Override
 	public boolean equals(final Object object) {
 	
-		return object instanceof Audience &&
+		return this == object ||
+		       object instanceof Audience &&
 		       this.toString().equals(object.toString());
 	}
 
@@ -150,7 +151,7 @@ public final class Audience extends Identifier {
 		List<Audience> audienceList = new ArrayList<>(strings.size());
 
 		for (String s: strings) {
-			audienceList.add(new Audience(s));
+			audienceList.add(IdentifierPool.canonical(new Audience(s)));
 		}
 		return audienceList;
 	}
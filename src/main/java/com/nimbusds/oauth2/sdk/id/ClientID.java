@@ -89,7 +89,8 @@ public final class ClientID extends Identifier {
 	@Override
 	public boolean equals(final Object object) {
 	
-		return object instanceof ClientID &&
+		return this == object ||
+		       object instanceof ClientID &&
 		       this.toString().equals(object.toString());
 	}
 }
\ No newline at end of file
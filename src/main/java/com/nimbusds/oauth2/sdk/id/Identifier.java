@@ -19,11 +19,10 @@ package com.nimbusds.oauth2.sdk.id;
 
 
 import java.io.Serializable;
-import java.security.SecureRandom;
 
 import org.apache.commons.lang3.StringUtils;
 
-import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.oauth2.sdk.util.SecureRandomGenerator;
 
 import net.minidev.json.JSONAware;
 import net.minidev.json.JSONValue;
@@ -45,12 +44,6 @@ public class Identifier implements Serializable, Comparable<Identifier>, JSONAwa
 	public static final int DEFAULT_BYTE_LENGTH = 32;
 	
 	
-	/**
-	 * The secure random generator.
-	 */
-	private static final SecureRandom secureRandom = new SecureRandom();
-
-
 	/**
 	 * The identifier value.
 	 */
@@ -84,11 +77,7 @@ public class Identifier implements Serializable, Comparable<Identifier>, JSONAwa
 		if (byteLength < 1)
 			throw new IllegalArgumentException("The byte length must be a positive integer");
 		
-		byte[] n = new byte[byteLength];
-		
-		secureRandom.nextBytes(n);
-
-		value = Base64URL.encode(n).toString();
+		value = SecureRandomGenerator.nextBase64URL(byteLength);
 	}
 	
 	
@@ -0,0 +1,423 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.id;
+
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.nimbusds.oauth2.sdk.Scope;
+
+
+/**
+ * Bounded pool of canonical identifier instances, keyed by class and value.
+ * Parsers can use it to return shared instances of frequently recurring
+ * identifiers, such as client IDs, issuers, audiences and scope values, so
+ * that long-lived caches hold one instance per distinct value. The pooled
+ * instances are weakly referenced and are dropped when no longer used
+ * elsewhere. When the maximum size is exceeded arbitrary entries are
+ * evicted.
+ *
+ * <p>Pooling is disabled by default. To enable it set a
+ * {@link #setDefault default pool}, which the SDK parsers will then use:
+ *
+ * <pre>
+ * IdentifierPool.setDefault(new IdentifierPool(10000));
+ * </pre>
+ *
+ * <p>Only identifiers that are fully described by their class and value
+ * may be pooled. The requirement of {@link Scope.Value scope values} is
+ * made part of the pool key, so that values with different requirements
+ * are never shared.
+ */
+@ThreadSafe
+public final class IdentifierPool {
+
+
+	/**
+	 * The default pool, {@code null} if pooling is disabled.
+	 */
+	private static volatile IdentifierPool defaultPool;
+
+
+	/**
+	 * Pool key.
+	 */
+	private static final class Key {
+
+
+		/**
+		 * The identifier class.
+		 */
+		final Class<?> clazz;
+
+
+		/**
+		 * The identifier value.
+		 */
+		final String value;
+
+
+		/**
+		 * Additional identifier state, {@code null} if none.
+		 */
+		final Object qualifier;
+
+
+		/**
+		 * Creates a new pool key.
+		 *
+		 * @param identifier The identifier.
+		 */
+		Key(final Identifier identifier) {
+
+			clazz = identifier.getClass();
+			value = identifier.getValue();
+
+			if (identifier instanceof Scope.Value) {
+				qualifier = ((Scope.Value)identifier).getRequirement();
+			} else {
+				qualifier = null;
+			}
+		}
+
+
+		@Override
+		public boolean equals(final Object object) {
+
+			if (! (object instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key)object;
+			return clazz == other.clazz &&
+			       value.equals(other.value) &&
+			       qualifier == other.qualifier;
+		}
+
+
+		@Override
+		public int hashCode() {
+
+			int hash = 31 * clazz.hashCode() + value.hashCode();
+			return qualifier != null ? 31 * hash + qualifier.hashCode() : hash;
+		}
+	}
+
+
+	/**
+	 * Weakly referenced pool entry.
+	 */
+	private static final class Entry extends WeakReference<Identifier> {
+
+
+		/**
+		 * The pool key.
+		 */
+		final Key key;
+
+
+		/**
+		 * Creates a new pool entry.
+		 *
+		 * @param key        The pool key.
+		 * @param identifier The canonical identifier.
+		 * @param queue      The queue for cleared entries.
+		 */
+		Entry(final Key key, final Identifier identifier, final ReferenceQueue<Identifier> queue) {
+
+			super(identifier, queue);
+			this.key = key;
+		}
+	}
+
+
+	/**
+	 * The maximum number of pooled identifiers.
+	 */
+	private final int maxSize;
+
+
+	/**
+	 * The pooled identifiers.
+	 */
+	private final ConcurrentHashMap<Key,Entry> entries = new ConcurrentHashMap<>();
+
+
+	/**
+	 * The queue of entries cleared by the garbage collector.
+	 */
+	private final ReferenceQueue<Identifier> queue = new ReferenceQueue<>();
+
+
+	/**
+	 * The number of lookups which returned a pooled instance.
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+
+	/**
+	 * The number of lookups which added a new instance.
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+
+	/**
+	 * The number of entries evicted to stay within the maximum size.
+	 */
+	private final AtomicLong evictionCount = new AtomicLong();
+
+
+	/**
+	 * The number of entries removed after being garbage collected.
+	 */
+	private final AtomicLong collectedCount = new AtomicLong();
+
+
+	/**
+	 * Creates a new identifier pool.
+	 *
+	 * @param maxSize The maximum number of pooled identifiers. Must be
+	 *                positive.
+	 */
+	public IdentifierPool(final int maxSize) {
+
+		if (maxSize < 1)
+			throw new IllegalArgumentException("The maximum size must be positive");
+
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Returns the maximum number of pooled identifiers.
+	 *
+	 * @return The maximum size.
+	 */
+	public int getMaxSize() {
+
+		return maxSize;
+	}
+
+
+	/**
+	 * Returns the current number of pooled identifiers. May include
+	 * garbage collected entries which are yet to be removed.
+	 *
+	 * @return The number of pooled identifiers.
+	 */
+	public int size() {
+
+		return entries.size();
+	}
+
+
+	/**
+	 * Returns the number of lookups which returned a pooled instance.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHitCount() {
+
+		return hitCount.get();
+	}
+
+
+	/**
+	 * Returns the number of lookups which added a new instance to the
+	 * pool.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMissCount() {
+
+		return missCount.get();
+	}
+
+
+	/**
+	 * Returns the number of entries evicted to stay within the maximum
+	 * size.
+	 *
+	 * @return The eviction count.
+	 */
+	public long getEvictionCount() {
+
+		return evictionCount.get();
+	}
+
+
+	/**
+	 * Returns the number of entries removed after their identifier was
+	 * garbage collected.
+	 *
+	 * @return The collected count.
+	 */
+	public long getCollectedCount() {
+
+		return collectedCount.get();
+	}
+
+
+	/**
+	 * Returns the canonical instance of the specified identifier. If the
+	 * pool has no instance of the same class and value (and requirement,
+	 * for scope values) the identifier is added and returned.
+	 *
+	 * @param identifier The identifier. Must not be {@code null}.
+	 *
+	 * @return The canonical identifier instance.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Identifier> T intern(final T identifier) {
+
+		if (identifier == null)
+			throw new IllegalArgumentException("The identifier must not be null");
+
+		expungeCollectedEntries();
+
+		Key key = new Key(identifier);
+
+		while (true) {
+
+			Entry entry = entries.get(key);
+
+			if (entry != null) {
+
+				Identifier canonical = entry.get();
+
+				if (canonical != null) {
+					hitCount.incrementAndGet();
+					// Same class guaranteed by the key
+					return (T)canonical;
+				}
+
+				// Garbage collected, replace
+				entries.remove(key, entry);
+				continue;
+			}
+
+			if (entries.putIfAbsent(key, new Entry(key, identifier, queue)) == null) {
+				missCount.incrementAndGet();
+				evictExcessEntries();
+				return identifier;
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all pooled identifiers. The metrics are not reset.
+	 */
+	public void clear() {
+
+		entries.clear();
+	}
+
+
+	/**
+	 * Removes the entries whose identifier was garbage collected.
+	 */
+	private void expungeCollectedEntries() {
+
+		Object ref;
+
+		while ((ref = queue.poll()) != null) {
+
+			Entry entry = (Entry)ref;
+
+			if (entries.remove(entry.key, entry)) {
+				collectedCount.incrementAndGet();
+			}
+		}
+	}
+
+
+	/**
+	 * Evicts arbitrary entries until the pool is within its maximum
+	 * size.
+	 */
+	private void evictExcessEntries() {
+
+		if (entries.size() <= maxSize) {
+			return;
+		}
+
+		Iterator<Map.Entry<Key,Entry>> it = entries.entrySet().iterator();
+
+		while (entries.size() > maxSize && it.hasNext()) {
+
+			Map.Entry<Key,Entry> en = it.next();
+
+			if (entries.remove(en.getKey(), en.getValue())) {
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the default identifier pool used by the SDK parsers.
+	 *
+	 * @return The default pool, {@code null} if pooling is disabled (the
+	 *         default).
+	 */
+	public static IdentifierPool getDefault() {
+
+		return defaultPool;
+	}
+
+
+	/**
+	 * Sets the default identifier pool used by the SDK parsers.
+	 *
+	 * @param pool The default pool, {@code null} to disable pooling.
+	 */
+	public static void setDefault(final IdentifierPool pool) {
+
+		defaultPool = pool;
+	}
+
+
+	/**
+	 * Returns the canonical instance of the specified identifier from the
+	 * default pool.
+	 *
+	 * @param identifier The identifier, {@code null} if not specified.
+	 *
+	 * @return The canonical identifier instance, the identifier itself if
+	 *         pooling is disabled, {@code null} if not specified.
+	 */
+	public static <T extends Identifier> T canonical(final T identifier) {
+
+		IdentifierPool pool = defaultPool;
+
+		if (pool == null || identifier == null) {
+			return identifier;
+		}
+
+		return pool.intern(identifier);
+	}
+}
@@ -157,6 +157,6 @@ public final class Issuer extends Identifier {
 	@Override
 	public boolean equals(final Object object) {
 	
-		return object instanceof Issuer && this.toString().equals(object.toString());
+		return this == object || object instanceof Issuer && this.toString().equals(object.toString());
 	}
 }
\ No newline at end of file
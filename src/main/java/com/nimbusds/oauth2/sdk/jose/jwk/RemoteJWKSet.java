@@ -30,6 +30,7 @@ import com.nimbusds.jose.jwk.JWKMatcher;
 import com.nimbusds.jose.jwk.JWKSelector;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.nimbusds.oauth2.sdk.http.DefaultResourceRetriever;
+import com.nimbusds.oauth2.sdk.http.EndpointRole;
 import com.nimbusds.oauth2.sdk.http.Resource;
 import com.nimbusds.oauth2.sdk.http.RestrictedResourceRetriever;
 import com.nimbusds.oauth2.sdk.id.Identifier;
@@ -109,7 +110,9 @@ public class RemoteJWKSet extends AbstractJWKSource {
 		if (resourceRetriever != null) {
 			jwkSetRetriever = resourceRetriever;
 		} else {
-			jwkSetRetriever = new DefaultResourceRetriever(DEFAULT_HTTP_CONNECT_TIMEOUT, DEFAULT_HTTP_READ_TIMEOUT, DEFAULT_HTTP_SIZE_LIMIT);
+			DefaultResourceRetriever defaultRetriever = new DefaultResourceRetriever(DEFAULT_HTTP_CONNECT_TIMEOUT, DEFAULT_HTTP_READ_TIMEOUT, DEFAULT_HTTP_SIZE_LIMIT);
+			defaultRetriever.setEndpointRole(EndpointRole.JWKS);
+			jwkSetRetriever = defaultRetriever;
 		}
 
 		Thread t = new Thread() {
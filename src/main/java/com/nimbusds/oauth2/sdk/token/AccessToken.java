@@ -18,6 +18,7 @@
 package com.nimbusds.oauth2.sdk.token;
 
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -25,6 +26,7 @@ import net.minidev.json.JSONObject;
 
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.util.JSONObjectWriter;
 
 
 /**
@@ -239,6 +241,27 @@ public abstract class AccessToken extends Token {
 	}
 
 
+	@Override
+	public void writeJSONMembers(final JSONObjectWriter writer)
+		throws IOException {
+
+		if (! JSONObjectWriter.isStreamable(getClass())) {
+			// Subclass overrides toJSONObject
+			super.writeJSONMembers(writer);
+			return;
+		}
+
+		writer.writeMember("access_token", getValue());
+		writer.writeMember("token_type", type.toString());
+
+		if (getLifetime() > 0)
+			writer.writeMember("expires_in", lifetime);
+
+		if (getScope() != null)
+			writer.writeMember("scope", scope.toString());
+	}
+
+
 	@Override
 	public String toJSONString() {
 
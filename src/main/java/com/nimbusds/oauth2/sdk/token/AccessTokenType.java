@@ -18,6 +18,10 @@
 package com.nimbusds.oauth2.sdk.token;
 
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
 import net.jcip.annotations.Immutable;
 
 import com.nimbusds.oauth2.sdk.id.Identifier;
@@ -49,6 +53,21 @@ public final class AccessTokenType extends Identifier {
 	public static final AccessTokenType UNKNOWN = new AccessTokenType("unknown");
 
 
+	/**
+	 * The standard access token types, keyed by case-insensitive value.
+	 */
+	private static final Map<String,AccessTokenType> STANDARD_TYPES;
+
+
+	static {
+		Map<String,AccessTokenType> types = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		types.put(BEARER.getValue(), BEARER);
+		types.put(MAC.getValue(), MAC);
+		types.put(UNKNOWN.getValue(), UNKNOWN);
+		STANDARD_TYPES = Collections.unmodifiableMap(types);
+	}
+
+
 	/**
 	 * Creates a new access token type with the specified value.
 	 *
@@ -67,4 +86,26 @@ public final class AccessTokenType extends Identifier {
 		return object instanceof AccessTokenType &&
 		       this.toString().equalsIgnoreCase(object.toString());
 	}
+
+
+	/**
+	 * Parses an access token type from the specified value. The standard
+	 * types are matched case-insensitively and returned as the shared
+	 * constants.
+	 *
+	 * @param value The access token type value. Must not be {@code null}
+	 *              or empty string.
+	 *
+	 * @return The access token type.
+	 */
+	public static AccessTokenType parse(final String value) {
+
+		AccessTokenType type = value != null ? STANDARD_TYPES.get(value) : null;
+
+		if (type != null) {
+			return type;
+		}
+
+		return new AccessTokenType(value);
+	}
 }
@@ -0,0 +1,748 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Identifier;
+import com.nimbusds.oauth2.sdk.id.Subject;
+
+
+/**
+ * In-memory token store. The tokens are spread over a number of shards,
+ * each guarded by its own lock, with secondary indexes by client ID and
+ * subject for bulk revocation. Expiring tokens are tracked in a timing
+ * wheel per shard, so purging them doesn't require a scan of the store.
+ * Expired tokens are purged when new tokens are put and on calls to
+ * {@link #purgeExpired()}.
+ *
+ * <p>When a shard is full it first purges its expired tokens, then evicts
+ * the token closest to expiration. Tokens without an expiration time are
+ * never evicted; if a shard holds only such tokens new tokens are not
+ * admitted.
+ */
+@ThreadSafe
+public class InMemoryTokenStore<T extends Identifier> implements TokenStore<T> {
+
+
+	/**
+	 * The default maximum number of tokens.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 100000;
+
+
+	/**
+	 * The default concurrency level.
+	 */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+
+	/**
+	 * The default expiration tick, in milliseconds.
+	 */
+	public static final long DEFAULT_TICK_MILLIS = 1000L;
+
+
+	/**
+	 * Entry of a stored token, with its expiration timer which is
+	 * cancelled when the entry is replaced or removed.
+	 */
+	private static final class Node<T extends Identifier> {
+
+
+		/**
+		 * The token value.
+		 */
+		final String key;
+
+
+		/**
+		 * The stored token.
+		 */
+		final StoredToken<T> storedToken;
+
+
+		/**
+		 * The expiration timer, {@code null} if none.
+		 */
+		TimingWheel.Timer<Node<T>> timer;
+
+
+		/**
+		 * Creates a new entry.
+		 *
+		 * @param key         The token value.
+		 * @param storedToken The stored token.
+		 */
+		Node(final String key, final StoredToken<T> storedToken) {
+
+			this.key = key;
+			this.storedToken = storedToken;
+		}
+	}
+
+
+	/**
+	 * Shard of the store.
+	 */
+	private static final class Shard<T extends Identifier> {
+
+
+		/**
+		 * The lock.
+		 */
+		final ReentrantLock lock = new ReentrantLock();
+
+
+		/**
+		 * The entries, keyed by token value.
+		 */
+		final Map<String,Node<T>> map = new HashMap<>();
+
+
+		/**
+		 * The token values by client ID.
+		 */
+		final Map<ClientID,Set<String>> byClientID = new HashMap<>();
+
+
+		/**
+		 * The token values by subject.
+		 */
+		final Map<Subject,Set<String>> bySubject = new HashMap<>();
+
+
+		/**
+		 * The expiration timers.
+		 */
+		final TimingWheel<Node<T>> wheel;
+
+
+		/**
+		 * The maximum number of entries.
+		 */
+		final int maxSize;
+
+
+		/**
+		 * Creates a new shard.
+		 *
+		 * @param maxSize    The maximum number of entries.
+		 * @param tickMillis The expiration tick, in milliseconds.
+		 * @param now        The current time, in milliseconds since
+		 *                   the epoch.
+		 */
+		Shard(final int maxSize, final long tickMillis, final long now) {
+
+			this.maxSize = maxSize;
+			wheel = new TimingWheel<>(tickMillis, now);
+		}
+
+
+		/**
+		 * Puts the specified entry. The lock must be held.
+		 *
+		 * @param node The entry.
+		 * @param now  The current time, in milliseconds since the
+		 *             epoch.
+		 *
+		 * @return {@code true} if the entry was admitted.
+		 */
+		boolean put(final Node<T> node, final long now) {
+
+			purgeExpired(now);
+
+			if (! map.containsKey(node.key)) {
+
+				while (map.size() >= maxSize) {
+
+					if (! evict()) {
+						return false;
+					}
+				}
+			}
+
+			Node<T> previous = map.put(node.key, node);
+
+			if (previous != null) {
+				wheel.cancel(previous.timer);
+				unindex(previous);
+			}
+
+			StoredToken<T> storedToken = node.storedToken;
+
+			if (storedToken.getClientID() != null) {
+				index(byClientID, storedToken.getClientID(), node.key);
+			}
+
+			if (storedToken.getSubject() != null) {
+				index(bySubject, storedToken.getSubject(), node.key);
+			}
+
+			if (storedToken.getExpirationTimeMillis() > 0) {
+				node.timer = wheel.add(node, storedToken.getExpirationTimeMillis());
+			}
+
+			return true;
+		}
+
+
+		/**
+		 * Gets the current entry with the specified key. The lock
+		 * must be held.
+		 *
+		 * @param key The token value.
+		 * @param now The current time, in milliseconds since the
+		 *            epoch.
+		 *
+		 * @return The entry, {@code null} if not found or expired.
+		 */
+		Node<T> get(final String key, final long now) {
+
+			Node<T> node = map.get(key);
+
+			if (node == null || node.storedToken.isExpired(now)) {
+				return null;
+			}
+
+			return node;
+		}
+
+
+		/**
+		 * Removes the entry with the specified key. The lock must be
+		 * held.
+		 *
+		 * @param key The token value.
+		 *
+		 * @return The removed entry, {@code null} if not found.
+		 */
+		Node<T> remove(final String key) {
+
+			Node<T> node = map.remove(key);
+
+			if (node != null) {
+				wheel.cancel(node.timer);
+				unindex(node);
+			}
+
+			return node;
+		}
+
+
+		/**
+		 * Evicts the entry closest to expiration. The lock must be
+		 * held.
+		 *
+		 * @return {@code true} if an entry was evicted, {@code false}
+		 *         if there were no evictable entries.
+		 */
+		boolean evict() {
+
+			Node<T> node = wheel.pollEarliest();
+
+			if (node == null) {
+				return false;
+			}
+
+			remove(node.key);
+			return true;
+		}
+
+
+		/**
+		 * Purges the expired entries. The lock must be held.
+		 *
+		 * @param now The current time, in milliseconds since the
+		 *            epoch.
+		 *
+		 * @return The number of purged entries.
+		 */
+		int purgeExpired(final long now) {
+
+			List<Node<T>> expired = new ArrayList<>();
+
+			wheel.advance(now, expired);
+
+			int count = 0;
+
+			for (Node<T> node: expired) {
+				remove(node.key);
+				count++;
+			}
+
+			return count;
+		}
+
+
+		/**
+		 * Removes the specified entry from the secondary indexes.
+		 *
+		 * @param node The entry.
+		 */
+		private void unindex(final Node<T> node) {
+
+			StoredToken<T> storedToken = node.storedToken;
+
+			if (storedToken.getClientID() != null) {
+				unindex(byClientID, storedToken.getClientID(), node.key);
+			}
+
+			if (storedToken.getSubject() != null) {
+				unindex(bySubject, storedToken.getSubject(), node.key);
+			}
+		}
+
+
+		/**
+		 * Adds a token value to a secondary index.
+		 *
+		 * @param index    The index.
+		 * @param indexKey The client ID or subject.
+		 * @param key      The token value.
+		 */
+		private static <K> void index(final Map<K,Set<String>> index, final K indexKey, final String key) {
+
+			Set<String> keys = index.get(indexKey);
+
+			if (keys == null) {
+				keys = new HashSet<>(4);
+				index.put(indexKey, keys);
+			}
+
+			keys.add(key);
+		}
+
+
+		/**
+		 * Removes a token value from a secondary index.
+		 *
+		 * @param index    The index.
+		 * @param indexKey The client ID or subject.
+		 * @param key      The token value.
+		 */
+		private static <K> void unindex(final Map<K,Set<String>> index, final K indexKey, final String key) {
+
+			Set<String> keys = index.get(indexKey);
+
+			if (keys != null && keys.remove(key) && keys.isEmpty()) {
+				index.remove(indexKey);
+			}
+		}
+	}
+
+
+	/**
+	 * The shards.
+	 */
+	private final Shard<T>[] shards;
+
+
+	/**
+	 * Creates a new in-memory token store with the
+	 * {@link #DEFAULT_MAX_SIZE default maximum size}.
+	 */
+	public InMemoryTokenStore() {
+
+		this(DEFAULT_MAX_SIZE);
+	}
+
+
+	/**
+	 * Creates a new in-memory token store.
+	 *
+	 * @param maxSize The maximum number of tokens. Must be positive.
+	 */
+	public InMemoryTokenStore(final int maxSize) {
+
+		this(maxSize, DEFAULT_CONCURRENCY_LEVEL, DEFAULT_TICK_MILLIS);
+	}
+
+
+	/**
+	 * Creates a new in-memory token store.
+	 *
+	 * @param maxSize          The maximum number of tokens. Must be
+	 *                         positive.
+	 * @param concurrencyLevel The expected number of concurrently
+	 *                         updating threads, rounded up to a power of
+	 *                         two for the number of shards. Must be
+	 *                         positive.
+	 * @param tickMillis       The expiration tick, in milliseconds. Tokens
+	 *                         are purged up to one tick after their
+	 *                         expiration. Must be positive.
+	 */
+	@SuppressWarnings("unchecked")
+	public InMemoryTokenStore(final int maxSize, final int concurrencyLevel, final long tickMillis) {
+
+		if (maxSize < 1)
+			throw new IllegalArgumentException("The maximum size must be positive");
+
+		if (concurrencyLevel < 1)
+			throw new IllegalArgumentException("The concurrency level must be positive");
+
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("The tick duration must be positive");
+
+		int numShards = 1;
+
+		while (numShards < concurrencyLevel && numShards < maxSize) {
+			numShards <<= 1;
+		}
+
+		int shardMaxSize = (maxSize + numShards - 1) / numShards;
+
+		long now = System.currentTimeMillis();
+
+		shards = (Shard<T>[])new Shard<?>[numShards];
+
+		for (int i=0; i < numShards; i++) {
+			shards[i] = new Shard<>(shardMaxSize, tickMillis, now);
+		}
+	}
+
+
+	/**
+	 * Returns the shard for the specified token value.
+	 *
+	 * @param key The token value.
+	 *
+	 * @return The shard.
+	 */
+	private Shard<T> shardFor(final String key) {
+
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return shards[h & (shards.length - 1)];
+	}
+
+
+	@Override
+	public boolean put(final StoredToken<T> storedToken) {
+
+		if (storedToken == null)
+			throw new IllegalArgumentException("The stored token must not be null");
+
+		return put(storedToken, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Stores the specified token.
+	 *
+	 * @param storedToken The token to store.
+	 * @param now         The current time, in milliseconds since the
+	 *                    epoch.
+	 *
+	 * @return {@code true} if the token was stored.
+	 */
+	boolean put(final StoredToken<T> storedToken, final long now) {
+
+		String key = storedToken.getToken().getValue();
+
+		Shard<T> shard = shardFor(key);
+
+		shard.lock.lock();
+
+		try {
+			return shard.put(new Node<>(key, storedToken), now);
+		} finally {
+			shard.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public StoredToken<T> get(final String value) {
+
+		return get(value, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Gets the token with the specified value.
+	 *
+	 * @param value The token value.
+	 * @param now   The current time, in milliseconds since the epoch.
+	 *
+	 * @return The stored token, {@code null} if not found or expired.
+	 */
+	StoredToken<T> get(final String value, final long now) {
+
+		Shard<T> shard = shardFor(value);
+
+		shard.lock.lock();
+
+		try {
+			Node<T> node = shard.get(value, now);
+			return node != null ? node.storedToken : null;
+		} finally {
+			shard.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public StoredToken<T> remove(final String value) {
+
+		long now = System.currentTimeMillis();
+
+		Shard<T> shard = shardFor(value);
+
+		shard.lock.lock();
+
+		try {
+			Node<T> node = shard.remove(value);
+
+			if (node == null || node.storedToken.isExpired(now)) {
+				return null;
+			}
+
+			return node.storedToken;
+		} finally {
+			shard.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public List<StoredToken<T>> getByClientID(final ClientID clientID) {
+
+		if (clientID == null)
+			throw new IllegalArgumentException("The client ID must not be null");
+
+		return getByIndex(clientID, true);
+	}
+
+
+	@Override
+	public List<StoredToken<T>> getBySubject(final Subject subject) {
+
+		if (subject == null)
+			throw new IllegalArgumentException("The subject must not be null");
+
+		return getByIndex(subject, false);
+	}
+
+
+	/**
+	 * Gets the tokens with the specified client ID or subject.
+	 *
+	 * @param indexKey The client ID or subject.
+	 * @param client   {@code true} for a client ID, {@code false} for
+	 *                 a subject.
+	 *
+	 * @return The stored tokens.
+	 */
+	private List<StoredToken<T>> getByIndex(final Identifier indexKey, final boolean client) {
+
+		long now = System.currentTimeMillis();
+
+		List<StoredToken<T>> result = new ArrayList<>();
+
+		for (Shard<T> shard: shards) {
+
+			shard.lock.lock();
+
+			try {
+				Set<String> keys = client ? shard.byClientID.get(indexKey) : shard.bySubject.get(indexKey);
+
+				if (keys == null) {
+					continue;
+				}
+
+				for (String key: keys) {
+
+					Node<T> node = shard.get(key, now);
+
+					if (node != null) {
+						result.add(node.storedToken);
+					}
+				}
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+
+		return Collections.unmodifiableList(result);
+	}
+
+
+	@Override
+	public int removeByClientID(final ClientID clientID) {
+
+		if (clientID == null)
+			throw new IllegalArgumentException("The client ID must not be null");
+
+		return removeByIndex(clientID, true);
+	}
+
+
+	@Override
+	public int removeBySubject(final Subject subject) {
+
+		if (subject == null)
+			throw new IllegalArgumentException("The subject must not be null");
+
+		return removeByIndex(subject, false);
+	}
+
+
+	/**
+	 * Removes the tokens with the specified client ID or subject.
+	 *
+	 * @param indexKey The client ID or subject.
+	 * @param client   {@code true} for a client ID, {@code false} for
+	 *                 a subject.
+	 *
+	 * @return The number of removed tokens.
+	 */
+	private int removeByIndex(final Identifier indexKey, final boolean client) {
+
+		int count = 0;
+
+		for (Shard<T> shard: shards) {
+
+			shard.lock.lock();
+
+			try {
+				Set<String> keys = client ? shard.byClientID.get(indexKey) : shard.bySubject.get(indexKey);
+
+				if (keys == null) {
+					continue;
+				}
+
+				for (String key: new ArrayList<>(keys)) {
+
+					if (shard.remove(key) != null) {
+						count++;
+					}
+				}
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Purges the expired tokens.
+	 *
+	 * @return The number of purged tokens.
+	 */
+	public int purgeExpired() {
+
+		return purgeExpired(System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Purges the tokens expired at the specified time.
+	 *
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The number of purged tokens.
+	 */
+	int purgeExpired(final long now) {
+
+		int count = 0;
+
+		for (Shard<T> shard: shards) {
+
+			shard.lock.lock();
+
+			try {
+				count += shard.purgeExpired(now);
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+
+		return count;
+	}
+
+
+	@Override
+	public int size() {
+
+		int size = 0;
+
+		for (Shard<T> shard: shards) {
+
+			shard.lock.lock();
+
+			try {
+				size += shard.map.size();
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+
+		return size;
+	}
+
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return The number of shards.
+	 */
+	int getShardCount() {
+
+		return shards.length;
+	}
+
+
+	/**
+	 * Returns the number of expiration timers, including cancelled ones
+	 * which are yet to be dropped.
+	 *
+	 * @return The number of timers.
+	 */
+	int getTimerCount() {
+
+		int count = 0;
+
+		for (Shard<T> shard: shards) {
+
+			shard.lock.lock();
+
+			try {
+				count += shard.wheel.size() + shard.wheel.cancelledCount();
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,710 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.ThreadSafe;
+
+import com.nimbusds.oauth2.sdk.AuthorizationCode;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Identifier;
+import com.nimbusds.oauth2.sdk.id.Subject;
+import com.nimbusds.oauth2.sdk.util.MappedRecordLog;
+
+
+/**
+ * Token store persisted in a memory-mapped {@link MappedRecordLog}, so that
+ * the stored tokens survive a restart of the process. Reopening the store
+ * scans the record headers to rebuild the index, the token metadata is
+ * kept in a compact binary form and decoded on lookup only.
+ *
+ * <p>Supports {@link BearerAccessToken bearer} and
+ * {@link TypelessAccessToken typeless} access tokens,
+ * {@link RefreshToken refresh tokens} and
+ * {@link AuthorizationCode authorisation codes}. A store file should hold
+ * tokens of a single type.
+ *
+ * <p>The client ID and subject indexes are kept in memory and rebuilt when
+ * the store is opened, and after expired tokens are removed by
+ * {@link #purgeExpired} or dropped from the file by a compaction.
+ */
+@ThreadSafe
+public class MappedTokenStore<T extends Identifier> implements TokenStore<T>, Closeable {
+
+
+	/**
+	 * Bearer access token type.
+	 */
+	private static final byte BEARER_ACCESS_TOKEN = 1;
+
+
+	/**
+	 * Typeless access token type.
+	 */
+	private static final byte TYPELESS_ACCESS_TOKEN = 2;
+
+
+	/**
+	 * Refresh token type.
+	 */
+	private static final byte REFRESH_TOKEN = 3;
+
+
+	/**
+	 * Authorisation code type.
+	 */
+	private static final byte AUTHORIZATION_CODE = 4;
+
+
+	/**
+	 * The record log.
+	 */
+	private final MappedRecordLog log;
+
+
+	/**
+	 * The token values by client ID.
+	 */
+	private final Map<ClientID,Set<String>> byClientID = new HashMap<>();
+
+
+	/**
+	 * The token values by subject.
+	 */
+	private final Map<Subject,Set<String>> bySubject = new HashMap<>();
+
+
+	/**
+	 * The compaction count of the record log when the secondary indexes
+	 * were last rebuilt.
+	 */
+	private long compactionCount;
+
+
+	/**
+	 * Opens a token store in the specified file, creating the file if
+	 * it doesn't exist.
+	 *
+	 * @param file The store file. Must not be {@code null}.
+	 *
+	 * @throws IOException If the file couldn't be opened or isn't a
+	 *                     valid store.
+	 */
+	public MappedTokenStore(final File file)
+		throws IOException {
+
+		this(new MappedRecordLog(file));
+	}
+
+
+	/**
+	 * Creates a new token store with the specified record log.
+	 *
+	 * @param log The record log. Must not be {@code null}.
+	 *
+	 * @throws IOException If a stored token couldn't be decoded.
+	 */
+	public MappedTokenStore(final MappedRecordLog log)
+		throws IOException {
+
+		if (log == null)
+			throw new IllegalArgumentException("The record log must not be null");
+
+		this.log = log;
+
+		reindex();
+	}
+
+
+	/**
+	 * Rebuilds the secondary indexes from the live tokens in the record
+	 * log.
+	 *
+	 * @throws IOException If a stored token couldn't be decoded.
+	 */
+	private void reindex()
+		throws IOException {
+
+		byClientID.clear();
+		bySubject.clear();
+		compactionCount = log.getCompactionCount();
+
+		final List<String> invalid = new ArrayList<>();
+
+		log.scan(System.currentTimeMillis(), new MappedRecordLog.Visitor() {
+			@Override
+			public void visit(final String key, final long expiresAt, final byte[] payload) {
+				try {
+					index(decode(key, expiresAt, payload));
+				} catch (IOException e) {
+					invalid.add(key);
+				}
+			}
+		});
+
+		if (! invalid.isEmpty()) {
+			throw new IOException("Invalid stored token: " + invalid.get(0));
+		}
+	}
+
+
+	/**
+	 * Rebuilds the secondary indexes if the record log was compacted
+	 * since they were last built, which drops the expired tokens.
+	 */
+	private void reindexIfCompacted() {
+
+		if (log.getCompactionCount() == compactionCount) {
+			return;
+		}
+
+		try {
+			reindex();
+		} catch (IOException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Encodes the specified stored token.
+	 *
+	 * @param storedToken The stored token.
+	 *
+	 * @return The payload.
+	 *
+	 * @throws IllegalArgumentException If a parameter exceeds 65535 bytes
+	 *                                  when UTF-8 encoded.
+	 */
+	private static byte[] encode(final StoredToken<?> storedToken) {
+
+		Identifier token = storedToken.getToken();
+
+		byte type;
+		long lifetime = 0L;
+
+		if (token instanceof BearerAccessToken) {
+			type = BEARER_ACCESS_TOKEN;
+			lifetime = ((AccessToken)token).getLifetime();
+		} else if (token instanceof TypelessAccessToken) {
+			type = TYPELESS_ACCESS_TOKEN;
+		} else if (token instanceof RefreshToken) {
+			type = REFRESH_TOKEN;
+		} else if (token instanceof AuthorizationCode) {
+			type = AUTHORIZATION_CODE;
+		} else {
+			throw new IllegalArgumentException("Unsupported token type: " + token.getClass().getName());
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeByte(type);
+			out.writeLong(lifetime);
+			writeString(out, storedToken.getClientID());
+			writeString(out, storedToken.getSubject());
+			writeString(out, storedToken.getScope());
+			out.flush();
+		} catch (UTFDataFormatException e) {
+			throw new IllegalArgumentException("The stored token has a parameter exceeding 65535 bytes: " + e.getMessage(), e);
+		} catch (IOException e) {
+			// Not thrown by in-memory streams otherwise
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+
+	/**
+	 * Writes a string which may be {@code null}.
+	 *
+	 * @param out    The output stream.
+	 * @param object The object to write as string, {@code null} if not
+	 *               specified.
+	 *
+	 * @throws IOException If writing failed.
+	 */
+	private static void writeString(final DataOutputStream out, final Object object)
+		throws IOException {
+
+		out.writeBoolean(object != null);
+
+		if (object != null) {
+			out.writeUTF(object.toString());
+		}
+	}
+
+
+	/**
+	 * Reads a string which may be {@code null}.
+	 *
+	 * @param in The input stream.
+	 *
+	 * @return The string, {@code null} if not specified.
+	 *
+	 * @throws IOException If reading failed.
+	 */
+	private static String readString(final DataInputStream in)
+		throws IOException {
+
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+
+	/**
+	 * Decodes a stored token.
+	 *
+	 * @param value     The token value.
+	 * @param expiresAt The expiration time, 0 if none.
+	 * @param payload   The payload.
+	 *
+	 * @return The stored token.
+	 *
+	 * @throws IOException If decoding failed.
+	 */
+	@SuppressWarnings("unchecked")
+	private StoredToken<T> decode(final String value, final long expiresAt, final byte[] payload)
+		throws IOException {
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+		byte type = in.readByte();
+		long lifetime = in.readLong();
+		String clientID = readString(in);
+		String subject = readString(in);
+		String scope = readString(in);
+
+		Scope parsedScope = Scope.parse(scope);
+
+		Identifier token;
+
+		switch (type) {
+			case BEARER_ACCESS_TOKEN:
+				token = new BearerAccessToken(value, lifetime, parsedScope);
+				break;
+			case TYPELESS_ACCESS_TOKEN:
+				token = new TypelessAccessToken(value);
+				break;
+			case REFRESH_TOKEN:
+				token = new RefreshToken(value);
+				break;
+			case AUTHORIZATION_CODE:
+				token = new AuthorizationCode(value);
+				break;
+			default:
+				throw new IOException("Unsupported stored token type: " + type);
+		}
+
+		return new StoredToken<>(
+			(T)token,
+			clientID != null ? new ClientID(clientID) : null,
+			subject != null ? new Subject(subject) : null,
+			parsedScope,
+			expiresAt > 0 ? new Date(expiresAt) : null);
+	}
+
+
+	/**
+	 * Adds the specified token to the secondary indexes.
+	 *
+	 * @param storedToken The stored token.
+	 */
+	private void index(final StoredToken<T> storedToken) {
+
+		String value = storedToken.getToken().getValue();
+
+		if (storedToken.getClientID() != null) {
+			index(byClientID, storedToken.getClientID(), value);
+		}
+
+		if (storedToken.getSubject() != null) {
+			index(bySubject, storedToken.getSubject(), value);
+		}
+	}
+
+
+	/**
+	 * Removes the specified token from the secondary indexes.
+	 *
+	 * @param storedToken The stored token.
+	 */
+	private void unindex(final StoredToken<T> storedToken) {
+
+		String value = storedToken.getToken().getValue();
+
+		if (storedToken.getClientID() != null) {
+			unindex(byClientID, storedToken.getClientID(), value);
+		}
+
+		if (storedToken.getSubject() != null) {
+			unindex(bySubject, storedToken.getSubject(), value);
+		}
+	}
+
+
+	/**
+	 * Adds a token value to a secondary index.
+	 *
+	 * @param index    The index.
+	 * @param indexKey The client ID or subject.
+	 * @param value    The token value.
+	 */
+	private static <K> void index(final Map<K,Set<String>> index, final K indexKey, final String value) {
+
+		Set<String> values = index.get(indexKey);
+
+		if (values == null) {
+			values = new HashSet<>(4);
+			index.put(indexKey, values);
+		}
+
+		values.add(value);
+	}
+
+
+	/**
+	 * Removes a token value from a secondary index.
+	 *
+	 * @param index    The index.
+	 * @param indexKey The client ID or subject.
+	 * @param value    The token value.
+	 */
+	private static <K> void unindex(final Map<K,Set<String>> index, final K indexKey, final String value) {
+
+		Set<String> values = index.get(indexKey);
+
+		if (values != null && values.remove(value) && values.isEmpty()) {
+			index.remove(indexKey);
+		}
+	}
+
+
+	/**
+	 * Gets and decodes the token with the specified value, including an
+	 * expired one.
+	 *
+	 * @param value The token value.
+	 *
+	 * @return The stored token, {@code null} if not found.
+	 */
+	private StoredToken<T> find(final String value) {
+
+		long expiresAt = log.getExpirationTime(value);
+
+		if (expiresAt < 0) {
+			return null;
+		}
+
+		return decodeChecked(value, expiresAt, log.get(value, 0L));
+	}
+
+
+	/**
+	 * Decodes a stored token, which is expected to be valid.
+	 *
+	 * @param value     The token value.
+	 * @param expiresAt The expiration time, 0 if none.
+	 * @param payload   The payload.
+	 *
+	 * @return The stored token.
+	 */
+	private StoredToken<T> decodeChecked(final String value, final long expiresAt, final byte[] payload) {
+
+		try {
+			return decode(value, expiresAt, payload);
+		} catch (IOException e) {
+			throw new IllegalStateException("Invalid stored token: " + e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Stores the specified token, replacing any token with the same
+	 * value.
+	 *
+	 * @param storedToken The token to store. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the token was stored, {@code false} if the
+	 *         store file couldn't be enlarged.
+	 */
+	@Override
+	public synchronized boolean put(final StoredToken<T> storedToken) {
+
+		if (storedToken == null)
+			throw new IllegalArgumentException("The stored token must not be null");
+
+		String value = storedToken.getToken().getValue();
+
+		byte[] payload = encode(storedToken);
+
+		StoredToken<T> previous = find(value);
+
+		try {
+			log.put(value, storedToken.getExpirationTimeMillis(), payload);
+		} catch (IOException e) {
+			// The previous token, if any, is retained
+			return false;
+		} finally {
+			// The file may have been compacted to make room
+			reindexIfCompacted();
+		}
+
+		if (previous != null) {
+			unindex(previous);
+		}
+
+		index(storedToken);
+		return true;
+	}
+
+
+	@Override
+	public synchronized StoredToken<T> get(final String value) {
+
+		long now = System.currentTimeMillis();
+
+		byte[] payload = log.get(value, now);
+
+		if (payload == null) {
+			return null;
+		}
+
+		return decodeChecked(value, log.getExpirationTime(value), payload);
+	}
+
+
+	@Override
+	public synchronized StoredToken<T> remove(final String value) {
+
+		StoredToken<T> storedToken = find(value);
+
+		if (storedToken == null) {
+			return null;
+		}
+
+		log.remove(value, 0L);
+		unindex(storedToken);
+
+		return storedToken.isExpired(System.currentTimeMillis()) ? null : storedToken;
+	}
+
+
+	@Override
+	public synchronized List<StoredToken<T>> getByClientID(final ClientID clientID) {
+
+		if (clientID == null)
+			throw new IllegalArgumentException("The client ID must not be null");
+
+		return getAll(byClientID.get(clientID));
+	}
+
+
+	@Override
+	public synchronized List<StoredToken<T>> getBySubject(final Subject subject) {
+
+		if (subject == null)
+			throw new IllegalArgumentException("The subject must not be null");
+
+		return getAll(bySubject.get(subject));
+	}
+
+
+	/**
+	 * Gets the tokens with the specified values.
+	 *
+	 * @param values The token values, {@code null} if none.
+	 *
+	 * @return The stored tokens which haven't expired.
+	 */
+	private List<StoredToken<T>> getAll(final Set<String> values) {
+
+		if (values == null) {
+			return Collections.emptyList();
+		}
+
+		List<StoredToken<T>> result = new ArrayList<>(values.size());
+
+		for (String value: values) {
+
+			StoredToken<T> storedToken = get(value);
+
+			if (storedToken != null) {
+				result.add(storedToken);
+			}
+		}
+
+		return Collections.unmodifiableList(result);
+	}
+
+
+	@Override
+	public synchronized int removeByClientID(final ClientID clientID) {
+
+		if (clientID == null)
+			throw new IllegalArgumentException("The client ID must not be null");
+
+		return removeAll(byClientID.get(clientID));
+	}
+
+
+	@Override
+	public synchronized int removeBySubject(final Subject subject) {
+
+		if (subject == null)
+			throw new IllegalArgumentException("The subject must not be null");
+
+		return removeAll(bySubject.get(subject));
+	}
+
+
+	/**
+	 * Removes the tokens with the specified values.
+	 *
+	 * @param values The token values, {@code null} if none.
+	 *
+	 * @return The number of removed tokens.
+	 */
+	private int removeAll(final Set<String> values) {
+
+		if (values == null) {
+			return 0;
+		}
+
+		int count = 0;
+
+		for (String value: new ArrayList<>(values)) {
+
+			StoredToken<T> storedToken = find(value);
+
+			if (storedToken != null) {
+				log.remove(value, 0L);
+				unindex(storedToken);
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Removes the expired tokens. The space is reclaimed on the next
+	 * {@link #compact compaction}.
+	 *
+	 * @return The number of removed tokens.
+	 */
+	public synchronized int purgeExpired() {
+
+		int count = log.purgeExpired(System.currentTimeMillis());
+
+		if (count > 0) {
+			try {
+				reindex();
+			} catch (IOException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Compacts the store file, dropping the removed and expired tokens.
+	 *
+	 * @throws IOException If compaction failed.
+	 */
+	public synchronized void compact()
+		throws IOException {
+
+		log.compact(System.currentTimeMillis());
+		reindex();
+	}
+
+
+	@Override
+	public synchronized int size() {
+
+		return log.size();
+	}
+
+
+	/**
+	 * Returns the number of client IDs in the secondary index.
+	 *
+	 * @return The number of indexed client IDs.
+	 */
+	synchronized int getClientIDIndexSize() {
+
+		return byClientID.size();
+	}
+
+
+	/**
+	 * Returns the number of subjects in the secondary index.
+	 *
+	 * @return The number of indexed subjects.
+	 */
+	synchronized int getSubjectIndexSize() {
+
+		return bySubject.size();
+	}
+
+
+	/**
+	 * Writes the stored tokens to the storage device.
+	 */
+	public void force() {
+
+		log.force();
+	}
+
+
+	/**
+	 * Closes the store.
+	 *
+	 * @throws IOException If closing failed.
+	 */
+	@Override
+	public synchronized void close()
+		throws IOException {
+
+		log.close();
+	}
+}
@@ -18,6 +18,7 @@
 package com.nimbusds.oauth2.sdk.token;
 
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -26,6 +27,7 @@ import net.jcip.annotations.Immutable;
 import net.minidev.json.JSONObject;
 
 import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
+import com.nimbusds.oauth2.sdk.util.JSONObjectWriter;
 import com.nimbusds.oauth2.sdk.ParseException;
 
 
@@ -97,6 +99,14 @@ public final class RefreshToken extends Token {
 	}
 
 
+	@Override
+	public void writeJSONMembers(final JSONObjectWriter writer)
+		throws IOException {
+
+		writer.writeMember("refresh_token", getValue());
+	}
+
+
 	/**
 	 * Parses a refresh token from a JSON object access token response.
 	 *
@@ -0,0 +1,211 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.util.Date;
+
+import net.jcip.annotations.Immutable;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Identifier;
+import com.nimbusds.oauth2.sdk.id.Subject;
+
+
+/**
+ * Token together with the authorisation metadata kept in a
+ * {@link TokenStore}.
+ */
+@Immutable
+public final class StoredToken<T extends Identifier> {
+
+
+	/**
+	 * The token.
+	 */
+	private final T token;
+
+
+	/**
+	 * The client ID, {@code null} if not specified.
+	 */
+	private final ClientID clientID;
+
+
+	/**
+	 * The subject, {@code null} if not specified.
+	 */
+	private final Subject subject;
+
+
+	/**
+	 * The scope, {@code null} if not specified.
+	 */
+	private final Scope scope;
+
+
+	/**
+	 * The expiration time, in milliseconds since the epoch, 0 if not
+	 * specified.
+	 */
+	private final long expirationTime;
+
+
+	/**
+	 * Creates a new stored token. For an access token with a lifetime the
+	 * expiration time is computed from the current time and the
+	 * lifetime, and the scope defaults to the token scope.
+	 *
+	 * @param token    The token. Must not be {@code null}.
+	 * @param clientID The client ID, {@code null} if not specified.
+	 * @param subject  The subject, {@code null} if not specified.
+	 */
+	public StoredToken(final T token, final ClientID clientID, final Subject subject) {
+
+		this(token, clientID, subject, null, null);
+	}
+
+
+	/**
+	 * Creates a new stored token.
+	 *
+	 * @param token          The token. Must not be {@code null}.
+	 * @param clientID       The client ID, {@code null} if not
+	 *                       specified.
+	 * @param subject        The subject, {@code null} if not specified.
+	 * @param scope          The scope, {@code null} if not specified, or
+	 *                       to use the scope of an access token.
+	 * @param expirationTime The expiration time, {@code null} if not
+	 *                       specified, or to compute it from the lifetime
+	 *                       of an access token.
+	 */
+	public StoredToken(final T token,
+			   final ClientID clientID,
+			   final Subject subject,
+			   final Scope scope,
+			   final Date expirationTime) {
+
+		if (token == null)
+			throw new IllegalArgumentException("The token must not be null");
+
+		this.token = token;
+		this.clientID = clientID;
+		this.subject = subject;
+
+		Scope effectiveScope = scope;
+		long exp = expirationTime != null ? expirationTime.getTime() : 0L;
+
+		if (token instanceof AccessToken) {
+
+			AccessToken accessToken = (AccessToken)token;
+
+			if (effectiveScope == null) {
+				effectiveScope = accessToken.getScope();
+			}
+
+			if (expirationTime == null && accessToken.getLifetime() > 0) {
+				exp = System.currentTimeMillis() + accessToken.getLifetime() * 1000L;
+			}
+		}
+
+		this.scope = effectiveScope != null ? new Scope(effectiveScope) : null;
+		this.expirationTime = exp;
+	}
+
+
+	/**
+	 * Returns the token.
+	 *
+	 * @return The token.
+	 */
+	public T getToken() {
+
+		return token;
+	}
+
+
+	/**
+	 * Returns the client ID.
+	 *
+	 * @return The client ID, {@code null} if not specified.
+	 */
+	public ClientID getClientID() {
+
+		return clientID;
+	}
+
+
+	/**
+	 * Returns the subject.
+	 *
+	 * @return The subject, {@code null} if not specified.
+	 */
+	public Subject getSubject() {
+
+		return subject;
+	}
+
+
+	/**
+	 * Returns the scope.
+	 *
+	 * @return The scope, {@code null} if not specified.
+	 */
+	public Scope getScope() {
+
+		return scope != null ? new Scope(scope) : null;
+	}
+
+
+	/**
+	 * Returns the expiration time.
+	 *
+	 * @return The expiration time, {@code null} if not specified.
+	 */
+	public Date getExpirationTime() {
+
+		return expirationTime > 0 ? new Date(expirationTime) : null;
+	}
+
+
+	/**
+	 * Returns the expiration time, in milliseconds since the epoch.
+	 *
+	 * @return The expiration time, 0 if not specified.
+	 */
+	long getExpirationTimeMillis() {
+
+		return expirationTime;
+	}
+
+
+	/**
+	 * Returns {@code true} if the token has expired at the specified
+	 * time.
+	 *
+	 * @param now The time, in milliseconds since the epoch.
+	 *
+	 * @return {@code true} if expired, else {@code false}.
+	 */
+	boolean isExpired(final long now) {
+
+		return expirationTime > 0 && expirationTime <= now;
+	}
+}
@@ -0,0 +1,552 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+
+/**
+ * Hierarchical timing wheel for expiring elements. Four levels of 64 slots
+ * each cover 64<sup>4</sup> ticks; elements beyond that are parked in the
+ * top level and re-inserted as the wheel turns. Adding, cancelling and
+ * expiring an element are constant time operations. Cancelled timers
+ * release their element at once and are dropped from the slots when the
+ * wheel turns past them, or in a sweep when they outnumber the live
+ * timers.
+ */
+@NotThreadSafe
+final class TimingWheel<E> {
+
+
+	/**
+	 * The number of bits per level.
+	 */
+	private static final int LEVEL_BITS = 6;
+
+
+	/**
+	 * The number of slots per level.
+	 */
+	private static final int SLOTS = 1 << LEVEL_BITS;
+
+
+	/**
+	 * The number of levels.
+	 */
+	private static final int LEVELS = 4;
+
+
+	/**
+	 * The number of ticks after which the whole wheel is re-built
+	 * instead of turned tick by tick.
+	 */
+	private static final long MAX_TURN = SLOTS * SLOTS;
+
+
+	/**
+	 * The minimum number of cancelled timers for a sweep.
+	 */
+	private static final int MIN_SWEEP = SLOTS;
+
+
+	/**
+	 * Timer of an element.
+	 */
+	static final class Timer<E> {
+
+
+		/**
+		 * The element, {@code null} if the timer was cancelled or has
+		 * fired.
+		 */
+		E element;
+
+
+		/**
+		 * The deadline tick.
+		 */
+		final long deadline;
+
+
+		/**
+		 * Creates a new timer.
+		 *
+		 * @param element  The element.
+		 * @param deadline The deadline tick.
+		 */
+		Timer(final E element, final long deadline) {
+
+			this.element = element;
+			this.deadline = deadline;
+		}
+	}
+
+
+	/**
+	 * The tick duration, in milliseconds.
+	 */
+	private final long tickMillis;
+
+
+	/**
+	 * The slots, by level.
+	 */
+	private final List<List<Timer<E>>> slots;
+
+
+	/**
+	 * The timers which were due when added.
+	 */
+	private List<Timer<E>> due = new ArrayList<>();
+
+
+	/**
+	 * The current tick.
+	 */
+	private long currentTick;
+
+
+	/**
+	 * The number of live timers in the wheel.
+	 */
+	private int size = 0;
+
+
+	/**
+	 * The number of cancelled timers still in the wheel.
+	 */
+	private int cancelled = 0;
+
+
+	/**
+	 * Creates a new timing wheel.
+	 *
+	 * @param tickMillis The tick duration, in milliseconds. Must be
+	 *                   positive.
+	 * @param now        The current time, in milliseconds since the
+	 *                   epoch.
+	 */
+	TimingWheel(final long tickMillis, final long now) {
+
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("The tick duration must be positive");
+
+		this.tickMillis = tickMillis;
+
+		slots = new ArrayList<>(LEVELS * SLOTS);
+
+		for (int i=0; i < LEVELS * SLOTS; i++) {
+			slots.add(null);
+		}
+
+		currentTick = now / tickMillis;
+	}
+
+
+	/**
+	 * Returns the number of elements in the wheel.
+	 *
+	 * @return The number of elements.
+	 */
+	int size() {
+
+		return size;
+	}
+
+
+	/**
+	 * Returns the number of cancelled timers which are yet to be dropped
+	 * from the wheel.
+	 *
+	 * @return The number of cancelled timers.
+	 */
+	int cancelledCount() {
+
+		return cancelled;
+	}
+
+
+	/**
+	 * Adds an element to the wheel.
+	 *
+	 * @param element   The element. Must not be {@code null}.
+	 * @param expiresAt The expiration time, in milliseconds since the
+	 *                  epoch.
+	 *
+	 * @return The timer, for cancellation.
+	 */
+	Timer<E> add(final E element, final long expiresAt) {
+
+		// Round up, an element must not expire early
+		long deadline = expiresAt / tickMillis + (expiresAt % tickMillis == 0 ? 0 : 1);
+
+		Timer<E> timer = new Timer<>(element, deadline);
+		schedule(timer);
+		size++;
+		return timer;
+	}
+
+
+	/**
+	 * Cancels the specified timer. Has no effect if the timer was
+	 * already cancelled or has fired.
+	 *
+	 * @param timer The timer, {@code null} if none.
+	 */
+	void cancel(final Timer<E> timer) {
+
+		if (timer == null || timer.element == null) {
+			return;
+		}
+
+		timer.element = null;
+		size--;
+		cancelled++;
+
+		if (cancelled >= MIN_SWEEP && cancelled > size) {
+			sweep();
+		}
+	}
+
+
+	/**
+	 * Drops the cancelled timers from the wheel.
+	 */
+	private void sweep() {
+
+		dropCancelled(due);
+
+		for (int i=0; i < slots.size(); i++) {
+
+			List<Timer<E>> list = slots.get(i);
+
+			if (list != null) {
+
+				dropCancelled(list);
+
+				if (list.isEmpty()) {
+					slots.set(i, null);
+				}
+			}
+		}
+
+		cancelled = 0;
+	}
+
+
+	/**
+	 * Drops the cancelled timers from the specified list.
+	 *
+	 * @param list The timers.
+	 */
+	private static <E> void dropCancelled(final List<Timer<E>> list) {
+
+		int j = 0;
+
+		for (int i=0; i < list.size(); i++) {
+
+			Timer<E> timer = list.get(i);
+
+			if (timer.element != null) {
+				list.set(j++, timer);
+			}
+		}
+
+		list.subList(j, list.size()).clear();
+	}
+
+
+	/**
+	 * Schedules the specified timer.
+	 *
+	 * @param timer The timer.
+	 */
+	private void schedule(final Timer<E> timer) {
+
+		if (timer.element == null) {
+			// Cancelled
+			cancelled--;
+			return;
+		}
+
+		long delta = timer.deadline - currentTick;
+
+		if (delta <= 0) {
+			due.add(timer);
+			return;
+		}
+
+		int level = 0;
+
+		while (level < LEVELS - 1 && delta >= 1L << (LEVEL_BITS * (level + 1))) {
+			level++;
+		}
+
+		int slot = (int)((timer.deadline >>> (LEVEL_BITS * level)) & (SLOTS - 1));
+		int index = level * SLOTS + slot;
+
+		List<Timer<E>> list = slots.get(index);
+
+		if (list == null) {
+			list = new ArrayList<>(4);
+			slots.set(index, list);
+		}
+
+		list.add(timer);
+	}
+
+
+	/**
+	 * Takes the timers in the specified slot.
+	 *
+	 * @param level The level.
+	 * @param slot  The slot.
+	 *
+	 * @return The timers, {@code null} if none.
+	 */
+	private List<Timer<E>> take(final int level, final int slot) {
+
+		int index = level * SLOTS + slot;
+		List<Timer<E>> list = slots.get(index);
+		slots.set(index, null);
+		return list;
+	}
+
+
+	/**
+	 * Turns the wheel to the specified time, collecting the expired
+	 * elements.
+	 *
+	 * @param now     The current time, in milliseconds since the epoch.
+	 * @param expired Receives the expired elements.
+	 */
+	void advance(final long now, final Collection<? super E> expired) {
+
+		long nowTick = now / tickMillis;
+
+		if (nowTick - currentTick > MAX_TURN) {
+			rebuild(nowTick, expired);
+			return;
+		}
+
+		drainDue(expired);
+
+		while (currentTick < nowTick) {
+
+			currentTick++;
+
+			// Cascade the higher levels down, top first
+			for (int level = LEVELS - 1; level > 0; level--) {
+
+				if ((currentTick & ((1L << (LEVEL_BITS * level)) - 1)) != 0) {
+					continue;
+				}
+
+				List<Timer<E>> list = take(level, (int)((currentTick >>> (LEVEL_BITS * level)) & (SLOTS - 1)));
+
+				if (list != null) {
+					for (Timer<E> timer: list) {
+						schedule(timer);
+					}
+				}
+			}
+
+			List<Timer<E>> list = take(0, (int)(currentTick & (SLOTS - 1)));
+
+			if (list != null) {
+				for (Timer<E> timer: list) {
+					schedule(timer);
+				}
+			}
+
+			drainDue(expired);
+		}
+	}
+
+
+	/**
+	 * Collects the due elements.
+	 *
+	 * @param expired Receives the expired elements.
+	 */
+	private void drainDue(final Collection<? super E> expired) {
+
+		if (due.isEmpty()) {
+			return;
+		}
+
+		for (Timer<E> timer: due) {
+			fire(timer, expired);
+		}
+
+		due = new ArrayList<>();
+	}
+
+
+	/**
+	 * Re-builds the wheel at the specified tick, collecting the expired
+	 * elements.
+	 *
+	 * @param nowTick The current tick.
+	 * @param expired Receives the expired elements.
+	 */
+	private void rebuild(final long nowTick, final Collection<? super E> expired) {
+
+		List<Timer<E>> all = due;
+		due = new ArrayList<>();
+
+		for (int i=0; i < slots.size(); i++) {
+
+			List<Timer<E>> list = slots.get(i);
+
+			if (list != null) {
+				all.addAll(list);
+				slots.set(i, null);
+			}
+		}
+
+		currentTick = nowTick;
+
+		for (Timer<E> timer: all) {
+			schedule(timer);
+		}
+
+		drainDue(expired);
+	}
+
+
+	/**
+	 * Fires the specified timer, unless cancelled.
+	 *
+	 * @param timer The timer.
+	 * @param out   Receives the element.
+	 */
+	private void fire(final Timer<E> timer, final Collection<? super E> out) {
+
+		if (timer.element == null) {
+			cancelled--;
+			return;
+		}
+
+		out.add(timer.element);
+		timer.element = null;
+		size--;
+	}
+
+
+	/**
+	 * Removes and returns the element with the earliest deadline, for
+	 * eviction. Scans the wheel from the current position for the first
+	 * slot with a live timer and takes the earliest one in it, the other
+	 * timers in the slot are left in place.
+	 *
+	 * @return The element, {@code null} if the wheel is empty.
+	 */
+	E pollEarliest() {
+
+		if (size == 0) {
+			return null;
+		}
+
+		E element = pollEarliest(due);
+
+		if (element != null) {
+			return element;
+		}
+
+		for (int level = 0; level < LEVELS; level++) {
+
+			int current = (int)((currentTick >>> (LEVEL_BITS * level)) & (SLOTS - 1));
+
+			for (int i=1; i <= SLOTS; i++) {
+
+				int index = level * SLOTS + ((current + i) & (SLOTS - 1));
+
+				List<Timer<E>> list = slots.get(index);
+
+				if (list == null) {
+					continue;
+				}
+
+				element = pollEarliest(list);
+
+				if (list.isEmpty()) {
+					slots.set(index, null);
+				}
+
+				if (element != null) {
+					return element;
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Removes the live timer with the earliest deadline from the
+	 * specified list, dropping any cancelled timers.
+	 *
+	 * @param list The timers.
+	 *
+	 * @return The element of the removed timer, {@code null} if the list
+	 *         has no live timers.
+	 */
+	private E pollEarliest(final List<Timer<E>> list) {
+
+		int earliest = -1;
+
+		for (int i=0; i < list.size(); i++) {
+
+			Timer<E> timer = list.get(i);
+
+			if (timer.element == null) {
+				// Cancelled, swap with the last
+				list.set(i, list.get(list.size() - 1));
+				list.remove(list.size() - 1);
+				cancelled--;
+				i--;
+				continue;
+			}
+
+			if (earliest < 0 || timer.deadline < list.get(earliest).deadline) {
+				earliest = i;
+			}
+		}
+
+		if (earliest < 0) {
+			return null;
+		}
+
+		Timer<E> timer = list.get(earliest);
+		list.set(earliest, list.get(list.size() - 1));
+		list.remove(list.size() - 1);
+
+		E element = timer.element;
+		timer.element = null;
+		size--;
+		return element;
+	}
+}
@@ -18,11 +18,13 @@
 package com.nimbusds.oauth2.sdk.token;
 
 
+import java.io.IOException;
 import java.util.Set;
 
 import net.minidev.json.JSONObject;
 
 import com.nimbusds.oauth2.sdk.id.Identifier;
+import com.nimbusds.oauth2.sdk.util.JSONObjectWriter;
 
 
 /**
@@ -104,4 +106,22 @@ public abstract class Token extends Identifier {
 	 * @return The token parameters as a JSON object.
 	 */
 	public abstract JSONObject toJSONObject();
+
+
+	/**
+	 * Writes the token parameters to the specified JSON object writer, as
+	 * required for the streamed composition of an access token response.
+	 * The default implementation writes the {@link #toJSONObject JSON
+	 * object} members, extending classes should override this method to
+	 * write the members directly.
+	 *
+	 * @param writer The JSON object writer. Must not be {@code null}.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public void writeJSONMembers(final JSONObjectWriter writer)
+		throws IOException {
+
+		writer.writeMembers(toJSONObject());
+	}
 }
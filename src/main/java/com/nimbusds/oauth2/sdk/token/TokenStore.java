@@ -0,0 +1,118 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.util.List;
+
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Identifier;
+import com.nimbusds.oauth2.sdk.id.Subject;
+
+
+/**
+ * Token store. Keeps issued tokens with their authorisation metadata, for
+ * lookup by token value and bulk revocation by client or subject. Expired
+ * tokens are never returned. Implementations must be thread-safe.
+ *
+ * @see InMemoryTokenStore
+ */
+public interface TokenStore<T extends Identifier> {
+
+
+	/**
+	 * Stores the specified token, replacing any token with the same
+	 * value.
+	 *
+	 * @param storedToken The token to store. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the token was stored, {@code false} if it
+	 *         was not admitted because the store is full.
+	 */
+	boolean put(final StoredToken<T> storedToken);
+
+
+	/**
+	 * Gets the token with the specified value.
+	 *
+	 * @param value The token value. Must not be {@code null}.
+	 *
+	 * @return The stored token, {@code null} if not found or expired.
+	 */
+	StoredToken<T> get(final String value);
+
+
+	/**
+	 * Removes the token with the specified value.
+	 *
+	 * @param value The token value. Must not be {@code null}.
+	 *
+	 * @return The removed token, {@code null} if not found or expired.
+	 */
+	StoredToken<T> remove(final String value);
+
+
+	/**
+	 * Gets the tokens issued to the specified client.
+	 *
+	 * @param clientID The client ID. Must not be {@code null}.
+	 *
+	 * @return The stored tokens, empty list if none.
+	 */
+	List<StoredToken<T>> getByClientID(final ClientID clientID);
+
+
+	/**
+	 * Gets the tokens issued for the specified subject.
+	 *
+	 * @param subject The subject. Must not be {@code null}.
+	 *
+	 * @return The stored tokens, empty list if none.
+	 */
+	List<StoredToken<T>> getBySubject(final Subject subject);
+
+
+	/**
+	 * Removes the tokens issued to the specified client.
+	 *
+	 * @param clientID The client ID. Must not be {@code null}.
+	 *
+	 * @return The number of removed tokens.
+	 */
+	int removeByClientID(final ClientID clientID);
+
+
+	/**
+	 * Removes the tokens issued for the specified subject.
+	 *
+	 * @param subject The subject. Must not be {@code null}.
+	 *
+	 * @return The number of removed tokens.
+	 */
+	int removeBySubject(final Subject subject);
+
+
+	/**
+	 * Returns the number of stored tokens. May include expired tokens
+	 * which are yet to be purged.
+	 *
+	 * @return The number of stored tokens.
+	 */
+	int size();
+}
@@ -18,6 +18,7 @@
 package com.nimbusds.oauth2.sdk.token;
 
 
+import java.io.IOException;
 import java.util.Set;
 
 import net.jcip.annotations.Immutable;
@@ -25,6 +26,7 @@ import net.jcip.annotations.Immutable;
 import net.minidev.json.JSONObject;
 
 import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.util.JSONObjectWriter;
 
 
 /**
@@ -143,6 +145,30 @@ public class Tokens {
 	}
 
 
+	/**
+	 * Writes the members of the JSON object representation of this token
+	 * pair to the specified JSON object writer.
+	 *
+	 * @param writer The JSON object writer. Must not be {@code null}.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public void writeJSONMembers(final JSONObjectWriter writer)
+		throws IOException {
+
+		if (! JSONObjectWriter.isStreamable(getClass())) {
+			// Subclass overrides toJSONObject
+			writer.writeMembers(toJSONObject());
+			return;
+		}
+
+		accessToken.writeJSONMembers(writer);
+
+		if (refreshToken != null)
+			refreshToken.writeJSONMembers(writer);
+	}
+
+
 	@Override
 	public String toString() {
 
@@ -23,9 +23,12 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
@@ -257,6 +260,29 @@ public class JSONObjectUtils {
 	}
 
 
+	/**
+	 * The constants of the enumeration classes, keyed by case-insensitive
+	 * string representation. Built once per class on first use.
+	 */
+	private static final ClassValue<Map<String,Object>> ENUM_CONSTANTS = new ClassValue<Map<String,Object>>() {
+
+		@Override
+		protected Map<String,Object> computeValue(final Class<?> enumClass) {
+
+			Map<String,Object> constants = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+			for (Object en: enumClass.getEnumConstants()) {
+
+				// The first declared constant wins
+				if (! constants.containsKey(en.toString()))
+					constants.put(en.toString(), en);
+			}
+
+			return Collections.unmodifiableMap(constants);
+		}
+	};
+
+
 	/**
 	 * Gets a string member of a JSON object as an enumerated object.
 	 *
@@ -277,11 +303,10 @@ public class JSONObjectUtils {
 
 		String value = getString(o, key);
 
-		for (T en: enumClass.getEnumConstants()) {
-			       
-			if (en.toString().equalsIgnoreCase(value))
-				return en;
-		}
+		Object en = ENUM_CONSTANTS.get(enumClass).get(value);
+
+		if (en != null)
+			return enumClass.cast(en);
 
 		throw new ParseException("Unexpected value of JSON object member with key \"" + key + "\"");
 	}
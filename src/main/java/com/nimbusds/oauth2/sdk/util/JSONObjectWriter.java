@@ -0,0 +1,368 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+
+
+/**
+ * Streaming writer of a JSON object. The members are written straight to
+ * the output, without building an intermediate {@link net.minidev.json.JSONObject}
+ * map, in the style of {@link JSONValue#COMPRESSION}, so that the
+ * serialised members are identical to those of
+ * {@link net.minidev.json.JSONObject#toJSONString()}.
+ *
+ * <p>A member with a name which was already written is skipped. Members
+ * which must take precedence, such as values overriding defaults, are
+ * therefore written first.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * StringBuilder sb = new StringBuilder();
+ * JSONObjectWriter writer = new JSONObjectWriter(sb);
+ * writer.writeMember("access_token", "2YotnFZFEjr1zCsicMWpAA");
+ * writer.writeMember("expires_in", 3600L);
+ * writer.end();
+ * </pre>
+ */
+@NotThreadSafe
+public final class JSONObjectWriter {
+
+
+	/**
+	 * Caches the streamable check per class.
+	 */
+	private static final ClassValue<Boolean> STREAMABLE = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(final Class<?> type) {
+
+			Class<?> toJSONObjectClass = findDeclaringClass(type, "toJSONObject");
+			Class<?> writeMembersClass = findDeclaringClass(type, "writeJSONMembers", JSONObjectWriter.class);
+
+			return toJSONObjectClass != null &&
+				writeMembersClass != null &&
+				toJSONObjectClass.isAssignableFrom(writeMembersClass);
+		}
+	};
+
+
+	/**
+	 * The output.
+	 */
+	private final Appendable out;
+
+
+	/**
+	 * The JSON style.
+	 */
+	private final JSONStyle style;
+
+
+	/**
+	 * The names of the written members.
+	 */
+	private String[] names = new String[8];
+
+
+	/**
+	 * The number of written members.
+	 */
+	private int count = 0;
+
+
+	/**
+	 * {@code true} if the object is ended.
+	 */
+	private boolean ended = false;
+
+
+	/**
+	 * Creates a new JSON object writer and starts the object.
+	 *
+	 * @param out The output, such as a {@link StringBuilder} or a
+	 *            {@link java.io.Writer}. Must not be {@code null}.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public JSONObjectWriter(final Appendable out)
+		throws IOException {
+
+		if (out == null) {
+			throw new IllegalArgumentException("The output must not be null");
+		}
+
+		this.out = out;
+		style = JSONValue.COMPRESSION;
+		style.objectStart(out);
+	}
+
+
+	/**
+	 * Checks if the JSON members of instances of the specified class can
+	 * be streamed with its {@code writeJSONMembers(JSONObjectWriter)}
+	 * method. This is the case unless a subclass overrides the
+	 * {@code toJSONObject()} method without also overriding
+	 * {@code writeJSONMembers}, in which case the streamed members may
+	 * differ from the JSON object and the caller must write the members
+	 * of {@code toJSONObject()} instead.
+	 *
+	 * @param type The class. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the members can be streamed, else
+	 *         {@code false}.
+	 */
+	public static boolean isStreamable(final Class<?> type) {
+
+		return STREAMABLE.get(type);
+	}
+
+
+	/**
+	 * Finds the class declaring the specified method, searching the
+	 * superclasses.
+	 *
+	 * @return The declaring class, {@code null} if not found.
+	 */
+	private static Class<?> findDeclaringClass(final Class<?> type,
+						   final String name,
+						   final Class<?> ... parameterTypes) {
+
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+
+			try {
+				c.getDeclaredMethod(name, parameterTypes);
+				return c;
+			} catch (NoSuchMethodException e) {
+				// Try superclass
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Checks if a member with the specified name was written.
+	 *
+	 * @param name The member name.
+	 *
+	 * @return {@code true} if the member was written, else
+	 *         {@code false}.
+	 */
+	public boolean hasMember(final String name) {
+
+		for (int i=0; i < count; i++) {
+			if (names[i].equals(name)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Writes the name of a new member.
+	 *
+	 * @param name The member name.
+	 *
+	 * @return {@code true} if the name was written, {@code false} if a
+	 *         member with the same name was already written.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	private boolean writeName(final String name)
+		throws IOException {
+
+		if (ended) {
+			throw new IllegalStateException("The JSON object is ended");
+		}
+
+		if (name == null) {
+			throw new IllegalArgumentException("The member name must not be null");
+		}
+
+		if (hasMember(name)) {
+			return false;
+		}
+
+		if (count == names.length) {
+			names = Arrays.copyOf(names, count * 2);
+		}
+
+		if (count == 0) {
+			style.objectFirstStart(out);
+		} else {
+			style.objectNext(out);
+		}
+
+		names[count++] = name;
+
+		if (style.mustProtectKey(name)) {
+			out.append('"');
+			JSONValue.escape(name, out, style);
+			out.append('"');
+		} else {
+			out.append(name);
+		}
+
+		style.objectEndOfKey(out);
+		return true;
+	}
+
+
+	/**
+	 * Writes a string member.
+	 *
+	 * @param name  The member name. Must not be {@code null}.
+	 * @param value The member value, {@code null} if none.
+	 *
+	 * @return This writer.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public JSONObjectWriter writeMember(final String name, final String value)
+		throws IOException {
+
+		if (value == null && style.ignoreNull()) {
+			return this;
+		}
+
+		if (writeName(name)) {
+
+			if (value == null) {
+				out.append("null");
+			} else {
+				style.writeString(out, value);
+			}
+
+			style.objectElmStop(out);
+		}
+
+		return this;
+	}
+
+
+	/**
+	 * Writes a number member.
+	 *
+	 * @param name  The member name. Must not be {@code null}.
+	 * @param value The member value.
+	 *
+	 * @return This writer.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public JSONObjectWriter writeMember(final String name, final long value)
+		throws IOException {
+
+		if (writeName(name)) {
+			out.append(Long.toString(value));
+			style.objectElmStop(out);
+		}
+
+		return this;
+	}
+
+
+	/**
+	 * Writes a member with a value of any type supported by
+	 * {@link JSONValue#writeJSONString(Object, Appendable)}.
+	 *
+	 * @param name  The member name. Must not be {@code null}.
+	 * @param value The member value, {@code null} if none.
+	 *
+	 * @return This writer.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public JSONObjectWriter writeMember(final String name, final Object value)
+		throws IOException {
+
+		if (value instanceof String) {
+			return writeMember(name, (String)value);
+		}
+
+		if (value == null && style.ignoreNull()) {
+			return this;
+		}
+
+		if (writeName(name)) {
+			JSONValue.writeJSONString(value, out, style);
+			style.objectElmStop(out);
+		}
+
+		return this;
+	}
+
+
+	/**
+	 * Writes the members of the specified map.
+	 *
+	 * @param members The members, {@code null} if none. Members with a
+	 *                {@code null} name are skipped.
+	 *
+	 * @return This writer.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public JSONObjectWriter writeMembers(final Map<String,?> members)
+		throws IOException {
+
+		if (members == null) {
+			return this;
+		}
+
+		for (Map.Entry<String,?> entry: members.entrySet()) {
+
+			if (entry.getKey() == null) {
+				continue;
+			}
+
+			writeMember(entry.getKey(), entry.getValue());
+		}
+
+		return this;
+	}
+
+
+	/**
+	 * Ends the JSON object. No members may be written afterwards.
+	 *
+	 * @throws IOException If writing to the output failed.
+	 */
+	public void end()
+		throws IOException {
+
+		if (ended) {
+			return;
+		}
+
+		ended = true;
+		style.objectStop(out);
+	}
+}
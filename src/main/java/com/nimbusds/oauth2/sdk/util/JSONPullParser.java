@@ -0,0 +1,569 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import net.jcip.annotations.NotThreadSafe;
+
+
+/**
+ * Pull parser for the members of a JSON object. Intended for decoding the
+ * known members of well-known message shapes, such as token responses, in
+ * a single pass and without building a {@link net.minidev.json.JSONObject}
+ * tree. Values of unknown members can be skipped and their raw JSON text
+ * captured by position.
+ *
+ * <p>The parser accepts strict RFC 8259 JSON only and is intended as a
+ * fast path: a {@link ParseException} signals either malformed JSON or an
+ * unexpected value type, upon which callers should fall back to full
+ * parsing, for the appropriate error reporting.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * JSONPullParser parser = new JSONPullParser(json);
+ * parser.beginObject();
+ * while (parser.hasNextMember()) {
+ *     String name = parser.nextName();
+ *     if ("access_token".equals(name)) {
+ *         value = parser.nextString();
+ *     } else {
+ *         parser.skipValue();
+ *     }
+ * }
+ * parser.endDocument();
+ * </pre>
+ */
+@NotThreadSafe
+public final class JSONPullParser {
+
+
+	/**
+	 * The maximum nesting depth of skipped values.
+	 */
+	private static final int MAX_DEPTH = 64;
+
+
+	/**
+	 * The JSON text.
+	 */
+	private final String json;
+
+
+	/**
+	 * The current position.
+	 */
+	private int pos = 0;
+
+
+	/**
+	 * {@code true} if the next member is the first in the object.
+	 */
+	private boolean firstMember = true;
+
+
+	/**
+	 * Creates a new JSON pull parser.
+	 *
+	 * @param json The JSON text to parse. Must not be {@code null}.
+	 */
+	public JSONPullParser(final String json) {
+
+		if (json == null) {
+			throw new IllegalArgumentException("The JSON text must not be null");
+		}
+
+		this.json = json;
+	}
+
+
+	/**
+	 * Returns the current position in the JSON text. After
+	 * {@link #hasNextMember} it points to the name of the next member,
+	 * after reading or skipping a value to the character following it.
+	 *
+	 * @return The current position.
+	 */
+	public int getPosition() {
+
+		return pos;
+	}
+
+
+	/**
+	 * Creates a parse exception for the current position.
+	 *
+	 * @param message The message.
+	 *
+	 * @return The parse exception.
+	 */
+	private ParseException error(final String message) {
+
+		return new ParseException("Invalid JSON: " + message + " at position " + pos);
+	}
+
+
+	/**
+	 * Skips whitespace.
+	 */
+	private void skipWhitespace() {
+
+		while (pos < json.length()) {
+			char c = json.charAt(pos);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+				return;
+			}
+			pos++;
+		}
+	}
+
+
+	/**
+	 * Skips whitespace and returns the next character without consuming
+	 * it.
+	 *
+	 * @return The next character.
+	 *
+	 * @throws ParseException If the end of the JSON text is reached.
+	 */
+	private char peek()
+		throws ParseException {
+
+		skipWhitespace();
+
+		if (pos >= json.length()) {
+			throw error("Unexpected end");
+		}
+
+		return json.charAt(pos);
+	}
+
+
+	/**
+	 * Skips whitespace and consumes the specified character.
+	 *
+	 * @param c The expected character.
+	 *
+	 * @throws ParseException If the next character is different.
+	 */
+	private void expect(final char c)
+		throws ParseException {
+
+		if (peek() != c) {
+			throw error("Expected '" + c + "'");
+		}
+
+		pos++;
+	}
+
+
+	/**
+	 * Begins the top level JSON object.
+	 *
+	 * @throws ParseException If the JSON text doesn't start with an
+	 *                        object.
+	 */
+	public void beginObject()
+		throws ParseException {
+
+		expect('{');
+		firstMember = true;
+	}
+
+
+	/**
+	 * Checks if the object has another member. If not the end of the
+	 * object is consumed.
+	 *
+	 * @return {@code true} if another member follows, {@code false} if
+	 *         the object ended.
+	 *
+	 * @throws ParseException If the JSON is malformed.
+	 */
+	public boolean hasNextMember()
+		throws ParseException {
+
+		char c = peek();
+
+		if (c == '}') {
+			pos++;
+			return false;
+		}
+
+		if (! firstMember) {
+			if (c != ',') {
+				throw error("Expected ',' or '}'");
+			}
+			pos++;
+			peek();
+		}
+
+		firstMember = false;
+		return true;
+	}
+
+
+	/**
+	 * Reads the name of the next member and the following colon.
+	 *
+	 * @return The member name.
+	 *
+	 * @throws ParseException If the JSON is malformed.
+	 */
+	public String nextName()
+		throws ParseException {
+
+		String name = nextString();
+		expect(':');
+		return name;
+	}
+
+
+	/**
+	 * Reads a string value.
+	 *
+	 * @return The string.
+	 *
+	 * @throws ParseException If the next value is not a string or the
+	 *                        JSON is malformed.
+	 */
+	public String nextString()
+		throws ParseException {
+
+		expect('"');
+
+		final int start = pos;
+
+		// Fast path, no escapes
+		while (pos < json.length()) {
+
+			char c = json.charAt(pos);
+
+			if (c == '"') {
+				return json.substring(start, pos++);
+			}
+
+			if (c == '\\') {
+				break;
+			}
+
+			if (c < 0x20) {
+				throw error("Unescaped control character");
+			}
+
+			pos++;
+		}
+
+		StringBuilder sb = new StringBuilder(pos - start + 16);
+		sb.append(json, start, pos);
+
+		while (pos < json.length()) {
+
+			char c = json.charAt(pos++);
+
+			if (c == '"') {
+				return sb.toString();
+			}
+
+			if (c < 0x20) {
+				pos--;
+				throw error("Unescaped control character");
+			}
+
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+
+			if (pos >= json.length()) {
+				break;
+			}
+
+			c = json.charAt(pos++);
+
+			switch (c) {
+				case '"': sb.append('"'); break;
+				case '\\': sb.append('\\'); break;
+				case '/': sb.append('/'); break;
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'u': sb.append(readUnicodeEscape()); break;
+				default:
+					pos--;
+					throw error("Illegal escape");
+			}
+		}
+
+		throw error("Unterminated string");
+	}
+
+
+	/**
+	 * Reads the four hex digits of a unicode escape.
+	 *
+	 * @return The escaped character.
+	 *
+	 * @throws ParseException If the escape is malformed.
+	 */
+	private char readUnicodeEscape()
+		throws ParseException {
+
+		if (pos + 4 > json.length()) {
+			throw error("Incomplete unicode escape");
+		}
+
+		int value = 0;
+
+		for (int i=0; i < 4; i++) {
+
+			int digit = Character.digit(json.charAt(pos), 16);
+
+			if (digit < 0 || json.charAt(pos) > 'f') {
+				throw error("Illegal unicode escape");
+			}
+
+			value = (value << 4) + digit;
+			pos++;
+		}
+
+		return (char)value;
+	}
+
+
+	/**
+	 * Reads an integer number value.
+	 *
+	 * @return The number.
+	 *
+	 * @throws ParseException If the next value is not an integer number
+	 *                        within the range of a long, or the JSON is
+	 *                        malformed.
+	 */
+	public long nextLong()
+		throws ParseException {
+
+		peek();
+
+		final int start = pos;
+
+		skipNumber();
+
+		for (int i=start; i < pos; i++) {
+			char c = json.charAt(i);
+			if (c == '.' || c == 'e' || c == 'E') {
+				pos = start;
+				throw error("Expected integer number");
+			}
+		}
+
+		try {
+			return Long.parseLong(json.substring(start, pos));
+
+		} catch (NumberFormatException e) {
+			pos = start;
+			throw error("Integer number out of range");
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the next value is a string.
+	 *
+	 * @return {@code true} if the next value is a string.
+	 *
+	 * @throws ParseException If the end of the JSON text is reached.
+	 */
+	public boolean isNextString()
+		throws ParseException {
+
+		return peek() == '"';
+	}
+
+
+	/**
+	 * Skips the next value, validating it.
+	 *
+	 * @throws ParseException If the JSON is malformed.
+	 */
+	public void skipValue()
+		throws ParseException {
+
+		skipValue(0);
+	}
+
+
+	/**
+	 * Skips the next value, validating it.
+	 *
+	 * @param depth The current nesting depth.
+	 *
+	 * @throws ParseException If the JSON is malformed or the maximum
+	 *                        nesting depth is exceeded.
+	 */
+	private void skipValue(final int depth)
+		throws ParseException {
+
+		if (depth > MAX_DEPTH) {
+			throw error("Maximum nesting depth exceeded");
+		}
+
+		char c = peek();
+
+		switch (c) {
+			case '"':
+				nextString();
+				return;
+			case '{':
+				pos++;
+				if (peek() == '}') {
+					pos++;
+					return;
+				}
+				while (true) {
+					nextName();
+					skipValue(depth + 1);
+					if (peek() == '}') {
+						pos++;
+						return;
+					}
+					expect(',');
+				}
+			case '[':
+				pos++;
+				if (peek() == ']') {
+					pos++;
+					return;
+				}
+				while (true) {
+					skipValue(depth + 1);
+					if (peek() == ']') {
+						pos++;
+						return;
+					}
+					expect(',');
+				}
+			case 't':
+				skipLiteral("true");
+				return;
+			case 'f':
+				skipLiteral("false");
+				return;
+			case 'n':
+				skipLiteral("null");
+				return;
+			default:
+				skipNumber();
+		}
+	}
+
+
+	/**
+	 * Skips the specified literal.
+	 *
+	 * @param literal The expected literal.
+	 *
+	 * @throws ParseException If the literal doesn't match.
+	 */
+	private void skipLiteral(final String literal)
+		throws ParseException {
+
+		if (! json.startsWith(literal, pos)) {
+			throw error("Expected " + literal);
+		}
+
+		pos += literal.length();
+	}
+
+
+	/**
+	 * Skips a number, validating its syntax.
+	 *
+	 * @throws ParseException If the number is malformed.
+	 */
+	private void skipNumber()
+		throws ParseException {
+
+		final int start = pos;
+
+		if (pos < json.length() && json.charAt(pos) == '-') {
+			pos++;
+		}
+
+		if (pos < json.length() && json.charAt(pos) == '0') {
+			pos++;
+		} else if (skipDigits() == 0) {
+			pos = start;
+			throw error("Expected value");
+		}
+
+		if (pos < json.length() && json.charAt(pos) == '.') {
+			pos++;
+			if (skipDigits() == 0) {
+				throw error("Expected fraction digits");
+			}
+		}
+
+		if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+			pos++;
+			if (pos < json.length() && (json.charAt(pos) == '+' || json.charAt(pos) == '-')) {
+				pos++;
+			}
+			if (skipDigits() == 0) {
+				throw error("Expected exponent digits");
+			}
+		}
+	}
+
+
+	/**
+	 * Skips decimal digits.
+	 *
+	 * @return The number of skipped digits.
+	 */
+	private int skipDigits() {
+
+		final int start = pos;
+
+		while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') {
+			pos++;
+		}
+
+		return pos - start;
+	}
+
+
+	/**
+	 * Ensures only whitespace follows the parsed JSON value.
+	 *
+	 * @throws ParseException If other characters follow.
+	 */
+	public void endDocument()
+		throws ParseException {
+
+		skipWhitespace();
+
+		if (pos < json.length()) {
+			throw error("Unexpected trailing characters");
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Unmodifiable map view of a JSON object which is parsed on first access.
+ * Intended for members which are rarely read, such as the custom
+ * parameters collected by a {@link JSONPullParser} fast path.
+ */
+@ThreadSafe
+public final class LazyJSONObject extends AbstractMap<String,Object> {
+
+
+	/**
+	 * The JSON object text.
+	 */
+	private final String json;
+
+
+	/**
+	 * The parsed JSON object, {@code null} if not parsed yet.
+	 */
+	private volatile Map<String,Object> jsonObject;
+
+
+	/**
+	 * Creates a new lazily parsed JSON object.
+	 *
+	 * @param json The JSON object text. Must be a valid JSON object and
+	 *             not {@code null}.
+	 */
+	public LazyJSONObject(final String json) {
+
+		if (json == null) {
+			throw new IllegalArgumentException("The JSON object text must not be null");
+		}
+
+		this.json = json;
+	}
+
+
+	/**
+	 * Returns the parsed JSON object, parsing it if not done yet.
+	 *
+	 * @return The JSON object.
+	 */
+	private Map<String,Object> getJSONObject() {
+
+		Map<String,Object> o = jsonObject;
+
+		if (o != null) {
+			return o;
+		}
+
+		try {
+			// Concurrent first calls may parse more than once
+			o = Collections.unmodifiableMap(JSONObjectUtils.parse(json));
+
+		} catch (ParseException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		jsonObject = o;
+		return o;
+	}
+
+
+	@Override
+	public int size() {
+
+		return getJSONObject().size();
+	}
+
+
+	@Override
+	public boolean containsKey(final Object key) {
+
+		return getJSONObject().containsKey(key);
+	}
+
+
+	@Override
+	public Object get(final Object key) {
+
+		return getJSONObject().get(key);
+	}
+
+
+	@Override
+	public Set<Map.Entry<String,Object>> entrySet() {
+
+		return getJSONObject().entrySet();
+	}
+}
@@ -0,0 +1,1228 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Persistent key / value log in a memory-mapped file, for stores of
+ * short-lived records such as tokens and authorisation codes which must
+ * survive a restart of the process. Each record has a string key, an
+ * expiration time and an opaque payload.
+ *
+ * <p>Records are appended to the log and never rewritten, except for a
+ * status byte which is flipped in place when a record is removed or
+ * replaced. The records are located through an in-memory open-addressing
+ * index of file offsets, which is rebuilt by a sequential scan of the
+ * record headers when the log is opened. Each record carries a CRC32
+ * checksum, the scan stops at the first incomplete record left by a crash.
+ *
+ * <p>When the file is full the live records are copied to a new file,
+ * dropping the removed and expired ones, if that frees at least half of
+ * the space, else the file is enlarged. The mapped pages are written back
+ * by the operating system, which survives a crash of the process but not
+ * of the host; call {@link #force} to write them synchronously. The file
+ * size is limited to 2 GiB.
+ *
+ * <p>Record layout:
+ *
+ * <pre>
+ * int    record length, excluding this field, 0 marks the end of the log
+ * int    CRC32 of the expiration time, key and payload
+ * byte   status, 1 live, 2 removed
+ * long   expiration time, milliseconds since the epoch, 0 if none
+ * short  key length
+ * byte[] key, UTF-8 encoded
+ * byte[] payload
+ * </pre>
+ */
+@ThreadSafe
+public final class MappedRecordLog implements Closeable {
+
+
+	/**
+	 * The file magic.
+	 */
+	private static final int MAGIC = 0x4F41534C;
+
+
+	/**
+	 * The file format version.
+	 */
+	private static final int VERSION = 1;
+
+
+	/**
+	 * The file header size.
+	 */
+	private static final int FILE_HEADER_SIZE = 16;
+
+
+	/**
+	 * The record header size.
+	 */
+	private static final int RECORD_HEADER_SIZE = 19;
+
+
+	/**
+	 * Live record status.
+	 */
+	private static final byte LIVE = 1;
+
+
+	/**
+	 * Removed record status.
+	 */
+	private static final byte REMOVED = 2;
+
+
+	/**
+	 * The maximum key length, in bytes.
+	 */
+	public static final int MAX_KEY_LENGTH = 0xFFFF;
+
+
+	/**
+	 * The default initial file size, in bytes.
+	 */
+	public static final int DEFAULT_INITIAL_SIZE = 1024 * 1024;
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * Visitor of the live records.
+	 */
+	public interface Visitor {
+
+
+		/**
+		 * Visits a live record.
+		 *
+		 * @param key       The record key.
+		 * @param expiresAt The expiration time, in milliseconds since
+		 *                  the epoch, 0 if none.
+		 * @param payload   The record payload.
+		 */
+		void visit(final String key, final long expiresAt, final byte[] payload);
+	}
+
+
+	/**
+	 * The file.
+	 */
+	private final File file;
+
+
+	/**
+	 * The random access file.
+	 */
+	private RandomAccessFile raf;
+
+
+	/**
+	 * The mapped file.
+	 */
+	private MappedByteBuffer buffer;
+
+
+	/**
+	 * The offset at which the next record will be written.
+	 */
+	private int writePos;
+
+
+	/**
+	 * The total size of the removed records, in bytes.
+	 */
+	private long removedBytes;
+
+
+	/**
+	 * The index of live record offsets, 0 for an empty slot.
+	 */
+	private int[] offsets;
+
+
+	/**
+	 * The key hashes of the indexed records.
+	 */
+	private int[] hashes;
+
+
+	/**
+	 * The number of indexed records.
+	 */
+	private int size;
+
+
+	/**
+	 * The number of compactions since the log was opened.
+	 */
+	private long compactionCount;
+
+
+	/**
+	 * Scratch buffer for checksums.
+	 */
+	private byte[] scratch = new byte[256];
+
+
+	/**
+	 * Opens the specified log with the
+	 * {@link #DEFAULT_INITIAL_SIZE default initial size}, creating the
+	 * file if it doesn't exist.
+	 *
+	 * @param file The log file. Must not be {@code null}.
+	 *
+	 * @throws IOException If the file couldn't be opened or isn't a
+	 *                     valid log.
+	 */
+	public MappedRecordLog(final File file)
+		throws IOException {
+
+		this(file, DEFAULT_INITIAL_SIZE);
+	}
+
+
+	/**
+	 * Opens the specified log, creating the file if it doesn't exist.
+	 *
+	 * @param file        The log file. Must not be {@code null}.
+	 * @param initialSize The initial size of a new file, in bytes.
+	 *
+	 * @throws IOException If the file couldn't be opened or isn't a
+	 *                     valid log.
+	 */
+	public MappedRecordLog(final File file, final int initialSize)
+		throws IOException {
+
+		if (file == null)
+			throw new IllegalArgumentException("The file must not be null");
+
+		if (initialSize < FILE_HEADER_SIZE + RECORD_HEADER_SIZE + 4)
+			throw new IllegalArgumentException("The initial size must be at least " + (FILE_HEADER_SIZE + RECORD_HEADER_SIZE + 4) + " bytes");
+
+		this.file = file;
+
+		raf = new RandomAccessFile(file, "rw");
+
+		try {
+			long length = raf.length();
+
+			if (length == 0L) {
+				raf.setLength(initialSize);
+				map(initialSize);
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				writePos = FILE_HEADER_SIZE;
+				initIndex(16);
+				return;
+			}
+
+			if (length < FILE_HEADER_SIZE || length > Integer.MAX_VALUE) {
+				throw new IOException("Invalid record log file: " + file);
+			}
+
+			map((int)length);
+
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Invalid record log file: " + file);
+			}
+
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported record log version: " + buffer.getInt(4));
+			}
+
+			recover();
+
+		} catch (IOException | RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Maps the file.
+	 *
+	 * @param length The length to map.
+	 *
+	 * @throws IOException If mapping failed.
+	 */
+	private void map(final int length)
+		throws IOException {
+
+		buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+	}
+
+
+	/**
+	 * Scans the records, rebuilding the index.
+	 */
+	private void recover() {
+
+		initIndex(16);
+
+		int pos = FILE_HEADER_SIZE;
+
+		while (true) {
+
+			int length = recordLength(pos);
+
+			if (length < 0) {
+				break;
+			}
+
+			if (buffer.get(pos + 8) == LIVE) {
+
+				int previous = find(pos);
+
+				if (previous > 0) {
+					// Replaced, crashed before the old record was removed
+					markRemoved(previous);
+					removeFromIndex(previous);
+				}
+
+				addToIndex(pos, keyHash(pos));
+			} else {
+				removedBytes += 4 + length;
+			}
+
+			pos += 4 + length;
+		}
+
+		writePos = pos;
+	}
+
+
+	/**
+	 * Returns the length of a valid record at the specified offset.
+	 *
+	 * @param pos The record offset.
+	 *
+	 * @return The record length, -1 if there is no valid record.
+	 */
+	private int recordLength(final int pos) {
+
+		if (pos + 4 > buffer.limit()) {
+			return -1;
+		}
+
+		int length = buffer.getInt(pos);
+
+		if (length < RECORD_HEADER_SIZE - 4 || (long)pos + 4 + length > buffer.limit()) {
+			return -1;
+		}
+
+		int keyLength = buffer.getShort(pos + 17) & 0xFFFF;
+
+		if (RECORD_HEADER_SIZE - 4 + keyLength > length) {
+			return -1;
+		}
+
+		if (checksum(pos + 9, length - 5) != buffer.getInt(pos + 4)) {
+			return -1;
+		}
+
+		return length;
+	}
+
+
+	/**
+	 * Computes the CRC32 checksum of the specified mapped bytes.
+	 *
+	 * @param pos    The offset.
+	 * @param length The number of bytes.
+	 *
+	 * @return The checksum.
+	 */
+	private int checksum(final int pos, final int length) {
+
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+
+		buffer.position(pos);
+		buffer.get(scratch, 0, length);
+
+		CRC32 crc = new CRC32();
+		crc.update(scratch, 0, length);
+		return (int)crc.getValue();
+	}
+
+
+	/**
+	 * Computes the hash of the specified key bytes.
+	 *
+	 * @param key The key bytes.
+	 *
+	 * @return The hash.
+	 */
+	private static int hash(final byte[] key) {
+
+		int h = 0;
+
+		for (byte b: key) {
+			h = 31 * h + b;
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+
+	/**
+	 * Computes the key hash of the record at the specified offset.
+	 *
+	 * @param pos The record offset.
+	 *
+	 * @return The hash.
+	 */
+	private int keyHash(final int pos) {
+
+		int keyLength = buffer.getShort(pos + 17) & 0xFFFF;
+
+		int h = 0;
+
+		for (int i = pos + RECORD_HEADER_SIZE; i < pos + RECORD_HEADER_SIZE + keyLength; i++) {
+			h = 31 * h + buffer.get(i);
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+
+	/**
+	 * Checks if the record at the specified offset has the specified
+	 * key.
+	 *
+	 * @param pos The record offset.
+	 * @param key The key bytes.
+	 *
+	 * @return {@code true} if the key matches.
+	 */
+	private boolean keyEquals(final int pos, final byte[] key) {
+
+		if ((buffer.getShort(pos + 17) & 0xFFFF) != key.length) {
+			return false;
+		}
+
+		for (int i=0; i < key.length; i++) {
+			if (buffer.get(pos + RECORD_HEADER_SIZE + i) != key[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Checks if the records at the specified offsets have the same key.
+	 *
+	 * @param pos1 The first record offset.
+	 * @param pos2 The second record offset.
+	 *
+	 * @return {@code true} if the keys match.
+	 */
+	private boolean keyEquals(final int pos1, final int pos2) {
+
+		int keyLength = buffer.getShort(pos1 + 17) & 0xFFFF;
+
+		if ((buffer.getShort(pos2 + 17) & 0xFFFF) != keyLength) {
+			return false;
+		}
+
+		for (int i=0; i < keyLength; i++) {
+			if (buffer.get(pos1 + RECORD_HEADER_SIZE + i) != buffer.get(pos2 + RECORD_HEADER_SIZE + i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Initialises an empty index.
+	 *
+	 * @param capacity The capacity, a power of two.
+	 */
+	private void initIndex(final int capacity) {
+
+		offsets = new int[capacity];
+		hashes = new int[capacity];
+		size = 0;
+	}
+
+
+	/**
+	 * Adds the specified record to the index.
+	 *
+	 * @param pos  The record offset.
+	 * @param hash The key hash.
+	 */
+	private void addToIndex(final int pos, final int hash) {
+
+		if ((size + 1) * 2 > offsets.length) {
+
+			int[] oldOffsets = offsets;
+			int[] oldHashes = hashes;
+
+			initIndex(oldOffsets.length * 2);
+
+			for (int i=0; i < oldOffsets.length; i++) {
+				if (oldOffsets[i] != 0) {
+					insert(oldOffsets[i], oldHashes[i]);
+				}
+			}
+		}
+
+		insert(pos, hash);
+	}
+
+
+	/**
+	 * Inserts the specified record into the index, which must have room
+	 * for it.
+	 *
+	 * @param pos  The record offset.
+	 * @param hash The key hash.
+	 */
+	private void insert(final int pos, final int hash) {
+
+		int mask = offsets.length - 1;
+		int slot = hash & mask;
+
+		while (offsets[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		offsets[slot] = pos;
+		hashes[slot] = hash;
+		size++;
+	}
+
+
+	/**
+	 * Finds the index slot of the specified key.
+	 *
+	 * @param key  The key bytes.
+	 * @param hash The key hash.
+	 *
+	 * @return The slot, -1 if not found.
+	 */
+	private int findSlot(final byte[] key, final int hash) {
+
+		int mask = offsets.length - 1;
+		int slot = hash & mask;
+
+		while (offsets[slot] != 0) {
+
+			if (hashes[slot] == hash && keyEquals(offsets[slot], key)) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Finds the indexed record with the same key as the record at the
+	 * specified offset.
+	 *
+	 * @param pos The record offset.
+	 *
+	 * @return The offset of the indexed record, 0 if none.
+	 */
+	private int find(final int pos) {
+
+		int hash = keyHash(pos);
+		int mask = offsets.length - 1;
+		int slot = hash & mask;
+
+		while (offsets[slot] != 0) {
+
+			if (hashes[slot] == hash && keyEquals(offsets[slot], pos)) {
+				return offsets[slot];
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return 0;
+	}
+
+
+	/**
+	 * Removes the specified record from the index.
+	 *
+	 * @param pos The record offset.
+	 */
+	private void removeFromIndex(final int pos) {
+
+		int mask = offsets.length - 1;
+		int slot = keyHash(pos) & mask;
+
+		while (offsets[slot] != pos) {
+			slot = (slot + 1) & mask;
+		}
+
+		removeSlot(slot);
+	}
+
+
+	/**
+	 * Removes the specified index slot, shifting back the following
+	 * entries of the probe sequence so that no tombstones are needed.
+	 *
+	 * @param slot The slot.
+	 */
+	private void removeSlot(final int slot) {
+
+		int mask = offsets.length - 1;
+		int i = slot;
+		int j = slot;
+
+		while (true) {
+
+			j = (j + 1) & mask;
+
+			if (offsets[j] == 0) {
+				break;
+			}
+
+			int k = hashes[j] & mask;
+
+			// Leave the entry if its home slot is cyclically in (i, j]
+			if (i <= j ? (i < k && k <= j) : (i < k || k <= j)) {
+				continue;
+			}
+
+			offsets[i] = offsets[j];
+			hashes[i] = hashes[j];
+			i = j;
+		}
+
+		offsets[i] = 0;
+		hashes[i] = 0;
+		size--;
+	}
+
+
+	/**
+	 * Marks the record at the specified offset as removed.
+	 *
+	 * @param pos The record offset.
+	 */
+	private void markRemoved(final int pos) {
+
+		buffer.put(pos + 8, REMOVED);
+		removedBytes += 4 + buffer.getInt(pos);
+	}
+
+
+	/**
+	 * Returns the expiration time of the record at the specified offset.
+	 *
+	 * @param pos The record offset.
+	 *
+	 * @return The expiration time, 0 if none.
+	 */
+	private long expiresAt(final int pos) {
+
+		return buffer.getLong(pos + 9);
+	}
+
+
+	/**
+	 * Checks if the record at the specified offset has expired.
+	 *
+	 * @param pos The record offset.
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return {@code true} if expired.
+	 */
+	private boolean isExpired(final int pos, final long now) {
+
+		long exp = expiresAt(pos);
+		return exp > 0 && exp <= now;
+	}
+
+
+	/**
+	 * Reads the payload of the record at the specified offset.
+	 *
+	 * @param pos The record offset.
+	 *
+	 * @return The payload.
+	 */
+	private byte[] payload(final int pos) {
+
+		int keyLength = buffer.getShort(pos + 17) & 0xFFFF;
+		int start = pos + RECORD_HEADER_SIZE + keyLength;
+		byte[] payload = new byte[pos + 4 + buffer.getInt(pos) - start];
+		buffer.position(start);
+		buffer.get(payload);
+		return payload;
+	}
+
+
+	/**
+	 * Reads the key of the record at the specified offset.
+	 *
+	 * @param pos The record offset.
+	 *
+	 * @return The key.
+	 */
+	private String key(final int pos) {
+
+		byte[] key = new byte[buffer.getShort(pos + 17) & 0xFFFF];
+		buffer.position(pos + RECORD_HEADER_SIZE);
+		buffer.get(key);
+		return new String(key, UTF8);
+	}
+
+
+	/**
+	 * Encodes the specified key.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 *
+	 * @return The key bytes.
+	 */
+	private static byte[] encodeKey(final String key) {
+
+		if (key == null)
+			throw new IllegalArgumentException("The key must not be null");
+
+		byte[] bytes = key.getBytes(UTF8);
+
+		if (bytes.length > MAX_KEY_LENGTH)
+			throw new IllegalArgumentException("The key must not be longer than " + MAX_KEY_LENGTH + " bytes");
+
+		return bytes;
+	}
+
+
+	/**
+	 * Appends a record, replacing any record with the same key.
+	 *
+	 * @param key       The key. Must not be {@code null}.
+	 * @param expiresAt The expiration time, in milliseconds since the
+	 *                  epoch, 0 if none.
+	 * @param payload   The payload. Must not be {@code null}.
+	 *
+	 * @throws IOException If the record couldn't be written.
+	 */
+	public synchronized void put(final String key, final long expiresAt, final byte[] payload)
+		throws IOException {
+
+		byte[] keyBytes = encodeKey(key);
+
+		append(keyBytes, hash(keyBytes), expiresAt, payload);
+	}
+
+
+	/**
+	 * Appends a record if no live record with the same key exists.
+	 *
+	 * @param key       The key. Must not be {@code null}.
+	 * @param expiresAt The expiration time, in milliseconds since the
+	 *                  epoch, 0 if none.
+	 * @param payload   The payload. Must not be {@code null}.
+	 * @param now       The current time, in milliseconds since the
+	 *                  epoch.
+	 *
+	 * @return {@code true} if the record was appended, {@code false} if
+	 *         a live record with the same key exists.
+	 *
+	 * @throws IOException If the record couldn't be written.
+	 */
+	public synchronized boolean putIfAbsent(final String key, final long expiresAt, final byte[] payload, final long now)
+		throws IOException {
+
+		byte[] keyBytes = encodeKey(key);
+		int hash = hash(keyBytes);
+
+		int slot = findSlot(keyBytes, hash);
+
+		if (slot >= 0 && ! isExpired(offsets[slot], now)) {
+			return false;
+		}
+
+		append(keyBytes, hash, expiresAt, payload);
+		return true;
+	}
+
+
+	/**
+	 * Appends a record, replacing any record with the same key. The
+	 * replaced record is marked as removed only after the new one is
+	 * complete, if the process crashes in between the recovery keeps the
+	 * later record.
+	 *
+	 * @param key       The key bytes.
+	 * @param hash      The key hash.
+	 * @param expiresAt The expiration time.
+	 * @param payload   The payload.
+	 *
+	 * @throws IOException If the record couldn't be written.
+	 */
+	private void append(final byte[] key, final int hash, final long expiresAt, final byte[] payload)
+		throws IOException {
+
+		if (payload == null)
+			throw new IllegalArgumentException("The payload must not be null");
+
+		long recordSize = (long)RECORD_HEADER_SIZE + key.length + payload.length;
+
+		// Room for the end marker
+		ensureCapacity(recordSize + 4);
+
+		// After any compaction
+		int slot = findSlot(key, hash);
+
+		int pos = writePos;
+
+		buffer.put(pos + 8, LIVE);
+		buffer.putLong(pos + 9, expiresAt);
+		buffer.putShort(pos + 17, (short)key.length);
+		buffer.position(pos + RECORD_HEADER_SIZE);
+		buffer.put(key);
+		buffer.put(payload);
+		buffer.putInt(pos + 4, checksum(pos + 9, (int)recordSize - 9));
+
+		int end = pos + (int)recordSize;
+		buffer.putInt(end, 0);
+
+		// Written last, completes the record
+		buffer.putInt(pos, (int)recordSize - 4);
+
+		writePos = end;
+
+		if (slot >= 0) {
+			// Same key, same slot
+			markRemoved(offsets[slot]);
+			offsets[slot] = pos;
+		} else {
+			addToIndex(pos, hash);
+		}
+	}
+
+
+	/**
+	 * Ensures the file has room for the specified number of bytes,
+	 * compacting or enlarging it as needed.
+	 *
+	 * @param bytes The number of bytes.
+	 *
+	 * @throws IOException If the file couldn't be compacted or enlarged.
+	 */
+	private void ensureCapacity(final long bytes)
+		throws IOException {
+
+		if (writePos + bytes <= buffer.limit()) {
+			return;
+		}
+
+		long used = writePos - FILE_HEADER_SIZE;
+
+		if (removedBytes * 2 >= used) {
+			compact(System.currentTimeMillis());
+		}
+
+		if (writePos + bytes <= buffer.limit()) {
+			return;
+		}
+
+		long newSize = Math.max((long)buffer.limit() * 2, writePos + bytes);
+
+		if (newSize > Integer.MAX_VALUE) {
+
+			newSize = Integer.MAX_VALUE;
+
+			if (writePos + bytes > newSize) {
+				throw new IOException("The record log file is full: " + file);
+			}
+		}
+
+		raf.setLength(newSize);
+		map((int)newSize);
+	}
+
+
+	/**
+	 * Gets the payload of the record with the specified key.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The payload, {@code null} if not found or expired.
+	 */
+	public synchronized byte[] get(final String key, final long now) {
+
+		byte[] keyBytes = encodeKey(key);
+		int slot = findSlot(keyBytes, hash(keyBytes));
+
+		if (slot < 0 || isExpired(offsets[slot], now)) {
+			return null;
+		}
+
+		return payload(offsets[slot]);
+	}
+
+
+	/**
+	 * Gets the expiration time of the record with the specified key.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 *
+	 * @return The expiration time, 0 if none, -1 if not found.
+	 */
+	public synchronized long getExpirationTime(final String key) {
+
+		byte[] keyBytes = encodeKey(key);
+		int slot = findSlot(keyBytes, hash(keyBytes));
+		return slot >= 0 ? expiresAt(offsets[slot]) : -1L;
+	}
+
+
+	/**
+	 * Removes the record with the specified key.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The payload of the removed record, {@code null} if not
+	 *         found or expired.
+	 */
+	public synchronized byte[] remove(final String key, final long now) {
+
+		byte[] keyBytes = encodeKey(key);
+		int slot = findSlot(keyBytes, hash(keyBytes));
+
+		if (slot < 0) {
+			return null;
+		}
+
+		int pos = offsets[slot];
+
+		byte[] payload = isExpired(pos, now) ? null : payload(pos);
+
+		markRemoved(pos);
+		removeSlot(slot);
+
+		return payload;
+	}
+
+
+	/**
+	 * Visits the live records, in the order they were written. The
+	 * visitor must not call back into the log.
+	 *
+	 * @param now     The current time, in milliseconds since the epoch,
+	 *                expired records are skipped.
+	 * @param visitor The visitor. Must not be {@code null}.
+	 */
+	public synchronized void scan(final long now, final Visitor visitor) {
+
+		int pos = FILE_HEADER_SIZE;
+
+		while (pos < writePos) {
+
+			int length = buffer.getInt(pos);
+
+			if (buffer.get(pos + 8) == LIVE && ! isExpired(pos, now)) {
+				visitor.visit(key(pos), expiresAt(pos), payload(pos));
+			}
+
+			pos += 4 + length;
+		}
+	}
+
+
+	/**
+	 * Removes the expired records, without compacting the file.
+	 *
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The number of removed records.
+	 */
+	public synchronized int purgeExpired(final long now) {
+
+		int count = 0;
+
+		int pos = FILE_HEADER_SIZE;
+
+		while (pos < writePos) {
+
+			int length = buffer.getInt(pos);
+
+			if (buffer.get(pos + 8) == LIVE && isExpired(pos, now)) {
+				removeFromIndex(pos);
+				markRemoved(pos);
+				count++;
+			}
+
+			pos += 4 + length;
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Compacts the log, copying the live records to a new file which
+	 * then replaces the current one.
+	 *
+	 * @param now The current time, in milliseconds since the epoch,
+	 *            expired records are dropped.
+	 *
+	 * @throws IOException If compaction failed.
+	 */
+	public synchronized void compact(final long now)
+		throws IOException {
+
+		long live = 0L;
+
+		int pos = FILE_HEADER_SIZE;
+
+		while (pos < writePos) {
+
+			int length = buffer.getInt(pos);
+
+			if (buffer.get(pos + 8) == LIVE && ! isExpired(pos, now)) {
+				live += 4 + length;
+			}
+
+			pos += 4 + length;
+		}
+
+		// Shrink if mostly removed, leaving room to grow
+		long newSize = Math.min((long)buffer.limit(), (FILE_HEADER_SIZE + live) * 2 + 4);
+
+		if (newSize > Integer.MAX_VALUE) {
+			newSize = Integer.MAX_VALUE;
+		}
+
+		File tmpFile = new File(file.getPath() + ".compact");
+
+		int tmpPos;
+
+		try {
+			tmpPos = writeLiveRecords(tmpFile, newSize, now);
+
+		} catch (IOException | RuntimeException e) {
+			tmpFile.delete();
+			throw e;
+		}
+
+		raf.close();
+
+		try {
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		} catch (IOException | RuntimeException e) {
+
+			// E.g. atomic move not supported, or the mapped file can't
+			// be replaced on Windows. Continue with the unchanged
+			// original file, still mapped by the current buffer.
+			try {
+				raf = new RandomAccessFile(file, "rw");
+			} catch (IOException reopenException) {
+				e.addSuppressed(reopenException);
+			}
+
+			tmpFile.delete();
+			throw e;
+		}
+
+		raf = new RandomAccessFile(file, "rw");
+		map((int)newSize);
+
+		removedBytes = 0L;
+
+		initIndex(offsets.length);
+
+		pos = FILE_HEADER_SIZE;
+
+		while (pos < tmpPos) {
+			addToIndex(pos, keyHash(pos));
+			pos += 4 + buffer.getInt(pos);
+		}
+
+		writePos = tmpPos;
+
+		compactionCount++;
+	}
+
+
+	/**
+	 * Writes the live records to a new log file.
+	 *
+	 * @param tmpFile The new log file.
+	 * @param size    The size of the new log file.
+	 * @param now     The current time, in milliseconds since the epoch,
+	 *                expired records are dropped.
+	 *
+	 * @return The write position in the new log file.
+	 *
+	 * @throws IOException If writing failed.
+	 */
+	private int writeLiveRecords(final File tmpFile, final long size, final long now)
+		throws IOException {
+
+		RandomAccessFile tmpRaf = new RandomAccessFile(tmpFile, "rw");
+
+		int tmpPos = FILE_HEADER_SIZE;
+
+		try {
+			tmpRaf.setLength(0L);
+			tmpRaf.setLength(size);
+
+			MappedByteBuffer tmpBuffer = tmpRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			tmpBuffer.putInt(0, MAGIC);
+			tmpBuffer.putInt(4, VERSION);
+			tmpBuffer.position(FILE_HEADER_SIZE);
+
+			ByteBuffer src = buffer.duplicate();
+
+			int pos = FILE_HEADER_SIZE;
+
+			while (pos < writePos) {
+
+				int length = buffer.getInt(pos);
+
+				if (buffer.get(pos + 8) == LIVE && ! isExpired(pos, now)) {
+
+					src.limit(pos + 4 + length);
+					src.position(pos);
+					tmpBuffer.put(src);
+					tmpPos += 4 + length;
+				}
+
+				pos += 4 + length;
+			}
+
+			tmpBuffer.putInt(tmpPos, 0);
+			tmpBuffer.force();
+
+		} finally {
+			tmpRaf.close();
+		}
+
+		return tmpPos;
+	}
+
+
+	/**
+	 * Returns the number of compactions since the log was opened,
+	 * including the automatic ones when the file runs out of space. A
+	 * compaction drops the expired records, callers keeping secondary
+	 * indexes of the records may use this to detect when to rebuild
+	 * them.
+	 *
+	 * @return The number of compactions.
+	 */
+	public synchronized long getCompactionCount() {
+
+		return compactionCount;
+	}
+
+
+	/**
+	 * Returns the number of live records. May include expired records
+	 * which are yet to be purged.
+	 *
+	 * @return The number of records.
+	 */
+	public synchronized int size() {
+
+		return size;
+	}
+
+
+	/**
+	 * Returns the file size.
+	 *
+	 * @return The file size, in bytes.
+	 */
+	public synchronized int getFileSize() {
+
+		return buffer.limit();
+	}
+
+
+	/**
+	 * Returns the total size of the removed records, reclaimed on the
+	 * next compaction.
+	 *
+	 * @return The removed bytes.
+	 */
+	public synchronized long getRemovedBytes() {
+
+		return removedBytes;
+	}
+
+
+	/**
+	 * Writes the mapped pages to the storage device.
+	 */
+	public synchronized void force() {
+
+		buffer.force();
+	}
+
+
+	/**
+	 * Closes the log, writing the mapped pages to the storage device.
+	 * The log must not be used afterwards.
+	 *
+	 * @throws IOException If closing failed.
+	 */
+	@Override
+	public synchronized void close()
+		throws IOException {
+
+		buffer.force();
+		raf.close();
+	}
+}
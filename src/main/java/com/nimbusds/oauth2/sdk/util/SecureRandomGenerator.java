@@ -0,0 +1,380 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import net.jcip.annotations.ThreadSafe;
+
+
+/**
+ * Secure random generator for identifier, token and secret values. Each
+ * thread draws from its own {@link SecureRandom} instance, filling a small
+ * buffer in bulk, so that concurrent issuers don't contend on a single
+ * generator. Consumed buffer bytes are zeroed.
+ *
+ * <p>The {@link SecureRandom} instances are created by a pluggable
+ * {@link Factory}, by default with the platform's preferred algorithm.
+ *
+ * <p>The per-thread state is held in a {@link ThreadLocal}, which stays
+ * attached to pooled threads, such as the worker threads of a servlet
+ * container, with up to {@value #BUFFER_SIZE} bytes of not yet issued
+ * random data. In an application which may be undeployed while the
+ * threads live on, which would otherwise keep its class loader
+ * reachable, call {@link #release} on each thread that generated values
+ * when done, e.g. at the end of each request in a servlet filter.
+ */
+@ThreadSafe
+public final class SecureRandomGenerator {
+
+
+	/**
+	 * Factory of the per-thread secure random generators.
+	 */
+	public interface Factory {
+
+
+		/**
+		 * Creates a new secure random generator.
+		 *
+		 * @return The secure random generator.
+		 */
+		SecureRandom create();
+	}
+
+
+	/**
+	 * The default factory, creating {@link SecureRandom} instances with
+	 * the platform's preferred algorithm.
+	 */
+	public static final Factory DEFAULT_FACTORY = new Factory() {
+
+		@Override
+		public SecureRandom create() {
+
+			return new SecureRandom();
+		}
+	};
+
+
+	/**
+	 * The buffer size in bytes.
+	 */
+	static final int BUFFER_SIZE = 512;
+
+
+	/**
+	 * The Base64URL alphabet.
+	 */
+	private static final char[] BASE64URL_ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+
+	/**
+	 * The factory of the secure random generators.
+	 */
+	private static volatile Factory factory = DEFAULT_FACTORY;
+
+
+	/**
+	 * The factory generation, incremented to discard the thread buffers
+	 * when the factory is changed.
+	 */
+	private static volatile int generation = 0;
+
+
+	/**
+	 * The per-thread buffers.
+	 */
+	private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<>();
+
+
+	/**
+	 * Per-thread random bytes buffer.
+	 */
+	private static final class Buffer {
+
+
+		/**
+		 * The factory generation.
+		 */
+		final int generation;
+
+
+		/**
+		 * The secure random generator of the thread.
+		 */
+		final SecureRandom secureRandom;
+
+
+		/**
+		 * The random bytes.
+		 */
+		final byte[] bytes = new byte[BUFFER_SIZE];
+
+
+		/**
+		 * The position of the next unused byte.
+		 */
+		int pos = BUFFER_SIZE;
+
+
+		/**
+		 * Creates a new empty buffer.
+		 *
+		 * @param generation   The factory generation.
+		 * @param secureRandom The secure random generator.
+		 */
+		Buffer(final int generation, final SecureRandom secureRandom) {
+
+			this.generation = generation;
+			this.secureRandom = secureRandom;
+		}
+
+
+		/**
+		 * Fills the specified array with random bytes.
+		 *
+		 * @param out The array to fill.
+		 */
+		void nextBytes(final byte[] out) {
+
+			if (out.length > BUFFER_SIZE / 4) {
+				// Large requests bypass the buffer
+				secureRandom.nextBytes(out);
+				return;
+			}
+
+			if (BUFFER_SIZE - pos < out.length) {
+				secureRandom.nextBytes(bytes);
+				pos = 0;
+			}
+
+			System.arraycopy(bytes, pos, out, 0, out.length);
+			Arrays.fill(bytes, pos, pos + out.length, (byte)0);
+			pos += out.length;
+		}
+	}
+
+
+	/**
+	 * Returns the factory of the secure random generators.
+	 *
+	 * @return The factory.
+	 */
+	public static Factory getFactory() {
+
+		return factory;
+	}
+
+
+	/**
+	 * Sets the factory of the secure random generators. Buffered random
+	 * bytes from the previous generators are discarded.
+	 *
+	 * @param factory The factory. Must not be {@code null}.
+	 */
+	public static synchronized void setFactory(final Factory factory) {
+
+		if (factory == null)
+			throw new IllegalArgumentException("The secure random factory must not be null");
+
+		SecureRandomGenerator.factory = factory;
+		generation++;
+	}
+
+
+	/**
+	 * Returns the buffer of the calling thread.
+	 *
+	 * @return The buffer.
+	 */
+	private static Buffer getBuffer() {
+
+		Buffer buffer = BUFFERS.get();
+
+		int currentGeneration = generation;
+
+		if (buffer == null || buffer.generation != currentGeneration) {
+
+			if (buffer != null) {
+				Arrays.fill(buffer.bytes, (byte)0);
+			}
+
+			buffer = new Buffer(currentGeneration, factory.create());
+			BUFFERS.set(buffer);
+		}
+
+		return buffer;
+	}
+
+
+	/**
+	 * Zeroes and removes the buffered random bytes and the secure random
+	 * generator of the calling thread. The next value generated on the
+	 * thread will create new ones.
+	 */
+	public static void release() {
+
+		Buffer buffer = BUFFERS.get();
+
+		if (buffer != null) {
+			Arrays.fill(buffer.bytes, (byte)0);
+		}
+
+		BUFFERS.remove();
+	}
+
+
+	/**
+	 * Fills the specified array with secure random bytes.
+	 *
+	 * @param bytes The array to fill. Must not be {@code null}.
+	 */
+	public static void nextBytes(final byte[] bytes) {
+
+		getBuffer().nextBytes(bytes);
+	}
+
+
+	/**
+	 * Generates a Base64URL-encoded secure random value.
+	 *
+	 * @param byteLength The byte length of the value to generate. Must
+	 *                   not be negative.
+	 *
+	 * @return The Base64URL-encoded value, without padding.
+	 */
+	public static String nextBase64URL(final int byteLength) {
+
+		char[] chars = nextBase64URLChars(byteLength);
+
+		try {
+			return new String(chars);
+		} finally {
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+
+	/**
+	 * Generates a Base64URL-encoded secure random value, as ASCII
+	 * bytes.
+	 *
+	 * @param byteLength The byte length of the value to generate. Must
+	 *                   not be negative.
+	 *
+	 * @return The Base64URL-encoded value, without padding, as ASCII
+	 *         bytes.
+	 */
+	public static byte[] nextBase64URLBytes(final int byteLength) {
+
+		char[] chars = nextBase64URLChars(byteLength);
+
+		byte[] out = new byte[chars.length];
+
+		for (int i=0; i < chars.length; i++) {
+			out[i] = (byte)chars[i];
+		}
+
+		Arrays.fill(chars, '\0');
+		return out;
+	}
+
+
+	/**
+	 * Generates a Base64URL-encoded secure random value, as characters.
+	 *
+	 * @param byteLength The byte length of the value to generate. Must
+	 *                   not be negative.
+	 *
+	 * @return The Base64URL-encoded value, without padding.
+	 */
+	private static char[] nextBase64URLChars(final int byteLength) {
+
+		if (byteLength < 0)
+			throw new IllegalArgumentException("The byte length must not be negative");
+
+		byte[] bytes = new byte[byteLength];
+		nextBytes(bytes);
+
+		try {
+			return encodeBase64URL(bytes);
+		} finally {
+			Arrays.fill(bytes, (byte)0);
+		}
+	}
+
+
+	/**
+	 * Base64URL-encodes the specified bytes, without padding.
+	 *
+	 * @param bytes The bytes to encode. Must not be {@code null}.
+	 *
+	 * @return The Base64URL characters.
+	 */
+	static char[] encodeBase64URL(final byte[] bytes) {
+
+		final int len = bytes.length;
+
+		char[] out = new char[(len * 4 + 2) / 3];
+
+		int i = 0;
+		int o = 0;
+
+		for (; i + 2 < len; i += 3) {
+
+			int v = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+
+			out[o++] = BASE64URL_ALPHABET[v >>> 18];
+			out[o++] = BASE64URL_ALPHABET[(v >>> 12) & 0x3f];
+			out[o++] = BASE64URL_ALPHABET[(v >>> 6) & 0x3f];
+			out[o++] = BASE64URL_ALPHABET[v & 0x3f];
+		}
+
+		if (i < len) {
+
+			int v = (bytes[i] & 0xff) << 16;
+
+			if (i + 1 < len) {
+				v |= (bytes[i + 1] & 0xff) << 8;
+			}
+
+			out[o++] = BASE64URL_ALPHABET[v >>> 18];
+			out[o++] = BASE64URL_ALPHABET[(v >>> 12) & 0x3f];
+
+			if (i + 1 < len) {
+				out[o] = BASE64URL_ALPHABET[(v >>> 6) & 0x3f];
+			}
+		}
+
+		return out;
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private SecureRandomGenerator() {
+
+		// Nothing to do
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import net.jcip.annotations.Immutable;
+
+
+/**
+ * The members of a typical token response, decoded in a single pass with a
+ * {@link JSONPullParser}, without building a JSON object tree. Unknown
+ * members are collected into lazily parsed custom parameters. Intended as
+ * a fast path for the token response parsers.
+ */
+@Immutable
+public final class TokenResponseMembers {
+
+
+	/**
+	 * The token parameter names.
+	 */
+	private static final Set<String> TOKEN_PARAMETER_NAMES = new HashSet<>(Arrays.asList(
+		"id_token", "access_token", "token_type", "expires_in", "scope", "refresh_token"));
+
+
+	/**
+	 * The ID token, {@code null} if not specified.
+	 */
+	private final String idToken;
+
+
+	/**
+	 * The access token.
+	 */
+	private final String accessToken;
+
+
+	/**
+	 * The access token type.
+	 */
+	private final String tokenType;
+
+
+	/**
+	 * The access token lifetime in seconds, zero if not specified.
+	 */
+	private final long lifetime;
+
+
+	/**
+	 * The scope, {@code null} if not specified.
+	 */
+	private final String scope;
+
+
+	/**
+	 * The refresh token, {@code null} if not specified.
+	 */
+	private final String refreshToken;
+
+
+	/**
+	 * The custom parameters, {@code null} if none.
+	 */
+	private final Map<String,Object> customParams;
+
+
+	/**
+	 * Creates a new token response members instance.
+	 */
+	private TokenResponseMembers(final String idToken,
+				     final String accessToken,
+				     final String tokenType,
+				     final long lifetime,
+				     final String scope,
+				     final String refreshToken,
+				     final Map<String,Object> customParams) {
+
+		this.idToken = idToken;
+		this.accessToken = accessToken;
+		this.tokenType = tokenType;
+		this.lifetime = lifetime;
+		this.scope = scope;
+		this.refreshToken = refreshToken;
+		this.customParams = customParams;
+	}
+
+
+	/**
+	 * Returns the ID token.
+	 *
+	 * @return The ID token, {@code null} if not specified.
+	 */
+	public String getIDToken() {
+
+		return idToken;
+	}
+
+
+	/**
+	 * Returns the access token.
+	 *
+	 * @return The access token.
+	 */
+	public String getAccessToken() {
+
+		return accessToken;
+	}
+
+
+	/**
+	 * Returns the access token type.
+	 *
+	 * @return The access token type.
+	 */
+	public String getTokenType() {
+
+		return tokenType;
+	}
+
+
+	/**
+	 * Returns the access token lifetime.
+	 *
+	 * @return The lifetime in seconds, zero if not specified.
+	 */
+	public long getLifetime() {
+
+		return lifetime;
+	}
+
+
+	/**
+	 * Returns the scope.
+	 *
+	 * @return The scope, {@code null} if not specified.
+	 */
+	public String getScope() {
+
+		return scope;
+	}
+
+
+	/**
+	 * Returns the refresh token.
+	 *
+	 * @return The refresh token, {@code null} if not specified.
+	 */
+	public String getRefreshToken() {
+
+		return refreshToken;
+	}
+
+
+	/**
+	 * Returns the custom parameters.
+	 *
+	 * @return The custom parameters as a lazily parsed JSON object,
+	 *         {@code null} if none.
+	 */
+	public Map<String,Object> getCustomParameters() {
+
+		return customParams;
+	}
+
+
+	/**
+	 * Parses the members of a token response.
+	 *
+	 * @param json The JSON object string to parse. Must not be
+	 *             {@code null}.
+	 *
+	 * @return The token response members, {@code null} if the JSON is
+	 *         malformed or unusual, e.g. has repeated members, lacks an
+	 *         access token or token type, or specifies a non-positive
+	 *         lifetime, in which case full parsing must be used for the
+	 *         appropriate error reporting.
+	 */
+	public static TokenResponseMembers parse(final String json) {
+
+		String idToken = null;
+		String accessToken = null;
+		String tokenType = null;
+		long lifetime = 0;
+		String scope = null;
+		String refreshToken = null;
+
+		boolean hasLifetime = false;
+
+		StringBuilder custom = null;
+		Set<String> customNames = null;
+
+		try {
+			JSONPullParser parser = new JSONPullParser(json);
+			parser.beginObject();
+
+			while (parser.hasNextMember()) {
+
+				final int start = parser.getPosition();
+				final String name = parser.nextName();
+
+				if ("id_token".equals(name) && idToken == null) {
+					idToken = parser.nextString();
+				} else if ("access_token".equals(name) && accessToken == null) {
+					accessToken = parser.nextString();
+				} else if ("token_type".equals(name) && tokenType == null) {
+					tokenType = parser.nextString();
+				} else if ("expires_in".equals(name) && ! hasLifetime) {
+					lifetime = parser.isNextString() ? Long.parseLong(parser.nextString()) : parser.nextLong();
+					hasLifetime = true;
+				} else if ("scope".equals(name) && scope == null) {
+					scope = parser.nextString();
+				} else if ("refresh_token".equals(name) && refreshToken == null) {
+					refreshToken = parser.nextString();
+				} else if (TOKEN_PARAMETER_NAMES.contains(name)) {
+					return null; // repeated
+				} else {
+					if (customNames == null) {
+						customNames = new HashSet<>();
+					}
+					if (! customNames.add(name)) {
+						return null; // repeated
+					}
+					parser.skipValue();
+					custom = appendMember(custom, json, start, parser.getPosition());
+				}
+			}
+
+			parser.endDocument();
+
+		} catch (ParseException | NumberFormatException e) {
+			return null;
+		}
+
+		if (accessToken == null || tokenType == null || (hasLifetime && lifetime <= 0)) {
+			return null;
+		}
+
+		return new TokenResponseMembers(
+			idToken,
+			accessToken,
+			tokenType,
+			lifetime,
+			scope,
+			refreshToken,
+			custom != null ? new LazyJSONObject(custom.append('}').toString()) : null);
+	}
+
+
+	/**
+	 * Appends the raw JSON text of a member to a JSON object being
+	 * collected.
+	 *
+	 * @param sb    The string builder of the collected JSON object,
+	 *              {@code null} if none yet.
+	 * @param json  The JSON text.
+	 * @param start The start of the member in the JSON text.
+	 * @param end   The end of the member in the JSON text.
+	 *
+	 * @return The string builder.
+	 */
+	private static StringBuilder appendMember(final StringBuilder sb,
+						  final String json,
+						  final int start,
+						  final int end) {
+
+		StringBuilder out = sb;
+
+		if (out == null) {
+			out = new StringBuilder(end - start + 2);
+			out.append('{');
+		} else {
+			out.append(',');
+		}
+
+		out.append(json, start, end);
+		return out;
+	}
+}
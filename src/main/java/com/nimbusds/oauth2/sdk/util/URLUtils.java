@@ -18,14 +18,13 @@
 package com.nimbusds.oauth2.sdk.util;
 
 
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -66,6 +65,40 @@ public class URLUtils {
 	}
 	
 	
+	/**
+	 * The characters which are not escaped by
+	 * {@code application/x-www-form-urlencoded} encoding, indexed by
+	 * ASCII code.
+	 */
+	private static final boolean[] UNRESERVED = new boolean[128];
+
+
+	/**
+	 * The upper case hex digits.
+	 */
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			UNRESERVED[c] = true;
+		}
+
+		for (char c = 'A'; c <= 'Z'; c++) {
+			UNRESERVED[c] = true;
+		}
+
+		for (char c = '0'; c <= '9'; c++) {
+			UNRESERVED[c] = true;
+		}
+
+		UNRESERVED['-'] = true;
+		UNRESERVED['_'] = true;
+		UNRESERVED['.'] = true;
+		UNRESERVED['*'] = true;
+	}
+	
+	
 	/**
 	 * Serialises the specified map of parameters into a URL query string. 
 	 * The parameter keys and values are 
@@ -94,38 +127,63 @@ public class URLUtils {
 	
 		if (params == null || params.isEmpty())
 			return "";
-		
-		StringBuilder sb = new StringBuilder();
-		
+
+		int length = 0;
+
 		for (Map.Entry<String,String> entry: params.entrySet()) {
-			
+
 			if (entry.getKey() == null)
 				continue;
 
-			String value = entry.getValue() != null ? entry.getValue() : "";
-			
-			try {
-				String encodedKey = URLEncoder.encode(entry.getKey(), CHARSET);
-				String encodedValue = URLEncoder.encode(value, CHARSET);
-				
-				if (sb.length() > 0)
-					sb.append('&');
-				
-				sb.append(encodedKey);
-				sb.append('=');
-				sb.append(encodedValue);
-	
-			} catch (UnsupportedEncodingException e) {
+			length += entry.getKey().length() + 2;
 
-				// UTF-8 should always be supported
-				throw new RuntimeException(e.getMessage(), e);
-			}
+			if (entry.getValue() != null)
+				length += entry.getValue().length();
 		}
 		
+		StringBuilder sb = new StringBuilder(length + (length >> 3));
+		serializeParameters(params, sb);
 		return sb.toString();
 	}
 
 
+	/**
+	 * Serialises the specified map of parameters into a URL query string
+	 * which is appended to the specified string builder, such as one
+	 * holding a URI which the query string completes. The parameter keys
+	 * and values are {@code application/x-www-form-urlencoded} encoded.
+	 *
+	 * @param params A map of the URL query parameters. May be empty or
+	 *               {@code null}.
+	 * @param sb     The string builder to append to. Must not be
+	 *               {@code null}.
+	 */
+	public static void serializeParameters(final Map<String,String> params, final StringBuilder sb) {
+
+		if (params == null || params.isEmpty())
+			return;
+
+		boolean first = true;
+
+		for (Map.Entry<String,String> entry: params.entrySet()) {
+
+			if (entry.getKey() == null)
+				continue;
+
+			if (! first)
+				sb.append('&');
+
+			first = false;
+
+			encode(entry.getKey(), sb);
+			sb.append('=');
+
+			if (entry.getValue() != null)
+				encode(entry.getValue(), sb);
+		}
+	}
+
+
 	/**
 	 * Serialises the specified map of parameters into a URL query string.
 	 * Supports multiple key / value pairs that have the same key. The
@@ -144,7 +202,7 @@ public class URLUtils {
 	 * &amp;redirect_uri=https%3A%2F%2Fclient%2Eexample%2Ecom%2Fcb
 	 * </pre>
 	 *
-	 * <p>The opposite method is {@link #parseParameters}.
+	 * <p>The opposite method is {@link #parseParametersAlt}.
 	 *
 	 * @param params A map of the URL query parameters. May be empty or
 	 *               {@code null}.
@@ -165,29 +223,94 @@ public class URLUtils {
 
 			for (String value: entry.getValue()) {
 
-				if (value == null)
-					value = "";
+				if (sb.length() > 0)
+					sb.append('&');
 
-				try {
-					String encodedKey = URLEncoder.encode(entry.getKey(), CHARSET);
-					String encodedValue = URLEncoder.encode(value, CHARSET);
+				encode(entry.getKey(), sb);
+				sb.append('=');
 
-					if (sb.length() > 0)
-						sb.append('&');
+				if (value != null)
+					encode(value, sb);
+			}
+		}
 
-					sb.append(encodedKey);
-					sb.append('=');
-					sb.append(encodedValue);
+		return sb.toString();
+	}
 
-				} catch (UnsupportedEncodingException e) {
 
-					// UTF-8 should always be supported
-					throw new RuntimeException(e.getMessage(), e);
-				}
+	/**
+	 * {@code application/x-www-form-urlencoded} encodes the specified
+	 * string with UTF-8, as {@link java.net.URLEncoder} does, and appends
+	 * it to the specified string builder. Runs of characters which need
+	 * no escaping are appended without per-character checks of the
+	 * builder capacity.
+	 *
+	 * @param s  The string to encode. Must not be {@code null}.
+	 * @param sb The string builder to append to. Must not be
+	 *           {@code null}.
+	 */
+	static void encode(final String s, final StringBuilder sb) {
+
+		final int len = s.length();
+
+		int runStart = 0;
+
+		for (int i=0; i < len; i++) {
+
+			char c = s.charAt(i);
+
+			if (c < 128 && UNRESERVED[c]) {
+				continue;
+			}
+
+			if (runStart < i) {
+				sb.append(s, runStart, i);
 			}
+
+			if (c == ' ') {
+				sb.append('+');
+			} else if (c < 0x80) {
+				appendOctet(c, sb);
+			} else if (c < 0x800) {
+				appendOctet(0xC0 | (c >> 6), sb);
+				appendOctet(0x80 | (c & 0x3F), sb);
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				appendOctet(0xF0 | (cp >> 18), sb);
+				appendOctet(0x80 | ((cp >> 12) & 0x3F), sb);
+				appendOctet(0x80 | ((cp >> 6) & 0x3F), sb);
+				appendOctet(0x80 | (cp & 0x3F), sb);
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, replaced like String.getBytes
+				appendOctet('?', sb);
+			} else {
+				appendOctet(0xE0 | (c >> 12), sb);
+				appendOctet(0x80 | ((c >> 6) & 0x3F), sb);
+				appendOctet(0x80 | (c & 0x3F), sb);
+			}
+
+			runStart = i + 1;
 		}
 
-		return sb.toString();
+		if (runStart == 0) {
+			sb.append(s);
+		} else if (runStart < len) {
+			sb.append(s, runStart, len);
+		}
+	}
+
+
+	/**
+	 * Appends the specified octet as a percent-encoded triplet.
+	 *
+	 * @param b  The octet.
+	 * @param sb The string builder to append to.
+	 */
+	private static void appendOctet(final int b, final StringBuilder sb) {
+
+		sb.append('%');
+		sb.append(HEX_DIGITS[(b >> 4) & 0x0F]);
+		sb.append(HEX_DIGITS[b & 0x0F]);
 	}
 
 
@@ -222,40 +345,226 @@ public class URLUtils {
 		if (StringUtils.isBlank(query)) {
 			return params; // empty map
 		}
-		
-		try {
-			StringTokenizer st = new StringTokenizer(query.trim(), "&");
 
-			while(st.hasMoreTokens()) {
+		final String s = query.trim();
+		final int len = s.length();
 
-				String param = st.nextToken();
+		int start = 0;
 
-				String pair[] = param.split("=", 2); // Split around the first '=', see issue #169
+		while (start < len) {
 
-				String key = URLDecoder.decode(pair[0], CHARSET);
-				
-				// Save the first value only
-				if (params.containsKey(key))
-					continue;
+			int end = s.indexOf('&', start);
 
-				String value = "";
+			if (end < 0) {
+				end = len;
+			}
+
+			if (end > start) {
+
+				// Split around the first '=', see issue #169
+				int eq = indexOf(s, '=', start, end);
 
-				if (pair.length > 1) {
-					value = URLDecoder.decode(pair[1], CHARSET);
+				String key = decode(s, start, eq < 0 ? end : eq);
+
+				// Save the first value only
+				if (! params.containsKey(key)) {
+					params.put(key, eq < 0 ? "" : decode(s, eq + 1, end));
 				}
-				
-				params.put(key, value);
 			}
-			
-		} catch (UnsupportedEncodingException e) {
-			
-			// UTF-8 should always be supported
+
+			start = end + 1;
 		}
 		
 		return params;
 	}
 
 
+	/**
+	 * Parses the specified URL query string into a multi-valued parameter
+	 * map. Supports multiple key / value pairs that have the same key,
+	 * the values are kept in order of appearance. The parameter keys and
+	 * values are {@code application/x-www-form-urlencoded} decoded.
+	 *
+	 * <p>Note that the '?' character preceding the query string in GET
+	 * requests must not be included.
+	 *
+	 * <p>The opposite method {@link #serializeParametersAlt}.
+	 *
+	 * @param query The URL query string to parse. May be {@code null}.
+	 *
+	 * @return A map of the URL query parameters, empty if none are found.
+	 */
+	public static Map<String,String[]> parseParametersAlt(final String query) {
+
+		Map<String,String[]> params = new LinkedHashMap<>();
+
+		if (StringUtils.isBlank(query)) {
+			return params; // empty map
+		}
+
+		final String s = query.trim();
+		final int len = s.length();
+
+		int start = 0;
+
+		while (start < len) {
+
+			int end = s.indexOf('&', start);
+
+			if (end < 0) {
+				end = len;
+			}
+
+			if (end > start) {
+
+				int eq = indexOf(s, '=', start, end);
+
+				String key = decode(s, start, eq < 0 ? end : eq);
+				String value = eq < 0 ? "" : decode(s, eq + 1, end);
+
+				String[] values = params.get(key);
+
+				if (values == null) {
+					values = new String[]{value};
+				} else {
+					values = Arrays.copyOf(values, values.length + 1);
+					values[values.length - 1] = value;
+				}
+
+				params.put(key, values);
+			}
+
+			start = end + 1;
+		}
+
+		return params;
+	}
+
+
+	/**
+	 * Finds the first occurrence of the specified character in a string
+	 * range.
+	 *
+	 * @param s     The string.
+	 * @param c     The character to find.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The character index, -1 if not found.
+	 */
+	private static int indexOf(final String s, final char c, final int start, final int end) {
+
+		for (int i=start; i < end; i++) {
+			if (s.charAt(i) == c) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * Returns the value of the specified hex digit.
+	 *
+	 * @param c The character.
+	 *
+	 * @return The hex digit value, -1 if not a hex digit.
+	 */
+	private static int hexValue(final char c) {
+
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * {@code application/x-www-form-urlencoded} decodes the specified
+	 * string range in a single pass. If the range contains no '+' or '%'
+	 * characters the substring is returned without further copying.
+	 * Consecutive percent-encoded octets are decoded as UTF-8, malformed
+	 * sequences are replaced as by {@link java.net.URLDecoder}.
+	 *
+	 * @param s     The string.
+	 * @param start The start index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The decoded string.
+	 *
+	 * @throws IllegalArgumentException If a percent-encoded octet is
+	 *                                  incomplete or illegal.
+	 */
+	static String decode(final String s, final int start, final int end) {
+
+		int i = start;
+
+		while (i < end) {
+			char c = s.charAt(i);
+			if (c == '%' || c == '+') {
+				break;
+			}
+			i++;
+		}
+
+		if (i == end) {
+			return s.substring(start, end);
+		}
+
+		StringBuilder sb = new StringBuilder(end - start);
+		sb.append(s, start, i);
+
+		byte[] bytes = null;
+
+		while (i < end) {
+
+			char c = s.charAt(i);
+
+			if (c == '+') {
+				sb.append(' ');
+				i++;
+			} else if (c == '%') {
+
+				if (bytes == null) {
+					bytes = new byte[(end - i) / 3];
+				}
+
+				int n = 0;
+
+				while (i < end && s.charAt(i) == '%') {
+
+					if (i + 2 >= end) {
+						throw new IllegalArgumentException("URLDecoder: Incomplete trailing escape (%) pattern");
+					}
+
+					int hi = hexValue(s.charAt(i + 1));
+					int lo = hexValue(s.charAt(i + 2));
+
+					if (hi < 0 || lo < 0) {
+						throw new IllegalArgumentException("URLDecoder: Illegal hex characters in escape (%) pattern");
+					}
+
+					bytes[n++] = (byte)((hi << 4) + lo);
+					i += 3;
+				}
+
+				sb.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+
+		return sb.toString();
+	}
+
+
 	/**
 	 * Prevents instantiation.
 	 */
@@ -281,9 +281,9 @@ public class AuthenticationErrorResponse
 			throw new ParseException(e.getMessage(), e);
 		}
 
-		if (httpRequest.getQuery() != null) {
+		if (httpRequest.hasQuery()) {
 			// For query string and form_post response mode
-			return parse(baseURI, URLUtils.parseParameters(httpRequest.getQuery()));
+			return parse(baseURI, httpRequest.getQueryParameters());
 		} else if (httpRequest.getFragment() != null) {
 			// For fragment response mode (never available in actual HTTP request from browser)
 			return parse(baseURI, URLUtils.parseParameters(httpRequest.getFragment()));
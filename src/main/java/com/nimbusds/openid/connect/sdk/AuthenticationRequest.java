@@ -1720,9 +1720,7 @@ public class AuthenticationRequest extends AuthorizationRequest {
 	public static AuthenticationRequest parse(final HTTPRequest httpRequest)
 		throws ParseException {
 		
-		String query = httpRequest.getQuery();
-		
-		if (query == null)
+		if (! httpRequest.hasQuery())
 			throw new ParseException("Missing URI query string");
 
 		URI endpointURI;
@@ -1735,6 +1733,6 @@ public class AuthenticationRequest extends AuthorizationRequest {
 			throw new ParseException(e.getMessage(), e);
 		}
 		
-		return parse(endpointURI, query);
+		return parse(endpointURI, httpRequest.getQueryParameters());
 	}
 }
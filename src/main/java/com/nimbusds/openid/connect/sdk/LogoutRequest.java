@@ -483,13 +483,11 @@ public class LogoutRequest extends AbstractRequest {
 	public static LogoutRequest parse(final HTTPRequest httpRequest)
 		throws ParseException {
 
-		String query = httpRequest.getQuery();
-
-		if (query == null)
+		if (! httpRequest.hasQuery())
 			throw new ParseException("Missing URI query string");
 
 		try {
-			return parse(URIUtils.getBaseURI(httpRequest.getURL().toURI()), query);
+			return parse(URIUtils.getBaseURI(httpRequest.getURL().toURI()), httpRequest.getQueryParameters());
 
 		} catch (URISyntaxException e) {
 
@@ -18,6 +18,7 @@
 package com.nimbusds.openid.connect.sdk;
 
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,9 +26,19 @@ import net.jcip.annotations.Immutable;
 
 import net.minidev.json.JSONObject;
 
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTParser;
+
 import com.nimbusds.oauth2.sdk.AccessTokenResponse;
 import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
 import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.token.AccessTokenType;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.nimbusds.oauth2.sdk.util.JSONObjectWriter;
+import com.nimbusds.oauth2.sdk.util.TokenResponseMembers;
 import com.nimbusds.openid.connect.sdk.token.OIDCTokens;
 
 
@@ -140,6 +151,15 @@ public class OIDCTokenResponse extends AccessTokenResponse {
 		o.put("id_token", getOIDCTokens().getIDTokenString());
 		return o;
 	}
+
+
+	@Override
+	protected void writeJSONMembers(final JSONObjectWriter writer)
+		throws IOException {
+
+		writer.writeMember("id_token", getOIDCTokens().getIDTokenString());
+		super.writeJSONMembers(writer);
+	}
 	
 	
 	/**
@@ -189,7 +209,63 @@ public class OIDCTokenResponse extends AccessTokenResponse {
 		throws ParseException {
 		
 		httpResponse.ensureStatusCode(HTTPResponse.SC_OK);
+		httpResponse.ensureContentType(CommonContentTypes.APPLICATION_JSON);
+
+		if (httpResponse.getContent() != null) {
+
+			OIDCTokenResponse response = parseFast(httpResponse.getContent());
+
+			if (response != null) {
+				return response;
+			}
+		}
+
 		JSONObject jsonObject = httpResponse.getContentAsJSONObject();
 		return parse(jsonObject);
 	}
+
+
+	/**
+	 * Parses a typical OpenID Connect token response with a Bearer token
+	 * in a single pass, without building a JSON object tree. Unknown
+	 * members are collected into lazily parsed custom parameters.
+	 *
+	 * @param json The JSON object string to parse. Must not be
+	 *             {@code null}.
+	 *
+	 * @return The OpenID Connect token response, {@code null} if the JSON
+	 *         is malformed or unusual, in which case the regular
+	 *         {@link #parse(JSONObject)} must be used for the appropriate
+	 *         error reporting.
+	 */
+	private static OIDCTokenResponse parseFast(final String json) {
+
+		TokenResponseMembers members = TokenResponseMembers.parse(json);
+
+		if (members == null ||
+		    members.getIDToken() == null ||
+		    ! AccessTokenType.parse(members.getTokenType()).equals(AccessTokenType.BEARER)) {
+			return null;
+		}
+
+		JWT jwt;
+
+		try {
+			jwt = JWTParser.parse(members.getIDToken());
+
+		} catch (java.text.ParseException e) {
+			return null;
+		}
+
+		OIDCTokens tokens = new OIDCTokens(
+			jwt,
+			new BearerAccessToken(members.getAccessToken(), members.getLifetime(), Scope.parse(members.getScope())),
+			members.getRefreshToken() != null ? new RefreshToken(members.getRefreshToken()) : null);
+
+		if (members.getCustomParameters() == null) {
+			return new OIDCTokenResponse(tokens);
+		}
+
+		return new OIDCTokenResponse(tokens, members.getCustomParameters());
+	}
 }
@@ -29,6 +29,7 @@ import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.ProtectedResourceRequest;
 import com.nimbusds.oauth2.sdk.SerializeException;
 import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
+import com.nimbusds.oauth2.sdk.http.EndpointRole;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
 
@@ -130,6 +131,7 @@ public class UserInfoRequest extends ProtectedResourceRequest {
 		}
 	
 		HTTPRequest httpRequest = new HTTPRequest(httpMethod, endpointURL);
+		httpRequest.setEndpointRole(EndpointRole.USERINFO);
 		
 		switch (httpMethod) {
 		
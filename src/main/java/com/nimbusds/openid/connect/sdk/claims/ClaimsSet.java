@@ -21,11 +21,14 @@ package com.nimbusds.openid.connect.sdk.claims;
 import java.net.URI;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.mail.internet.InternetAddress;
 
 import com.nimbusds.jose.util.DateUtils;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.langtag.LangTag;
+import com.nimbusds.langtag.LangTagException;
 import com.nimbusds.langtag.LangTagUtils;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
@@ -44,6 +47,115 @@ public abstract class ClaimsSet {
 	private final JSONObject claims;
 
 
+	/**
+	 * The language tag index, {@code null} if not built yet.
+	 */
+	private volatile LangTagIndex langTagIndex;
+
+
+	/**
+	 * The parsed URL and URI claims, keyed by claim name, {@code null} if
+	 * none parsed yet.
+	 */
+	private volatile ConcurrentMap<String,ParsedClaim> parsedClaims;
+
+
+	/**
+	 * Index of the language tags of the claims, keyed by base claim name.
+	 * Built on demand for {@link #getLangTaggedClaim}, which would
+	 * otherwise have to parse all claim names on each call. Discarded by
+	 * the setters when a language-tagged claim is set or removed, and by
+	 * {@link #invalidateLangTagIndex}.
+	 */
+	private static final class LangTagIndex {
+
+
+		/**
+		 * The language tags of the tagged claims, keyed by base claim
+		 * name. Claim names with an invalid language tag are omitted.
+		 */
+		final Map<String,Set<LangTag>> tags;
+
+
+		/**
+		 * Builds a new language tag index.
+		 *
+		 * @param claims The claims.
+		 */
+		LangTagIndex(final Map<String,Object> claims) {
+
+			Map<String,Set<LangTag>> tags = new HashMap<>();
+
+			for (String key: claims.keySet()) {
+
+				int pos = key.indexOf('#');
+
+				if (pos < 0) {
+					continue;
+				}
+
+				LangTag langTag;
+
+				try {
+					langTag = LangTag.parse(key.substring(pos + 1));
+				} catch (LangTagException e) {
+					continue;
+				}
+
+				if (langTag == null) {
+					continue;
+				}
+
+				String baseName = key.substring(0, pos);
+
+				Set<LangTag> langTags = tags.get(baseName);
+
+				if (langTags == null) {
+					langTags = new LinkedHashSet<>();
+					tags.put(baseName, langTags);
+				}
+
+				langTags.add(langTag);
+			}
+
+			this.tags = tags;
+		}
+	}
+
+
+	/**
+	 * Parsed claim value, together with the raw JSON value it was parsed
+	 * from.
+	 */
+	private static final class ParsedClaim {
+
+
+		/**
+		 * The raw JSON value.
+		 */
+		final Object raw;
+
+
+		/**
+		 * The parsed value.
+		 */
+		final Object value;
+
+
+		/**
+		 * Creates a new parsed claim value.
+		 *
+		 * @param raw   The raw JSON value.
+		 * @param value The parsed value.
+		 */
+		ParsedClaim(final Object raw, final Object value) {
+
+			this.raw = raw;
+			this.value = value;
+		}
+	}
+
+
 	/**
 	 * Creates a new empty claims set.
 	 */
@@ -86,6 +198,7 @@ public abstract class ClaimsSet {
 	public void putAll(final Map<String,Object> claims) {
 
 		this.claims.putAll(claims);
+		langTagIndex = null;
 	}
 
 
@@ -156,12 +269,20 @@ public abstract class ClaimsSet {
 	 */
 	public <T> Map<LangTag,T> getLangTaggedClaim(final String name, final Class<T> clazz) {
 
-		Map<LangTag,Object> matches = LangTagUtils.find(name, claims);
+		Collection<LangTag> langTags;
+
+		if (name.indexOf('#') < 0) {
+			langTags = new ArrayList<>(getLangTags(name));
+			langTags.add(null);
+		} else {
+			// Ambiguous base name, scan all claims
+			langTags = LangTagUtils.find(name, claims).keySet();
+		}
+
 		Map<LangTag,T> out = new HashMap<>();
 
-		for (Map.Entry<LangTag,Object> entry: matches.entrySet()) {
+		for (LangTag langTag: langTags) {
 
-			LangTag langTag = entry.getKey();
 			String compositeKey = name + (langTag != null ? "#" + langTag : "");
 
 			try {
@@ -175,6 +296,79 @@ public abstract class ClaimsSet {
 	}
 
 
+	/**
+	 * Returns the language tags of the claim with the specified base
+	 * name, using the language tag index.
+	 *
+	 * @param name The base claim name, without a {@code #} character.
+	 *             Must not be {@code null}.
+	 *
+	 * @return The language tags, empty set if none.
+	 */
+	private Set<LangTag> getLangTags(final String name) {
+
+		LangTagIndex index = langTagIndex;
+
+		if (index == null) {
+			index = new LangTagIndex(claims);
+			langTagIndex = index;
+		}
+
+		Set<LangTag> langTags = index.tags.get(name);
+		return langTags != null ? langTags : Collections.<LangTag>emptySet();
+	}
+
+
+	/**
+	 * Returns the memoised parsed value of the specified claim.
+	 *
+	 * @param name The claim name. Must not be {@code null}.
+	 * @param raw  The current raw JSON value of the claim. Must not be
+	 *             {@code null}.
+	 * @param type The expected class of the parsed value.
+	 *
+	 * @return The parsed value, {@code null} if not memoised or the claim
+	 *         value changed since.
+	 */
+	private <T> T getParsedClaim(final String name, final Object raw, final Class<T> type) {
+
+		Map<String,ParsedClaim> parsed = parsedClaims;
+
+		if (parsed == null) {
+			return null;
+		}
+
+		ParsedClaim parsedClaim = parsed.get(name);
+
+		if (parsedClaim != null && parsedClaim.raw == raw && type.isInstance(parsedClaim.value)) {
+			return type.cast(parsedClaim.value);
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Memoises the parsed value of the specified claim.
+	 *
+	 * @param name  The claim name. Must not be {@code null}.
+	 * @param raw   The raw JSON value of the claim. Must not be
+	 *              {@code null}.
+	 * @param value The parsed value. Must not be {@code null}.
+	 */
+	private void putParsedClaim(final String name, final Object raw, final Object value) {
+
+		ConcurrentMap<String,ParsedClaim> parsed = parsedClaims;
+
+		if (parsed == null) {
+			parsed = new ConcurrentHashMap<>();
+			parsedClaims = parsed;
+		}
+
+		parsed.put(name, new ParsedClaim(raw, value));
+	}
+
+
 	/**
 	 * Sets a claim.
 	 *
@@ -190,6 +384,48 @@ public abstract class ClaimsSet {
 			claims.put(name, value);
 		else
 			claims.remove(name);
+
+		onClaimSet(name);
+	}
+
+
+	/**
+	 * Removes a claim.
+	 *
+	 * @param name The claim name. Must not be {@code null}.
+	 */
+	private void removeClaim(final String name) {
+
+		claims.remove(name);
+		onClaimSet(name);
+	}
+
+
+	/**
+	 * Discards the language tag index if the specified claim name has a
+	 * language tag.
+	 *
+	 * @param name The set or removed claim name. Must not be
+	 *             {@code null}.
+	 */
+	private void onClaimSet(final String name) {
+
+		if (name.indexOf('#') >= 0) {
+			langTagIndex = null;
+		}
+	}
+
+
+	/**
+	 * Discards the cached language tags of the claims. Must be called
+	 * after language-tagged claims were added to or removed from the
+	 * {@link #toJSONObject JSON object} directly, bypassing the setters
+	 * of this claims set, for {@link #getLangTaggedClaim} to see the
+	 * change.
+	 */
+	public void invalidateLangTagIndex() {
+
+		langTagIndex = null;
 	}
 
 
@@ -290,11 +526,26 @@ public abstract class ClaimsSet {
 	 */
 	public URL getURLClaim(final String name) {
 
+		Object raw = claims.get(name);
+
+		if (raw == null) {
+			return null;
+		}
+
+		URL value = getParsedClaim(name, raw, URL.class);
+
+		if (value != null) {
+			return value;
+		}
+
 		try {
-			return JSONObjectUtils.getURL(claims, name);
+			value = JSONObjectUtils.getURL(claims, name);
 		} catch (ParseException e) {
 			return null;
 		}
+
+		putParsedClaim(name, raw, value);
+		return value;
 	}
 
 
@@ -310,7 +561,7 @@ public abstract class ClaimsSet {
 		if (value != null)
 			setClaim(name, value.toString());
 		else
-			claims.remove(name);
+			removeClaim(name);
 	}
 
 
@@ -324,11 +575,26 @@ public abstract class ClaimsSet {
 	 */
 	public URI getURIClaim(final String name) {
 
+		Object raw = claims.get(name);
+
+		if (raw == null) {
+			return null;
+		}
+
+		URI value = getParsedClaim(name, raw, URI.class);
+
+		if (value != null) {
+			return value;
+		}
+
 		try {
-			return JSONObjectUtils.getURI(claims, name);
+			value = JSONObjectUtils.getURI(claims, name);
 		} catch (ParseException e) {
 			return null;
 		}
+
+		putParsedClaim(name, raw, value);
+		return value;
 	}
 
 
@@ -344,7 +610,7 @@ public abstract class ClaimsSet {
 		if (value != null)
 			setClaim(name, value.toString());
 		else
-			claims.remove(name);
+			removeClaim(name);
 	}
 
 
@@ -380,7 +646,7 @@ public abstract class ClaimsSet {
 		if (value != null)
 			setClaim(name, value.getAddress());
 		else
-			claims.remove(name);
+			removeClaim(name);
 	}
 
 
@@ -416,7 +682,7 @@ public abstract class ClaimsSet {
 		if (value != null)
 			setClaim(name, DateUtils.toSecondsSinceEpoch(value));
 		else
-			claims.remove(name);
+			removeClaim(name);
 	}
 
 
@@ -452,6 +718,10 @@ public abstract class ClaimsSet {
 	 * }
 	 * </pre>
 	 *
+	 * <p>The returned JSON object is backed by this claims set. If
+	 * language-tagged claims are added or removed in it directly
+	 * {@link #invalidateLangTagIndex} must be called afterwards.
+	 *
 	 * @return The JSON object representation.
 	 */
 	public JSONObject toJSONObject() {
@@ -29,6 +29,7 @@ import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.ResponseType;
 import com.nimbusds.oauth2.sdk.id.Audience;
+import com.nimbusds.oauth2.sdk.id.IdentifierPool;
 import com.nimbusds.oauth2.sdk.id.Issuer;
 import com.nimbusds.oauth2.sdk.id.Subject;
 import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
@@ -391,7 +392,7 @@ public class IDTokenClaimsSet extends ClaimsSet {
 	 */
 	public Issuer getIssuer() {
 
-		return new Issuer(getStringClaim(ISS_CLAIM_NAME));
+		return IdentifierPool.canonical(new Issuer(getStringClaim(ISS_CLAIM_NAME)));
 	}
 
 
@@ -18,6 +18,7 @@
 package com.nimbusds.openid.connect.sdk.token;
 
 
+import java.io.IOException;
 import java.util.Set;
 
 import com.nimbusds.jwt.JWT;
@@ -33,6 +34,7 @@ import com.nimbusds.oauth2.sdk.token.AccessToken;
 import com.nimbusds.oauth2.sdk.token.RefreshToken;
 import com.nimbusds.oauth2.sdk.token.Tokens;
 import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
+import com.nimbusds.oauth2.sdk.util.JSONObjectWriter;
 
 
 /**
@@ -170,6 +172,15 @@ public final class OIDCTokens extends Tokens {
 	}
 
 
+	@Override
+	public void writeJSONMembers(final JSONObjectWriter writer)
+		throws IOException {
+
+		writer.writeMember("id_token", getIDTokenString());
+		super.writeJSONMembers(writer);
+	}
+
+
 	/**
 	 * Parses an OpenID Connect tokens instance from the specified JSON
 	 * object.
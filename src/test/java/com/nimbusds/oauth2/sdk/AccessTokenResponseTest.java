@@ -26,9 +26,11 @@ import java.util.Set;
 import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
 import com.nimbusds.oauth2.sdk.http.HTTPResponse;
 import com.nimbusds.oauth2.sdk.token.AccessToken;
+import com.nimbusds.oauth2.sdk.token.AccessTokenType;
 import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
 import com.nimbusds.oauth2.sdk.token.RefreshToken;
 import com.nimbusds.oauth2.sdk.token.Tokens;
+import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
 import junit.framework.TestCase;
 import net.minidev.json.JSONObject;
 
@@ -118,6 +120,192 @@ public class AccessTokenResponseTest extends TestCase {
 	}
 
 
+	public void testStreamedJSON()
+		throws Exception {
+
+		Tokens tokens = new Tokens(new BearerAccessToken("abc/123", 3600L, Scope.parse("read write")), new RefreshToken("def456"));
+
+		Map<String,Object> customParams = new HashMap<>();
+		customParams.put("sub_sid", "abc");
+		customParams.put("priority", 10L);
+		customParams.put("authorization_details", JSONObjectUtils.parse("{\"type\":\"payment\",\"locations\":[\"https://c2id.com\"]}"));
+
+		AccessTokenResponse response = new AccessTokenResponse(tokens, customParams);
+
+		StringBuilder sb = new StringBuilder();
+		response.writeJSONObject(sb);
+
+		assertEquals(response.toJSONObject(), JSONObjectUtils.parse(sb.toString()));
+		assertTrue(sb.toString().contains("\"access_token\":\"abc\\/123\""));
+
+		HTTPResponse httpResponse = response.toHTTPResponse();
+		assertEquals(sb.toString(), httpResponse.getContent());
+		assertEquals(CommonContentTypes.APPLICATION_JSON.toString(), httpResponse.getContentType().toString());
+		assertEquals("no-store", httpResponse.getCacheControl());
+		assertEquals("no-cache", httpResponse.getPragma());
+	}
+
+
+	public void testStreamedJSONCustomParamsOverride()
+		throws Exception {
+
+		Tokens tokens = new Tokens(new BearerAccessToken("abc123"), null);
+
+		Map<String,Object> customParams = new HashMap<>();
+		customParams.put("token_type", "N_A");
+
+		AccessTokenResponse response = new AccessTokenResponse(tokens, customParams);
+
+		JSONObject jsonObject = JSONObjectUtils.parse(response.toHTTPResponse().getContent());
+		assertEquals(response.toJSONObject(), jsonObject);
+		assertEquals("N_A", jsonObject.get("token_type"));
+		assertEquals(2, jsonObject.size());
+	}
+
+
+	private static HTTPResponse toHTTPResponse(final String json) {
+
+		HTTPResponse httpResponse = new HTTPResponse(HTTPResponse.SC_OK);
+		httpResponse.setContentType(CommonContentTypes.APPLICATION_JSON);
+		httpResponse.setContent(json);
+		return httpResponse;
+	}
+
+
+	public void testStreamedJSONWithOverriddenToJSONObject()
+		throws Exception {
+
+		Tokens tokens = new Tokens(new BearerAccessToken("abc123"), null);
+
+		AccessTokenResponse response = new AccessTokenResponse(tokens) {
+			@Override
+			public JSONObject toJSONObject() {
+				JSONObject o = super.toJSONObject();
+				o.put("extra", "value");
+				return o;
+			}
+		};
+
+		JSONObject jsonObject = JSONObjectUtils.parse(response.toHTTPResponse().getContent());
+		assertEquals(response.toJSONObject(), jsonObject);
+		assertEquals("value", jsonObject.get("extra"));
+	}
+
+
+	public void testStreamedJSONWithOverriddenTokensToJSONObject()
+		throws Exception {
+
+		AccessToken accessToken = new AccessToken(AccessTokenType.BEARER, "abc123") {
+			@Override
+			public String toAuthorizationHeader() {
+				return "Bearer " + getValue();
+			}
+
+			@Override
+			public JSONObject toJSONObject() {
+				JSONObject o = super.toJSONObject();
+				o.put("token_extra", "a");
+				return o;
+			}
+		};
+
+		Tokens tokens = new Tokens(accessToken, new RefreshToken("def456")) {
+			@Override
+			public JSONObject toJSONObject() {
+				JSONObject o = super.toJSONObject();
+				o.put("tokens_extra", "b");
+				return o;
+			}
+		};
+
+		AccessTokenResponse response = new AccessTokenResponse(tokens);
+
+		JSONObject jsonObject = JSONObjectUtils.parse(response.toHTTPResponse().getContent());
+		assertEquals(response.toJSONObject(), jsonObject);
+		assertEquals("a", jsonObject.get("token_extra"));
+		assertEquals("b", jsonObject.get("tokens_extra"));
+		assertEquals("def456", jsonObject.get("refresh_token"));
+	}
+
+
+	public void testParseFastPathMatchesJSONObject()
+		throws Exception {
+
+		String[] jsons = {
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\"}",
+			"{\"access_token\":\"a\\/b\",\"token_type\":\"bearer\",\"expires_in\":3600,\"scope\":\"read write\",\"refresh_token\":\"def\"}",
+			"{\"token_type\":\"Bearer\",\"expires_in\":\"60\",\"access_token\":\"abc\",\"sub_sid\":\"xyz\",\"priority\":10,\"ratio\":0.5,\"details\":{\"a\":[1,true,null]}}",
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"id_token\":\"eyJhbGciOiJub25lIn0.e30.\"}",
+			" {\"access_token\":\"abc\",\"token_type\":\"Bearer\"} \n"
+		};
+
+		for (String json: jsons) {
+
+			AccessTokenResponse fast = AccessTokenResponse.parse(toHTTPResponse(json));
+			AccessTokenResponse tree = AccessTokenResponse.parse(JSONObjectUtils.parse(json));
+
+			assertEquals(tree.getTokens().getAccessToken(), fast.getTokens().getAccessToken());
+			assertEquals(tree.getTokens().getAccessToken().getLifetime(), fast.getTokens().getAccessToken().getLifetime());
+			assertEquals(tree.getTokens().getAccessToken().getScope(), fast.getTokens().getAccessToken().getScope());
+			assertEquals(tree.getTokens().getRefreshToken(), fast.getTokens().getRefreshToken());
+			assertEquals(tree.getCustomParameters(), fast.getCustomParameters());
+			assertEquals(tree.toJSONObject(), fast.toJSONObject());
+		}
+	}
+
+
+	public void testParseFastPathFallbackErrors()
+		throws Exception {
+
+		String[] jsons = {
+			"{\"access_token\":\"abc\"}",
+			"{\"access_token\":\"abc\",\"token_type\":\"MAC\"}",
+			"{\"token_type\":\"Bearer\"}",
+			"{\"access_token\":123,\"token_type\":\"Bearer\"}",
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"expires_in\":\"soon\"}",
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"scope\":[\"read\"]}",
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"refresh_token\":null}",
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"access_token\":\"def\"}",
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"x\":1,\"x\":2}",
+			"{\"access_token\":\"abc\",",
+			"[]"
+		};
+
+		for (String json: jsons) {
+
+			String expectedMessage;
+
+			try {
+				AccessTokenResponse.parse(JSONObjectUtils.parse(json));
+				fail(json);
+				return;
+			} catch (ParseException e) {
+				expectedMessage = e.getMessage();
+			}
+
+			try {
+				AccessTokenResponse.parse(toHTTPResponse(json));
+				fail(json);
+			} catch (ParseException e) {
+				assertEquals(expectedMessage, e.getMessage());
+			}
+		}
+	}
+
+
+	public void testParseFastPathUnusualValues()
+		throws Exception {
+
+		// Handled by the regular parser
+		String json = "{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"expires_in\":3600.5,\"scope\":\"\"}";
+
+		AccessTokenResponse response = AccessTokenResponse.parse(toHTTPResponse(json));
+		assertEquals("abc", response.getTokens().getAccessToken().getValue());
+		assertTrue(response.getTokens().getAccessToken().getScope().isEmpty());
+		assertEquals(3600L, response.getTokens().getAccessToken().getLifetime());
+	}
+
+
 	public void testParseFromHTTPResponseWithCustomParams()
 		throws Exception {
 
@@ -589,4 +589,24 @@ public class AuthorizationRequestTest extends TestCase {
 		assertEquals(new State("xyz"), request.getState());
 		assertEquals(redirectURI, request.getRedirectionURI());
 	}
+
+
+	public void testToURIUsesOverriddenQueryString() {
+
+		AuthorizationRequest request = new AuthorizationRequest(
+			URI.create("https://server.example.com/authorize"),
+			new ResponseType(ResponseType.Value.CODE),
+			new ClientID("123")) {
+
+			@Override
+			public String toQueryString() {
+
+				return super.toQueryString() + "&x=y";
+			}
+		};
+
+		URI uri = request.toURI();
+		assertEquals("https://server.example.com/authorize?" + request.toQueryString(), uri.toString());
+		assertEquals("y", URLUtils.parseParameters(uri.getRawQuery()).get("x"));
+	}
 }
@@ -0,0 +1,225 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the compact scope.
+ */
+public class CompactScopeTest extends TestCase {
+
+
+	private static final ScopeRegistry REGISTRY = new ScopeRegistry("openid", "email", "profile", "phone", "address");
+
+
+	/**
+	 * Returns a registry with more than 64 values.
+	 */
+	private static ScopeRegistry createLargeRegistry() {
+
+		List<String> values = new ArrayList<>();
+
+		for (int i=0; i < 150; i++) {
+			values.add("s" + i);
+		}
+
+		return new ScopeRegistry(values);
+	}
+
+
+	public void testParse() {
+
+		CompactScope scope = CompactScope.parse("email openid custom", REGISTRY);
+
+		assertEquals(REGISTRY, scope.getRegistry());
+		assertEquals(3, scope.size());
+		assertFalse(scope.isEmpty());
+		assertTrue(scope.contains("openid"));
+		assertTrue(scope.contains("email"));
+		assertTrue(scope.contains("custom"));
+		assertTrue(scope.contains(new Scope.Value("custom")));
+		assertFalse(scope.contains("profile"));
+		assertFalse(scope.contains("other"));
+		assertFalse(scope.contains((String)null));
+		assertFalse(scope.contains((Scope.Value)null));
+
+		assertEquals("openid email custom", scope.toString());
+		assertEquals(Arrays.asList("openid", "email", "custom"), scope.toStringList());
+	}
+
+
+	public void testParseNullAndEmpty() {
+
+		assertNull(CompactScope.parse(null, REGISTRY));
+
+		CompactScope scope = CompactScope.parse(" ", REGISTRY);
+		assertTrue(scope.isEmpty());
+		assertEquals(0, scope.size());
+		assertEquals("", scope.toString());
+		assertTrue(scope.toScope().isEmpty());
+	}
+
+
+	public void testParseComma() {
+
+		assertEquals(CompactScope.parse("openid email", REGISTRY), CompactScope.parse("openid,email", REGISTRY));
+	}
+
+
+	public void testRoundTrip() {
+
+		for (String s: Arrays.asList("openid", "openid email profile", "address x y z", "read write", "phone phone x x")) {
+
+			Scope scope = Scope.parse(s);
+			CompactScope compactScope = CompactScope.parse(s, REGISTRY);
+
+			assertEquals(scope, compactScope.toScope());
+			assertEquals(scope, Scope.parse(compactScope.toString()));
+			assertEquals(compactScope, new CompactScope(scope, REGISTRY));
+			assertEquals(compactScope, CompactScope.parse(compactScope.toString(), REGISTRY));
+			assertEquals(compactScope.hashCode(), new CompactScope(scope, REGISTRY).hashCode());
+			assertEquals(scope.size(), compactScope.size());
+		}
+	}
+
+
+	public void testToScopeUsesRegistryValues() {
+
+		Scope scope = CompactScope.parse("openid", REGISTRY).toScope();
+		assertSame(REGISTRY.getValue(0), scope.iterator().next());
+	}
+
+
+	public void testContainsAll() {
+
+		CompactScope granted = CompactScope.parse("openid email profile x", REGISTRY);
+
+		assertTrue(granted.containsAll(CompactScope.parse("openid email", REGISTRY)));
+		assertTrue(granted.containsAll(CompactScope.parse("x profile", REGISTRY)));
+		assertTrue(granted.containsAll(CompactScope.parse("", REGISTRY)));
+		assertTrue(granted.containsAll(granted));
+		assertFalse(granted.containsAll(CompactScope.parse("openid phone", REGISTRY)));
+		assertFalse(granted.containsAll(CompactScope.parse("openid y", REGISTRY)));
+		assertFalse(CompactScope.parse("", REGISTRY).containsAll(granted));
+	}
+
+
+	public void testIntersection() {
+
+		CompactScope a = CompactScope.parse("openid email x y", REGISTRY);
+		CompactScope b = CompactScope.parse("email profile y z", REGISTRY);
+
+		CompactScope intersection = a.intersection(b);
+		assertEquals(CompactScope.parse("email y", REGISTRY), intersection);
+		assertEquals("email y", intersection.toString());
+
+		assertTrue(a.intersection(CompactScope.parse("phone", REGISTRY)).isEmpty());
+	}
+
+
+	public void testUnion() {
+
+		CompactScope a = CompactScope.parse("openid x", REGISTRY);
+		CompactScope b = CompactScope.parse("address x y", REGISTRY);
+
+		CompactScope union = a.union(b);
+		assertEquals(CompactScope.parse("openid address x y", REGISTRY), union);
+		assertEquals("openid address x y", union.toString());
+		assertEquals(4, union.size());
+	}
+
+
+	public void testEquality() {
+
+		assertEquals(CompactScope.parse("x y openid", REGISTRY), CompactScope.parse("openid y x", REGISTRY));
+		assertEquals(CompactScope.parse("x y openid", REGISTRY).hashCode(), CompactScope.parse("openid y x", REGISTRY).hashCode());
+		assertFalse(CompactScope.parse("openid x", REGISTRY).equals(CompactScope.parse("openid y", REGISTRY)));
+		assertFalse(CompactScope.parse("openid", REGISTRY).equals(CompactScope.parse("openid", new ScopeRegistry("openid"))));
+		assertFalse(CompactScope.parse("openid", REGISTRY).equals(Scope.parse("openid")));
+	}
+
+
+	public void testLargeRegistry() {
+
+		ScopeRegistry registry = createLargeRegistry();
+
+		CompactScope a = CompactScope.parse("s0 s63 s64 s149", registry);
+		CompactScope b = CompactScope.parse("s63 s100", registry);
+
+		assertEquals(4, a.size());
+		assertTrue(a.contains("s149"));
+		assertFalse(a.contains("s100"));
+		assertEquals("s0 s63 s64 s149", a.toString());
+
+		assertEquals(CompactScope.parse("s63", registry), a.intersection(b));
+		assertEquals(CompactScope.parse("s0 s63 s64 s100 s149", registry), a.union(b));
+		assertTrue(a.union(b).containsAll(b));
+		assertFalse(b.containsAll(a));
+		assertTrue(a.containsAll(CompactScope.parse("s0", registry)));
+
+		// Trailing zero words trimmed
+		assertEquals(CompactScope.parse("s0", registry), CompactScope.parse("s0 s149", registry).intersection(CompactScope.parse("s0 s148", registry)));
+	}
+
+
+	public void testRejectDifferentRegistry() {
+
+		CompactScope a = CompactScope.parse("openid", REGISTRY);
+		CompactScope b = CompactScope.parse("openid", new ScopeRegistry("openid"));
+
+		try {
+			a.containsAll(b);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The scopes must be created with the same registry", e.getMessage());
+		}
+
+		try {
+			a.union(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The other scope must not be null", e.getMessage());
+		}
+	}
+
+
+	public void testRejectNull() {
+
+		try {
+			new CompactScope(null, REGISTRY);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The scope must not be null", e.getMessage());
+		}
+
+		try {
+			new CompactScope(new Scope("openid"), null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The scope registry must not be null", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.oauth2.sdk.id.ClientID;
+
+
+/**
+ * Tests the in-memory authorisation code store.
+ */
+public class InMemoryAuthorizationCodeStoreTest extends TestCase {
+
+
+	private static StoredAuthorizationCode storedCode(final AuthorizationCode code) {
+
+		return new StoredAuthorizationCode(code, new ClientID("123"), null, null, null, null, null);
+	}
+
+
+	public void testConstructor() {
+
+		InMemoryAuthorizationCodeStore store = new InMemoryAuthorizationCodeStore();
+		assertEquals(InMemoryAuthorizationCodeStore.DEFAULT_TTL, store.getTimeToLive());
+		assertEquals(0, store.size());
+		store.close();
+
+		try {
+			new InMemoryAuthorizationCodeStore(0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The time-to-live must be positive", e.getMessage());
+		}
+
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+		try {
+			new InMemoryAuthorizationCodeStore(1000L, scheduler, 0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The sweep interval must be positive", e.getMessage());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+
+	public void testPutAndConsume() {
+
+		InMemoryAuthorizationCodeStore store = new InMemoryAuthorizationCodeStore(60000L, null, 0L);
+
+		AuthorizationCode code = new AuthorizationCode();
+
+		assertTrue(store.put(storedCode(code)));
+		assertFalse(store.put(storedCode(code)));
+		assertEquals(1, store.size());
+
+		assertEquals(code, store.consume(new AuthorizationCode(code.getValue())).getAuthorizationCode());
+		assertEquals(0, store.size());
+
+		// Single use
+		assertNull(store.consume(code));
+
+		assertNull(store.consume(new AuthorizationCode()));
+	}
+
+
+	public void testExpiry() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryAuthorizationCodeStore store = new InMemoryAuthorizationCodeStore(1000L, null, 0L);
+
+		AuthorizationCode a = new AuthorizationCode();
+		AuthorizationCode b = new AuthorizationCode();
+		AuthorizationCode c = new AuthorizationCode();
+
+		store.put(storedCode(a), now);
+		store.put(storedCode(b), now + 500L);
+		store.put(storedCode(c), now + 500L);
+
+		assertNull(store.consume(a, now + 1000L));
+		assertNotNull(store.consume(b, now + 1499L));
+
+		assertEquals(0, store.purgeExpired(now + 1499L));
+		assertEquals(1, store.size());
+
+		// The consumed b is skipped
+		assertEquals(1, store.purgeExpired(now + 1500L));
+		assertEquals(0, store.size());
+	}
+
+
+	public void testScheduledSweep()
+		throws Exception {
+
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+		InMemoryAuthorizationCodeStore store = new InMemoryAuthorizationCodeStore(10L, scheduler, 10L);
+
+		for (int i=0; i < 10; i++) {
+			store.put(storedCode(new AuthorizationCode()));
+		}
+
+		for (int i=0; i < 100 && store.size() > 0; i++) {
+			Thread.sleep(10L);
+		}
+
+		assertEquals(0, store.size());
+
+		store.close();
+		scheduler.shutdown();
+	}
+
+
+	public void testNoDoubleRedemption()
+		throws Exception {
+
+		final InMemoryAuthorizationCodeStore store = new InMemoryAuthorizationCodeStore(60000L, null, 0L);
+
+		final int numCodes = 1000;
+		final int numThreads = 8;
+
+		final List<AuthorizationCode> codes = new ArrayList<>();
+
+		for (int i=0; i < numCodes; i++) {
+			AuthorizationCode code = new AuthorizationCode();
+			codes.add(code);
+			assertTrue(store.put(storedCode(code)));
+		}
+
+		final AtomicInteger redeemed = new AtomicInteger();
+		final AtomicInteger[] redemptionsPerCode = new AtomicInteger[numCodes];
+
+		for (int i=0; i < numCodes; i++) {
+			redemptionsPerCode[i] = new AtomicInteger();
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+		List<Future<Void>> futures = new ArrayList<>();
+
+		for (int t=0; t < numThreads; t++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					// Every thread tries to redeem every code
+					for (int i=0; i < numCodes; i++) {
+						if (store.consume(codes.get(i)) != null) {
+							redeemed.incrementAndGet();
+							redemptionsPerCode[i].incrementAndGet();
+						}
+					}
+					return null;
+				}
+			}));
+		}
+
+		start.countDown();
+
+		for (Future<Void> future: futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+
+		executor.shutdown();
+
+		assertEquals(numCodes, redeemed.get());
+
+		for (AtomicInteger count: redemptionsPerCode) {
+			assertEquals(1, count.get());
+		}
+
+		assertEquals(0, store.size());
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Subject;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallenge;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallengeMethod;
+import com.nimbusds.oauth2.sdk.pkce.CodeVerifier;
+
+
+/**
+ * Tests the memory-mapped authorisation code store.
+ */
+public class MappedAuthorizationCodeStoreTest extends TestCase {
+
+
+	private File file;
+
+
+	@Override
+	public void setUp()
+		throws Exception {
+
+		file = File.createTempFile("codes", ".log");
+		assertTrue(file.delete());
+	}
+
+
+	@Override
+	public void tearDown() {
+
+		file.delete();
+		new File(file.getPath() + ".compact").delete();
+	}
+
+
+	public void testConsumeAfterReopen()
+		throws Exception {
+
+		AuthorizationCode code = new AuthorizationCode();
+		CodeVerifier codeVerifier = new CodeVerifier();
+		URI redirectURI = new URI("https://example.com/cb");
+
+		MappedAuthorizationCodeStore store = new MappedAuthorizationCodeStore(file, 60000L);
+		assertEquals(60000L, store.getTimeToLive());
+
+		assertTrue(store.put(new StoredAuthorizationCode(
+			code,
+			new ClientID("123"),
+			redirectURI,
+			new Subject("alice"),
+			new Scope("openid", "email"),
+			CodeChallenge.compute(CodeChallengeMethod.S256, codeVerifier),
+			CodeChallengeMethod.S256)));
+
+		assertFalse(store.put(new StoredAuthorizationCode(code, new ClientID("456"), null, null, null, null, null)));
+
+		store.close();
+
+		store = new MappedAuthorizationCodeStore(file, 60000L);
+		assertEquals(1, store.size());
+
+		StoredAuthorizationCode storedCode = store.consume(code);
+		assertEquals(code, storedCode.getAuthorizationCode());
+		assertEquals(new ClientID("123"), storedCode.getClientID());
+		assertEquals(redirectURI, storedCode.getRedirectionURI());
+		assertEquals(new Subject("alice"), storedCode.getSubject());
+		assertEquals(new Scope("openid", "email"), storedCode.getScope());
+		assertEquals(CodeChallengeMethod.S256, storedCode.getCodeChallengeMethod());
+		assertTrue(storedCode.verify(new AuthorizationCodeGrant(code, redirectURI, codeVerifier), new ClientID("123")));
+
+		assertNull(store.consume(code));
+		store.close();
+
+		// Consumption persisted
+		store = new MappedAuthorizationCodeStore(file, 60000L);
+		assertEquals(0, store.size());
+		assertNull(store.consume(code));
+		store.close();
+	}
+
+
+	public void testExpiry()
+		throws Exception {
+
+		MappedAuthorizationCodeStore store = new MappedAuthorizationCodeStore(file, 50L);
+
+		AuthorizationCode code = new AuthorizationCode();
+		store.put(new StoredAuthorizationCode(code, new ClientID("123"), null, null, null, null, null));
+
+		Thread.sleep(100L);
+
+		assertEquals(1, store.purgeExpired());
+		assertNull(store.consume(code));
+		assertEquals(0, store.size());
+
+		store.compact();
+		store.close();
+	}
+
+
+	public void testRejectOversizedValue()
+		throws Exception {
+
+		MappedAuthorizationCodeStore store = new MappedAuthorizationCodeStore(file, 60000L);
+
+		char[] chars = new char[70000];
+		Arrays.fill(chars, 'a');
+
+		try {
+			store.put(new StoredAuthorizationCode(new AuthorizationCode(), new ClientID("123"), null, null, new Scope(new String(chars)), null, null));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("The stored authorisation code has a parameter exceeding 65535 bytes"));
+		}
+
+		store.close();
+	}
+
+
+	public void testNoDoubleRedemption()
+		throws Exception {
+
+		final MappedAuthorizationCodeStore store = new MappedAuthorizationCodeStore(file, 60000L);
+
+		final int numCodes = 500;
+		final int numThreads = 8;
+
+		final List<AuthorizationCode> codes = new ArrayList<>();
+
+		for (int i=0; i < numCodes; i++) {
+			AuthorizationCode code = new AuthorizationCode();
+			codes.add(code);
+			assertTrue(store.put(new StoredAuthorizationCode(code, new ClientID("123"), null, null, null, null, null)));
+		}
+
+		final AtomicInteger redeemed = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+		List<Future<Void>> futures = new ArrayList<>();
+
+		for (int t=0; t < numThreads; t++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (AuthorizationCode code: codes) {
+						if (store.consume(code) != null) {
+							redeemed.incrementAndGet();
+						}
+					}
+					return null;
+				}
+			}));
+		}
+
+		start.countDown();
+
+		for (Future<Void> future: futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+
+		executor.shutdown();
+
+		assertEquals(numCodes, redeemed.get());
+		assertEquals(0, store.size());
+
+		store.close();
+	}
+
+
+	public void testRejectInvalidTTL()
+		throws Exception {
+
+		try {
+			new MappedAuthorizationCodeStore(file, 0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The time-to-live must be positive", e.getMessage());
+		}
+	}
+}
@@ -185,4 +185,27 @@ public class ResponseTypeTest extends TestCase {
 
 		assertTrue(ResponseType.parse("code id_token").equals(ResponseType.parse("id_token code")));
 	}
+
+
+	public void testParseValue() {
+
+		assertSame(ResponseType.Value.CODE, ResponseType.Value.parse("code"));
+		assertSame(ResponseType.Value.TOKEN, ResponseType.Value.parse("token"));
+		assertEquals(OIDCResponseTypeValue.ID_TOKEN, ResponseType.Value.parse("id_token"));
+
+		try {
+			ResponseType.Value.parse("");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testParseReturnsConstants()
+		throws Exception {
+
+		ResponseType rt = ResponseType.parse("code");
+		assertSame(ResponseType.Value.CODE, rt.iterator().next());
+	}
 }
@@ -0,0 +1,83 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the scope registry.
+ */
+public class ScopeRegistryTest extends TestCase {
+
+
+	public void testRegistry() {
+
+		ScopeRegistry registry = new ScopeRegistry("openid", "email", "profile", "email");
+
+		assertEquals(3, registry.size());
+		assertEquals(0, registry.getPosition("openid"));
+		assertEquals(1, registry.getPosition("email"));
+		assertEquals(2, registry.getPosition("profile"));
+		assertEquals(-1, registry.getPosition("phone"));
+		assertEquals(-1, registry.getPosition(null));
+
+		assertEquals(new Scope.Value("openid"), registry.getValue(0));
+		assertEquals(new Scope.Value("email"), registry.getValue(1));
+		assertEquals(new Scope.Value("profile"), registry.getValue(2));
+
+		assertEquals(Arrays.asList(new Scope.Value("openid"), new Scope.Value("email"), new Scope.Value("profile")), registry.getValues());
+
+		try {
+			registry.getValues().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+
+
+	public void testEmpty() {
+
+		ScopeRegistry registry = new ScopeRegistry();
+		assertEquals(0, registry.size());
+		assertTrue(registry.getValues().isEmpty());
+	}
+
+
+	public void testRejectInvalid() {
+
+		try {
+			new ScopeRegistry((String[])null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The scope values must not be null", e.getMessage());
+		}
+
+		try {
+			new ScopeRegistry("openid", "");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The value must not be null or empty string", e.getMessage());
+		}
+	}
+}
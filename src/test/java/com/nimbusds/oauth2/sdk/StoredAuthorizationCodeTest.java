@@ -0,0 +1,172 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk;
+
+
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Subject;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallenge;
+import com.nimbusds.oauth2.sdk.pkce.CodeChallengeMethod;
+import com.nimbusds.oauth2.sdk.pkce.CodeVerifier;
+
+
+/**
+ * Tests the stored authorisation code.
+ */
+public class StoredAuthorizationCodeTest extends TestCase {
+
+
+	public void testFromAuthorizationRequest()
+		throws Exception {
+
+		CodeVerifier codeVerifier = new CodeVerifier();
+
+		AuthorizationRequest request = new AuthorizationRequest.Builder(new ResponseType("code"), new ClientID("123"))
+			.redirectionURI(new URI("https://example.com/cb"))
+			.scope(new Scope("read", "write"))
+			.codeChallenge(codeVerifier, CodeChallengeMethod.S256)
+			.build();
+
+		AuthorizationCode code = new AuthorizationCode();
+
+		StoredAuthorizationCode storedCode = new StoredAuthorizationCode(code, request, new Subject("alice"), null);
+		assertEquals(code, storedCode.getAuthorizationCode());
+		assertEquals(new ClientID("123"), storedCode.getClientID());
+		assertEquals(new URI("https://example.com/cb"), storedCode.getRedirectionURI());
+		assertEquals(new Subject("alice"), storedCode.getSubject());
+		assertEquals(new Scope("read", "write"), storedCode.getScope());
+		assertEquals(CodeChallenge.compute(CodeChallengeMethod.S256, codeVerifier), storedCode.getCodeChallenge());
+		assertEquals(CodeChallengeMethod.S256, storedCode.getCodeChallengeMethod());
+
+		assertTrue(storedCode.verify(codeVerifier));
+		assertTrue(storedCode.verify(new CodeVerifier(codeVerifier.getValue())));
+		assertFalse(storedCode.verify(new CodeVerifier()));
+		assertFalse(storedCode.verify((CodeVerifier)null));
+
+		// Authorised scope narrower than requested
+		storedCode = new StoredAuthorizationCode(code, request, null, new Scope("read"));
+		assertEquals(new Scope("read"), storedCode.getScope());
+	}
+
+
+	public void testVerifyPlain() {
+
+		CodeVerifier codeVerifier = new CodeVerifier();
+
+		StoredAuthorizationCode storedCode = new StoredAuthorizationCode(
+			new AuthorizationCode(),
+			new ClientID("123"),
+			null,
+			null,
+			null,
+			CodeChallenge.compute(CodeChallengeMethod.PLAIN, codeVerifier),
+			null);
+
+		// Implied
+		assertEquals(CodeChallengeMethod.PLAIN, storedCode.getCodeChallengeMethod());
+
+		assertTrue(storedCode.verify(codeVerifier));
+		assertFalse(storedCode.verify(new CodeVerifier()));
+	}
+
+
+	public void testVerifyUnsupportedMethod() {
+
+		CodeVerifier codeVerifier = new CodeVerifier();
+
+		StoredAuthorizationCode storedCode = new StoredAuthorizationCode(
+			new AuthorizationCode(),
+			new ClientID("123"),
+			null,
+			null,
+			null,
+			CodeChallenge.compute(CodeChallengeMethod.PLAIN, codeVerifier),
+			new CodeChallengeMethod("S512"));
+
+		assertFalse(storedCode.verify(codeVerifier));
+	}
+
+
+	public void testVerifyWithoutChallenge() {
+
+		StoredAuthorizationCode storedCode = new StoredAuthorizationCode(
+			new AuthorizationCode(),
+			new ClientID("123"),
+			null,
+			null,
+			null,
+			null,
+			null);
+
+		assertNull(storedCode.getCodeChallenge());
+		assertNull(storedCode.getCodeChallengeMethod());
+
+		assertTrue(storedCode.verify((CodeVerifier)null));
+		assertFalse(storedCode.verify(new CodeVerifier()));
+	}
+
+
+	public void testVerifyGrant()
+		throws Exception {
+
+		AuthorizationCode code = new AuthorizationCode();
+		URI redirectURI = new URI("https://example.com/cb");
+		CodeVerifier codeVerifier = new CodeVerifier();
+
+		StoredAuthorizationCode storedCode = new StoredAuthorizationCode(
+			code,
+			new ClientID("123"),
+			redirectURI,
+			new Subject("alice"),
+			null,
+			CodeChallenge.compute(CodeChallengeMethod.S256, codeVerifier),
+			CodeChallengeMethod.S256);
+
+		assertTrue(storedCode.verify(new AuthorizationCodeGrant(code, redirectURI, codeVerifier), new ClientID("123")));
+
+		assertFalse(storedCode.verify(new AuthorizationCodeGrant(code, redirectURI, codeVerifier), new ClientID("456")));
+		assertFalse(storedCode.verify(new AuthorizationCodeGrant(code, redirectURI, codeVerifier), null));
+		assertFalse(storedCode.verify(new AuthorizationCodeGrant(code, null, codeVerifier), new ClientID("123")));
+		assertFalse(storedCode.verify(new AuthorizationCodeGrant(code, new URI("https://example.com/other"), codeVerifier), new ClientID("123")));
+		assertFalse(storedCode.verify(new AuthorizationCodeGrant(code, redirectURI, null), new ClientID("123")));
+		assertFalse(storedCode.verify(new AuthorizationCodeGrant(new AuthorizationCode(), redirectURI, codeVerifier), new ClientID("123")));
+	}
+
+
+	public void testRejectNull() {
+
+		try {
+			new StoredAuthorizationCode(null, new ClientID("123"), null, null, null, null, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The authorisation code must not be null", e.getMessage());
+		}
+
+		try {
+			new StoredAuthorizationCode(new AuthorizationCode(), null, null, null, null, null, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The client ID must not be null", e.getMessage());
+		}
+	}
+}
@@ -249,4 +249,73 @@ public class TokenIntrospectionSuccessResponseTest extends TestCase {
 
 		assertEquals(13, response.toJSONObject().size());
 	}
+
+
+	public void testGettersReturnCopies()
+		throws Exception {
+
+		TokenIntrospectionSuccessResponse response = new TokenIntrospectionSuccessResponse.Builder(true)
+			.scope(Scope.parse("read write"))
+			.expirationTime(DateUtils.fromSecondsSinceEpoch(102030L))
+			.audience(Audience.create("456", "789"))
+			.subject(new Subject("alice"))
+			.build();
+
+		response.getScope().add("admin");
+		assertEquals(Scope.parse("read write"), response.getScope());
+
+		response.getExpirationTime().setTime(0L);
+		assertEquals(DateUtils.fromSecondsSinceEpoch(102030L), response.getExpirationTime());
+
+		response.getAudience().clear();
+		assertEquals(Audience.create("456", "789"), response.getAudience());
+
+		assertSame(response.getSubject(), response.getSubject());
+	}
+
+
+	public void testInvalidParametersIgnored()
+		throws Exception {
+
+		JSONObject params = new JSONObject();
+		params.put("active", true);
+		params.put("scope", 10);
+		params.put("client_id", "");
+		params.put("sub", " ");
+		params.put("exp", "tomorrow");
+		params.put("aud", 123);
+		params.put("iss", true);
+
+		TokenIntrospectionSuccessResponse response = new TokenIntrospectionSuccessResponse(params);
+		assertTrue(response.isActive());
+		assertNull(response.getScope());
+		assertNull(response.getClientID());
+		assertNull(response.getSubject());
+		assertNull(response.getExpirationTime());
+		assertNull(response.getAudience());
+		assertNull(response.getIssuer());
+		assertNull(response.getJWTID());
+		assertNull(response.getTokenType());
+	}
+
+
+	public void testConstructorCopiesParameters()
+		throws Exception {
+
+		JSONObject params = new JSONObject();
+		params.put("active", true);
+		params.put("scope", "read");
+
+		TokenIntrospectionSuccessResponse response = new TokenIntrospectionSuccessResponse(params);
+		assertEquals(Scope.parse("read"), response.getScope());
+
+		params.put("active", false);
+		params.put("scope", "write");
+		params.put("client_id", "123");
+
+		assertTrue(response.isActive());
+		assertEquals(Scope.parse("read"), response.getScope());
+		assertNull(response.getClientID());
+		assertNull(response.toJSONObject().get("client_id"));
+	}
 }
@@ -74,4 +74,20 @@ public class ClientAuthenticationMethodTest extends TestCase {
 			// ok
 		}
 	}
+
+
+	public void testParseStandardReturnsConstants() {
+
+		assertSame(ClientAuthenticationMethod.CLIENT_SECRET_BASIC, ClientAuthenticationMethod.parse("client_secret_basic"));
+		assertSame(ClientAuthenticationMethod.CLIENT_SECRET_POST, ClientAuthenticationMethod.parse("client_secret_post"));
+		assertSame(ClientAuthenticationMethod.CLIENT_SECRET_JWT, ClientAuthenticationMethod.parse("client_secret_jwt"));
+		assertSame(ClientAuthenticationMethod.PRIVATE_KEY_JWT, ClientAuthenticationMethod.parse("private_key_jwt"));
+		assertSame(ClientAuthenticationMethod.NONE, ClientAuthenticationMethod.parse("none"));
+
+		ClientAuthenticationMethod method = ClientAuthenticationMethod.parse("tls_client_auth");
+		assertEquals("tls_client_auth", method.getValue());
+
+		// Case-sensitive
+		assertEquals("None", ClientAuthenticationMethod.parse("None").getValue());
+	}
 }
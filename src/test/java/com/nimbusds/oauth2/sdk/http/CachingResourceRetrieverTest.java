@@ -0,0 +1,342 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.net.URL;
+
+import static net.jadler.Jadler.*;
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the caching resource retriever.
+ */
+public class CachingResourceRetrieverTest {
+
+
+	@Before
+	public void setUp() {
+		initJadler();
+	}
+
+
+	@After
+	public void tearDown() {
+		closeJadler();
+	}
+
+
+	@Test
+	public void testConstructor() {
+
+		HTTPTransport transport = new PooledHTTPTransport();
+
+		CachingResourceRetriever retriever = new CachingResourceRetriever(transport, 100, 200, 300, 1000L);
+		assertEquals(transport, retriever.getTransport());
+		assertEquals(100, retriever.getConnectTimeout());
+		assertEquals(200, retriever.getReadTimeout());
+		assertEquals(300, retriever.getSizeLimit());
+		assertEquals(1000L, retriever.getMaxCacheSize());
+		assertEquals(0L, retriever.getCacheSize());
+	}
+
+
+	@Test
+	public void testRejectInvalidSettings() {
+
+		try {
+			new CachingResourceRetriever(null, 0, 0, 0, 1000L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The HTTP transport must not be null", e.getMessage());
+		}
+
+		try {
+			new CachingResourceRetriever(new PooledHTTPTransport(), 0, 0, 0, 0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum cache size must be positive", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testServeFreshFromCache()
+		throws Exception {
+
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.respond()
+			.withStatus(200)
+			.withHeader("Content-Type", "application/json")
+			.withHeader("Cache-Control", "public, max-age=3600")
+			.withBody("{\"keys\":[]}");
+
+		CachingResourceRetriever retriever = new CachingResourceRetriever(new PooledHTTPTransport(), 0, 0, 0, CachingResourceRetriever.DEFAULT_MAX_CACHE_SIZE);
+
+		URL url = new URL("http://localhost:" + port() + "/jwks.json");
+
+		for (int i=0; i < 3; i++) {
+			Resource resource = retriever.retrieveResource(url);
+			assertEquals("{\"keys\":[]}", resource.getContent());
+			assertEquals("application/json", resource.getContentType().getBaseType());
+		}
+
+		verifyThatRequest().havingPathEqualTo("/jwks.json").receivedOnce();
+
+		assertEquals(22L, retriever.getCacheSize());
+
+		retriever.invalidate(url);
+		assertEquals(0L, retriever.getCacheSize());
+
+		retriever.retrieveResource(url);
+		verifyThatRequest().havingPathEqualTo("/jwks.json").receivedTimes(2);
+	}
+
+
+	@Test
+	public void testRevalidateWithETag()
+		throws Exception {
+
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.respond()
+			.withStatus(200)
+			.withHeader("Content-Type", "application/json")
+			.withHeader("ETag", "\"v1\"")
+			.withHeader("Cache-Control", "no-cache")
+			.withBody("{\"keys\":[]}");
+
+		// Takes precedence, defined last
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.havingHeaderEqualTo("If-None-Match", "\"v1\"")
+			.respond()
+			.withStatus(304)
+			.withHeader("ETag", "\"v1\"");
+
+		CachingResourceRetriever retriever = new CachingResourceRetriever(new PooledHTTPTransport(), 0, 0, 0, CachingResourceRetriever.DEFAULT_MAX_CACHE_SIZE);
+
+		URL url = new URL("http://localhost:" + port() + "/jwks.json");
+
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(url).getContent());
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(url).getContent());
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(url).getContent());
+
+		verifyThatRequest().havingPathEqualTo("/jwks.json").receivedTimes(3);
+		verifyThatRequest().havingHeaderEqualTo("If-None-Match", "\"v1\"").receivedTimes(2);
+	}
+
+
+	@Test
+	public void testNotModifiedKeepsFreshnessLifetime()
+		throws Exception {
+
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.respond()
+			.withStatus(200)
+			.withHeader("ETag", "\"v1\"")
+			.withHeader("Cache-Control", "max-age=1")
+			.withBody("{\"keys\":[]}");
+
+		// Takes precedence, defined last, no freshness information
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.havingHeaderEqualTo("If-None-Match", "\"v1\"")
+			.respond()
+			.withStatus(304)
+			.withHeader("ETag", "\"v2\"");
+
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.havingHeaderEqualTo("If-None-Match", "\"v2\"")
+			.respond()
+			.withStatus(304);
+
+		CachingResourceRetriever retriever = new CachingResourceRetriever(new PooledHTTPTransport(), 0, 0, 0, CachingResourceRetriever.DEFAULT_MAX_CACHE_SIZE);
+
+		URL url = new URL("http://localhost:" + port() + "/jwks.json");
+
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(url).getContent());
+
+		Thread.sleep(1100L);
+
+		// Revalidated, fresh for another second
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(url).getContent());
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(url).getContent());
+
+		verifyThatRequest().havingPathEqualTo("/jwks.json").receivedTimes(2);
+		verifyThatRequest().havingHeaderEqualTo("If-None-Match", "\"v1\"").receivedOnce();
+
+		Thread.sleep(1100L);
+
+		// Revalidated with the updated ETag
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(url).getContent());
+		verifyThatRequest().havingHeaderEqualTo("If-None-Match", "\"v2\"").receivedOnce();
+	}
+
+
+	@Test
+	public void testRevalidateWithLastModified()
+		throws Exception {
+
+		final String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+		onRequest()
+			.havingPathEqualTo("/request.jwt")
+			.respond()
+			.withStatus(200)
+			.withHeader("Last-Modified", lastModified)
+			.withBody("eyJhbGciOiJub25lIn0.eyJpc3MiOiJhIn0.");
+
+		// Takes precedence, defined last
+		onRequest()
+			.havingPathEqualTo("/request.jwt")
+			.havingHeaderEqualTo("If-Modified-Since", lastModified)
+			.respond()
+			.withStatus(304);
+
+		CachingResourceRetriever retriever = new CachingResourceRetriever(new PooledHTTPTransport(), 0, 0, 0, CachingResourceRetriever.DEFAULT_MAX_CACHE_SIZE);
+
+		URL url = new URL("http://localhost:" + port() + "/request.jwt");
+
+		assertEquals("eyJhbGciOiJub25lIn0.eyJpc3MiOiJhIn0.", retriever.retrieveResource(url).getContent());
+		assertEquals("eyJhbGciOiJub25lIn0.eyJpc3MiOiJhIn0.", retriever.retrieveResource(url).getContent());
+
+		verifyThatRequest().havingHeaderEqualTo("If-Modified-Since", lastModified).receivedOnce();
+	}
+
+
+	@Test
+	public void testNoStore()
+		throws Exception {
+
+		onRequest()
+			.respond()
+			.withStatus(200)
+			.withHeader("Cache-Control", "no-store")
+			.withHeader("ETag", "\"v1\"")
+			.withBody("abc");
+
+		CachingResourceRetriever retriever = new CachingResourceRetriever(new PooledHTTPTransport(), 0, 0, 0, CachingResourceRetriever.DEFAULT_MAX_CACHE_SIZE);
+
+		URL url = new URL("http://localhost:" + port() + "/path");
+
+		retriever.retrieveResource(url);
+		retriever.retrieveResource(url);
+
+		assertEquals(0L, retriever.getCacheSize());
+		verifyThatRequest().havingHeader("If-None-Match").receivedNever();
+	}
+
+
+	@Test
+	public void testLRUEviction()
+		throws Exception {
+
+		onRequest()
+			.respond()
+			.withStatus(200)
+			.withHeader("Cache-Control", "max-age=3600")
+			.withBody("0123456789");
+
+		// Room for two 20 byte entries
+		CachingResourceRetriever retriever = new CachingResourceRetriever(new PooledHTTPTransport(), 0, 0, 0, 40L);
+
+		URL a = new URL("http://localhost:" + port() + "/a");
+		URL b = new URL("http://localhost:" + port() + "/b");
+		URL c = new URL("http://localhost:" + port() + "/c");
+
+		retriever.retrieveResource(a);
+		retriever.retrieveResource(b);
+		retriever.retrieveResource(a); // a most recently used
+		retriever.retrieveResource(c); // evicts b
+		assertEquals(40L, retriever.getCacheSize());
+
+		retriever.retrieveResource(a);
+		retriever.retrieveResource(b);
+
+		verifyThatRequest().havingPathEqualTo("/a").receivedOnce();
+		verifyThatRequest().havingPathEqualTo("/b").receivedTimes(2);
+		verifyThatRequest().havingPathEqualTo("/c").receivedOnce();
+	}
+
+
+	@Test
+	public void testExpiration() {
+
+		final long now = 1000000L;
+
+		HTTPResponse httpResponse = new HTTPResponse(200);
+		assertEquals(now, CachingResourceRetriever.getExpiration(httpResponse, now));
+
+		httpResponse.setCacheControl("max-age=60");
+		assertEquals(now + 60000L, CachingResourceRetriever.getExpiration(httpResponse, now));
+
+		httpResponse.setHeader("Age", "10");
+		assertEquals(now + 50000L, CachingResourceRetriever.getExpiration(httpResponse, now));
+
+		httpResponse.setCacheControl("no-cache, max-age=60");
+		assertEquals(now, CachingResourceRetriever.getExpiration(httpResponse, now));
+
+		httpResponse = new HTTPResponse(200);
+		httpResponse.setHeader("Expires", "Thu, 01 Jan 1970 00:20:00 GMT");
+		assertEquals(1200000L, CachingResourceRetriever.getExpiration(httpResponse, now));
+
+		httpResponse.setHeader("Expires", "0");
+		assertEquals(now, CachingResourceRetriever.getExpiration(httpResponse, now));
+
+		// No overflow
+		httpResponse = new HTTPResponse(200);
+		httpResponse.setCacheControl("max-age=" + Long.MAX_VALUE);
+		assertTrue(CachingResourceRetriever.getExpiration(httpResponse, now) > now);
+
+		httpResponse.setHeader("Age", "-" + Long.MAX_VALUE);
+		assertTrue(CachingResourceRetriever.getExpiration(httpResponse, now) > now);
+	}
+
+
+	@Test
+	public void testHasFreshnessInfo() {
+
+		HTTPResponse httpResponse = new HTTPResponse(304);
+		assertFalse(CachingResourceRetriever.hasFreshnessInfo(httpResponse));
+
+		httpResponse.setHeader("ETag", "\"v1\"");
+		assertFalse(CachingResourceRetriever.hasFreshnessInfo(httpResponse));
+
+		httpResponse.setCacheControl("public");
+		assertFalse(CachingResourceRetriever.hasFreshnessInfo(httpResponse));
+
+		httpResponse.setCacheControl("max-age=60");
+		assertTrue(CachingResourceRetriever.hasFreshnessInfo(httpResponse));
+
+		httpResponse.setCacheControl("no-cache");
+		assertTrue(CachingResourceRetriever.hasFreshnessInfo(httpResponse));
+
+		httpResponse = new HTTPResponse(304);
+		httpResponse.setHeader("Expires", "Thu, 01 Jan 1970 00:20:00 GMT");
+		assertTrue(CachingResourceRetriever.hasFreshnessInfo(httpResponse));
+	}
+}
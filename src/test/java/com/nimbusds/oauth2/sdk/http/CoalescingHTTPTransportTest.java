@@ -0,0 +1,265 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the coalescing HTTP transport and resource retriever.
+ */
+public class CoalescingHTTPTransportTest extends TestCase {
+
+
+	/**
+	 * Transport which blocks until released and counts the sent requests.
+	 */
+	private static class BlockingTransport implements HTTPTransport {
+
+
+		final AtomicInteger sent = new AtomicInteger();
+
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+
+		@Override
+		public HTTPResponse send(final HTTPRequest httpRequest,
+					 final HostnameVerifier hostnameVerifier,
+					 final SSLSocketFactory sslSocketFactory)
+			throws IOException {
+
+			sent.incrementAndGet();
+			started.countDown();
+
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+
+			HTTPResponse httpResponse = new HTTPResponse(200);
+			httpResponse.setHeader("Content-Type", "application/json");
+			httpResponse.setContent("{\"keys\":[]}");
+			return httpResponse;
+		}
+	}
+
+
+	public void testConstructor() {
+
+		HTTPTransport transport = new DefaultHTTPTransport();
+
+		CoalescingHTTPTransport coalescingTransport = new CoalescingHTTPTransport(transport, 1000L);
+		assertEquals(transport, coalescingTransport.getTransport());
+		assertEquals(1000L, coalescingTransport.getWaitTimeout());
+		assertEquals(0, coalescingTransport.getInFlightCount());
+
+		try {
+			new CoalescingHTTPTransport(null, 0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The HTTP transport must not be null", e.getMessage());
+		}
+	}
+
+
+	public void testCoalesceGETs()
+		throws Exception {
+
+		BlockingTransport blockingTransport = new BlockingTransport();
+		final CoalescingHTTPTransport transport = new CoalescingHTTPTransport(blockingTransport, 0L);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		List<Future<HTTPResponse>> futures = new ArrayList<>();
+
+		for (int i=0; i < 8; i++) {
+			futures.add(executor.submit(new Callable<HTTPResponse>() {
+				@Override
+				public HTTPResponse call() throws Exception {
+					HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/jwks.json"));
+					httpRequest.setTransport(transport);
+					return httpRequest.send();
+				}
+			}));
+		}
+
+		assertTrue(blockingTransport.started.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100L);
+		blockingTransport.release.countDown();
+
+		List<HTTPResponse> responses = new ArrayList<>();
+
+		for (Future<HTTPResponse> future: futures) {
+			HTTPResponse httpResponse = future.get(5, TimeUnit.SECONDS);
+			assertEquals(200, httpResponse.getStatusCode());
+			assertEquals("application/json", httpResponse.getContentType().getBaseType());
+			assertEquals("{\"keys\":[]}", httpResponse.getContent());
+			assertFalse(responses.contains(httpResponse));
+			responses.add(httpResponse);
+		}
+
+		assertEquals(1, blockingTransport.sent.get());
+		assertEquals(0, transport.getInFlightCount());
+
+		executor.shutdown();
+	}
+
+
+	public void testNoCoalescingOfDifferentSettings()
+		throws Exception {
+
+		BlockingTransport blockingTransport = new BlockingTransport();
+		final CoalescingHTTPTransport transport = new CoalescingHTTPTransport(blockingTransport, 0L);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		List<Future<HTTPResponse>> futures = new ArrayList<>();
+
+		for (int i=0; i < 4; i++) {
+
+			final int n = i;
+
+			futures.add(executor.submit(new Callable<HTTPResponse>() {
+				@Override
+				public HTTPResponse call() throws Exception {
+					HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/jwks.json"));
+					if (n == 1) httpRequest.setResponseSizeLimit(100);
+					if (n == 2) httpRequest.setReadTimeout(100);
+					if (n == 3) httpRequest.setConnectTimeout(100);
+					httpRequest.setTransport(transport);
+					return httpRequest.send();
+				}
+			}));
+		}
+
+		for (int i=0; i < 50 && blockingTransport.sent.get() < 4; i++) {
+			Thread.sleep(100L);
+		}
+
+		assertEquals(4, blockingTransport.sent.get());
+
+		blockingTransport.release.countDown();
+
+		for (Future<HTTPResponse> future: futures) {
+			assertEquals(200, future.get(5, TimeUnit.SECONDS).getStatusCode());
+		}
+
+		executor.shutdown();
+	}
+
+
+	public void testPassThroughPOST()
+		throws Exception {
+
+		final AtomicInteger sent = new AtomicInteger();
+
+		CoalescingHTTPTransport transport = new CoalescingHTTPTransport(new HTTPTransport() {
+			@Override
+			public HTTPResponse send(HTTPRequest httpRequest, HostnameVerifier hostnameVerifier, SSLSocketFactory sslSocketFactory) {
+				sent.incrementAndGet();
+				return new HTTPResponse(204);
+			}
+		}, 0L);
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.POST, new URL("https://c2id.com/token"));
+		httpRequest.setTransport(transport);
+
+		assertEquals(204, httpRequest.send().getStatusCode());
+		assertEquals(204, httpRequest.send().getStatusCode());
+		assertEquals(2, sent.get());
+	}
+
+
+	public void testCoalesceResourceRetrievals()
+		throws Exception {
+
+		final AtomicInteger retrievals = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		RestrictedResourceRetriever retriever = new AbstractRestrictedResourceRetriever(100, 200, 300) {
+			@Override
+			public Resource retrieveResource(URL url) throws IOException {
+				retrievals.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				throw new IOException("HTTP 503: Service Unavailable");
+			}
+		};
+
+		final CoalescingResourceRetriever coalescingRetriever = new CoalescingResourceRetriever(retriever, 0L);
+		assertEquals(retriever, coalescingRetriever.getResourceRetriever());
+		assertEquals(100, coalescingRetriever.getConnectTimeout());
+		assertEquals(200, coalescingRetriever.getReadTimeout());
+		assertEquals(300, coalescingRetriever.getSizeLimit());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		List<Future<Resource>> futures = new ArrayList<>();
+
+		for (int i=0; i < 4; i++) {
+			futures.add(executor.submit(new Callable<Resource>() {
+				@Override
+				public Resource call() throws Exception {
+					return coalescingRetriever.retrieveResource(new URL("https://c2id.com/jwks.json"));
+				}
+			}));
+		}
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100L);
+		release.countDown();
+
+		for (Future<Resource> future: futures) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (java.util.concurrent.ExecutionException e) {
+				assertEquals("HTTP 503: Service Unavailable", e.getCause().getMessage());
+			}
+		}
+
+		assertEquals(1, retrievals.get());
+
+		executor.shutdown();
+	}
+}
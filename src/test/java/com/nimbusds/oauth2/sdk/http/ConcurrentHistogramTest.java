@@ -0,0 +1,146 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the concurrent histogram.
+ */
+public class ConcurrentHistogramTest extends TestCase {
+
+
+	public void testEmpty() {
+
+		ConcurrentHistogram histogram = new ConcurrentHistogram();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getMax());
+		assertEquals(0.0, histogram.getMean());
+		assertEquals(0L, histogram.getValueAtPercentile(50.0));
+	}
+
+
+	public void testBucketBoundaries() {
+
+		for (long v=0L; v < 128L; v++) {
+			assertEquals(v, ConcurrentHistogram.bucketIndex(v));
+			assertEquals(v, ConcurrentHistogram.highestValue((int)v));
+		}
+
+		assertEquals(128, ConcurrentHistogram.bucketIndex(128L));
+		assertEquals(128, ConcurrentHistogram.bucketIndex(129L));
+		assertEquals(129L, ConcurrentHistogram.highestValue(128));
+		assertEquals(129, ConcurrentHistogram.bucketIndex(130L));
+
+		assertEquals(Long.MAX_VALUE, ConcurrentHistogram.highestValue(ConcurrentHistogram.bucketIndex(Long.MAX_VALUE)));
+
+		// Monotonic, with bounded relative error
+		int lastIndex = -1;
+
+		for (long v=1L; v > 0L && v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+			int index = ConcurrentHistogram.bucketIndex(v);
+			assertTrue(index >= lastIndex);
+			lastIndex = index;
+			long highest = ConcurrentHistogram.highestValue(index);
+			assertTrue(highest >= v);
+			assertTrue((double)(highest - v) / v <= 1.0 / 64);
+		}
+	}
+
+
+	public void testPercentiles() {
+
+		ConcurrentHistogram histogram = new ConcurrentHistogram();
+
+		for (long v=1L; v <= 10000L; v++) {
+			histogram.record(v);
+		}
+
+		assertEquals(10000L, histogram.getCount());
+		assertEquals(10000L, histogram.getMax());
+		assertEquals(5000.5, histogram.getMean(), 0.0001);
+
+		assertEquals(1L, histogram.getValueAtPercentile(0.0));
+		assertEquals(5000.0, histogram.getValueAtPercentile(50.0), 5000.0 / 64);
+		assertEquals(9900.0, histogram.getValueAtPercentile(99.0), 9900.0 / 64);
+		assertEquals(10000L, histogram.getValueAtPercentile(100.0));
+
+		histogram.reset();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getValueAtPercentile(99.0));
+	}
+
+
+	public void testRejectInvalidArguments() {
+
+		ConcurrentHistogram histogram = new ConcurrentHistogram();
+
+		try {
+			histogram.record(-1L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The value must not be negative", e.getMessage());
+		}
+
+		try {
+			histogram.getValueAtPercentile(100.1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The percentile must be between 0 and 100", e.getMessage());
+		}
+	}
+
+
+	public void testConcurrentRecording()
+		throws Exception {
+
+		final ConcurrentHistogram histogram = new ConcurrentHistogram();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		for (int t=0; t < 8; t++) {
+
+			final long seed = t;
+
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					for (int i=0; i < 10000; i++) {
+						histogram.record(random.nextInt(1000000));
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(80000L, histogram.getCount());
+		assertTrue(histogram.getMax() < 1000000L);
+		assertTrue(histogram.getValueAtPercentile(100.0) <= histogram.getMax());
+		assertEquals(500000.0, histogram.getValueAtPercentile(50.0), 20000.0);
+	}
+}
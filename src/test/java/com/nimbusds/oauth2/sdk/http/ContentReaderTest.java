@@ -0,0 +1,144 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the HTTP content reader.
+ */
+public class ContentReaderTest extends TestCase {
+
+
+	static byte[] gzip(final byte[] content)
+		throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(content);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+
+	static byte[] deflate(final byte[] content, final boolean raw)
+		throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+		deflate.write(content);
+		deflate.close();
+		return out.toByteArray();
+	}
+
+
+	private static byte[] readDecompressed(final byte[] compressed, final String contentEncoding, final int sizeLimit)
+		throws IOException {
+
+		InputStream in = ContentReader.decompress(new ByteArrayInputStream(compressed), contentEncoding);
+
+		try {
+			return ContentReader.read(in, -1, sizeLimit);
+		} finally {
+			in.close();
+		}
+	}
+
+
+	public void testReadDeclaredLengthAboveMaxPreallocated()
+		throws IOException {
+
+		byte[] content = new byte[ContentReader.MAX_PREALLOCATED_BUFFER_SIZE * 3 + 7];
+		Arrays.fill(content, (byte)'a');
+
+		byte[] read = ContentReader.read(new ByteArrayInputStream(content), content.length, 0);
+		assertTrue(Arrays.equals(content, read));
+
+		assertEquals(0, ContentReader.read(new ByteArrayInputStream(new byte[0]), 0, 0).length);
+	}
+
+
+	public void testHugeDeclaredLengthNotPreallocated() {
+
+		try {
+			ContentReader.read(new ByteArrayInputStream("abc".getBytes(Charset.forName("UTF-8"))), Integer.MAX_VALUE, 0);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Unexpected end of HTTP entity body: Expected " + Integer.MAX_VALUE + " bytes, got 3", e.getMessage());
+		}
+	}
+
+
+	public void testIsCompressed() {
+
+		assertTrue(ContentReader.isCompressed("gzip"));
+		assertTrue(ContentReader.isCompressed("GZIP"));
+		assertTrue(ContentReader.isCompressed("x-gzip"));
+		assertTrue(ContentReader.isCompressed(" deflate "));
+		assertFalse(ContentReader.isCompressed("identity"));
+		assertFalse(ContentReader.isCompressed("br"));
+		assertFalse(ContentReader.isCompressed(null));
+	}
+
+
+	public void testDecompress()
+		throws IOException {
+
+		byte[] content = "{\"keys\":[]}".getBytes(Charset.forName("UTF-8"));
+
+		assertTrue(Arrays.equals(content, readDecompressed(gzip(content), "gzip", 0)));
+		assertTrue(Arrays.equals(content, readDecompressed(deflate(content, false), "deflate", 0)));
+		assertTrue(Arrays.equals(content, readDecompressed(deflate(content, true), "deflate", 0)));
+	}
+
+
+	public void testDecompressEmpty()
+		throws IOException {
+
+		assertEquals(0, readDecompressed(new byte[0], "gzip", 0).length);
+		assertEquals(0, readDecompressed(new byte[0], "deflate", 0).length);
+	}
+
+
+	public void testDecompressedSizeLimit()
+		throws IOException {
+
+		// 1 MB of zeros compresses to about 1 KB
+		byte[] compressed = gzip(new byte[1024 * 1024]);
+		assertTrue(compressed.length < 2000);
+
+		try {
+			readDecompressed(compressed, "gzip", 50000);
+			fail();
+		} catch (IOException e) {
+			assertEquals("HTTP entity body exceeds the size limit of 50000 bytes", e.getMessage());
+		}
+	}
+}
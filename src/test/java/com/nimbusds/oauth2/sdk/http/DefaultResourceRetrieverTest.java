@@ -22,6 +22,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.concurrent.TimeUnit;
 
 import static net.jadler.Jadler.*;
@@ -268,4 +269,81 @@ public class DefaultResourceRetrieverTest extends TestCase {
 			assertEquals(url.toString(), e.getMessage());
 		}
 	}
+
+
+	@Test
+	public void testSizeLimitExceeded()
+		throws Exception {
+
+		int size = 100000;
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i < size; i++) {
+			sb.append('a');
+		}
+
+		onRequest()
+				.havingMethodEqualTo("GET")
+				.havingPathEqualTo("/c2id/jwks.json")
+				.respond()
+				.withStatus(200)
+				.withHeader("Content-Type", "text/plain")
+				.withBody(sb.toString());
+
+		RestrictedResourceRetriever resourceRetriever = new DefaultResourceRetriever(0, 0, 50000);
+
+		try {
+			resourceRetriever.retrieveResource(new URL("http://localhost:" + port() + "/c2id/jwks.json"));
+			fail();
+		} catch (IOException e) {
+			assertEquals("HTTP entity body exceeds the size limit of 50000 bytes", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testContentPreservedAsIs()
+		throws Exception {
+
+		String content = "line one\r\nline two\nline three \u00e9";
+
+		onRequest()
+				.havingMethodEqualTo("GET")
+				.havingPathEqualTo("/c2id/resource")
+				.respond()
+				.withStatus(200)
+				.withHeader("Content-Type", "text/plain; charset=UTF-8")
+				.withEncoding(Charset.forName("UTF-8"))
+				.withBody(content);
+
+		RestrictedResourceRetriever resourceRetriever = new DefaultResourceRetriever();
+		Resource resource = resourceRetriever.retrieveResource(new URL("http://localhost:" + port() + "/c2id/resource"));
+		assertEquals(content, resource.getContent());
+	}
+
+
+	@Test
+	public void testRetrieveCompressed()
+		throws Exception {
+
+		String content = "{\"keys\":[]}";
+
+		onRequest()
+			.havingMethodEqualTo("GET")
+			.havingHeaderEqualTo("Accept-Encoding", "gzip, deflate")
+			.havingPathEqualTo("/c2id/jwks.json")
+			.respond()
+			.withStatus(200)
+			.withHeader("Content-Type", "application/json")
+			.withHeader("Content-Encoding", "gzip")
+			.withBody(ContentReaderTest.gzip(content.getBytes(Charset.forName("UTF-8"))));
+
+		DefaultResourceRetriever resourceRetriever = new DefaultResourceRetriever();
+		assertFalse(resourceRetriever.getAcceptCompression());
+		resourceRetriever.setAcceptCompression(true);
+		assertTrue(resourceRetriever.getAcceptCompression());
+
+		Resource resource = resourceRetriever.retrieveResource(new URL("http://localhost:" + port() + "/c2id/jwks.json"));
+		assertEquals("application/json", resource.getContentType().getBaseType());
+		assertEquals(content, resource.getContent());
+	}
 }
@@ -0,0 +1,282 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static net.jadler.Jadler.*;
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nimbusds.oauth2.sdk.ClientCredentialsGrant;
+import com.nimbusds.oauth2.sdk.TokenRequest;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
+import com.nimbusds.oauth2.sdk.auth.Secret;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+
+
+/**
+ * Tests the outbound HTTP instrumentation.
+ */
+public class HTTPInstrumentationTest {
+
+
+	/**
+	 * Listener collecting the events.
+	 */
+	private static class CollectingListener implements HTTPListener {
+
+
+		final List<HTTPEvent> events = new CopyOnWriteArrayList<>();
+
+
+		@Override
+		public void onEvent(final HTTPEvent event) {
+
+			events.add(event);
+		}
+	}
+
+
+	private CollectingListener listener;
+
+
+	@Before
+	public void setUp() {
+
+		initJadler();
+		listener = new CollectingListener();
+		HTTPInstrumentation.addListener(listener);
+	}
+
+
+	@After
+	public void tearDown() {
+
+		HTTPInstrumentation.removeListener(listener);
+		closeJadler();
+	}
+
+
+	@Test
+	public void testRegistration() {
+
+		assertTrue(HTTPInstrumentation.isEnabled());
+		assertTrue(HTTPInstrumentation.removeListener(listener));
+		assertFalse(HTTPInstrumentation.isEnabled());
+		assertFalse(HTTPInstrumentation.removeListener(listener));
+
+		try {
+			HTTPInstrumentation.addListener(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The HTTP listener must not be null", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testFireIgnoresListenerException()
+		throws Exception {
+
+		HTTPListener failingListener = new HTTPListener() {
+			@Override
+			public void onEvent(HTTPEvent event) {
+				throw new IllegalStateException();
+			}
+		};
+
+		HTTPInstrumentation.addListener(failingListener);
+
+		try {
+			HTTPEvent event = new HTTPEvent(EndpointRole.OTHER, "GET", new URL("https://c2id.com"), 200, -1L, -1L, -1L, 1000L, 0L, 0L, null);
+			HTTPInstrumentation.fire(event);
+			assertEquals(1, listener.events.size());
+		} finally {
+			HTTPInstrumentation.removeListener(failingListener);
+		}
+	}
+
+
+	private void testSend(final HTTPTransport transport)
+		throws Exception {
+
+		String body = "{\"access_token\":\"abc\",\"token_type\":\"Bearer\"}";
+
+		onRequest()
+			.havingMethodEqualTo("POST")
+			.havingPathEqualTo("/token")
+			.respond()
+			.withStatus(200)
+			.withContentType("application/json")
+			.withBody(body);
+
+		TokenRequest tokenRequest = new TokenRequest(
+			new URI("http://localhost:" + port() + "/token"),
+			new ClientSecretBasic(new ClientID("123"), new Secret("secret")),
+			new ClientCredentialsGrant());
+
+		HTTPRequest httpRequest = tokenRequest.toHTTPRequest();
+		assertEquals(EndpointRole.TOKEN, httpRequest.getEndpointRole());
+		httpRequest.setTransport(transport);
+
+		assertEquals(200, httpRequest.send().getStatusCode());
+
+		assertEquals(1, listener.events.size());
+		HTTPEvent event = listener.events.get(0);
+		assertEquals(EndpointRole.TOKEN, event.getEndpointRole());
+		assertEquals("POST", event.getMethod());
+		assertEquals(httpRequest.getURL(), event.getURL());
+		assertEquals(200, event.getStatusCode());
+		assertTrue(event.getConnectTime() >= 0L);
+		assertTrue(event.getWaitTime() >= 0L);
+		assertTrue(event.getReadTime() >= 0L);
+		assertTrue(event.getTotalTime() >= event.getConnectTime() + event.getWaitTime() + event.getReadTime());
+		assertEquals("grant_type=client_credentials".length(), event.getRequestBytes());
+		assertEquals(body.length(), event.getResponseBytes());
+		assertFalse(event.isError());
+		assertNull(event.getError());
+	}
+
+
+	@Test
+	public void testSendWithDefaultTransport()
+		throws Exception {
+
+		testSend(new DefaultHTTPTransport());
+	}
+
+
+	@Test
+	public void testSendWithPooledTransport()
+		throws Exception {
+
+		testSend(new PooledHTTPTransport());
+	}
+
+
+	@Test
+	public void testSendError()
+		throws Exception {
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/jwks.json"));
+		closeJadler(); // connection refused
+
+		try {
+			httpRequest.send();
+			fail();
+		} catch (IOException e) {
+			assertEquals(1, listener.events.size());
+			HTTPEvent event = listener.events.get(0);
+			assertEquals(EndpointRole.OTHER, event.getEndpointRole());
+			assertEquals("GET", event.getMethod());
+			assertEquals(-1, event.getStatusCode());
+			assertTrue(event.isError());
+			assertEquals(e, event.getError());
+			assertEquals(-1L, event.getResponseBytes());
+		} finally {
+			initJadler();
+		}
+	}
+
+
+	@Test
+	public void testResourceRetriever()
+		throws Exception {
+
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.respond()
+			.withStatus(200)
+			.withContentType("application/json")
+			.withBody("{\"keys\":[]}");
+
+		DefaultResourceRetriever retriever = new DefaultResourceRetriever();
+		assertEquals(EndpointRole.OTHER, retriever.getEndpointRole());
+		retriever.setEndpointRole(EndpointRole.JWKS);
+		assertEquals(EndpointRole.JWKS, retriever.getEndpointRole());
+
+		assertEquals("{\"keys\":[]}", retriever.retrieveResource(new URL("http://localhost:" + port() + "/jwks.json")).getContent());
+
+		assertEquals(1, listener.events.size());
+		HTTPEvent event = listener.events.get(0);
+		assertEquals(EndpointRole.JWKS, event.getEndpointRole());
+		assertEquals("GET", event.getMethod());
+		assertEquals(200, event.getStatusCode());
+		assertTrue(event.getConnectTime() >= 0L);
+		assertTrue(event.getWaitTime() >= 0L);
+		assertTrue(event.getReadTime() >= 0L);
+		assertEquals(11L, event.getResponseBytes());
+		assertFalse(event.isError());
+
+		retriever.setEndpointRole(null);
+		assertEquals(EndpointRole.OTHER, retriever.getEndpointRole());
+	}
+
+
+	@Test
+	public void testHistogramListener()
+		throws Exception {
+
+		onRequest()
+			.havingPathEqualTo("/userinfo")
+			.respond()
+			.withStatus(200)
+			.withBody("{}")
+			.thenRespond()
+			.withStatus(401);
+
+		HistogramHTTPListener histograms = new HistogramHTTPListener();
+		HTTPInstrumentation.addListener(histograms);
+
+		try {
+			for (int i=0; i < 2; i++) {
+				HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/userinfo"));
+				httpRequest.setEndpointRole(EndpointRole.USERINFO);
+				httpRequest.send();
+			}
+		} finally {
+			HTTPInstrumentation.removeListener(histograms);
+		}
+
+		assertEquals(2L, histograms.getLatencyHistogram(EndpointRole.USERINFO).getCount());
+		assertEquals(2L, histograms.getTimeToFirstByteHistogram(EndpointRole.USERINFO).getCount());
+		assertTrue(histograms.getLatencyHistogram(EndpointRole.USERINFO).getValueAtPercentile(99.0) > 0L);
+		assertEquals(1L, histograms.getStatusCount(EndpointRole.USERINFO, 2));
+		assertEquals(1L, histograms.getStatusCount(EndpointRole.USERINFO, 4));
+		assertEquals(0L, histograms.getErrorCount(EndpointRole.USERINFO));
+		assertEquals(0L, histograms.getLatencyHistogram(EndpointRole.TOKEN).getCount());
+
+		histograms.onEvent(new HTTPEvent(EndpointRole.JWKS, "GET", new URL("https://c2id.com/jwks.json"), -1, -1L, -1L, -1L, 1000L, 0L, -1L, new IOException()));
+		assertEquals(1L, histograms.getErrorCount(EndpointRole.JWKS));
+		assertEquals(0L, histograms.getLatencyHistogram(EndpointRole.JWKS).getCount());
+
+		histograms.reset();
+		assertEquals(0L, histograms.getLatencyHistogram(EndpointRole.USERINFO).getCount());
+		assertEquals(0L, histograms.getStatusCount(EndpointRole.USERINFO, 2));
+		assertEquals(0L, histograms.getErrorCount(EndpointRole.JWKS));
+	}
+}
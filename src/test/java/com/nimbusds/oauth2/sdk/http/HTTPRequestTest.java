@@ -18,10 +18,18 @@
 package com.nimbusds.oauth2.sdk.http;
 
 
+import java.io.IOException;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
+import java.net.ServerSocket;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.net.ssl.HttpsURLConnection;
 
 import static net.jadler.Jadler.*;
@@ -55,6 +63,29 @@ public class HTTPRequestTest {
 		assertNotNull(HTTPRequest.getDefaultSSLSocketFactory());
 	}
 
+
+	@Test
+	public void testDefaultTransport() {
+
+		assertTrue(HTTPRequest.getDefaultTransport() instanceof DefaultHTTPTransport);
+	}
+
+
+	@Test
+	public void testTransportOverride()
+		throws Exception {
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost/path"));
+		assertNull(httpRequest.getTransport());
+
+		HTTPTransport transport = new PooledHTTPTransport();
+		httpRequest.setTransport(transport);
+		assertEquals(transport, httpRequest.getTransport());
+
+		httpRequest.setTransport(null);
+		assertNull(httpRequest.getTransport());
+	}
+
 	
 	@Test
 	public void testConstructorAndAccessors()
@@ -345,4 +376,275 @@ public class HTTPRequestTest {
 		assertEquals(20L, jsonArray.get(1));
 		assertEquals(2, jsonArray.size());
 	}
+
+
+	@Test
+	public void testSendAsync()
+		throws Exception {
+
+		onRequest()
+			.havingMethodEqualTo("GET")
+			.havingHeaderEqualTo("Authorization", "Bearer xyz")
+			.havingPathEqualTo("/path")
+			.respond()
+			.withStatus(200)
+			.withBody("[10, 20]")
+			.withEncoding(Charset.forName("UTF-8"))
+			.withContentType(CommonContentTypes.APPLICATION_JSON.toString());
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/path"));
+		httpRequest.setAuthorization("Bearer xyz");
+
+		Future<HTTPResponse> future = httpRequest.sendAsync();
+
+		HTTPResponse httpResponse = future.get(5, TimeUnit.SECONDS);
+
+		assertEquals(200, httpResponse.getStatusCode());
+		JSONArray jsonArray = httpResponse.getContentAsJSONArray();
+		assertEquals(10L, jsonArray.get(0));
+		assertEquals(20L, jsonArray.get(1));
+		assertEquals(2, jsonArray.size());
+	}
+
+
+	@Test
+	public void testSendAsyncWithCallback()
+		throws Exception {
+
+		onRequest()
+			.respond()
+			.withStatus(404);
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/path"));
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<HTTPResponse> result = new AtomicReference<>();
+
+		httpRequest.sendAsync(new HTTPResponseCallback() {
+			@Override
+			public void completed(HTTPResponse httpResponse) {
+				result.set(httpResponse);
+				latch.countDown();
+			}
+
+
+			@Override
+			public void failed(Exception e) {
+				latch.countDown();
+			}
+		});
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(404, result.get().getStatusCode());
+	}
+
+
+	@Test
+	public void testSendAsyncConnectionRefused()
+		throws Exception {
+
+		ServerSocket serverSocket = new ServerSocket(0);
+		int port = serverSocket.getLocalPort();
+		serverSocket.close();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port + "/path"));
+		httpRequest.setConnectTimeout(50);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+
+		Future<HTTPResponse> future = httpRequest.sendAsync(new HTTPResponseCallback() {
+			@Override
+			public void completed(HTTPResponse httpResponse) {
+				latch.countDown();
+			}
+
+
+			@Override
+			public void failed(Exception e) {
+				failure.set(e);
+				latch.countDown();
+			}
+		});
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ConnectException);
+		}
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(failure.get() instanceof ConnectException);
+	}
+
+
+	@Test
+	public void testResponseSizeLimitSetting()
+		throws Exception {
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost/path"));
+		assertEquals(0, httpRequest.getResponseSizeLimit());
+
+		httpRequest.setResponseSizeLimit(1000);
+		assertEquals(1000, httpRequest.getResponseSizeLimit());
+
+		try {
+			httpRequest.setResponseSizeLimit(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The HTTP response size limit must be zero or positive", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testSendWithResponseSizeLimit()
+		throws Exception {
+
+		onRequest()
+			.respond()
+			.withStatus(200)
+			.withBody("0123456789")
+			.withContentType("text/plain");
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/path"));
+		httpRequest.setResponseSizeLimit(10);
+		assertEquals("0123456789", httpRequest.send().getContent());
+
+		httpRequest.setResponseSizeLimit(9);
+
+		try {
+			httpRequest.send();
+			fail();
+		} catch (IOException e) {
+			assertEquals("HTTP entity body exceeds the size limit of 9 bytes", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testSendPreservesContentAsIs()
+		throws Exception {
+
+		String content = "line one\r\nline two\nline three \u00e9";
+
+		onRequest()
+			.respond()
+			.withStatus(200)
+			.withEncoding(Charset.forName("UTF-8"))
+			.withContentType("text/plain; charset=UTF-8")
+			.withBody(content);
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/path"));
+		assertEquals(content, httpRequest.send().getContent());
+	}
+
+
+	@Test
+	public void testQueryParametersParsedOnce()
+		throws Exception {
+
+		HTTPRequest request = new HTTPRequest(HTTPRequest.Method.POST, new URL("https://c2id.com/token"));
+		assertTrue(request.getQueryParameters().isEmpty());
+
+		request.setQuery("grant_type=client_credentials&scope=read");
+
+		Map<String,String> params = request.getQueryParameters();
+		assertEquals("client_credentials", params.get("grant_type"));
+		assertEquals("read", params.get("scope"));
+		assertEquals(2, params.size());
+		assertNotSame(params, request.getQueryParameters());
+		assertEquals(params, request.getQueryParameters());
+
+		// Returned copy may be modified
+		params.put("scope", "write");
+		params.remove("grant_type");
+		assertEquals("read", request.getQueryParameters().get("scope"));
+		assertEquals("client_credentials", request.getQueryParameters().get("grant_type"));
+
+		// Invalidated on query change
+		request.setQuery("grant_type=client_credentials&scope=write");
+		assertEquals("write", request.getQueryParameters().get("scope"));
+	}
+
+
+	@Test
+	public void testQueryParametersAlt()
+		throws Exception {
+
+		HTTPRequest request = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/authorize"));
+		assertTrue(request.getQueryParametersAlt().isEmpty());
+
+		request.setQuery("resource=https%3A%2F%2Frs1.com&resource=https%3A%2F%2Frs2.com&scope=read");
+
+		Map<String,String[]> params = request.getQueryParametersAlt();
+		assertArrayEquals(new String[]{"https://rs1.com", "https://rs2.com"}, params.get("resource"));
+		assertArrayEquals(new String[]{"read"}, params.get("scope"));
+		assertEquals(2, params.size());
+
+		// From decoded form parameters
+		Map<String,String[]> formParams = new java.util.LinkedHashMap<>();
+		formParams.put("resource", new String[]{"https://rs1.com", "https://rs2.com"});
+		request.setQueryParameters(formParams);
+
+		params = request.getQueryParametersAlt();
+		assertArrayEquals(new String[]{"https://rs1.com", "https://rs2.com"}, params.get("resource"));
+		assertEquals(1, params.size());
+		assertNotSame(formParams.get("resource"), params.get("resource"));
+	}
+
+
+	@Test
+	public void testHasQuery()
+		throws Exception {
+
+		HTTPRequest request = new HTTPRequest(HTTPRequest.Method.POST, new URL("https://c2id.com/token"));
+		assertFalse(request.hasQuery());
+
+		request.setQuery("");
+		assertTrue(request.hasQuery());
+
+		Map<String,String[]> formParams = new java.util.LinkedHashMap<>();
+		formParams.put("grant_type", new String[]{"client_credentials"});
+		request.setQueryParameters(formParams);
+		assertTrue(request.hasQuery());
+		assertEquals("grant_type=client_credentials", request.getQuery());
+		assertTrue(request.hasQuery());
+
+		request.setQuery(null);
+		assertFalse(request.hasQuery());
+	}
+
+
+	@Test
+	public void testAcceptCompression()
+		throws Exception {
+
+		String content = "{\"issuer\":\"https://c2id.com\"}";
+
+		onRequest()
+			.havingMethodEqualTo("GET")
+			.havingHeaderEqualTo("Accept-Encoding", "gzip, deflate")
+			.havingPathEqualTo("/.well-known/openid-configuration")
+			.respond()
+			.withStatus(200)
+			.withHeader("Content-Encoding", "gzip")
+			.withContentType("application/json")
+			.withBody(ContentReaderTest.gzip(content.getBytes(Charset.forName("UTF-8"))));
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/.well-known/openid-configuration"));
+		assertFalse(httpRequest.getAcceptCompression());
+		httpRequest.setAcceptCompression(true);
+		assertTrue(httpRequest.getAcceptCompression());
+
+		// Header not set on the request itself
+		assertNull(httpRequest.getHeader("Accept-Encoding"));
+
+		HTTPResponse httpResponse = httpRequest.send();
+		assertEquals(200, httpResponse.getStatusCode());
+		assertEquals(content, httpResponse.getContent());
+		assertNull(httpResponse.getHeader("Content-Encoding"));
+		assertNull(httpResponse.getHeader("Content-Length"));
+	}
 }
@@ -165,4 +165,43 @@ public class HTTPResponseTest extends TestCase {
 
 		assertNull(response.getLocation());
 	}
+
+
+	public void testReplaceHeaderWithCaseMismatch() {
+
+		HTTPResponse response = new HTTPResponse(200);
+		response.setHeader("Cache-Control", "no-store");
+		response.setHeader("cache-control", "no-cache");
+
+		assertEquals(1, response.getHeaders().size());
+		assertEquals("Cache-Control", response.getHeaders().keySet().iterator().next());
+		assertEquals("no-cache", response.getCacheControl());
+	}
+
+
+	public void testContentTypeMemoised()
+		throws ParseException {
+
+		HTTPResponse response = new HTTPResponse(200);
+		assertNull(response.getContentType());
+
+		response.setContentType("application/json; charset=UTF-8");
+		assertSame(response.getContentType(), response.getContentType());
+		assertEquals("application/json", response.getContentType().getBaseType());
+
+		// Invalidated on header change
+		response.setHeader("Content-Type", "text/plain");
+		assertEquals("text/plain", response.getContentType().getBaseType());
+		assertSame(response.getContentType(), response.getContentType());
+
+		response.getHeaders().put("Content-Type", "application/jwt");
+		assertEquals("application/jwt", response.getContentType().getBaseType());
+
+		response.setHeader("Content-Type", "invalid");
+		assertNull(response.getContentType());
+
+		response.setContentType((String)null);
+		assertNull(response.getContentType());
+		assertNull(response.getHeader("Content-Type"));
+	}
 }
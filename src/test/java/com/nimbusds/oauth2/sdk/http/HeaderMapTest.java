@@ -0,0 +1,95 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the compact HTTP header map.
+ */
+public class HeaderMapTest extends TestCase {
+
+
+	public void testPutGetRemove() {
+
+		HeaderMap headers = new HeaderMap();
+		assertTrue(headers.isEmpty());
+
+		assertNull(headers.put("Content-Type", "application/json"));
+		assertEquals("application/json", headers.put("content-type", "text/plain"));
+		assertEquals("text/plain", headers.get("CONTENT-TYPE"));
+		assertTrue(headers.containsKey("Content-type"));
+		assertFalse(headers.containsKey("Accept"));
+		assertNull(headers.get(1));
+		assertEquals(1, headers.size());
+
+		assertEquals("text/plain", headers.remove("Content-TYPE"));
+		assertNull(headers.remove("Content-Type"));
+		assertTrue(headers.isEmpty());
+	}
+
+
+	public void testSameOrderAsTreeMap() {
+
+		HeaderMap headers = new HeaderMap();
+		Map<String,String> treeMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+		for (String name: Arrays.asList("Pragma", "authorization", "Content-Type", "Accept", "Cache-Control", "WWW-Authenticate", "location", "DPoP", "accept")) {
+			headers.put(name, name.toLowerCase());
+			treeMap.put(name, name.toLowerCase());
+		}
+
+		assertEquals(treeMap, headers);
+		assertEquals(treeMap.toString(), headers.toString());
+		assertEquals(treeMap.hashCode(), headers.hashCode());
+	}
+
+
+	public void testIteratorRemove() {
+
+		HeaderMap headers = new HeaderMap();
+		headers.put("A", "1");
+		headers.put("B", "2");
+		headers.put("C", "3");
+
+		Iterator<Map.Entry<String,String>> it = headers.entrySet().iterator();
+
+		while (it.hasNext()) {
+			if (it.next().getKey().equals("B")) {
+				it.remove();
+			}
+		}
+
+		assertEquals(2, headers.size());
+		assertEquals("1", headers.get("a"));
+		assertEquals("3", headers.get("c"));
+
+		headers.entrySet().iterator().next().setValue("10");
+		assertEquals("10", headers.get("A"));
+
+		headers.clear();
+		assertTrue(headers.isEmpty());
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.util.concurrent.CountDownLatch;
+import javax.servlet.*;
+
+
+/**
+ * Mock asynchronous servlet context.
+ */
+class MockAsyncContext implements AsyncContext {
+
+
+	private final ServletRequest request;
+
+
+	private final ServletResponse response;
+
+
+	private final CountDownLatch completed = new CountDownLatch(1);
+
+
+	MockAsyncContext(final ServletRequest request, final ServletResponse response) {
+		this.request = request;
+		this.response = response;
+	}
+
+
+	public CountDownLatch getCompletedLatch() {
+		return completed;
+	}
+
+
+	@Override
+	public ServletRequest getRequest() {
+		return request;
+	}
+
+
+	@Override
+	public ServletResponse getResponse() {
+		return response;
+	}
+
+
+	@Override
+	public boolean hasOriginalRequestAndResponse() {
+		return true;
+	}
+
+
+	@Override
+	public void dispatch() {
+
+	}
+
+
+	@Override
+	public void dispatch(String s) {
+
+	}
+
+
+	@Override
+	public void dispatch(ServletContext servletContext, String s) {
+
+	}
+
+
+	@Override
+	public void complete() {
+		completed.countDown();
+	}
+
+
+	@Override
+	public void start(Runnable runnable) {
+		runnable.run();
+	}
+
+
+	@Override
+	public void addListener(AsyncListener asyncListener) {
+
+	}
+
+
+	@Override
+	public void addListener(AsyncListener asyncListener, ServletRequest servletRequest, ServletResponse servletResponse) {
+
+	}
+
+
+	@Override
+	public <T extends AsyncListener> T createListener(Class<T> aClass) throws ServletException {
+		return null;
+	}
+
+
+	@Override
+	public void setTimeout(long l) {
+
+	}
+
+
+	@Override
+	public long getTimeout() {
+		return 0;
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+
+
+/**
+ * Minimal local HTTP/1.1 server returning a canned response, optionally
+ * over TLS with a self-signed certificate for {@code localhost}.
+ */
+class MockHTTPServer implements Closeable {
+
+
+	/**
+	 * Self-signed TLS credentials for {@code localhost}.
+	 */
+	static class SelfSignedTLS {
+
+
+		final SSLContext serverContext;
+
+
+		final SSLSocketFactory clientSocketFactory;
+
+
+		@SuppressWarnings("deprecation")
+		SelfSignedTLS()
+			throws Exception {
+
+			KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+			gen.initialize(2048);
+			KeyPair keyPair = gen.generateKeyPair();
+
+			X509V3CertificateGenerator certGen = new X509V3CertificateGenerator();
+			X500Principal name = new X500Principal("CN=localhost");
+			certGen.setSerialNumber(BigInteger.ONE);
+			certGen.setIssuerDN(name);
+			certGen.setSubjectDN(name);
+			certGen.setNotBefore(new Date(System.currentTimeMillis() - 60000L));
+			certGen.setNotAfter(new Date(System.currentTimeMillis() + 3600000L));
+			certGen.setPublicKey(keyPair.getPublic());
+			certGen.setSignatureAlgorithm("SHA256withRSA");
+			certGen.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(new GeneralName(GeneralName.dNSName, "localhost")));
+			// Re-parse with the JDK provider
+			X509Certificate cert = (X509Certificate)CertificateFactory.getInstance("X.509").generateCertificate(
+				new ByteArrayInputStream(certGen.generate(keyPair.getPrivate(), new SecureRandom()).getEncoded()));
+
+			KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+			keyStore.load(null, null);
+			keyStore.setKeyEntry("server", keyPair.getPrivate(), "secret".toCharArray(), new X509Certificate[]{cert});
+			KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			kmf.init(keyStore, "secret".toCharArray());
+
+			serverContext = SSLContext.getInstance("TLS");
+			serverContext.init(kmf.getKeyManagers(), null, new SecureRandom());
+
+			KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+			trustStore.load(null, null);
+			trustStore.setCertificateEntry("server", cert);
+			TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			tmf.init(trustStore);
+
+			SSLContext clientContext = SSLContext.getInstance("TLS");
+			clientContext.init(null, tmf.getTrustManagers(), new SecureRandom());
+			clientSocketFactory = clientContext.getSocketFactory();
+		}
+	}
+
+
+	private final ServerSocket serverSocket;
+
+
+	private final byte[] response;
+
+
+	private final boolean closeAfterResponse;
+
+
+	final AtomicInteger requests = new AtomicInteger();
+
+
+	final AtomicInteger connections = new AtomicInteger();
+
+
+	/**
+	 * Starts a new server.
+	 *
+	 * @param sslContext         The TLS context, {@code null} for plain
+	 *                           HTTP.
+	 * @param response           The raw HTTP response to send.
+	 * @param closeAfterResponse {@code true} to close the connection
+	 *                           after each response without notice.
+	 */
+	MockHTTPServer(final SSLContext sslContext, final String response, final boolean closeAfterResponse)
+		throws IOException {
+
+		InetAddress loopback = InetAddress.getByName("localhost");
+
+		serverSocket = sslContext != null ?
+			sslContext.getServerSocketFactory().createServerSocket(0, 50, loopback) :
+			new ServerSocket(0, 50, loopback);
+
+		this.response = response.getBytes(Charset.forName("ISO-8859-1"));
+		this.closeAfterResponse = closeAfterResponse;
+
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (! serverSocket.isClosed()) {
+					try {
+						final Socket socket = serverSocket.accept();
+						connections.incrementAndGet();
+						Thread handler = new Thread(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						});
+						handler.setDaemon(true);
+						handler.start();
+					} catch (IOException e) {
+						// closed
+					}
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+
+	static String okResponse(final String body) {
+
+		return "HTTP/1.1 200 OK\r\n" +
+			"Content-Type: text/plain; charset=UTF-8\r\n" +
+			"Content-Length: " + body.length() + "\r\n" +
+			"\r\n" +
+			body;
+	}
+
+
+	int getPort() {
+
+		return serverSocket.getLocalPort();
+	}
+
+
+	private void serve(final Socket socket) {
+
+		try {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+
+			while (true) {
+
+				int contentLength = 0;
+
+				String line;
+
+				while ((line = readLine(in)) != null && ! line.isEmpty()) {
+					if (line.toLowerCase().startsWith("content-length:")) {
+						contentLength = Integer.parseInt(line.substring(15).trim());
+					}
+				}
+
+				if (line == null) {
+					return;
+				}
+
+				for (int i=0; i < contentLength; i++) {
+					in.read();
+				}
+
+				requests.incrementAndGet();
+
+				out.write(response);
+				out.flush();
+
+				if (closeAfterResponse) {
+					return;
+				}
+			}
+
+		} catch (IOException e) {
+			// ignore
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+
+	private static String readLine(final InputStream in)
+		throws IOException {
+
+		StringBuilder sb = new StringBuilder();
+
+		int c;
+
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				return sb.toString().trim();
+			}
+			sb.append((char)c);
+		}
+
+		return null;
+	}
+
+
+	@Override
+	public void close()
+		throws IOException {
+
+		serverSocket.close();
+	}
+}
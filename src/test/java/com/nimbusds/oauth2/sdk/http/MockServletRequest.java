@@ -40,6 +40,10 @@ public class MockServletRequest implements HttpServletRequest {
 
 	private String addr;
 
+	private boolean secure;
+
+	private AsyncContext asyncContext;
+
 
 	private int localPort;
 
@@ -409,7 +413,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public boolean isSecure() {
-		return false;
+		return secure;
+	}
+
+
+	public void setSecure(final boolean secure) {
+		this.secure = secure;
 	}
 
 
@@ -471,31 +480,32 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public AsyncContext startAsync() throws IllegalStateException {
-		return null;
+		return startAsync(this, new MockServletResponse());
 	}
 
 
 	@Override
 	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) throws IllegalStateException {
-		return null;
+		asyncContext = new MockAsyncContext(servletRequest, servletResponse);
+		return asyncContext;
 	}
 
 
 	@Override
 	public boolean isAsyncStarted() {
-		return false;
+		return asyncContext != null;
 	}
 
 
 	@Override
 	public boolean isAsyncSupported() {
-		return false;
+		return true;
 	}
 
 
 	@Override
 	public AsyncContext getAsyncContext() {
-		return null;
+		return asyncContext;
 	}
 
 
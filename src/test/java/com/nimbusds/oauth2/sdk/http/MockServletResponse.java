@@ -44,6 +44,9 @@ class MockServletResponse implements HttpServletResponse {
 	private ByteArrayOutputStream content = new ByteArrayOutputStream();
 
 
+	private int contentLength = -1;
+
+
 	@Override
 	public void addCookie(Cookie cookie) {
 
@@ -201,7 +204,13 @@ class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public ServletOutputStream getOutputStream() throws IOException {
-		return null;
+
+		return new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				content.write(b);
+			}
+		};
 	}
 
 
@@ -218,6 +227,12 @@ class MockServletResponse implements HttpServletResponse {
 	}
 
 
+	public byte[] getContentBytes() {
+
+		return content.toByteArray();
+	}
+
+
 	@Override
 	public void setCharacterEncoding(String s) {
 
@@ -227,6 +242,13 @@ class MockServletResponse implements HttpServletResponse {
 	@Override
 	public void setContentLength(int i) {
 
+		contentLength = i;
+	}
+
+
+	public int getContentLength() {
+
+		return contentLength;
 	}
 
 
@@ -0,0 +1,391 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.nimbusds.oauth2.sdk.AccessTokenResponse;
+import com.nimbusds.oauth2.sdk.ClientCredentialsGrant;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.TokenRequest;
+import com.nimbusds.oauth2.sdk.TokenResponse;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
+import com.nimbusds.oauth2.sdk.auth.Secret;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.Tokens;
+
+
+/**
+ * Tests the embedded NIO HTTP server over the loopback interface.
+ */
+public class NIOHTTPServerTest {
+
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * Handler echoing the request.
+	 */
+	private static final HTTPRequestHandler ECHO_HANDLER = new HTTPRequestHandler() {
+		@Override
+		public HTTPResponse handle(final HTTPRequest httpRequest) {
+
+			HTTPResponse httpResponse = new HTTPResponse(200);
+			httpResponse.setHeader("Content-Type", "text/plain; charset=UTF-8");
+			httpResponse.setContent(httpRequest.getMethod() + " " + httpRequest.getURL() + " " + httpRequest.getQuery());
+			return httpResponse;
+		}
+	};
+
+
+	private NIOHTTPServer server;
+
+
+	private NIOHTTPServer startServer(final NIOHTTPServer.Builder builder)
+		throws IOException {
+
+		server = builder.bindAddress(InetAddress.getByName("127.0.0.1")).build();
+		server.start();
+		return server;
+	}
+
+
+	@After
+	public void tearDown() {
+
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+
+	/**
+	 * Sends the specified raw request and reads the response until the
+	 * server closes the connection.
+	 */
+	private static String sendRaw(final int port, final String request)
+		throws IOException {
+
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+
+			socket.setSoTimeout(5000);
+
+			OutputStream out = socket.getOutputStream();
+			out.write(request.getBytes(UTF_8));
+			out.flush();
+
+			InputStream in = socket.getInputStream();
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			byte[] buf = new byte[1024];
+			int n;
+			while ((n = in.read(buf)) >= 0) {
+				response.write(buf, 0, n);
+			}
+			return response.toString("UTF-8");
+		}
+	}
+
+
+	@Test
+	public void testBuilder() {
+
+		NIOHTTPServer server = new NIOHTTPServer.Builder(ECHO_HANDLER).build();
+		assertEquals(NIOHTTPServer.DEFAULT_MAX_ENTITY_LENGTH, server.getMaxEntityLength());
+		assertEquals(NIOHTTPServer.DEFAULT_MAX_HEADER_LENGTH, server.getMaxHeaderLength());
+		assertEquals(NIOHTTPServer.DEFAULT_KEEP_ALIVE_TIMEOUT, server.getKeepAliveTimeout());
+		assertEquals(-1, server.getPort());
+		assertFalse(server.isRunning());
+
+		try {
+			new NIOHTTPServer.Builder(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The HTTP request handler must not be null", e.getMessage());
+		}
+
+		try {
+			new NIOHTTPServer.Builder(ECHO_HANDLER).port(65536);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The port must be between 0 and 65535", e.getMessage());
+		}
+
+		try {
+			new NIOHTTPServer.Builder(ECHO_HANDLER).maxHeaderLength(100);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum header length must be at least 256 bytes", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testStartStop()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER));
+		assertTrue(server.isRunning());
+		assertTrue(server.getPort() > 0);
+
+		try {
+			server.start();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("The HTTP server is already running", e.getMessage());
+		}
+
+		server.stop();
+		assertFalse(server.isRunning());
+		assertEquals(-1, server.getPort());
+	}
+
+
+	@Test
+	public void testKeepAliveWithPooledTransport()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER));
+
+		PooledHTTPTransport transport = new PooledHTTPTransport();
+
+		URL url = new URL("http://127.0.0.1:" + server.getPort() + "/path");
+
+		HTTPRequest getRequest = new HTTPRequest(HTTPRequest.Method.GET, url);
+		getRequest.setQuery("a=1&b=2");
+		getRequest.setTransport(transport);
+
+		HTTPResponse httpResponse = getRequest.send();
+		assertEquals(200, httpResponse.getStatusCode());
+		assertEquals("OK", httpResponse.getStatusMessage());
+		assertEquals("GET " + url + " a=1&b=2", httpResponse.getContent());
+
+		HTTPRequest postRequest = new HTTPRequest(HTTPRequest.Method.POST, url);
+		postRequest.setContentType("application/json; charset=UTF-8");
+		postRequest.setQuery("{\"name\":\"\u00e9\"}");
+		postRequest.setTransport(transport);
+
+		httpResponse = postRequest.send();
+		assertEquals(200, httpResponse.getStatusCode());
+		assertEquals("POST " + url + " {\"name\":\"\u00e9\"}", httpResponse.getContent());
+
+		// Same connection
+		assertEquals(1, transport.getIdleConnectionCount());
+		assertEquals(1, server.getConnectionCount());
+	}
+
+
+	@Test
+	public void testTokenEndpoint()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(new HTTPRequestHandler() {
+			@Override
+			public HTTPResponse handle(final HTTPRequest httpRequest)
+				throws Exception {
+
+				TokenRequest tokenRequest = TokenRequest.parse(httpRequest);
+				assertEquals(new ClientID("123"), tokenRequest.getClientAuthentication().getClientID());
+				assertEquals(Scope.parse("read"), tokenRequest.getScope());
+				return new AccessTokenResponse(new Tokens(new BearerAccessToken("abc", 3600L, null), null)).toHTTPResponse();
+			}
+		}));
+
+		TokenRequest tokenRequest = new TokenRequest(
+			new URI("http://127.0.0.1:" + server.getPort() + "/token"),
+			new ClientSecretBasic(new ClientID("123"), new Secret("secret")),
+			new ClientCredentialsGrant(),
+			Scope.parse("read"));
+
+		TokenResponse tokenResponse = TokenResponse.parse(tokenRequest.toHTTPRequest().send());
+		assertTrue(tokenResponse.indicatesSuccess());
+		assertEquals("abc", ((AccessTokenResponse)tokenResponse).getTokens().getAccessToken().getValue());
+	}
+
+
+	@Test
+	public void testEntityTooLarge()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER).maxEntityLength(10));
+
+		String response = sendRaw(server.getPort(),
+			"POST /token HTTP/1.1\r\n" +
+			"Host: 127.0.0.1\r\n" +
+			"Content-Type: application/x-www-form-urlencoded\r\n" +
+			"Content-Length: 11\r\n" +
+			"\r\n" +
+			"grant_type=");
+
+		assertTrue(response.startsWith("HTTP/1.1 413 Payload Too Large\r\n"));
+		assertTrue(response.contains("Connection: close\r\n"));
+	}
+
+
+	@Test
+	public void testHeadersTooLarge()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER).maxHeaderLength(256));
+
+		StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\nHost: 127.0.0.1\r\nX-Padding: ");
+		for (int i=0; i < 300; i++) {
+			sb.append('x');
+		}
+		sb.append("\r\n\r\n");
+
+		assertTrue(sendRaw(server.getPort(), sb.toString()).startsWith("HTTP/1.1 431 Request Header Fields Too Large\r\n"));
+	}
+
+
+	@Test
+	public void testRefusedRequests()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER));
+
+		assertTrue(sendRaw(server.getPort(), "NONSENSE\r\n\r\n").startsWith("HTTP/1.1 400 Bad Request\r\n"));
+		assertTrue(sendRaw(server.getPort(), "GET / HTTP/1.1\r\nNo colon\r\n\r\n").startsWith("HTTP/1.1 400 Bad Request\r\n"));
+		assertTrue(sendRaw(server.getPort(), "PATCH / HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").startsWith("HTTP/1.1 501 Not Implemented\r\n"));
+		assertTrue(sendRaw(server.getPort(), "GET / HTTP/2.0\r\nHost: 127.0.0.1\r\n\r\n").startsWith("HTTP/1.1 505 HTTP Version Not Supported\r\n"));
+		assertTrue(sendRaw(server.getPort(), "POST / HTTP/1.1\r\nHost: 127.0.0.1\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n").startsWith("HTTP/1.1 501 Not Implemented\r\n"));
+	}
+
+
+	@Test
+	public void testHandlerFailure()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(new HTTPRequestHandler() {
+			@Override
+			public HTTPResponse handle(final HTTPRequest httpRequest) {
+				throw new IllegalStateException("Handler bug");
+			}
+		}));
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://127.0.0.1:" + server.getPort() + "/"));
+		assertEquals(500, httpRequest.send().getStatusCode());
+	}
+
+
+	@Test
+	public void testHandlerError()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(new HTTPRequestHandler() {
+			@Override
+			public HTTPResponse handle(final HTTPRequest httpRequest) {
+				throw new AssertionError("Handler bug");
+			}
+		}));
+
+		// Not left in the handling state
+		assertTrue(sendRaw(server.getPort(), "GET / HTTP/1.1\r\nHost: 127.0.0.1\r\nConnection: close\r\n\r\n").startsWith("HTTP/1.1 500 Internal Server Error\r\n"));
+	}
+
+
+	@Test
+	public void testRejectedExecution()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER).executor(new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		}));
+
+		assertTrue(sendRaw(server.getPort(), "GET / HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+	}
+
+
+	@Test
+	public void testPipelinedRequestsAndHTTP10()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER));
+
+		String response = sendRaw(server.getPort(),
+			"GET /one HTTP/1.1\r\nHost: c2id.com\r\n\r\n" +
+			"GET /two HTTP/1.0\r\n\r\n");
+
+		int second = response.indexOf("HTTP/1.1 200 OK", 1);
+		assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(second > 0);
+		assertTrue(response.substring(0, second).endsWith("GET http://c2id.com/one null"));
+		assertTrue(response.substring(second).contains("Connection: close\r\n"));
+		assertTrue(response.endsWith("GET http://127.0.0.1:" + server.getPort() + "/two null"));
+	}
+
+
+	@Test
+	public void testKeepAliveTimeout()
+		throws Exception {
+
+		startServer(new NIOHTTPServer.Builder(ECHO_HANDLER).keepAliveTimeout(100L));
+
+		try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+
+			socket.setSoTimeout(5000);
+
+			// Idle connection closed by the server
+			assertEquals(-1, socket.getInputStream().read());
+		}
+
+		assertEquals(0, server.getConnectionCount());
+	}
+
+
+	@Test
+	public void testSerializeResponse() {
+
+		HTTPResponse httpResponse = new HTTPResponse(204);
+		httpResponse.setHeader("Cache-Control", "no-store");
+		httpResponse.setHeader("Content-Length", "100");
+
+		ByteBuffer[] buffers = NIOHTTPServer.toByteBuffers(httpResponse, false, false);
+		assertEquals(1, buffers.length);
+		assertEquals("HTTP/1.1 204 No Content\r\nCache-Control: no-store\r\n\r\n", new String(buffers[0].array(), UTF_8));
+
+		httpResponse = new HTTPResponse(299);
+		httpResponse.setContent("\u00e9");
+
+		buffers = NIOHTTPServer.toByteBuffers(httpResponse, true, false);
+		assertEquals(2, buffers.length);
+		assertEquals("HTTP/1.1 299 \r\nContent-Length: 2\r\nConnection: keep-alive\r\n\r\n", new String(buffers[0].array(), UTF_8));
+		assertEquals("\u00e9", new String(buffers[1].array(), UTF_8));
+	}
+}
@@ -0,0 +1,685 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+import static net.jadler.Jadler.*;
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the resilient HTTP transport.
+ */
+public class ResilientHTTPTransportTest {
+
+
+	/**
+	 * Transport which fails the first requests.
+	 */
+	private static class FailingTransport implements HTTPTransport {
+
+
+		final AtomicInteger sent = new AtomicInteger();
+
+
+		final int failures;
+
+
+		final long latency;
+
+
+		FailingTransport(final int failures, final long latency) {
+			this.failures = failures;
+			this.latency = latency;
+		}
+
+
+		@Override
+		public HTTPResponse send(final HTTPRequest httpRequest,
+					 final HostnameVerifier hostnameVerifier,
+					 final SSLSocketFactory sslSocketFactory)
+			throws IOException {
+
+			int n = sent.incrementAndGet();
+
+			if (latency > 0 && n == 1) {
+				try {
+					Thread.sleep(latency);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+
+			if (n <= failures) {
+				throw new IOException("Connection reset");
+			}
+
+			HTTPResponse httpResponse = new HTTPResponse(200);
+			httpResponse.setContent("response " + n);
+			return httpResponse;
+		}
+	}
+
+
+	@Before
+	public void setUp() {
+		initJadler();
+	}
+
+
+	@After
+	public void tearDown() {
+		closeJadler();
+	}
+
+
+	@Test
+	public void testBuilderDefaults() {
+
+		HTTPTransport transport = new DefaultHTTPTransport();
+
+		ResilientHTTPTransport resilientTransport = new ResilientHTTPTransport.Builder(transport).build();
+		assertEquals(transport, resilientTransport.getTransport());
+		assertEquals(ResilientHTTPTransport.DEFAULT_MAX_RETRIES, resilientTransport.getMaxRetries());
+		assertEquals(ResilientHTTPTransport.DEFAULT_FAILURE_THRESHOLD, resilientTransport.getFailureThreshold());
+		assertEquals(0.0, resilientTransport.getHedgePercentile(), 0.0);
+	}
+
+
+	@Test
+	public void testBuilderRejectInvalidSettings() {
+
+		try {
+			new ResilientHTTPTransport.Builder(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The HTTP transport must not be null", e.getMessage());
+		}
+
+		ResilientHTTPTransport.Builder builder = new ResilientHTTPTransport.Builder(new DefaultHTTPTransport());
+
+		try {
+			builder.maxRetries(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum number of retries must not be negative", e.getMessage());
+		}
+
+		try {
+			builder.backoff(100L, 50L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum backoff must not be less than the initial backoff", e.getMessage());
+		}
+
+		try {
+			builder.hedgePercentile(1.0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The hedge percentile must be zero or between zero and one", e.getMessage());
+		}
+
+		try {
+			builder.openDuration(0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The open duration must be positive", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testRetryGETOnServiceUnavailable()
+		throws Exception {
+
+		onRequest()
+			.havingPathEqualTo("/jwks.json")
+			.respond()
+			.withStatus(503)
+			.thenRespond()
+			.withStatus(200)
+			.withBody("{\"keys\":[]}")
+			.withContentType("application/json");
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(new PooledHTTPTransport())
+			.backoff(1L, 10L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("http://localhost:" + port() + "/jwks.json"));
+		httpRequest.setTransport(transport);
+
+		HTTPResponse httpResponse = httpRequest.send();
+		assertEquals(200, httpResponse.getStatusCode());
+		assertEquals("{\"keys\":[]}", httpResponse.getContent());
+
+		verifyThatRequest().havingPathEqualTo("/jwks.json").receivedTimes(2);
+		assertEquals(ResilientHTTPTransport.CircuitState.CLOSED, transport.getCircuitState(httpRequest.getURL()));
+	}
+
+
+	@Test
+	public void testNoRetryPOST()
+		throws Exception {
+
+		onRequest()
+			.havingPathEqualTo("/token")
+			.respond()
+			.withStatus(503);
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(new PooledHTTPTransport())
+			.backoff(1L, 10L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.POST, new URL("http://localhost:" + port() + "/token"));
+		httpRequest.setQuery("grant_type=client_credentials");
+		httpRequest.setTransport(transport);
+
+		assertEquals(503, httpRequest.send().getStatusCode());
+
+		verifyThatRequest().havingPathEqualTo("/token").receivedOnce();
+	}
+
+
+	@Test
+	public void testRetryExhausted()
+		throws Exception {
+
+		FailingTransport failingTransport = new FailingTransport(10, 0L);
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(failingTransport)
+			.maxRetries(3)
+			.backoff(0L, 0L)
+			.failureThreshold(0)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/jwks.json"));
+		httpRequest.setTransport(transport);
+
+		try {
+			httpRequest.send();
+			fail();
+		} catch (IOException e) {
+			assertEquals("Connection reset", e.getMessage());
+		}
+
+		assertEquals(4, failingTransport.sent.get());
+		assertEquals(ResilientHTTPTransport.CircuitState.CLOSED, transport.getCircuitState(httpRequest.getURL()));
+	}
+
+
+	@Test
+	public void testCircuitBreaker()
+		throws Exception {
+
+		FailingTransport failingTransport = new FailingTransport(3, 0L);
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(failingTransport)
+			.maxRetries(0)
+			.failureThreshold(3)
+			.openDuration(100L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/jwks.json"));
+		httpRequest.setTransport(transport);
+
+		for (int i=0; i < 3; i++) {
+			try {
+				httpRequest.send();
+				fail();
+			} catch (IOException e) {
+				assertEquals("Connection reset", e.getMessage());
+			}
+		}
+
+		assertEquals(ResilientHTTPTransport.CircuitState.OPEN, transport.getCircuitState(httpRequest.getURL()));
+
+		// Fail fast
+		try {
+			httpRequest.send();
+			fail();
+		} catch (IOException e) {
+			assertEquals("Circuit breaker open for https://c2id.com:443", e.getMessage());
+		}
+
+		assertEquals(3, failingTransport.sent.get());
+
+		// Other hosts not affected
+		assertEquals(ResilientHTTPTransport.CircuitState.CLOSED, transport.getCircuitState(new URL("https://server.example.com")));
+
+		Thread.sleep(150L);
+
+		assertEquals(ResilientHTTPTransport.CircuitState.HALF_OPEN, transport.getCircuitState(httpRequest.getURL()));
+
+		// Trial request succeeds
+		assertEquals(200, httpRequest.send().getStatusCode());
+		assertEquals(ResilientHTTPTransport.CircuitState.CLOSED, transport.getCircuitState(httpRequest.getURL()));
+	}
+
+
+	@Test
+	public void testHedgeSlowRequest()
+		throws Exception {
+
+		FailingTransport slowTransport = new FailingTransport(0, 1000L);
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(slowTransport)
+			.hedgePercentile(0.95)
+			.hedgeDelay(50L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/userinfo"));
+		httpRequest.setTransport(transport);
+
+		assertEquals(50L, transport.getHedgeDelay(httpRequest.getURL()));
+
+		long start = System.currentTimeMillis();
+
+		HTTPResponse httpResponse = httpRequest.send();
+
+		assertTrue(System.currentTimeMillis() - start < 1000L);
+
+		// Served by the hedged second request
+		assertEquals("response 2", httpResponse.getContent());
+		assertEquals(2, slowTransport.sent.get());
+	}
+
+
+	@Test
+	public void testHedgeDelayFromLatencyPercentile()
+		throws Exception {
+
+		FailingTransport transport0 = new FailingTransport(0, 0L);
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(transport0)
+			.hedgePercentile(0.5)
+			.hedgeDelay(5000L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/userinfo"));
+		httpRequest.setTransport(transport);
+
+		for (int i=0; i < ResilientHTTPTransport.MIN_LATENCY_SAMPLES; i++) {
+			assertEquals(200, httpRequest.send().getStatusCode());
+		}
+
+		// Fast local calls, minimum 1 ms
+		assertTrue(transport.getHedgeDelay(httpRequest.getURL()) < 5000L);
+		assertEquals(ResilientHTTPTransport.MIN_LATENCY_SAMPLES, transport0.sent.get());
+	}
+
+
+	@Test
+	public void testRetryGETOnSocketTimeout()
+		throws Exception {
+
+		final AtomicInteger sent = new AtomicInteger();
+
+		HTTPTransport timingOutTransport = new HTTPTransport() {
+			@Override
+			public HTTPResponse send(final HTTPRequest httpRequest,
+						 final HostnameVerifier hostnameVerifier,
+						 final SSLSocketFactory sslSocketFactory)
+				throws IOException {
+
+				if (sent.incrementAndGet() == 1) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+
+				return new HTTPResponse(200);
+			}
+		};
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(timingOutTransport)
+			.backoff(1L, 1L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/jwks.json"));
+		httpRequest.setTransport(transport);
+
+		assertEquals(200, httpRequest.send().getStatusCode());
+		assertEquals(2, sent.get());
+	}
+
+
+	@Test
+	public void testNoRetryOnInterrupt()
+		throws Exception {
+
+		final AtomicInteger sent = new AtomicInteger();
+
+		HTTPTransport interruptedTransport = new HTTPTransport() {
+			@Override
+			public HTTPResponse send(final HTTPRequest httpRequest,
+						 final HostnameVerifier hostnameVerifier,
+						 final SSLSocketFactory sslSocketFactory)
+				throws IOException {
+
+				sent.incrementAndGet();
+				throw new InterruptedIOException("Interrupted");
+			}
+		};
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(interruptedTransport)
+			.backoff(1L, 1L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/jwks.json"));
+		httpRequest.setTransport(transport);
+
+		try {
+			httpRequest.send();
+			fail();
+		} catch (InterruptedIOException e) {
+			assertEquals("Interrupted", e.getMessage());
+		}
+
+		assertEquals(1, sent.get());
+	}
+
+
+	@Test
+	public void testIsInterrupt() {
+
+		assertTrue(ResilientHTTPTransport.isInterrupt(new InterruptedIOException()));
+		assertFalse(ResilientHTTPTransport.isInterrupt(new SocketTimeoutException()));
+		assertFalse(ResilientHTTPTransport.isInterrupt(new IOException()));
+	}
+
+
+	@Test
+	public void testHalfOpenTrialReleasedOnRuntimeException()
+		throws Exception {
+
+		final AtomicInteger sent = new AtomicInteger();
+
+		HTTPTransport brokenTransport = new HTTPTransport() {
+			@Override
+			public HTTPResponse send(final HTTPRequest httpRequest,
+						 final HostnameVerifier hostnameVerifier,
+						 final SSLSocketFactory sslSocketFactory)
+				throws IOException {
+
+				int n = sent.incrementAndGet();
+
+				if (n == 1) {
+					throw new IOException("Connection reset");
+				} else if (n == 2) {
+					throw new IllegalStateException("Bug");
+				}
+
+				return new HTTPResponse(200);
+			}
+		};
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(brokenTransport)
+			.maxRetries(0)
+			.failureThreshold(1)
+			.openDuration(50L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/jwks.json"));
+		httpRequest.setTransport(transport);
+
+		try {
+			httpRequest.send();
+			fail();
+		} catch (IOException e) {
+			assertEquals("Connection reset", e.getMessage());
+		}
+
+		assertEquals(ResilientHTTPTransport.CircuitState.OPEN, transport.getCircuitState(httpRequest.getURL()));
+
+		Thread.sleep(100L);
+
+		// Trial request blows up
+		try {
+			httpRequest.send();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Bug", e.getMessage());
+		}
+
+		// Next trial allowed
+		assertEquals(200, httpRequest.send().getStatusCode());
+		assertEquals(ResilientHTTPTransport.CircuitState.CLOSED, transport.getCircuitState(httpRequest.getURL()));
+		assertEquals(3, sent.get());
+	}
+
+
+	@Test
+	public void testClosedAdmittedRequestDoesNotReleaseTrial()
+		throws Exception {
+
+		final CountDownLatch slowRelease = new CountDownLatch(1);
+		final CountDownLatch trialEntered = new CountDownLatch(1);
+		final CountDownLatch trialRelease = new CountDownLatch(1);
+
+		HTTPTransport scriptedTransport = new HTTPTransport() {
+			@Override
+			public HTTPResponse send(final HTTPRequest httpRequest,
+						 final HostnameVerifier hostnameVerifier,
+						 final SSLSocketFactory sslSocketFactory)
+				throws IOException {
+
+				String path = httpRequest.getURL().getPath();
+
+				try {
+					if (path.equals("/slow")) {
+						slowRelease.await();
+						throw new IllegalStateException("Bug");
+					} else if (path.equals("/trial")) {
+						trialEntered.countDown();
+						trialRelease.await();
+						return new HTTPResponse(200);
+					}
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+
+				throw new IOException("Connection reset");
+			}
+		};
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(scriptedTransport)
+			.maxRetries(0)
+			.failureThreshold(1)
+			.openDuration(50L)
+			.build();
+
+		final HTTPRequest slowRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/slow"));
+		slowRequest.setTransport(transport);
+		final HTTPRequest trialRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/trial"));
+		trialRequest.setTransport(transport);
+		HTTPRequest failingRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/fail"));
+		failingRequest.setTransport(transport);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			// Admitted while closed
+			Future<HTTPResponse> slow = executor.submit(new Callable<HTTPResponse>() {
+				@Override
+				public HTTPResponse call() throws IOException {
+					return slowRequest.send();
+				}
+			});
+
+			Thread.sleep(50L);
+
+			try {
+				failingRequest.send();
+				fail();
+			} catch (IOException e) {
+				assertEquals("Connection reset", e.getMessage());
+			}
+
+			Thread.sleep(100L);
+
+			// Half-open trial in flight
+			Future<HTTPResponse> trial = executor.submit(new Callable<HTTPResponse>() {
+				@Override
+				public HTTPResponse call() throws IOException {
+					return trialRequest.send();
+				}
+			});
+
+			assertTrue(trialEntered.await(5, TimeUnit.SECONDS));
+
+			// Request admitted while closed blows up
+			slowRelease.countDown();
+
+			try {
+				slow.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertEquals("Bug", e.getCause().getMessage());
+			}
+
+			// Trial still held, no second trial
+			try {
+				failingRequest.send();
+				fail();
+			} catch (IOException e) {
+				assertEquals("Circuit breaker open for https://c2id.com:443", e.getMessage());
+			}
+
+			trialRelease.countDown();
+			assertEquals(200, trial.get(5, TimeUnit.SECONDS).getStatusCode());
+			assertEquals(ResilientHTTPTransport.CircuitState.CLOSED, transport.getCircuitState(trialRequest.getURL()));
+
+		} finally {
+			slowRelease.countDown();
+			trialRelease.countDown();
+			executor.shutdown();
+		}
+	}
+
+
+	@Test
+	public void testHedgedAttemptsGetOwnRequestCopy()
+		throws Exception {
+
+		final Set<HTTPRequest> seen = Collections.newSetFromMap(new ConcurrentHashMap<HTTPRequest,Boolean>());
+		final AtomicInteger sent = new AtomicInteger();
+
+		HTTPTransport slowTransport = new HTTPTransport() {
+			@Override
+			public HTTPResponse send(final HTTPRequest httpRequest,
+						 final HostnameVerifier hostnameVerifier,
+						 final SSLSocketFactory sslSocketFactory)
+				throws IOException {
+
+				seen.add(httpRequest);
+
+				if (sent.incrementAndGet() == 1) {
+					try {
+						Thread.sleep(500L);
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+
+				assertEquals("Bearer abc", httpRequest.getAuthorization());
+				return new HTTPResponse(200);
+			}
+		};
+
+		ResilientHTTPTransport transport = new ResilientHTTPTransport.Builder(slowTransport)
+			.hedgePercentile(0.95)
+			.hedgeDelay(20L)
+			.build();
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/userinfo"));
+		httpRequest.setAuthorization("Bearer abc");
+		httpRequest.setTransport(transport);
+
+		assertEquals(200, httpRequest.send().getStatusCode());
+		assertEquals(2, sent.get());
+		assertEquals(2, seen.size());
+		assertFalse(seen.contains(httpRequest));
+	}
+
+
+	@Test
+	public void testCopyRequest()
+		throws Exception {
+
+		HTTPRequest httpRequest = new HTTPRequest(HTTPRequest.Method.GET, new URL("https://c2id.com/userinfo"));
+		httpRequest.setAuthorization("Bearer abc");
+		httpRequest.setAccept("application/json");
+		httpRequest.setQuery("a=1&b=2");
+		httpRequest.setFragment("f");
+		httpRequest.setConnectTimeout(100);
+		httpRequest.setReadTimeout(200);
+		httpRequest.setFollowRedirects(false);
+		httpRequest.setResponseSizeLimit(1000);
+		httpRequest.setAcceptCompression(true);
+		httpRequest.setEndpointRole(EndpointRole.USERINFO);
+
+		HTTPRequest copy = ResilientHTTPTransport.copy(httpRequest);
+
+		assertNotSame(httpRequest, copy);
+		assertEquals(HTTPRequest.Method.GET, copy.getMethod());
+		assertEquals(httpRequest.getURL(), copy.getURL());
+		assertEquals(httpRequest.getHeaders(), copy.getHeaders());
+		assertEquals("a=1&b=2", copy.getQuery());
+		assertEquals("f", copy.getFragment());
+		assertEquals(100, copy.getConnectTimeout());
+		assertEquals(200, copy.getReadTimeout());
+		assertFalse(copy.getFollowRedirects());
+		assertEquals(1000, copy.getResponseSizeLimit());
+		assertTrue(copy.getAcceptCompression());
+		assertEquals(EndpointRole.USERINFO, copy.getEndpointRole());
+
+		copy.setHeader("Authorization", null);
+		assertEquals("Bearer abc", httpRequest.getAuthorization());
+	}
+
+
+	@Test
+	public void testRetriableStatus() {
+
+		assertTrue(ResilientHTTPTransport.isRetriableStatus(502));
+		assertTrue(ResilientHTTPTransport.isRetriableStatus(503));
+		assertTrue(ResilientHTTPTransport.isRetriableStatus(504));
+		assertFalse(ResilientHTTPTransport.isRetriableStatus(500));
+		assertFalse(ResilientHTTPTransport.isRetriableStatus(404));
+	}
+}
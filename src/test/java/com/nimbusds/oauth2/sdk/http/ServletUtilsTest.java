@@ -18,9 +18,22 @@
 package com.nimbusds.oauth2.sdk.http;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
 import junit.framework.TestCase;
@@ -82,6 +95,38 @@ public class ServletUtilsTest extends TestCase {
 		assertEquals("abc", queryParams.get("token"));
 		assertEquals("bearer", queryParams.get("type"));
 		assertEquals(2, queryParams.size());
+
+		// Serialised on demand
+		assertEquals("token=abc&type=bearer", httpRequest.getQuery());
+		assertEquals(queryParams, httpRequest.getQueryParameters());
+		assertEquals(new URL("http://c2id.com:8080/token"), httpRequest.getURL());
+	}
+
+
+	public void testConstructFromServletRequestURLEncodedMultiValued()
+		throws Exception {
+
+		MockServletRequest servletRequest = new MockServletRequest();
+		servletRequest.setMethod("POST");
+		servletRequest.setHeader("Content-Type", CommonContentTypes.APPLICATION_URLENCODED.toString());
+		servletRequest.setLocalAddr("0:0:0:0:0:0:0:1");
+		servletRequest.setLocalPort(443);
+		servletRequest.setSecure(true);
+		servletRequest.setRequestURI("/token");
+		servletRequest.setParameter("resource", "https://rs1.com", "https://rs2.com");
+		servletRequest.setParameter("empty");
+
+		HTTPRequest httpRequest = ServletUtils.createHTTPRequest(servletRequest);
+		assertEquals(new URL("https://[0:0:0:0:0:0:0:1]/token"), httpRequest.getURL());
+		assertEquals("https://rs1.com", httpRequest.getQueryParameters().get("resource"));
+		assertEquals(1, httpRequest.getQueryParameters().size());
+		assertEquals("resource=https%3A%2F%2Frs1.com&resource=https%3A%2F%2Frs2.com", httpRequest.getQuery());
+
+		// Query overwrites the servlet parameters
+		httpRequest.setQuery("a=b");
+		assertEquals("a=b", httpRequest.getQuery());
+		assertEquals("b", httpRequest.getQueryParameters().get("a"));
+		assertEquals(1, httpRequest.getQueryParameters().size());
 	}
 
 
@@ -190,5 +235,256 @@ public class ServletUtilsTest extends TestCase {
 		assertEquals("no-cache", servletResponse.getHeader("Cache-Control"));
 		assertEquals("no-cache", servletResponse.getHeader("Pragma"));
 		assertEquals("{\"apples\":\"123\"}", servletResponse.getContent());
+		assertEquals(16, servletResponse.getContentLength());
+	}
+
+
+	public void testAcceptsGzip() {
+
+		assertTrue(ServletUtils.acceptsGzip("gzip"));
+		assertTrue(ServletUtils.acceptsGzip("gzip, deflate, br"));
+		assertTrue(ServletUtils.acceptsGzip("deflate;q=1.0, GZIP;q=0.5"));
+		assertTrue(ServletUtils.acceptsGzip("x-gzip"));
+		assertTrue(ServletUtils.acceptsGzip("*"));
+		assertFalse(ServletUtils.acceptsGzip("gzip;q=0"));
+		assertFalse(ServletUtils.acceptsGzip("*, gzip;q=0"));
+		assertFalse(ServletUtils.acceptsGzip("identity"));
+		assertFalse(ServletUtils.acceptsGzip("*;q=0"));
+		assertFalse(ServletUtils.acceptsGzip(""));
+		assertFalse(ServletUtils.acceptsGzip(null));
+	}
+
+
+	private static String largeJSONContent() {
+
+		StringBuilder sb = new StringBuilder("{\"keys\":[");
+
+		for (int i=0; i < 40; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"kty\":\"EC\",\"crv\":\"P-256\",\"kid\":\"").append(i).append("\"}");
+		}
+
+		return sb.append("]}").toString();
+	}
+
+
+	public void testCompressApplyToServletResponse()
+		throws Exception {
+
+		String content = largeJSONContent();
+		assertTrue(content.length() >= ServletUtils.COMPRESSION_THRESHOLD);
+
+		HTTPResponse response = new HTTPResponse(200);
+		response.setContentType("application/json; charset=UTF-8");
+		response.setContent(content);
+
+		MockServletRequest servletRequest = new MockServletRequest();
+		servletRequest.setHeader("Accept-Encoding", "gzip, deflate");
+
+		MockServletResponse servletResponse = new MockServletResponse();
+
+		ServletUtils.applyHTTPResponse(response, servletRequest, servletResponse);
+
+		assertEquals(200, servletResponse.getStatus());
+		assertEquals("gzip", servletResponse.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", servletResponse.getHeader("Vary"));
+
+		byte[] compressed = servletResponse.getContentBytes();
+		assertEquals(compressed.length, servletResponse.getContentLength());
+		assertTrue(compressed.length < content.length());
+
+		byte[] decompressed = ContentReader.read(new GZIPInputStream(new ByteArrayInputStream(compressed)), -1, 0);
+		assertEquals(content, new String(decompressed, "UTF-8"));
+	}
+
+
+	public void testNoCompressionApplyToServletResponse()
+		throws Exception {
+
+		String content = largeJSONContent();
+
+		// Not accepted
+		HTTPResponse response = new HTTPResponse(200);
+		response.setContentType("application/json; charset=UTF-8");
+		response.setContent(content);
+
+		MockServletResponse servletResponse = new MockServletResponse();
+		ServletUtils.applyHTTPResponse(response, new MockServletRequest(), servletResponse);
+		assertNull(servletResponse.getHeader("Content-Encoding"));
+		assertEquals(content, servletResponse.getContent());
+
+		// Below threshold
+		MockServletRequest servletRequest = new MockServletRequest();
+		servletRequest.setHeader("Accept-Encoding", "gzip");
+
+		response.setContent("{\"keys\":[]}");
+		servletResponse = new MockServletResponse();
+		ServletUtils.applyHTTPResponse(response, servletRequest, servletResponse);
+		assertNull(servletResponse.getHeader("Content-Encoding"));
+		assertEquals("{\"keys\":[]}", servletResponse.getContent());
+
+		// Content coding set by the application
+		response.setContent(content);
+		response.setHeader("Content-Encoding", "identity");
+		servletResponse = new MockServletResponse();
+		ServletUtils.applyHTTPResponse(response, servletRequest, servletResponse);
+		assertEquals("identity", servletResponse.getHeader("Content-Encoding"));
+		assertTrue(Arrays.equals(content.getBytes("ISO-8859-1"), servletResponse.getContentBytes()));
+	}
+
+
+	public void testCreateHTTPRequestAsync()
+		throws Exception {
+
+		MockServletRequest servletRequest = new MockServletRequest();
+		servletRequest.setMethod("POST");
+		servletRequest.setHeader("Content-Type", CommonContentTypes.APPLICATION_JSON.toString());
+		servletRequest.setLocalAddr("c2id.com");
+		servletRequest.setLocalPort(8080);
+		servletRequest.setRequestURI("/clients");
+		servletRequest.setEntityBody("{\"grant_types\":[\"code\"]}");
+
+		try {
+			ServletUtils.createHTTPRequestAsync(servletRequest, -1, null);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Asynchronous processing not started on the servlet request", e.getMessage());
+		}
+
+		MockServletResponse servletResponse = new MockServletResponse();
+		MockAsyncContext asyncContext = (MockAsyncContext)servletRequest.startAsync(servletRequest, servletResponse);
+
+		final AtomicReference<HTTPRequest> callbackRequest = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		Future<HTTPRequest> future = ServletUtils.createHTTPRequestAsync(servletRequest, 1000, new HTTPRequestCallback() {
+			@Override
+			public void completed(HTTPRequest httpRequest) {
+				callbackRequest.set(httpRequest);
+				latch.countDown();
+			}
+
+			@Override
+			public void failed(Exception e) {
+				latch.countDown();
+			}
+		});
+
+		HTTPRequest httpRequest = future.get(5, TimeUnit.SECONDS);
+		assertEquals(HTTPRequest.Method.POST, httpRequest.getMethod());
+		assertEquals("{\"grant_types\":[\"code\"]}", httpRequest.getQuery());
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(httpRequest, callbackRequest.get());
+
+		HTTPResponse httpResponse = new HTTPResponse(201);
+		httpResponse.setContentType(CommonContentTypes.APPLICATION_JSON);
+		httpResponse.setContent("{\"client_id\":\"123\"}");
+
+		ServletUtils.applyHTTPResponseAsync(httpResponse, asyncContext).get(5, TimeUnit.SECONDS);
+
+		assertEquals(0L, asyncContext.getCompletedLatch().getCount());
+		assertEquals(201, servletResponse.getStatus());
+		assertEquals("{\"client_id\":\"123\"}", servletResponse.getContent());
+	}
+
+
+	public void testAsyncWithExecutor()
+		throws Exception {
+
+		MockServletRequest servletRequest = new MockServletRequest();
+		servletRequest.setMethod("POST");
+		servletRequest.setHeader("Content-Type", CommonContentTypes.APPLICATION_JSON.toString());
+		servletRequest.setLocalAddr("c2id.com");
+		servletRequest.setLocalPort(8080);
+		servletRequest.setRequestURI("/clients");
+		servletRequest.setEntityBody("{\"grant_types\":[\"code\"]}");
+
+		MockServletResponse servletResponse = new MockServletResponse();
+		MockAsyncContext asyncContext = (MockAsyncContext)servletRequest.startAsync(servletRequest, servletResponse);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			HTTPRequest httpRequest = ServletUtils.createHTTPRequestAsync(servletRequest, 1000, executor, null).get(5, TimeUnit.SECONDS);
+			assertEquals("{\"grant_types\":[\"code\"]}", httpRequest.getQuery());
+
+			HTTPResponse httpResponse = new HTTPResponse(204);
+			ServletUtils.applyHTTPResponseAsync(httpResponse, asyncContext, executor).get(5, TimeUnit.SECONDS);
+
+			assertEquals(0L, asyncContext.getCompletedLatch().getCount());
+			assertEquals(204, servletResponse.getStatus());
+
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+
+	public void testApplyHTTPResponseAsyncRejected()
+		throws Exception {
+
+		MockServletRequest servletRequest = new MockServletRequest();
+		MockServletResponse servletResponse = new MockServletResponse();
+		MockAsyncContext asyncContext = (MockAsyncContext)servletRequest.startAsync(servletRequest, servletResponse);
+
+		Executor rejecting = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("Queue full");
+			}
+		};
+
+		try {
+			ServletUtils.applyHTTPResponseAsync(new HTTPResponse(200), asyncContext, rejecting);
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertEquals("Queue full", e.getMessage());
+		}
+
+		// Not left hanging
+		assertEquals(0L, asyncContext.getCompletedLatch().getCount());
+	}
+
+
+	public void testCreateHTTPRequestAsyncEntityTooLarge()
+		throws Exception {
+
+		MockServletRequest servletRequest = new MockServletRequest();
+		servletRequest.setMethod("POST");
+		servletRequest.setHeader("Content-Type", "text/plain");
+		servletRequest.setLocalAddr("c2id.com");
+		servletRequest.setLocalPort(8080);
+		servletRequest.setRequestURI("/clients");
+		servletRequest.setEntityBody("0123456789");
+		servletRequest.startAsync();
+
+		final AtomicReference<Exception> callbackException = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		Future<HTTPRequest> future = ServletUtils.createHTTPRequestAsync(servletRequest, 5, new HTTPRequestCallback() {
+			@Override
+			public void completed(HTTPRequest httpRequest) {
+				latch.countDown();
+			}
+
+			@Override
+			public void failed(Exception e) {
+				callbackException.set(e);
+				latch.countDown();
+			}
+		});
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals("Request entity body is too large, limit is 5 chars", e.getCause().getMessage());
+		}
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(callbackException.get() instanceof IOException);
 	}
 }
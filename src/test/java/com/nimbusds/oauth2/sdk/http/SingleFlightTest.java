@@ -0,0 +1,210 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the single flight call coalescing.
+ */
+public class SingleFlightTest extends TestCase {
+
+
+	/**
+	 * Call which blocks until released and counts its invocations.
+	 */
+	private static class BlockingCall implements Callable<String> {
+
+
+		final AtomicInteger invocations = new AtomicInteger();
+
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+
+		final IOException failure;
+
+
+		BlockingCall(final IOException failure) {
+			this.failure = failure;
+		}
+
+
+		@Override
+		public String call()
+			throws Exception {
+
+			invocations.incrementAndGet();
+			started.countDown();
+			release.await();
+
+			if (failure != null) {
+				throw failure;
+			}
+
+			return "result";
+		}
+	}
+
+
+	private static List<Future<String>> submit(final ExecutorService executor,
+						   final SingleFlight<String,String> singleFlight,
+						   final Callable<String> call,
+						   final int count) {
+
+		List<Future<String>> futures = new ArrayList<>();
+
+		for (int i=0; i < count; i++) {
+			futures.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return singleFlight.execute("key", call);
+				}
+			}));
+		}
+
+		return futures;
+	}
+
+
+	public void testRejectNegativeWaitTimeout() {
+
+		try {
+			new SingleFlight<String,String>(-1L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The wait timeout must not be negative", e.getMessage());
+		}
+	}
+
+
+	public void testCoalesce()
+		throws Exception {
+
+		SingleFlight<String,String> singleFlight = new SingleFlight<>(0L);
+		assertEquals(0L, singleFlight.getWaitTimeout());
+
+		BlockingCall call = new BlockingCall(null);
+
+		ExecutorService executor = Executors.newFixedThreadPool(10);
+
+		List<Future<String>> futures = submit(executor, singleFlight, call, 10);
+
+		assertTrue(call.started.await(5, TimeUnit.SECONDS));
+		assertEquals(1, singleFlight.getInFlightCount());
+
+		// Let the other callers join
+		Thread.sleep(100L);
+
+		call.release.countDown();
+
+		for (Future<String> future: futures) {
+			assertEquals("result", future.get(5, TimeUnit.SECONDS));
+		}
+
+		assertEquals(1, call.invocations.get());
+		assertEquals(0, singleFlight.getInFlightCount());
+
+		// New call after completion
+		assertEquals("ok", singleFlight.execute("key", new Callable<String>() {
+			@Override
+			public String call() {
+				return "ok";
+			}
+		}));
+
+		executor.shutdown();
+	}
+
+
+	public void testPropagateFailure()
+		throws Exception {
+
+		SingleFlight<String,String> singleFlight = new SingleFlight<>(0L);
+
+		IOException failure = new IOException("Connection refused");
+		BlockingCall call = new BlockingCall(failure);
+
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+
+		List<Future<String>> futures = submit(executor, singleFlight, call, 5);
+
+		assertTrue(call.started.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100L);
+		call.release.countDown();
+
+		for (Future<String> future: futures) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertEquals(failure, e.getCause());
+			}
+		}
+
+		assertEquals(1, call.invocations.get());
+
+		executor.shutdown();
+	}
+
+
+	public void testWaitTimeout()
+		throws Exception {
+
+		final SingleFlight<String,String> singleFlight = new SingleFlight<>(50L);
+
+		BlockingCall call = new BlockingCall(null);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		Future<String> leader = submit(executor, singleFlight, call, 1).get(0);
+
+		assertTrue(call.started.await(5, TimeUnit.SECONDS));
+
+		try {
+			singleFlight.execute("key", call);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Timed out after 50 ms waiting for the in-flight request to complete", e.getMessage());
+		}
+
+		call.release.countDown();
+
+		assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+		assertEquals(1, call.invocations.get());
+
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.http;
+
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSocketFactory;
+
+import static net.jadler.Jadler.*;
+
+import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
+import junit.framework.TestCase;
+import net.minidev.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the transport based resource retriever.
+ */
+public class TransportResourceRetrieverTest extends TestCase {
+
+
+	public void testConstructor() {
+
+		HTTPTransport transport = new PooledHTTPTransport();
+
+		TransportResourceRetriever resourceRetriever = new TransportResourceRetriever(transport, 100, 200, 300);
+		assertEquals(transport, resourceRetriever.getTransport());
+		assertEquals(100, resourceRetriever.getConnectTimeout());
+		assertEquals(200, resourceRetriever.getReadTimeout());
+		assertEquals(300, resourceRetriever.getSizeLimit());
+	}
+
+
+	public void testRejectNullTransport() {
+
+		try {
+			new TransportResourceRetriever(null, 0, 0, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The HTTP transport must not be null", e.getMessage());
+		}
+	}
+
+
+	@Before
+	public void setUp() {
+		initJadler();
+	}
+
+
+	@After
+	public void tearDown() {
+		closeJadler();
+	}
+
+
+	@Test
+	public void testRetrieveOK()
+		throws Exception {
+
+		JSONObject jsonObject = new JSONObject();
+		jsonObject.put("A", "B");
+
+		onRequest()
+			.havingMethodEqualTo("GET")
+			.havingPathEqualTo("/c2id/jwks.json")
+			.respond()
+			.withStatus(200)
+			.withHeader("Content-Type", "application/json")
+			.withBody(jsonObject.toJSONString());
+
+		PooledHTTPTransport transport = new PooledHTTPTransport();
+
+		RestrictedResourceRetriever resourceRetriever = new TransportResourceRetriever(transport, 0, 0, 0);
+		Resource resource = resourceRetriever.retrieveResource(new URL("http://localhost:" + port() + "/c2id/jwks.json"));
+		assertEquals("application/json", resource.getContentType().getBaseType());
+		jsonObject = JSONObjectUtils.parse(resource.getContent());
+		assertEquals("B", jsonObject.get("A"));
+
+		assertEquals(1, transport.getIdleConnectionCount());
+	}
+
+
+	@Test
+	public void testRetrieveAsync()
+		throws Exception {
+
+		onRequest()
+			.havingMethodEqualTo("GET")
+			.havingPathEqualTo("/c2id/jwks.json")
+			.respond()
+			.withStatus(200)
+			.withHeader("Content-Type", "application/json")
+			.withBody("{\"A\":\"B\"}");
+
+		TransportResourceRetriever resourceRetriever = new TransportResourceRetriever(new PooledHTTPTransport(), 0, 0, 0);
+		Future<Resource> future = resourceRetriever.retrieveResourceAsync(new URL("http://localhost:" + port() + "/c2id/jwks.json"));
+		assertEquals("{\"A\":\"B\"}", future.get(5, TimeUnit.SECONDS).getContent());
+	}
+
+
+	@Test
+	public void testRetrieveNotFound()
+		throws Exception {
+
+		onRequest()
+			.respond()
+			.withStatus(404);
+
+		TransportResourceRetriever resourceRetriever = new TransportResourceRetriever(new DefaultHTTPTransport(), 0, 0, 0);
+
+		try {
+			resourceRetriever.retrieveResource(new URL("http://localhost:" + port() + "/c2id/jwks.json"));
+			fail();
+		} catch (IOException e) {
+			assertEquals("HTTP 404: Not Found", e.getMessage());
+		}
+
+		try {
+			resourceRetriever.retrieveResourceAsync(new URL("http://localhost:" + port() + "/c2id/jwks.json")).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals("HTTP 404: Not Found", e.getCause().getMessage());
+		}
+	}
+
+
+	@Test
+	public void testSizeLimit()
+		throws Exception {
+
+		onRequest()
+			.respond()
+			.withStatus(200)
+			.withHeader("Content-Type", "text/plain")
+			.withBody("0123456789");
+
+		TransportResourceRetriever resourceRetriever = new TransportResourceRetriever(new PooledHTTPTransport(), 0, 0, 5);
+
+		try {
+			resourceRetriever.retrieveResource(new URL("http://localhost:" + port() + "/c2id/jwks.json"));
+			fail();
+		} catch (IOException e) {
+			assertEquals("HTTP entity body exceeds the size limit of 5 bytes", e.getMessage());
+		}
+	}
+
+
+	@Test
+	public void testRetrieveHTTPS()
+		throws Exception {
+
+		MockHTTPServer.SelfSignedTLS tls = new MockHTTPServer.SelfSignedTLS();
+
+		MockHTTPServer server = new MockHTTPServer(tls.serverContext, MockHTTPServer.okResponse("hello"), false);
+
+		SSLSocketFactory defaultSSLSocketFactory = HTTPRequest.getDefaultSSLSocketFactory();
+
+		HTTPRequest.setDefaultSSLSocketFactory(tls.clientSocketFactory);
+
+		try {
+			PooledHTTPTransport transport = new PooledHTTPTransport();
+
+			TransportResourceRetriever resourceRetriever = new TransportResourceRetriever(transport, 0, 0, 0);
+
+			Resource resource = resourceRetriever.retrieveResource(new URL("https://localhost:" + server.getPort() + "/request.jwt"));
+			assertEquals("hello", resource.getContent());
+			assertEquals("text/plain", resource.getContentType().getBaseType());
+
+			// The certificate is for localhost only
+			try {
+				resourceRetriever.retrieveResource(new URL("https://127.0.0.1:" + server.getPort() + "/request.jwt"));
+				fail();
+			} catch (SSLHandshakeException e) {
+				// ok
+			}
+
+			transport.close();
+
+		} finally {
+			HTTPRequest.setDefaultSSLSocketFactory(defaultSSLSocketFactory);
+			server.close();
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.id;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
+import com.nimbusds.oauth2.sdk.auth.Secret;
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the identifier pool.
+ */
+public class IdentifierPoolTest extends TestCase {
+
+
+	@Override
+	public void tearDown() {
+
+		IdentifierPool.setDefault(null);
+	}
+
+
+	public void testDisabledByDefault() {
+
+		assertNull(IdentifierPool.getDefault());
+
+		ClientID clientID = new ClientID("123");
+		assertSame(clientID, IdentifierPool.canonical(clientID));
+		assertNull(IdentifierPool.canonical((ClientID)null));
+
+		assertNotSame(Scope.parse("read").iterator().next(), Scope.parse("read").iterator().next());
+	}
+
+
+	public void testIntern() {
+
+		IdentifierPool pool = new IdentifierPool(100);
+		assertEquals(100, pool.getMaxSize());
+		assertEquals(0, pool.size());
+
+		ClientID a = new ClientID("123");
+		ClientID b = new ClientID("123");
+
+		assertSame(a, pool.intern(a));
+		assertSame(a, pool.intern(b));
+		assertEquals(1, pool.size());
+		assertEquals(1L, pool.getMissCount());
+		assertEquals(1L, pool.getHitCount());
+
+		// Keyed by class
+		Issuer issuer = new Issuer("123");
+		assertSame(issuer, pool.intern(issuer));
+		assertSame(issuer, pool.intern(new Issuer("123")));
+		assertEquals(2, pool.size());
+
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertSame(b, pool.intern(b));
+	}
+
+
+	public void testEviction() {
+
+		IdentifierPool pool = new IdentifierPool(10);
+
+		// Keep strong references to prevent collection
+		List<Audience> audList = new ArrayList<>();
+
+		for (int i=0; i < 25; i++) {
+			audList.add(pool.intern(new Audience("aud-" + i)));
+		}
+
+		assertEquals(10, pool.size());
+		assertEquals(15L, pool.getEvictionCount());
+		assertEquals(25L, pool.getMissCount());
+		assertEquals(25, audList.size());
+	}
+
+
+	public void testCollectedEntriesReplaced()
+		throws Exception {
+
+		IdentifierPool pool = new IdentifierPool(1000);
+
+		for (int i=0; i < 100; i++) {
+			pool.intern(new ClientID("client-" + i));
+		}
+
+		for (int i=0; i < 10 && pool.getCollectedCount() == 0; i++) {
+			System.gc();
+			Thread.sleep(10L);
+			pool.intern(new ClientID("trigger"));
+		}
+
+		// Whether or not collected, interning must return an equal value
+		ClientID clientID = new ClientID("client-1");
+		assertEquals(clientID, pool.intern(clientID));
+		assertTrue(pool.size() <= 101);
+	}
+
+
+	public void testScopeValueRequirementInKey() {
+
+		IdentifierPool pool = new IdentifierPool(100);
+
+		Scope.Value plain = pool.intern(new Scope.Value("read"));
+		Scope.Value required = pool.intern(new Scope.Value("read", Scope.Value.Requirement.REQUIRED));
+		Scope.Value optional = pool.intern(new Scope.Value("read", Scope.Value.Requirement.OPTIONAL));
+
+		assertNull(plain.getRequirement());
+		assertEquals(Scope.Value.Requirement.REQUIRED, required.getRequirement());
+		assertEquals(Scope.Value.Requirement.OPTIONAL, optional.getRequirement());
+		assertEquals(3, pool.size());
+
+		assertSame(required, pool.intern(new Scope.Value("read", Scope.Value.Requirement.REQUIRED)));
+		assertSame(plain, pool.intern(new Scope.Value("read")));
+	}
+
+
+	public void testRejectInvalid() {
+
+		try {
+			new IdentifierPool(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum size must be positive", e.getMessage());
+		}
+
+		try {
+			new IdentifierPool(1).intern(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The identifier must not be null", e.getMessage());
+		}
+	}
+
+
+	public void testParsersUseDefaultPool()
+		throws Exception {
+
+		IdentifierPool pool = new IdentifierPool(100);
+		IdentifierPool.setDefault(pool);
+		assertSame(pool, IdentifierPool.getDefault());
+
+		Scope.Value read1 = Scope.parse("read write").iterator().next();
+		Scope.Value read2 = Scope.parse("read").iterator().next();
+		assertSame(read1, read2);
+
+		List<Audience> aud1 = Audience.create("a", "b");
+		List<Audience> aud2 = Audience.create("a");
+		assertSame(aud1.get(0), aud2.get(0));
+
+		ClientSecretBasic basic1 = new ClientSecretBasic(new ClientID("123"), new Secret("secret"));
+		ClientSecretBasic basic2 = ClientSecretBasic.parse(basic1.toHTTPAuthorizationHeader());
+		ClientSecretBasic basic3 = ClientSecretBasic.parse(basic1.toHTTPAuthorizationHeader());
+		assertSame(basic2.getClientID(), basic3.getClientID());
+
+		assertTrue(pool.getHitCount() >= 3L);
+
+		// Disable
+		IdentifierPool.setDefault(null);
+		assertNotSame(Scope.parse("read").iterator().next(), Scope.parse("read").iterator().next());
+	}
+
+
+	public void testConcurrentIntern()
+		throws Exception {
+
+		final IdentifierPool pool = new IdentifierPool(1000);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		List<Future<ClientID>> futures = new ArrayList<>();
+
+		for (int i=0; i < 8; i++) {
+			futures.add(executor.submit(new Callable<ClientID>() {
+				@Override
+				public ClientID call() {
+					ClientID last = null;
+					for (int j=0; j < 1000; j++) {
+						last = pool.intern(new ClientID("shared"));
+					}
+					return last;
+				}
+			}));
+		}
+
+		ClientID first = futures.get(0).get(10, TimeUnit.SECONDS);
+
+		for (Future<ClientID> future: futures) {
+			assertSame(first, future.get(10, TimeUnit.SECONDS));
+		}
+
+		assertEquals(1, pool.size());
+		assertEquals(8000L, pool.getHitCount() + pool.getMissCount());
+
+		executor.shutdown();
+	}
+}
@@ -39,4 +39,37 @@ public class AccessTokenTypeTest extends TestCase {
 
 		assertFalse(new AccessTokenType("bearer").equals(new AccessTokenType("mac")));
 	}
+
+
+	public void testParse() {
+
+		assertSame(AccessTokenType.BEARER, AccessTokenType.parse("Bearer"));
+		assertSame(AccessTokenType.BEARER, AccessTokenType.parse("bearer"));
+		assertSame(AccessTokenType.BEARER, AccessTokenType.parse("BEARER"));
+		assertSame(AccessTokenType.MAC, AccessTokenType.parse("mac"));
+		assertSame(AccessTokenType.MAC, AccessTokenType.parse("MAC"));
+		assertSame(AccessTokenType.UNKNOWN, AccessTokenType.parse("unknown"));
+
+		AccessTokenType type = AccessTokenType.parse("DPoP");
+		assertEquals("DPoP", type.getValue());
+		assertEquals(new AccessTokenType("dpop"), type);
+	}
+
+
+	public void testParseInvalid() {
+
+		try {
+			AccessTokenType.parse(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The value must not be null or empty string", e.getMessage());
+		}
+
+		try {
+			AccessTokenType.parse(" ");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The value must not be null or empty string", e.getMessage());
+		}
+	}
 }
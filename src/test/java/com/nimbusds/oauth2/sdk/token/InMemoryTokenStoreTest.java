@@ -0,0 +1,319 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Subject;
+
+
+/**
+ * Tests the in-memory token store.
+ */
+public class InMemoryTokenStoreTest extends TestCase {
+
+
+	private static StoredToken<AccessToken> token(final String value, final String clientID, final String subject, final long exp) {
+
+		return new StoredToken<AccessToken>(
+			new BearerAccessToken(value),
+			clientID != null ? new ClientID(clientID) : null,
+			subject != null ? new Subject(subject) : null,
+			null,
+			exp > 0 ? new Date(exp) : null);
+	}
+
+
+	public void testStoredTokenFromAccessToken() {
+
+		long now = System.currentTimeMillis();
+
+		BearerAccessToken accessToken = new BearerAccessToken("abc", 3600L, new Scope("read"));
+
+		StoredToken<AccessToken> storedToken = new StoredToken<AccessToken>(accessToken, new ClientID("123"), new Subject("alice"));
+		assertEquals(accessToken, storedToken.getToken());
+		assertEquals(new ClientID("123"), storedToken.getClientID());
+		assertEquals(new Subject("alice"), storedToken.getSubject());
+		assertEquals(new Scope("read"), storedToken.getScope());
+		assertTrue(storedToken.getExpirationTime().getTime() >= now + 3600000L);
+		assertFalse(storedToken.isExpired(now));
+
+		StoredToken<RefreshToken> refreshToken = new StoredToken<>(new RefreshToken(), null, null);
+		assertNull(refreshToken.getScope());
+		assertNull(refreshToken.getExpirationTime());
+		assertFalse(refreshToken.isExpired(Long.MAX_VALUE));
+
+		try {
+			new StoredToken<RefreshToken>(null, null, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The token must not be null", e.getMessage());
+		}
+	}
+
+
+	public void testConstructor() {
+
+		assertEquals(16, new InMemoryTokenStore<AccessToken>().getShardCount());
+		assertEquals(4, new InMemoryTokenStore<AccessToken>(100, 3, 1000L).getShardCount());
+		assertEquals(1, new InMemoryTokenStore<AccessToken>(1, 16, 1000L).getShardCount());
+
+		try {
+			new InMemoryTokenStore<AccessToken>(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum size must be positive", e.getMessage());
+		}
+	}
+
+
+	public void testPutGetRemove() {
+
+		TokenStore<AccessToken> store = new InMemoryTokenStore<>();
+
+		assertTrue(store.put(token("a", "123", "alice", 0L)));
+		assertEquals(1, store.size());
+
+		StoredToken<AccessToken> storedToken = store.get("a");
+		assertEquals("a", storedToken.getToken().getValue());
+		assertEquals(new ClientID("123"), storedToken.getClientID());
+
+		assertNull(store.get("b"));
+
+		// Replace
+		assertTrue(store.put(token("a", "456", "bob", 0L)));
+		assertEquals(1, store.size());
+		assertTrue(store.getByClientID(new ClientID("123")).isEmpty());
+		assertEquals(1, store.getByClientID(new ClientID("456")).size());
+
+		assertEquals(new ClientID("456"), store.remove("a").getClientID());
+		assertNull(store.remove("a"));
+		assertEquals(0, store.size());
+		assertTrue(store.getBySubject(new Subject("bob")).isEmpty());
+	}
+
+
+	public void testExpiry() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryTokenStore<AccessToken> store = new InMemoryTokenStore<>(100, 1, 10L);
+
+		store.put(token("a", "123", "alice", now + 100L), now);
+		store.put(token("b", "123", "alice", now + 1000L), now);
+		store.put(token("c", "123", "alice", 0L), now);
+
+		assertNotNull(store.get("a", now + 99L));
+		assertNull(store.get("a", now + 100L));
+
+		assertEquals(0, store.purgeExpired(now + 50L));
+		assertEquals(1, store.purgeExpired(now + 110L));
+		assertEquals(2, store.size());
+
+		assertEquals(1, store.purgeExpired(now + 100000L));
+		assertEquals(1, store.size());
+		assertNotNull(store.get("c"));
+	}
+
+
+	public void testReplacedTokenNotPurged() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryTokenStore<AccessToken> store = new InMemoryTokenStore<>(100, 1, 10L);
+
+		store.put(token("a", null, null, now + 100L), now);
+		store.put(token("a", null, null, now + 1000L), now);
+
+		assertEquals(0, store.purgeExpired(now + 200L));
+		assertEquals(1, store.size());
+		assertEquals(1, store.purgeExpired(now + 1010L));
+	}
+
+
+	public void testByClientIDAndSubject() {
+
+		TokenStore<AccessToken> store = new InMemoryTokenStore<>();
+
+		for (int i=0; i < 100; i++) {
+			store.put(token("t" + i, "client-" + (i % 2), "user-" + (i % 5), 0L));
+		}
+
+		assertEquals(50, store.getByClientID(new ClientID("client-0")).size());
+		assertEquals(20, store.getBySubject(new Subject("user-3")).size());
+		assertTrue(store.getByClientID(new ClientID("other")).isEmpty());
+
+		for (StoredToken<AccessToken> t: store.getBySubject(new Subject("user-3"))) {
+			assertEquals(new Subject("user-3"), t.getSubject());
+		}
+
+		assertEquals(20, store.removeBySubject(new Subject("user-3")));
+		assertEquals(80, store.size());
+		assertEquals(40, store.getByClientID(new ClientID("client-0")).size());
+
+		assertEquals(40, store.removeByClientID(new ClientID("client-1")));
+		assertEquals(40, store.size());
+		assertEquals(0, store.removeByClientID(new ClientID("client-1")));
+	}
+
+
+	public void testEvictEarliestExpiring() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryTokenStore<AccessToken> store = new InMemoryTokenStore<>(3, 1, 10L);
+
+		assertTrue(store.put(token("a", null, null, now + 5000L), now));
+		assertTrue(store.put(token("b", null, null, now + 1000L), now));
+		assertTrue(store.put(token("c", null, null, 0L), now));
+
+		assertTrue(store.put(token("d", null, null, now + 2000L), now));
+		assertEquals(3, store.size());
+		assertNull(store.get("b", now));
+		assertNotNull(store.get("a", now));
+		assertNotNull(store.get("c", now));
+		assertNotNull(store.get("d", now));
+	}
+
+
+	public void testEvictOnlyOne() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryTokenStore<AccessToken> store = new InMemoryTokenStore<>(12, 1, 1000L);
+
+		// All in the same wheel slot
+		for (int i=0; i < 12; i++) {
+			assertTrue(store.put(token("t" + i, null, null, now + 60000L + i), now));
+		}
+
+		assertTrue(store.put(token("x", null, null, now + 120000L), now));
+		assertEquals(12, store.size());
+		assertNull(store.get("t0", now));
+
+		for (int i=1; i < 12; i++) {
+			assertNotNull(store.get("t" + i, now));
+		}
+
+		assertEquals(12, store.getTimerCount());
+	}
+
+
+	public void testRemovedTokenTimersReleased() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryTokenStore<AccessToken> store = new InMemoryTokenStore<>(1000, 1, 1000L);
+
+		for (int i=0; i < 200000; i++) {
+			store.put(token("t" + i, null, null, now + 30L * 24 * 3600 * 1000), now);
+			store.remove("t" + i);
+		}
+
+		assertEquals(0, store.size());
+		assertTrue(store.getTimerCount() < 100);
+
+		// Replaced tokens too
+		for (int i=0; i < 200000; i++) {
+			store.put(token("r", null, null, now + 30L * 24 * 3600 * 1000 + i), now);
+		}
+
+		assertEquals(1, store.size());
+		assertTrue(store.getTimerCount() < 100);
+	}
+
+
+	public void testPurgeBeforeEvict() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryTokenStore<AccessToken> store = new InMemoryTokenStore<>(2, 1, 10L);
+
+		store.put(token("a", null, null, now + 100L), now);
+		store.put(token("b", null, null, now + 5000L), now);
+
+		assertTrue(store.put(token("c", null, null, now + 5000L), now + 200L));
+		assertEquals(2, store.size());
+		assertNotNull(store.get("b", now + 200L));
+		assertNotNull(store.get("c", now + 200L));
+	}
+
+
+	public void testRejectWhenFullOfNonExpiring() {
+
+		long now = System.currentTimeMillis();
+
+		InMemoryTokenStore<AccessToken> store = new InMemoryTokenStore<>(2, 1, 10L);
+
+		assertTrue(store.put(token("a", null, null, 0L), now));
+		assertTrue(store.put(token("b", null, null, 0L), now));
+		assertFalse(store.put(token("c", null, null, now + 1000L), now));
+		assertEquals(2, store.size());
+
+		// Replacing is always possible
+		assertTrue(store.put(token("a", "123", null, 0L), now));
+	}
+
+
+	public void testConcurrentPuts()
+		throws Exception {
+
+		final TokenStore<AccessToken> store = new InMemoryTokenStore<>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		List<Future<Void>> futures = new ArrayList<>();
+
+		for (int t=0; t < 8; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i=0; i < 1000; i++) {
+						store.put(token(thread + "-" + i, "client-" + thread, "alice", 0L));
+					}
+					return null;
+				}
+			}));
+		}
+
+		for (Future<Void> future: futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+
+		executor.shutdown();
+
+		assertEquals(8000, store.size());
+		assertEquals(1000, store.getByClientID(new ClientID("client-3")).size());
+		assertEquals(8000, store.removeBySubject(new Subject("alice")));
+		assertEquals(0, store.size());
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.oauth2.sdk.AuthorizationCode;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Identifier;
+import com.nimbusds.oauth2.sdk.id.Subject;
+import com.nimbusds.oauth2.sdk.util.MappedRecordLog;
+
+
+/**
+ * Tests the memory-mapped token store.
+ */
+public class MappedTokenStoreTest extends TestCase {
+
+
+	private File file;
+
+
+	@Override
+	public void setUp()
+		throws Exception {
+
+		file = File.createTempFile("tokens", ".log");
+		assertTrue(file.delete());
+	}
+
+
+	@Override
+	public void tearDown() {
+
+		file.delete();
+		new File(file.getPath() + ".compact").delete();
+	}
+
+
+	public void testPutGetRemove()
+		throws Exception {
+
+		MappedTokenStore<AccessToken> store = new MappedTokenStore<>(file);
+
+		BearerAccessToken token = new BearerAccessToken("abc", 3600L, new Scope("read", "write"));
+
+		assertTrue(store.put(new StoredToken<AccessToken>(token, new ClientID("123"), new Subject("alice"))));
+		assertEquals(1, store.size());
+
+		StoredToken<AccessToken> storedToken = store.get("abc");
+		assertEquals(token, storedToken.getToken());
+		assertTrue(storedToken.getToken() instanceof BearerAccessToken);
+		assertEquals(3600L, storedToken.getToken().getLifetime());
+		assertEquals(new Scope("read", "write"), storedToken.getToken().getScope());
+		assertEquals(new ClientID("123"), storedToken.getClientID());
+		assertEquals(new Subject("alice"), storedToken.getSubject());
+		assertEquals(new Scope("read", "write"), storedToken.getScope());
+		assertNotNull(storedToken.getExpirationTime());
+
+		assertNull(store.get("xyz"));
+
+		assertEquals(token, store.remove("abc").getToken());
+		assertNull(store.remove("abc"));
+		assertEquals(0, store.size());
+		assertTrue(store.getByClientID(new ClientID("123")).isEmpty());
+
+		store.close();
+	}
+
+
+	public void testReopen()
+		throws Exception {
+
+		MappedTokenStore<Identifier> store = new MappedTokenStore<>(file);
+
+		store.put(new StoredToken<Identifier>(new BearerAccessToken("a1"), new ClientID("123"), new Subject("alice")));
+		store.put(new StoredToken<Identifier>(new TypelessAccessToken("a2"), new ClientID("123"), null));
+		store.put(new StoredToken<Identifier>(new RefreshToken("r1"), new ClientID("456"), new Subject("alice"), new Scope("openid"), null));
+		store.put(new StoredToken<Identifier>(new AuthorizationCode("c1"), null, new Subject("bob"), null, new Date(System.currentTimeMillis() + 60000L)));
+		store.put(new StoredToken<Identifier>(new RefreshToken("expired"), new ClientID("123"), null, null, new Date(System.currentTimeMillis() - 1000L)));
+		store.close();
+
+		store = new MappedTokenStore<>(file);
+		assertEquals(5, store.size());
+
+		assertTrue(store.get("a1").getToken() instanceof BearerAccessToken);
+		assertTrue(store.get("a2").getToken() instanceof TypelessAccessToken);
+		assertTrue(store.get("r1").getToken() instanceof RefreshToken);
+		assertEquals(new Scope("openid"), store.get("r1").getScope());
+		assertTrue(store.get("c1").getToken() instanceof AuthorizationCode);
+		assertNull(store.get("expired"));
+
+		assertEquals(2, store.getByClientID(new ClientID("123")).size());
+		assertEquals(2, store.getBySubject(new Subject("alice")).size());
+		assertEquals(1, store.getBySubject(new Subject("bob")).size());
+
+		assertEquals(1, store.purgeExpired());
+		assertEquals(4, store.size());
+
+		assertEquals(2, store.removeBySubject(new Subject("alice")));
+		assertEquals(1, store.getByClientID(new ClientID("123")).size());
+		assertTrue(store.getByClientID(new ClientID("456")).isEmpty());
+
+		store.compact();
+		store.close();
+
+		store = new MappedTokenStore<>(file);
+		assertEquals(2, store.size());
+		assertNotNull(store.get("a2"));
+		assertNotNull(store.get("c1"));
+		store.close();
+	}
+
+
+	public void testReplace()
+		throws Exception {
+
+		MappedTokenStore<RefreshToken> store = new MappedTokenStore<>(file);
+
+		store.put(new StoredToken<>(new RefreshToken("r"), new ClientID("123"), null));
+		store.put(new StoredToken<>(new RefreshToken("r"), new ClientID("456"), null));
+
+		assertEquals(1, store.size());
+		assertTrue(store.getByClientID(new ClientID("123")).isEmpty());
+		assertEquals(1, store.removeByClientID(new ClientID("456")));
+
+		store.close();
+	}
+
+
+	public void testRejectOversizedValue()
+		throws Exception {
+
+		MappedTokenStore<RefreshToken> store = new MappedTokenStore<>(file);
+
+		char[] chars = new char[70000];
+		Arrays.fill(chars, 'a');
+
+		try {
+			store.put(new StoredToken<>(new RefreshToken("r"), new ClientID("123"), null, new Scope(new String(chars)), null));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("The stored token has a parameter exceeding 65535 bytes"));
+		}
+
+		assertEquals(0, store.size());
+
+		store.close();
+	}
+
+
+	public void testPurgeExpired()
+		throws Exception {
+
+		MappedTokenStore<RefreshToken> store = new MappedTokenStore<>(file);
+
+		store.put(new StoredToken<>(new RefreshToken("r1"), new ClientID("123"), null, null, new Date(System.currentTimeMillis() + 50L)));
+		store.put(new StoredToken<>(new RefreshToken("r2"), null, null, null, new Date(System.currentTimeMillis() + 50L)));
+		store.put(new StoredToken<>(new RefreshToken("r3"), new ClientID("123"), null));
+
+		Thread.sleep(100L);
+
+		assertEquals(2, store.purgeExpired());
+		assertEquals(1, store.size());
+		assertEquals(1, store.getByClientID(new ClientID("123")).size());
+
+		store.close();
+	}
+
+
+	public void testPurgeExpiredUnindexes()
+		throws Exception {
+
+		MappedTokenStore<RefreshToken> store = new MappedTokenStore<>(file);
+
+		for (int i=0; i < 40; i++) {
+			store.put(new StoredToken<>(new RefreshToken("r" + i), new ClientID("c" + i), new Subject("s" + i), null, new Date(System.currentTimeMillis() + 50L)));
+		}
+
+		assertEquals(40, store.getClientIDIndexSize());
+		assertEquals(40, store.getSubjectIndexSize());
+
+		Thread.sleep(100L);
+
+		assertEquals(40, store.purgeExpired());
+		assertEquals(0, store.size());
+		assertEquals(0, store.getClientIDIndexSize());
+		assertEquals(0, store.getSubjectIndexSize());
+
+		store.close();
+	}
+
+
+	public void testAutomaticCompactionUnindexes()
+		throws Exception {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		MappedTokenStore<RefreshToken> store = new MappedTokenStore<>(log);
+
+		for (int i=0; i < 10; i++) {
+			store.put(new StoredToken<>(new RefreshToken("r" + i), null, new Subject("s" + i), null, new Date(System.currentTimeMillis() + 50L)));
+		}
+
+		Thread.sleep(100L);
+
+		// Replacing fills the file with removed records until it is
+		// compacted, which drops the expired ones
+		for (int i=0; log.getCompactionCount() == 0; i++) {
+			assertTrue(store.put(new StoredToken<>(new RefreshToken("r"), null, new Subject("alice"), null, null)));
+			assertTrue(i < 1000);
+		}
+
+		assertEquals(1, store.size());
+		assertEquals(1, store.getSubjectIndexSize());
+		assertEquals(1, store.getBySubject(new Subject("alice")).size());
+
+		store.close();
+	}
+
+
+	public void testRejectUnsupportedToken()
+		throws Exception {
+
+		MappedTokenStore<Identifier> store = new MappedTokenStore<>(file);
+
+		try {
+			store.put(new StoredToken<Identifier>(new ClientID("123"), null, null));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Unsupported token type: com.nimbusds.oauth2.sdk.id.ClientID", e.getMessage());
+		}
+
+		store.close();
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.token;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the timing wheel.
+ */
+public class TimingWheelTest extends TestCase {
+
+
+	public void testRejectInvalidTick() {
+
+		try {
+			new TimingWheel<String>(0L, 0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The tick duration must be positive", e.getMessage());
+		}
+	}
+
+
+	public void testExpireInOrder() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(10L, 1000L);
+
+		wheel.add("c", 1300L);
+		wheel.add("a", 1010L);
+		wheel.add("b", 1105L);
+		assertEquals(3, wheel.size());
+
+		List<String> expired = new ArrayList<>();
+
+		wheel.advance(1009L, expired);
+		assertTrue(expired.isEmpty());
+
+		wheel.advance(1010L, expired);
+		assertEquals("[a]", expired.toString());
+
+		// Rounded up, never early
+		wheel.advance(1100L, expired);
+		assertEquals("[a]", expired.toString());
+
+		wheel.advance(1110L, expired);
+		assertEquals("[a, b]", expired.toString());
+
+		wheel.advance(1300L, expired);
+		assertEquals("[a, b, c]", expired.toString());
+		assertEquals(0, wheel.size());
+	}
+
+
+	public void testAlreadyDue() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(10L, 1000L);
+
+		wheel.add("a", 500L);
+
+		List<String> expired = new ArrayList<>();
+		wheel.advance(1000L, expired);
+		assertEquals("[a]", expired.toString());
+		assertEquals(0, wheel.size());
+	}
+
+
+	public void testCascade() {
+
+		TimingWheel<Integer> wheel = new TimingWheel<>(1L, 0L);
+
+		// Spread over levels 0 to 2
+		int[] deadlines = {3, 63, 64, 65, 200, 4095, 4097};
+
+		for (int d: deadlines) {
+			wheel.add(d, d);
+		}
+
+		List<Integer> expired = new ArrayList<>();
+
+		for (int d: deadlines) {
+			wheel.advance(d - 1, expired);
+			assertFalse(expired.contains(d));
+			wheel.advance(d, expired);
+			assertTrue(expired.contains(d));
+		}
+
+		assertEquals(deadlines.length, expired.size());
+		assertEquals(0, wheel.size());
+	}
+
+
+	public void testRebuildAfterLargeJump() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(1L, 0L);
+
+		wheel.add("a", 10L);
+		wheel.add("b", 100000L);
+		wheel.add("c", 100000000L);
+
+		List<String> expired = new ArrayList<>();
+
+		wheel.advance(99999L, expired);
+		assertEquals("[a]", expired.toString());
+
+		wheel.advance(100000L, expired);
+		assertEquals("[a, b]", expired.toString());
+
+		wheel.advance(99999999L, expired);
+		assertEquals("[a, b]", expired.toString());
+
+		wheel.advance(100000000L, expired);
+		assertEquals("[a, b, c]", expired.toString());
+	}
+
+
+	public void testPollEarliest() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(1L, 0L);
+
+		wheel.add("c", 5000L);
+		wheel.add("a", 10L);
+		wheel.add("b", 100L);
+
+		assertEquals("a", wheel.pollEarliest());
+		assertEquals("b", wheel.pollEarliest());
+		assertEquals("c", wheel.pollEarliest());
+
+		assertEquals(0, wheel.size());
+
+		assertNull(wheel.pollEarliest());
+	}
+
+
+	public void testPollEarliestLeavesRestOfSlot() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(1L, 0L);
+
+		// Same higher level slot, different deadlines
+		wheel.add("b", 10000L);
+		wheel.add("a", 9990L);
+		wheel.add("c", 10010L);
+
+		assertEquals("a", wheel.pollEarliest());
+		assertEquals(2, wheel.size());
+
+		List<String> expired = new ArrayList<>();
+		wheel.advance(10000L, expired);
+		assertEquals("[b]", expired.toString());
+		assertEquals(1, wheel.size());
+	}
+
+
+	public void testCancel() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(1L, 0L);
+
+		TimingWheel.Timer<String> a = wheel.add("a", 10L);
+		wheel.add("b", 20L);
+
+		wheel.cancel(a);
+		assertEquals(1, wheel.size());
+		assertEquals(1, wheel.cancelledCount());
+
+		// No effect
+		wheel.cancel(a);
+		wheel.cancel(null);
+		assertEquals(1, wheel.size());
+
+		List<String> expired = new ArrayList<>();
+		wheel.advance(100L, expired);
+		assertEquals("[b]", expired.toString());
+		assertEquals(0, wheel.size());
+		assertEquals(0, wheel.cancelledCount());
+	}
+
+
+	public void testCancelSkippedOnPoll() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(1L, 0L);
+
+		TimingWheel.Timer<String> a = wheel.add("a", 10L);
+		wheel.add("b", 20L);
+
+		wheel.cancel(a);
+
+		assertEquals("b", wheel.pollEarliest());
+		assertNull(wheel.pollEarliest());
+		assertEquals(0, wheel.cancelledCount());
+	}
+
+
+	public void testSweepCancelled() {
+
+		TimingWheel<String> wheel = new TimingWheel<>(1L, 0L);
+
+		for (int i=0; i < 100000; i++) {
+			wheel.cancel(wheel.add("t" + i, 1000000L + i));
+		}
+
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.cancelledCount() < 100);
+
+		wheel.add("x", 100L);
+
+		for (int i=0; i < 100000; i++) {
+			wheel.cancel(wheel.add("t" + i, 1000000L + i));
+		}
+
+		assertEquals(1, wheel.size());
+		assertTrue(wheel.cancelledCount() < 100);
+		assertEquals("x", wheel.pollEarliest());
+	}
+}
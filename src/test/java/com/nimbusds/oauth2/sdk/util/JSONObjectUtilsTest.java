@@ -269,4 +269,41 @@ public class JSONObjectUtilsTest extends TestCase {
 			// ok
 		}
 	}
+
+
+	public void testGetEnum()
+		throws Exception {
+
+		JSONObject o = new JSONObject();
+		o.put("a", "public");
+		o.put("b", "CONFIDENTIAL");
+		o.put("c", "Public");
+		o.put("d", "other");
+		o.put("e", 10);
+
+		assertEquals(ClientType.PUBLIC, JSONObjectUtils.getEnum(o, "a", ClientType.class));
+		assertEquals(ClientType.CONFIDENTIAL, JSONObjectUtils.getEnum(o, "b", ClientType.class));
+		assertEquals(ClientType.PUBLIC, JSONObjectUtils.getEnum(o, "c", ClientType.class));
+
+		try {
+			JSONObjectUtils.getEnum(o, "d", ClientType.class);
+			fail();
+		} catch (ParseException e) {
+			assertEquals("Unexpected value of JSON object member with key \"d\"", e.getMessage());
+		}
+
+		try {
+			JSONObjectUtils.getEnum(o, "e", ClientType.class);
+			fail();
+		} catch (ParseException e) {
+			assertEquals("Unexpected type of JSON object member with key \"e\"", e.getMessage());
+		}
+
+		try {
+			JSONObjectUtils.getEnum(o, "f", ClientType.class);
+			fail();
+		} catch (ParseException e) {
+			assertEquals("Missing JSON object member with key \"f\"", e.getMessage());
+		}
+	}
 }
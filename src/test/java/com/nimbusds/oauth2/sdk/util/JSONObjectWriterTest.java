@@ -0,0 +1,222 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+
+/**
+ * Tests the streaming JSON object writer.
+ */
+public class JSONObjectWriterTest extends TestCase {
+
+
+	private static String toJSONString(final String name, final Object value) {
+
+		JSONObject o = new JSONObject();
+		o.put(name, value);
+		return o.toJSONString();
+	}
+
+
+	private static String write(final String name, final Object value)
+		throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+		JSONObjectWriter writer = new JSONObjectWriter(sb);
+		writer.writeMember(name, value);
+		writer.end();
+		return sb.toString();
+	}
+
+
+	public void testEmpty()
+		throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+		new JSONObjectWriter(sb).end();
+		assertEquals(new JSONObject().toJSONString(), sb.toString());
+	}
+
+
+	public void testMembersIdenticalToJSONObject()
+		throws Exception {
+
+		JSONObject nested = new JSONObject();
+		nested.put("uri", "https://c2id.com/a?b=c");
+
+		JSONArray array = new JSONArray();
+		array.add("openid");
+		array.add(10L);
+
+		Object[] values = {
+			"abc",
+			"https://c2id.com/cb",
+			"quote \" backslash \\ tab \t newline \n",
+			"Andr\u00e9 \u2028 \u0001",
+			"",
+			null,
+			0L,
+			-3600L,
+			3.5d,
+			true,
+			nested,
+			array,
+			Arrays.asList("a", "b")
+		};
+
+		for (Object value: values) {
+			assertEquals(toJSONString("key", value), write("key", value));
+		}
+
+		assertEquals(toJSONString("name \"with\" quotes/slash", "v"), write("name \"with\" quotes/slash", "v"));
+	}
+
+
+	public void testLongMember()
+		throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+		JSONObjectWriter writer = new JSONObjectWriter(sb);
+		writer.writeMember("expires_in", 3600L);
+		writer.end();
+
+		assertEquals(toJSONString("expires_in", 3600L), sb.toString());
+	}
+
+
+	public void testMultipleMembers()
+		throws Exception {
+
+		Map<String,Object> members = new LinkedHashMap<>();
+		members.put("a", "1");
+		members.put("b", 2L);
+		members.put(null, "ignored");
+
+		StringWriter out = new StringWriter();
+		JSONObjectWriter writer = new JSONObjectWriter(out);
+		writer.writeMember("x", "y").writeMembers(members).writeMembers(null);
+		writer.end();
+
+		assertEquals("{\"x\":\"y\",\"a\":\"1\",\"b\":2}", out.toString());
+
+		JSONObject parsed = JSONObjectUtils.parse(out.toString());
+		assertEquals("y", parsed.get("x"));
+		assertEquals("1", parsed.get("a"));
+		assertEquals(2L, ((Number)parsed.get("b")).longValue());
+		assertEquals(3, parsed.size());
+	}
+
+
+	public void testFirstMemberWins()
+		throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+		JSONObjectWriter writer = new JSONObjectWriter(sb);
+		assertFalse(writer.hasMember("token_type"));
+		writer.writeMember("token_type", "DPoP");
+		assertTrue(writer.hasMember("token_type"));
+		writer.writeMember("token_type", "Bearer");
+		writer.writeMember("token_type", 1L);
+		writer.writeMember("token_type", (Object)null);
+		writer.end();
+
+		assertEquals("{\"token_type\":\"DPoP\"}", sb.toString());
+	}
+
+
+	public void testManyMembers()
+		throws Exception {
+
+		JSONObject expected = new JSONObject();
+
+		StringBuilder sb = new StringBuilder();
+		JSONObjectWriter writer = new JSONObjectWriter(sb);
+
+		for (int i=0; i < 50; i++) {
+			writer.writeMember("m" + i, (long)i);
+			expected.put("m" + i, (long)i);
+		}
+
+		writer.end();
+
+		assertEquals(expected, JSONObjectUtils.parse(sb.toString()));
+	}
+
+
+	public void testEnd()
+		throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+		JSONObjectWriter writer = new JSONObjectWriter(sb);
+		writer.end();
+		writer.end();
+
+		assertEquals("{}", sb.toString());
+
+		try {
+			writer.writeMember("a", "b");
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("The JSON object is ended", e.getMessage());
+		}
+	}
+
+
+	public void testIsStreamable() {
+
+		assertTrue(JSONObjectWriter.isStreamable(com.nimbusds.oauth2.sdk.AccessTokenResponse.class));
+		assertTrue(JSONObjectWriter.isStreamable(com.nimbusds.openid.connect.sdk.OIDCTokenResponse.class));
+		assertTrue(JSONObjectWriter.isStreamable(com.nimbusds.oauth2.sdk.token.BearerAccessToken.class));
+		assertTrue(JSONObjectWriter.isStreamable(com.nimbusds.oauth2.sdk.token.Tokens.class));
+
+		// Overrides toJSONObject only
+		assertFalse(JSONObjectWriter.isStreamable(com.nimbusds.oauth2.sdk.token.TypelessAccessToken.class));
+
+		// No such methods
+		assertFalse(JSONObjectWriter.isStreamable(String.class));
+	}
+
+
+	public void testRejectNull()
+		throws Exception {
+
+		try {
+			new JSONObjectWriter(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The output must not be null", e.getMessage());
+		}
+
+		try {
+			new JSONObjectWriter(new StringBuilder()).writeMember(null, "b");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The member name must not be null", e.getMessage());
+		}
+	}
+}
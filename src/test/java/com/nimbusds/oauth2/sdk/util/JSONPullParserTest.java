@@ -0,0 +1,174 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the JSON pull parser.
+ */
+public class JSONPullParserTest extends TestCase {
+
+
+	public void testParseMembers()
+		throws Exception {
+
+		String json = " {\"access_token\" : \"abc\",\n\"expires_in\":3600, \"nested\":{\"a\":[1,-2.5e3,true,false,null,{}]},\"x\":\"y\"} ";
+
+		JSONPullParser parser = new JSONPullParser(json);
+		parser.beginObject();
+
+		assertTrue(parser.hasNextMember());
+		assertEquals("access_token", parser.nextName());
+		assertTrue(parser.isNextString());
+		assertEquals("abc", parser.nextString());
+
+		assertTrue(parser.hasNextMember());
+		assertEquals("expires_in", parser.nextName());
+		assertFalse(parser.isNextString());
+		assertEquals(3600L, parser.nextLong());
+
+		assertTrue(parser.hasNextMember());
+		int start = parser.getPosition();
+		assertEquals("nested", parser.nextName());
+		parser.skipValue();
+		assertEquals("\"nested\":{\"a\":[1,-2.5e3,true,false,null,{}]}", json.substring(start, parser.getPosition()));
+
+		assertTrue(parser.hasNextMember());
+		assertEquals("x", parser.nextName());
+		parser.skipValue();
+
+		assertFalse(parser.hasNextMember());
+		parser.endDocument();
+	}
+
+
+	public void testEmptyObject()
+		throws Exception {
+
+		JSONPullParser parser = new JSONPullParser("{ }");
+		parser.beginObject();
+		assertFalse(parser.hasNextMember());
+		parser.endDocument();
+	}
+
+
+	public void testStringEscapes()
+		throws Exception {
+
+		JSONPullParser parser = new JSONPullParser("\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\\u00e9\\u20AC\"");
+		assertEquals("a\"b\\c/d\b\f\n\r\t\u00e9\u20ac", parser.nextString());
+		parser.endDocument();
+	}
+
+
+	public void testLongRange()
+		throws Exception {
+
+		assertEquals(Long.MAX_VALUE, new JSONPullParser("9223372036854775807").nextLong());
+		assertEquals(Long.MIN_VALUE, new JSONPullParser("-9223372036854775808").nextLong());
+		assertEquals(0L, new JSONPullParser("0").nextLong());
+	}
+
+
+	private static void assertInvalid(final String json) {
+
+		try {
+			JSONPullParser parser = new JSONPullParser(json);
+			parser.beginObject();
+			while (parser.hasNextMember()) {
+				parser.nextName();
+				parser.skipValue();
+			}
+			parser.endDocument();
+			fail(json);
+		} catch (ParseException e) {
+			assertTrue(e.getMessage().startsWith("Invalid JSON: "));
+		}
+	}
+
+
+	public void testRejectMalformed() {
+
+		assertInvalid("");
+		assertInvalid("[]");
+		assertInvalid("{");
+		assertInvalid("{\"a\"}");
+		assertInvalid("{\"a\":}");
+		assertInvalid("{\"a\":1,}");
+		assertInvalid("{\"a\":1 \"b\":2}");
+		assertInvalid("{'a':1}");
+		assertInvalid("{a:1}");
+		assertInvalid("{\"a\":01}");
+		assertInvalid("{\"a\":1.}");
+		assertInvalid("{\"a\":1e}");
+		assertInvalid("{\"a\":-}");
+		assertInvalid("{\"a\":tru}");
+		assertInvalid("{\"a\":\"\\x\"}");
+		assertInvalid("{\"a\":\"\\u00g1\"}");
+		assertInvalid("{\"a\":\"tab\there\"}");
+		assertInvalid("{\"a\":\"unterminated}");
+		assertInvalid("{\"a\":[1,2}");
+		assertInvalid("{\"a\":1} x");
+	}
+
+
+	public void testRejectDeepNesting() {
+
+		StringBuilder sb = new StringBuilder("{\"a\":");
+		for (int i=0; i < 100; i++) {
+			sb.append('[');
+		}
+		for (int i=0; i < 100; i++) {
+			sb.append(']');
+		}
+		sb.append('}');
+
+		assertInvalid(sb.toString());
+	}
+
+
+	public void testRejectNonInteger() {
+
+		String[] values = {"1.5", "1e3", "9223372036854775808", "\"1\"", "null"};
+
+		for (String value: values) {
+			try {
+				new JSONPullParser(value).nextLong();
+				fail(value);
+			} catch (ParseException e) {
+				// ok
+			}
+		}
+	}
+
+
+	public void testRejectNullText() {
+
+		try {
+			new JSONPullParser(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The JSON text must not be null", e.getMessage());
+		}
+	}
+}
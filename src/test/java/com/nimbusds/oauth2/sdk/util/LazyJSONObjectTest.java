@@ -0,0 +1,78 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the lazily parsed JSON object.
+ */
+public class LazyJSONObjectTest extends TestCase {
+
+
+	public void testParseOnAccess()
+		throws Exception {
+
+		String json = "{\"a\":\"b\",\"n\":10,\"o\":{\"c\":[true]}}";
+
+		Map<String,Object> o = new LazyJSONObject(json);
+
+		assertEquals(3, o.size());
+		assertEquals("b", o.get("a"));
+		assertEquals(10, ((Number)o.get("n")).intValue());
+		assertTrue(o.containsKey("o"));
+		assertFalse(o.containsKey("x"));
+		assertEquals(JSONObjectUtils.parse(json), o);
+
+		try {
+			o.put("x", "y");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+	}
+
+
+	public void testRejectNull() {
+
+		try {
+			new LazyJSONObject(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The JSON object text must not be null", e.getMessage());
+		}
+	}
+
+
+	public void testInvalid() {
+
+		Map<String,Object> o = new LazyJSONObject("[]");
+
+		try {
+			o.size();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("The JSON entity is not an object", e.getMessage());
+		}
+	}
+}
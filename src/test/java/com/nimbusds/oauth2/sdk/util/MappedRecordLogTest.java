@@ -0,0 +1,361 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the memory-mapped record log.
+ */
+public class MappedRecordLogTest extends TestCase {
+
+
+	private File file;
+
+
+	@Override
+	public void setUp()
+		throws Exception {
+
+		file = File.createTempFile("records", ".log");
+		assertTrue(file.delete());
+	}
+
+
+	@Override
+	public void tearDown() {
+
+		file.delete();
+		new File(file.getPath() + ".compact").delete();
+	}
+
+
+	private static byte[] bytes(final String s) {
+
+		return s.getBytes(Charset.forName("UTF-8"));
+	}
+
+
+	public void testPutGetRemove()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		assertEquals(0, log.size());
+		assertEquals(1024, log.getFileSize());
+
+		log.put("a", 0L, bytes("alpha"));
+		log.put("b", 0L, bytes("beta"));
+		log.put("\u00e9", 0L, new byte[0]);
+		assertEquals(3, log.size());
+
+		assertTrue(Arrays.equals(bytes("alpha"), log.get("a", 0L)));
+		assertTrue(Arrays.equals(bytes("beta"), log.get("b", 0L)));
+		assertEquals(0, log.get("\u00e9", 0L).length);
+		assertNull(log.get("c", 0L));
+		assertEquals(0L, log.getExpirationTime("a"));
+		assertEquals(-1L, log.getExpirationTime("c"));
+
+		// Replace
+		log.put("a", 0L, bytes("alpha-2"));
+		assertEquals(3, log.size());
+		assertTrue(Arrays.equals(bytes("alpha-2"), log.get("a", 0L)));
+		assertTrue(log.getRemovedBytes() > 0L);
+
+		assertTrue(Arrays.equals(bytes("beta"), log.remove("b", 0L)));
+		assertNull(log.remove("b", 0L));
+		assertNull(log.get("b", 0L));
+		assertEquals(2, log.size());
+
+		log.close();
+	}
+
+
+	public void testPutIfAbsent()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		assertTrue(log.putIfAbsent("a", 1000L, bytes("1"), 0L));
+		assertFalse(log.putIfAbsent("a", 1000L, bytes("2"), 999L));
+
+		// Expired record is replaced
+		assertTrue(log.putIfAbsent("a", 3000L, bytes("3"), 1000L));
+		assertTrue(Arrays.equals(bytes("3"), log.get("a", 1000L)));
+		assertEquals(1, log.size());
+
+		log.close();
+	}
+
+
+	public void testExpiry()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		log.put("a", 1000L, bytes("a"));
+		log.put("b", 2000L, bytes("b"));
+		log.put("c", 0L, bytes("c"));
+
+		assertNotNull(log.get("a", 999L));
+		assertNull(log.get("a", 1000L));
+
+		// Removed, but expired
+		assertNull(log.remove("a", 1000L));
+		assertEquals(2, log.size());
+
+		assertEquals(0, log.purgeExpired(1999L));
+		assertEquals(1, log.purgeExpired(2000L));
+		assertEquals(1, log.size());
+		assertNotNull(log.get("c", Long.MAX_VALUE));
+
+		log.close();
+	}
+
+
+	public void testReopen()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		for (int i=0; i < 100; i++) {
+			log.put("key-" + i, i < 50 ? 0L : 5000L, bytes("value-" + i));
+		}
+
+		log.remove("key-0", 0L);
+		log.put("key-1", 0L, bytes("replaced"));
+		log.close();
+
+		log = new MappedRecordLog(file, 1024);
+		assertEquals(99, log.size());
+		assertNull(log.get("key-0", 0L));
+		assertTrue(Arrays.equals(bytes("replaced"), log.get("key-1", 0L)));
+
+		for (int i=2; i < 100; i++) {
+			assertTrue(Arrays.equals(bytes("value-" + i), log.get("key-" + i, 0L)));
+		}
+
+		final List<String> keys = new ArrayList<>();
+
+		log.scan(5000L, new MappedRecordLog.Visitor() {
+			@Override
+			public void visit(String key, long expiresAt, byte[] payload) {
+				keys.add(key);
+				assertEquals(0L, expiresAt);
+			}
+		});
+
+		assertEquals(49, keys.size());
+		assertEquals("key-2", keys.get(0));
+		assertEquals("key-1", keys.get(48));
+
+		log.close();
+	}
+
+
+	public void testRecoverTornRecord()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+		log.put("a", 0L, bytes("alpha"));
+		log.put("b", 0L, bytes("beta"));
+		log.close();
+
+		// Corrupt the last payload byte
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		int end = 16 + (4 + 15 + 1 + 5) + (4 + 15 + 1 + 4);
+		raf.seek(end - 1);
+		raf.write('x');
+		raf.close();
+
+		log = new MappedRecordLog(file, 1024);
+		assertEquals(1, log.size());
+		assertNotNull(log.get("a", 0L));
+		assertNull(log.get("b", 0L));
+
+		// Appends over the torn record
+		log.put("c", 0L, bytes("gamma"));
+		log.close();
+
+		log = new MappedRecordLog(file, 1024);
+		assertEquals(2, log.size());
+		assertTrue(Arrays.equals(bytes("gamma"), log.get("c", 0L)));
+		log.close();
+	}
+
+
+	public void testGrowAndCompact()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		byte[] payload = new byte[100];
+
+		for (int i=0; i < 100; i++) {
+			log.put("key-" + i, 0L, payload);
+		}
+
+		assertEquals(100, log.size());
+		assertTrue(log.getFileSize() > 1024);
+
+		int grownSize = log.getFileSize();
+
+		// Replacing fills the file with removed records, which are
+		// compacted instead of growing the file
+		for (int round=0; round < 10; round++) {
+			for (int i=0; i < 100; i++) {
+				log.put("key-" + i, 0L, payload);
+			}
+		}
+
+		assertEquals(100, log.size());
+		assertTrue(log.getFileSize() <= grownSize * 2);
+
+		for (int i=0; i < 50; i++) {
+			log.remove("key-" + i, 0L);
+		}
+
+		log.compact(0L);
+		assertEquals(0L, log.getRemovedBytes());
+		assertEquals(50, log.size());
+		assertFalse(new File(file.getPath() + ".compact").exists());
+
+		for (int i=50; i < 100; i++) {
+			assertNotNull(log.get("key-" + i, 0L));
+		}
+
+		log.close();
+
+		log = new MappedRecordLog(file, 1024);
+		assertEquals(50, log.size());
+		log.close();
+	}
+
+
+	public void testReplaceAcrossCompaction()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		assertEquals(0L, log.getCompactionCount());
+
+		for (int i=0; i < 200; i++) {
+			log.put("key", 0L, bytes("value-" + i));
+			assertEquals("value-" + i, new String(log.get("key", 0L), "UTF-8"));
+			assertEquals(1, log.size());
+		}
+
+		assertTrue(log.getCompactionCount() > 0L);
+		log.close();
+
+		log = new MappedRecordLog(file, 1024);
+		assertEquals(1, log.size());
+		assertEquals("value-199", new String(log.get("key", 0L), "UTF-8"));
+		log.close();
+	}
+
+
+	public void testCompactDropsExpired()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		log.put("a", 1000L, bytes("a"));
+		log.put("b", 0L, bytes("b"));
+
+		log.compact(1000L);
+		assertEquals(1, log.size());
+		assertNull(log.get("a", 0L));
+		assertNotNull(log.get("b", 0L));
+
+		log.close();
+	}
+
+
+	public void testManyKeysIndex()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file);
+
+		for (int i=0; i < 10000; i++) {
+			log.put(Integer.toString(i), 0L, new byte[]{(byte)i});
+		}
+
+		// Removal shifts back the probe sequences
+		for (int i=0; i < 10000; i += 3) {
+			assertNotNull(log.remove(Integer.toString(i), 0L));
+		}
+
+		for (int i=0; i < 10000; i++) {
+			byte[] payload = log.get(Integer.toString(i), 0L);
+			if (i % 3 == 0) {
+				assertNull(payload);
+			} else {
+				assertEquals((byte)i, payload[0]);
+			}
+		}
+
+		log.close();
+	}
+
+
+	public void testRejectInvalidFile()
+		throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.write(new byte[100]);
+		raf.close();
+
+		try {
+			new MappedRecordLog(file);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Invalid record log file: " + file, e.getMessage());
+		}
+	}
+
+
+	public void testRejectLongKey()
+		throws IOException {
+
+		MappedRecordLog log = new MappedRecordLog(file, 1024);
+
+		char[] key = new char[MappedRecordLog.MAX_KEY_LENGTH + 1];
+		Arrays.fill(key, 'a');
+
+		try {
+			log.put(new String(key), 0L, new byte[0]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The key must not be longer than 65535 bytes", e.getMessage());
+		}
+
+		log.close();
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nimbusds.jose.util.Base64URL;
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the secure random generator.
+ */
+public class SecureRandomGeneratorTest extends TestCase {
+
+
+	@Override
+	public void tearDown() {
+
+		SecureRandomGenerator.setFactory(SecureRandomGenerator.DEFAULT_FACTORY);
+	}
+
+
+	public void testDefaultFactory() {
+
+		assertSame(SecureRandomGenerator.DEFAULT_FACTORY, SecureRandomGenerator.getFactory());
+		assertNotNull(SecureRandomGenerator.DEFAULT_FACTORY.create());
+	}
+
+
+	public void testEncodeBase64URL() {
+
+		Random random = new Random(42L);
+
+		for (int len=0; len < 100; len++) {
+
+			byte[] bytes = new byte[len];
+			random.nextBytes(bytes);
+
+			assertEquals(Base64URL.encode(bytes).toString(), new String(SecureRandomGenerator.encodeBase64URL(bytes)));
+		}
+	}
+
+
+	public void testNextBase64URL() {
+
+		for (int len=0; len <= SecureRandomGenerator.BUFFER_SIZE; len++) {
+
+			String value = SecureRandomGenerator.nextBase64URL(len);
+			assertEquals((len * 4 + 2) / 3, value.length());
+			assertEquals(len, new Base64URL(value).decode().length);
+		}
+	}
+
+
+	public void testNextBase64URLBytes() {
+
+		byte[] value = SecureRandomGenerator.nextBase64URLBytes(32);
+		assertEquals(43, value.length);
+		assertEquals(32, new Base64URL(new String(value)).decode().length);
+	}
+
+
+	public void testNegativeByteLength() {
+
+		try {
+			SecureRandomGenerator.nextBase64URL(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The byte length must not be negative", e.getMessage());
+		}
+	}
+
+
+	public void testNextBytesUnique() {
+
+		Set<String> values = new HashSet<>();
+
+		for (int i=0; i < 1000; i++) {
+			byte[] bytes = new byte[16];
+			SecureRandomGenerator.nextBytes(bytes);
+			assertTrue(values.add(Arrays.toString(bytes)));
+		}
+	}
+
+
+	public void testSetFactory() {
+
+		final AtomicInteger created = new AtomicInteger();
+
+		SecureRandomGenerator.setFactory(new SecureRandomGenerator.Factory() {
+			@Override
+			public SecureRandom create() {
+				created.incrementAndGet();
+				return new SecureRandom();
+			}
+		});
+
+		SecureRandomGenerator.nextBase64URL(32);
+		SecureRandomGenerator.nextBase64URL(32);
+		assertEquals(1, created.get());
+
+		try {
+			SecureRandomGenerator.setFactory(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The secure random factory must not be null", e.getMessage());
+		}
+	}
+
+
+	public void testRelease() {
+
+		final AtomicInteger created = new AtomicInteger();
+
+		SecureRandomGenerator.setFactory(new SecureRandomGenerator.Factory() {
+			@Override
+			public SecureRandom create() {
+				created.incrementAndGet();
+				return new SecureRandom();
+			}
+		});
+
+		// No thread state yet
+		SecureRandomGenerator.release();
+
+		SecureRandomGenerator.nextBase64URL(32);
+		assertEquals(1, created.get());
+
+		SecureRandomGenerator.release();
+
+		// New generator created on next use
+		assertEquals(43, SecureRandomGenerator.nextBase64URL(32).length());
+		assertEquals(2, created.get());
+
+		SecureRandomGenerator.release();
+	}
+
+
+	public void testConcurrentGeneration()
+		throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		final Set<String> values = Collections.synchronizedSet(new HashSet<String>());
+
+		Callable<Void> task = new Callable<Void>() {
+			@Override
+			public Void call() {
+				for (int i=0; i < 1000; i++) {
+					assertTrue(values.add(SecureRandomGenerator.nextBase64URL(32)));
+				}
+				return null;
+			}
+		};
+
+		Future<?>[] futures = new Future<?>[8];
+
+		for (int i=0; i < futures.length; i++) {
+			futures[i] = executor.submit(task);
+		}
+
+		for (Future<?> future: futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+
+		assertEquals(8000, values.size());
+
+		executor.shutdown();
+	}
+}
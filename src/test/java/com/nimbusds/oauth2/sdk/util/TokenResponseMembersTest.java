@@ -0,0 +1,89 @@
+/*
+ * oauth2-oidc-sdk
+ *
+ * Copyright 2012-2016, Connect2id Ltd and contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.nimbusds.oauth2.sdk.util;
+
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the single pass token response member parsing.
+ */
+public class TokenResponseMembersTest extends TestCase {
+
+
+	public void testParse() {
+
+		String json = "{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"expires_in\":3600," +
+			"\"scope\":\"read write\",\"refresh_token\":\"def\",\"id_token\":\"ghi\"," +
+			"\"a\":\"b\",\"o\":{\"c\":[1,2]}}";
+
+		TokenResponseMembers members = TokenResponseMembers.parse(json);
+
+		assertEquals("abc", members.getAccessToken());
+		assertEquals("Bearer", members.getTokenType());
+		assertEquals(3600L, members.getLifetime());
+		assertEquals("read write", members.getScope());
+		assertEquals("def", members.getRefreshToken());
+		assertEquals("ghi", members.getIDToken());
+
+		Map<String,Object> custom = members.getCustomParameters();
+		assertEquals(2, custom.size());
+		assertEquals("b", custom.get("a"));
+		assertTrue(custom.containsKey("o"));
+	}
+
+
+	public void testParseMinimal() {
+
+		TokenResponseMembers members = TokenResponseMembers.parse("{\"access_token\":\"abc\",\"token_type\":\"Bearer\"}");
+
+		assertEquals("abc", members.getAccessToken());
+		assertEquals("Bearer", members.getTokenType());
+		assertEquals(0L, members.getLifetime());
+		assertNull(members.getScope());
+		assertNull(members.getRefreshToken());
+		assertNull(members.getIDToken());
+		assertNull(members.getCustomParameters());
+	}
+
+
+	public void testLifetimeAsString() {
+
+		assertEquals(60L, TokenResponseMembers.parse("{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"expires_in\":\"60\"}").getLifetime());
+	}
+
+
+	public void testUnusual() {
+
+		// Malformed
+		assertNull(TokenResponseMembers.parse("{\"access_token\":\"abc\",\"token_type\":\"Bearer\""));
+		// Missing access token or type
+		assertNull(TokenResponseMembers.parse("{\"token_type\":\"Bearer\"}"));
+		assertNull(TokenResponseMembers.parse("{\"access_token\":\"abc\"}"));
+		// Repeated
+		assertNull(TokenResponseMembers.parse("{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"access_token\":\"abc\"}"));
+		assertNull(TokenResponseMembers.parse("{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"a\":1,\"a\":2}"));
+		// Non-positive lifetime
+		assertNull(TokenResponseMembers.parse("{\"access_token\":\"abc\",\"token_type\":\"Bearer\",\"expires_in\":0}"));
+		// Unexpected type
+		assertNull(TokenResponseMembers.parse("{\"access_token\":1,\"token_type\":\"Bearer\"}"));
+	}
+}
@@ -21,9 +21,12 @@ package com.nimbusds.oauth2.sdk.util;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
+
 import junit.framework.TestCase;
 
 
@@ -180,6 +183,169 @@ public class URLUtilsTest extends TestCase {
 	}
 
 
+	public void testParseParameters_firstValueWins() {
+
+		Map<String,String> params = URLUtils.parseParameters("a=1&b=2&a=3");
+		assertEquals("1", params.get("a"));
+		assertEquals("2", params.get("b"));
+		assertEquals(2, params.size());
+	}
+
+
+	public void testParseParameters_emptySegmentsAndMissingValues() {
+
+		Map<String,String> params = URLUtils.parseParameters("&&a&b=&=c&&");
+		assertEquals("", params.get("a"));
+		assertEquals("", params.get("b"));
+		assertEquals("c", params.get(""));
+		assertEquals(3, params.size());
+	}
+
+
+	public void testParseParameters_plusAndPercentEncoding() {
+
+		Map<String,String> params = URLUtils.parseParameters("a+b=c+d%2Be&x%3Dy=%26%25");
+		assertEquals("c d+e", params.get("a b"));
+		assertEquals("&%", params.get("x=y"));
+		assertEquals(2, params.size());
+	}
+
+
+	public void testParseParameters_utf8() {
+
+		Map<String,String> params = URLUtils.parseParameters("name=Andr%C3%A9+%E2%82%AC&city=Sofia");
+		assertEquals("Andr\u00e9 \u20ac", params.get("name"));
+		assertEquals("Sofia", params.get("city"));
+	}
+
+
+	public void testParseParameters_malformedUTF8Replaced()
+		throws Exception {
+
+		Map<String,String> params = URLUtils.parseParameters("a=%C3&b=%FF%41");
+		assertEquals(URLDecoder.decode("%C3", "utf-8"), params.get("a"));
+		assertEquals(URLDecoder.decode("%FF%41", "utf-8"), params.get("b"));
+	}
+
+
+	public void testParseParameters_illegalEscape() {
+
+		try {
+			URLUtils.parseParameters("a=%4");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("URLDecoder: Incomplete trailing escape (%) pattern", e.getMessage());
+		}
+
+		try {
+			URLUtils.parseParameters("a=%zz&b=c");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("URLDecoder: Illegal hex characters in escape (%) pattern", e.getMessage());
+		}
+	}
+
+
+	public void testParseParameters_matchURLDecoder()
+		throws Exception {
+
+		String[] values = {
+			"", "abc", "a+b", "%20", "%2b%2B", "%E2%82%ACx", "x%C3%A9y+z", "%F0%9F%98%80", "~-._*"
+		};
+
+		for (String value: values) {
+			assertEquals(URLDecoder.decode(value, "utf-8"), URLUtils.parseParameters("k=" + value).get("k"));
+		}
+	}
+
+
+	public void testParseParametersAlt() {
+
+		Map<String,String[]> params = URLUtils.parseParametersAlt("fruit=apple&veg=lettuce&fruit=orange&fruit&&x=%41");
+		assertArrayEquals(new String[]{"apple", "orange", ""}, params.get("fruit"));
+		assertArrayEquals(new String[]{"lettuce"}, params.get("veg"));
+		assertArrayEquals(new String[]{"A"}, params.get("x"));
+		assertEquals(3, params.size());
+	}
+
+
+	public void testParseParametersAlt_nullAndEmpty() {
+
+		assertTrue(URLUtils.parseParametersAlt(null).isEmpty());
+		assertTrue(URLUtils.parseParametersAlt(" ").isEmpty());
+	}
+
+
+	public void testParseParametersAlt_roundTrip() {
+
+		Map<String,String[]> params = new LinkedHashMap<>();
+		params.put("resource", new String[]{"https://rs1.com/api?x=1&y=2", "https://rs2.com"});
+		params.put("scope", new String[]{"openid email"});
+
+		Map<String,String[]> parsed = URLUtils.parseParametersAlt(URLUtils.serializeParametersAlt(params));
+		assertArrayEquals(params.get("resource"), parsed.get("resource"));
+		assertArrayEquals(params.get("scope"), parsed.get("scope"));
+		assertEquals(2, parsed.size());
+	}
+
+
+	public void testEncodeMatchesURLEncoder()
+		throws Exception {
+
+		String[] values = {
+			"",
+			"abcXYZ019",
+			"-_.*",
+			"a b+c",
+			"https://client.example.com/cb?x=1&y=2#f",
+			"~!'()",
+			"Andr\u00e9",
+			"\u20ac100",
+			"\ud83d\ude00 smile",
+			"unpaired \ud83d high",
+			"unpaired \ude00 low",
+			"trailing \ud83d",
+			"\u0000\u007f\u0080\u07ff\u0800\uffff"
+		};
+
+		for (String value: values) {
+			StringBuilder sb = new StringBuilder();
+			URLUtils.encode(value, sb);
+			assertEquals(URLEncoder.encode(value, "utf-8"), sb.toString());
+		}
+	}
+
+
+	public void testSerializeParametersAppend() {
+
+		Map<String,String> params = new LinkedHashMap<>();
+		params.put("response_type", "code id_token");
+		params.put("redirect_uri", "https://client.example.com/cb");
+		params.put("state", null);
+
+		StringBuilder sb = new StringBuilder("https://c2id.com/login?");
+		URLUtils.serializeParameters(params, sb);
+
+		assertEquals("https://c2id.com/login?response_type=code+id_token&redirect_uri=https%3A%2F%2Fclient.example.com%2Fcb&state=", sb.toString());
+
+		sb = new StringBuilder("x");
+		URLUtils.serializeParameters(null, sb);
+		URLUtils.serializeParameters(new LinkedHashMap<String,String>(), sb);
+		assertEquals("x", sb.toString());
+	}
+
+
+	public void testSerializeParametersRoundTrip() {
+
+		Map<String,String> params = new LinkedHashMap<>();
+		params.put("name", "Andr\u00e9 \u20ac");
+		params.put("a&b", "c=d");
+		params.put("emoji", "\ud83d\ude00");
+
+		assertEquals(params, URLUtils.parseParameters(URLUtils.serializeParameters(params)));
+	}
+
+
 	public void testSerializeAlt_duplicateKeys() {
 
 		Map<String,String[]> params = new LinkedHashMap<>();
@@ -32,6 +32,7 @@ import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.http.HTTPResponse;
 import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
 import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
 import com.nimbusds.openid.connect.sdk.token.OIDCTokens;
 
 
@@ -188,6 +189,86 @@ public class OIDCTokenResponseTest extends TestCase {
 	}
 
 
+	public void testStreamedJSON()
+		throws Exception {
+
+		OIDCTokens tokens = new OIDCTokens(ID_TOKEN_STRING, new BearerAccessToken("abc123"), new RefreshToken("def456"));
+
+		Map<String,Object> customParams = new HashMap<>();
+		customParams.put("sub_sid", "abc");
+		customParams.put("id_token", "shadowed");
+
+		OIDCTokenResponse response = new OIDCTokenResponse(tokens, customParams);
+
+		String content = response.toHTTPResponse().getContent();
+
+		JSONObject jsonObject = JSONObjectUtils.parse(content);
+		assertEquals(response.toJSONObject(), jsonObject);
+		assertEquals(ID_TOKEN_STRING, jsonObject.get("id_token"));
+		assertEquals(5, jsonObject.size());
+		assertEquals(content.indexOf("\"id_token\""), content.lastIndexOf("\"id_token\""));
+	}
+
+
+	public void testParseFastPathMatchesJSONObject()
+		throws Exception {
+
+		String json = "{\"id_token\":\"" + ID_TOKEN_STRING + "\",\"access_token\":\"abc\",\"token_type\":\"Bearer\"," +
+			"\"expires_in\":3600,\"refresh_token\":\"def\",\"sub_sid\":\"xyz\",\"priority\":10}";
+
+		HTTPResponse httpResponse = new HTTPResponse(HTTPResponse.SC_OK);
+		httpResponse.setContentType("application/json");
+		httpResponse.setContent(json);
+
+		OIDCTokenResponse fast = OIDCTokenResponse.parse(httpResponse);
+		OIDCTokenResponse tree = OIDCTokenResponse.parse(JSONObjectUtils.parse(json));
+
+		assertEquals(ID_TOKEN_STRING, fast.getOIDCTokens().getIDTokenString());
+		assertEquals(ID_TOKEN.getJWTClaimsSet().getSubject(), fast.getOIDCTokens().getIDToken().getJWTClaimsSet().getSubject());
+		assertEquals(tree.getOIDCTokens().getAccessToken(), fast.getOIDCTokens().getAccessToken());
+		assertEquals(3600L, fast.getOIDCTokens().getAccessToken().getLifetime());
+		assertEquals(tree.getOIDCTokens().getRefreshToken(), fast.getOIDCTokens().getRefreshToken());
+		assertEquals(tree.getCustomParameters(), fast.getCustomParameters());
+		assertEquals(2, fast.getCustomParameters().size());
+		assertEquals(tree.toJSONObject(), fast.toJSONObject());
+	}
+
+
+	public void testParseFastPathFallbackErrors()
+		throws Exception {
+
+		String[] jsons = {
+			"{\"access_token\":\"abc\",\"token_type\":\"Bearer\"}",
+			"{\"id_token\":\"ey...\",\"access_token\":\"abc\",\"token_type\":\"Bearer\"}",
+			"{\"id_token\":\"" + ID_TOKEN_STRING + "\",\"access_token\":\"abc\",\"token_type\":\"DPoP\"}"
+		};
+
+		for (String json: jsons) {
+
+			String expectedMessage;
+
+			try {
+				OIDCTokenResponse.parse(JSONObjectUtils.parse(json));
+				fail(json);
+				return;
+			} catch (ParseException e) {
+				expectedMessage = e.getMessage();
+			}
+
+			HTTPResponse httpResponse = new HTTPResponse(HTTPResponse.SC_OK);
+			httpResponse.setContentType("application/json");
+			httpResponse.setContent(json);
+
+			try {
+				OIDCTokenResponse.parse(httpResponse);
+				fail(json);
+			} catch (ParseException e) {
+				assertEquals(expectedMessage, e.getMessage());
+			}
+		}
+	}
+
+
 	public void testWithInvalidIDTokenString()
 		throws Exception {
 
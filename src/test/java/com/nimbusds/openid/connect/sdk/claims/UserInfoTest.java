@@ -501,4 +501,143 @@ public class UserInfoTest extends TestCase {
 		
 		assertNull(userInfo.getEmail()); // exception swallowed
 	}
+
+
+	public void testLangTaggedClaimIndex()
+		throws Exception {
+
+		UserInfo userInfo = new UserInfo(new Subject("alice"));
+		userInfo.setClaim("name", "Alice");
+		userInfo.setClaim("name#en", "Alice (en)");
+		userInfo.setClaim("name#bg", "\u0410\u043b\u0438\u0441\u0430");
+		userInfo.setClaim("name#invalid#tag", "Invalid");
+		userInfo.setClaim("name#", "Empty tag");
+		userInfo.setClaim("nickname#en", "Ali");
+		userInfo.setClaim("name_x#de", "Other");
+
+		Map<LangTag,String> entries = userInfo.getNameEntries();
+		assertEquals("Alice", entries.get(null));
+		assertEquals("Alice (en)", entries.get(LangTag.parse("en")));
+		assertEquals("\u0410\u043b\u0438\u0441\u0430", entries.get(LangTag.parse("bg")));
+		assertEquals(3, entries.size());
+
+		// Must match the language tag utility scan
+		Map<LangTag,Object> expected = new HashMap<>();
+		for (LangTag langTag: com.nimbusds.langtag.LangTagUtils.find("name", userInfo.toJSONObject()).keySet()) {
+			Object value = userInfo.toJSONObject().get("name" + (langTag != null ? "#" + langTag : ""));
+			if (value != null) {
+				expected.put(langTag, value);
+			}
+		}
+		assertEquals(expected, new HashMap<LangTag,Object>(entries));
+
+		// Index updated on set
+		userInfo.setClaim("name", "Alice (de)", LangTag.parse("de"));
+		assertEquals("Alice (de)", userInfo.getNameEntries().get(LangTag.parse("de")));
+		assertEquals(4, userInfo.getNameEntries().size());
+
+		// Index updated on remove
+		userInfo.setClaim("name", null, LangTag.parse("en"));
+		assertNull(userInfo.getNameEntries().get(LangTag.parse("en")));
+		assertEquals(3, userInfo.getNameEntries().size());
+
+		// Index updated on direct JSON object modification after
+		// explicit invalidation
+		userInfo.toJSONObject().put("name#fr", "Alice (fr)");
+		userInfo.invalidateLangTagIndex();
+		assertEquals("Alice (fr)", userInfo.getNameEntries().get(LangTag.parse("fr")));
+
+		// Base name with a hash, falls back to scan
+		userInfo.setClaim("x#y", "xy");
+		userInfo.setClaim("x#y#en", "xy (en)");
+		assertEquals("xy", userInfo.getLangTaggedClaim("x#y", String.class).get(null));
+		assertEquals(1, userInfo.getLangTaggedClaim("x#y", String.class).size());
+
+		assertEquals("Ali", userInfo.getNicknameEntries().get(LangTag.parse("en")));
+		assertEquals(1, userInfo.getNicknameEntries().size());
+		assertTrue(userInfo.getGivenNameEntries().isEmpty());
+	}
+
+
+	public void testLangTaggedClaimIndexDirectModification()
+		throws Exception {
+
+		UserInfo userInfo = new UserInfo(new Subject("alice"));
+		userInfo.setClaim("name", "Alice");
+		userInfo.setClaim("name#en", "Alice (en)");
+
+		assertEquals(2, userInfo.getNameEntries().size());
+
+		// Replace a tagged claim directly, requires explicit
+		// invalidation
+		JSONObject jsonObject = userInfo.toJSONObject();
+		jsonObject.remove("name#en");
+		jsonObject.put("name#de", "Alice (de)");
+		userInfo.invalidateLangTagIndex();
+
+		Map<LangTag,String> entries = userInfo.getNameEntries();
+		assertEquals("Alice", entries.get(null));
+		assertEquals("Alice (de)", entries.get(LangTag.parse("de")));
+		assertEquals(2, entries.size());
+	}
+
+
+	public void testLangTaggedClaimIndexSameSizeReplacement()
+		throws Exception {
+
+		UserInfo userInfo = new UserInfo(new Subject("alice"));
+		userInfo.setClaim("name", "Alice");
+		userInfo.setClaim("name#en", "Alice (en)");
+
+		assertEquals(2, userInfo.getNameEntries().size());
+
+		// Replace a tagged claim without changing the claim count
+		userInfo.setClaim("name#en", null);
+		userInfo.setClaim("name#de", "Alice (de)");
+
+		Map<LangTag,String> entries = userInfo.getNameEntries();
+		assertEquals("Alice (de)", entries.get(LangTag.parse("de")));
+		assertNull(entries.get(LangTag.parse("en")));
+		assertEquals(2, entries.size());
+
+		// Via putAll
+		Map<String,Object> more = new HashMap<>();
+		more.put("name#fr", "Alice (fr)");
+		userInfo.putAll(more);
+		assertEquals(3, userInfo.getNameEntries().size());
+	}
+
+
+	public void testURIClaimMemoised()
+		throws Exception {
+
+		UserInfo userInfo = new UserInfo(new Subject("alice"));
+		userInfo.setClaim("picture", "https://c2id.com/alice.jpg");
+
+		URI picture = userInfo.getPicture();
+		assertEquals(URI.create("https://c2id.com/alice.jpg"), picture);
+		assertSame(picture, userInfo.getPicture());
+		assertEquals(picture, userInfo.getURIClaim("picture"));
+
+		// Updated claim re-parsed
+		userInfo.setPicture(URI.create("https://c2id.com/alice.png"));
+		assertEquals(URI.create("https://c2id.com/alice.png"), userInfo.getPicture());
+
+		userInfo.toJSONObject().put("picture", "https://c2id.com/alice.gif");
+		assertEquals(URI.create("https://c2id.com/alice.gif"), userInfo.getPicture());
+
+		// Invalid claim
+		userInfo.setClaim("picture", "a b");
+		assertNull(userInfo.getPicture());
+		assertNull(userInfo.getPicture());
+
+		userInfo.setPicture(null);
+		assertNull(userInfo.getPicture());
+		assertNull(userInfo.getURLClaim("picture"));
+
+		userInfo.setClaim("website", "https://c2id.com");
+		assertEquals(URI.create("https://c2id.com"), userInfo.getURIClaim("website"));
+		assertEquals(new java.net.URL("https://c2id.com"), userInfo.getURLClaim("website"));
+		assertEquals(URI.create("https://c2id.com"), userInfo.getURIClaim("website"));
+	}
 }